@@ -1,5 +1,9 @@
 package simpledb.buffer;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
 import simpledb.file.Page;
@@ -12,16 +16,32 @@ import simpledb.log.LogMgr;
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
  * and if so, the id and lsn of the modifying transaction.
+ * <p>
+ * The last bytes of each page hold the page LSN: the LSN of
+ * the latest logged update to the page. It is written to disk
+ * with the page, so that recovery can tell which updates
+ * the disk copy already contains.
  * @author Edward Sciore
  */
 public class Buffer {
+   /**
+    * The number of bytes at the end of each page that hold
+    * the page LSN, and so are not available to clients.
+    */
+   public static final int LSN_SIZE = Integer.BYTES;
    private FileMgr fm;
    private LogMgr lm;
    private Page contents;
    private BlockId blk = null;
    private int pins = 0;
    private int txnum = -1;
+   private Set<Integer> modifiers = new HashSet<>();
    private int lsn = -1;
+   private int recLSN = -1;
+   private int accesses = 0;
+   private BufferGrant grant = null;
+   private boolean inTransit = false;
+   private ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
 
    public Buffer(FileMgr fm, LogMgr lm) {
       this.fm = fm;
@@ -42,10 +62,69 @@ public class Buffer {
       return blk;
    }
 
-   public void setModified(int txnum, int lsn) {
+   /**
+    * Acquire the buffer's latch in shared mode.
+    * A latch protects the bytes of the page while they are
+    * being read or written; unlike a lock, it is held only
+    * for the duration of a single access.
+    */
+   public void latchShared() {
+      latch.readLock().lock();
+   }
+
+   public void unlatchShared() {
+      latch.readLock().unlock();
+   }
+
+   /**
+    * Acquire the buffer's latch in exclusive mode.
+    */
+   public void latchExclusive() {
+      latch.writeLock().lock();
+   }
+
+   public void unlatchExclusive() {
+      latch.writeLock().unlock();
+   }
+
+   /**
+    * Record that the specified transaction modified the page.
+    * If the modification was logged, its LSN becomes the page LSN,
+    * and if it is the first logged modification since the page
+    * was last written, it also becomes the page's recovery LSN.
+    * The caller must hold the exclusive latch.
+    * @param txnum the id of the modifying transaction
+    * @param lsn the LSN of the log record, or -1 if the modification was not logged
+    */
+   public synchronized void setModified(int txnum, int lsn) {
       this.txnum = txnum;
-      if (lsn >= 0)
+      modifiers.add(txnum);
+      if (lsn >= 0) {
          this.lsn = lsn;
+         if (recLSN < 0)
+            recLSN = lsn;
+         contents.setInt(lsnOffset(), lsn);
+      }
+   }
+
+   /**
+    * Return the LSN of the latest logged update to the page,
+    * or 0 if the page has never been updated.
+    * @return the page LSN
+    */
+   public int pageLSN() {
+      return contents.getInt(lsnOffset());
+   }
+
+   /**
+    * Return the recovery LSN of the page: the LSN of the earliest
+    * logged update that has not yet been written to disk,
+    * or -1 if the disk copy holds every logged update.
+    * Recovery need not redo any earlier update to the page.
+    * @return the recovery LSN
+    */
+   public synchronized int recoveryLSN() {
+      return recLSN;
    }
 
    /**
@@ -61,6 +140,27 @@ public class Buffer {
       return txnum;
    }
 
+   /**
+    * Return true if the specified transaction has modified
+    * the buffer since it was last written to disk.
+    * With record-level locking, several transactions
+    * can modify the same buffer concurrently.
+    * @param txnum the id of a transaction
+    * @return true if the buffer holds unflushed changes of that transaction
+    */
+   public synchronized boolean isModifiedBy(int txnum) {
+      return modifiers.contains(txnum);
+   }
+
+   /**
+    * Return the number of times the buffer has been pinned
+    * since it was assigned to its current block.
+    * @return the access count of the current block
+    */
+   public int accessCount() {
+      return accesses;
+   }
+
    /**
     * Reads the contents of the specified block into
     * the contents of the buffer.
@@ -73,24 +173,108 @@ public class Buffer {
       blk = b;
       fm.read(blk, contents);
       pins = 0;
+      accesses = 0;
    }
    
+   /**
+    * Assigns the unassigned buffer to the specified block before
+    * its contents are read, and holds a pin on it so that it
+    * is not chosen for another block in the meantime.
+    * The buffer stays in transit until {@link #finishRead(boolean)}.
+    * @param b a reference to the data block
+    */
+   void claim(BlockId b) {
+      blk = b;
+      pins = 1;
+      accesses = 0;
+      inTransit = true;
+   }
+
+   /**
+    * Reads the contents of the block that the buffer was
+    * claimed for. The caller need not hold the pool's latch,
+    * since no other thread uses a buffer in transit.
+    */
+   void readClaimed() {
+      fm.read(blk, contents);
+   }
+
+   /**
+    * Ends the transit of a claimed buffer, releasing the
+    * pin that {@link #claim(BlockId)} took. If the read
+    * failed, the buffer is left unassigned.
+    * @param read true if the contents were read
+    */
+   void finishRead(boolean read) {
+      inTransit = false;
+      pins = 0;
+      if (!read)
+         blk = null;
+   }
+
+   /**
+    * Return true if the buffer has been claimed for a block
+    * whose contents are still being read.
+    * @return true if the buffer is in transit
+    */
+   boolean isInTransit() {
+      return inTransit;
+   }
+
    /**
     * Write the buffer to its disk block if it is dirty.
     */
    void flush() {
-      if (txnum >= 0) {
-         lm.flush(lsn);
-         fm.write(blk, contents);
-         txnum = -1;
+      // the shared latch keeps the page, its lsn and its
+      // modifiers consistent with each other while they are written
+      latchShared();
+      try {
+         if (txnum >= 0) {
+            lm.flush(lsn);
+            fm.write(blk, contents);
+            synchronized (this) {
+               txnum = -1;
+               recLSN = -1;
+               modifiers.clear();
+            }
+         }
+      }
+      finally {
+         unlatchShared();
       }
    }
 
+   /**
+    * Detach the buffer from its block without writing it,
+    * because the block is being removed from its file.
+    * The buffer must not be pinned.
+    */
+   void discard() {
+      latchExclusive();
+      try {
+         synchronized (this) {
+            blk = null;
+            txnum = -1;
+            recLSN = -1;
+            modifiers.clear();
+         }
+      }
+      finally {
+         unlatchExclusive();
+      }
+      accesses = 0;
+   }
+
+   private int lsnOffset() {
+      return fm.blockSize() - LSN_SIZE;
+   }
+
    /**
     * Increase the buffer's pin count.
     */
    void pin() {
       pins++;
+      accesses++;
    }
 
    /**
@@ -99,4 +283,17 @@ public class Buffer {
    void unpin() {
       pins--;
    }
+
+   /**
+    * Return the grant that the buffer was taken from
+    * when it was last pinned, while it stays pinned.
+    * @return the grant, or null
+    */
+   BufferGrant grant() {
+      return grant;
+   }
+
+   void setGrant(BufferGrant grant) {
+      this.grant = grant;
+   }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package simpledb.buffer;
+
+/**
+ * A reservation of buffers made by an operator.
+ * The buffer manager sets aside the granted number of buffers,
+ * so that the operator can pin up to that many blocks
+ * without competing with other transactions.
+ * The grant must be returned to the buffer manager
+ * when the operator is closed.
+ */
+public class BufferGrant {
+   private int size;
+   private int inuse = 0;
+   private boolean released = false;
+
+   BufferGrant(int size) {
+      this.size = size;
+   }
+
+   /**
+    * Return the number of buffers that were granted.
+    * @return the size of the grant
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Return true if the grant has been returned
+    * to the buffer manager.
+    * @return true if the grant has been released
+    */
+   public boolean isReleased() {
+      return released;
+   }
+
+   /**
+    * Return the number of granted buffers
+    * that are not currently pinned.
+    * @return the number of unused buffers in the grant
+    */
+   public int unused() {
+      return released ? 0 : size - inuse;
+   }
+
+   /**
+    * Return the number of granted buffers
+    * that are currently pinned.
+    * @return the number of buffers in use
+    */
+   public int inUse() {
+      return released ? 0 : inuse;
+   }
+
+   void use() {
+      inuse++;
+   }
+
+   void unuse() {
+      inuse--;
+   }
+
+   void release() {
+      released = true;
+   }
+}
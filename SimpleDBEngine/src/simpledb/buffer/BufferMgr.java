@@ -1,18 +1,34 @@
 package simpledb.buffer;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
 import simpledb.log.LogMgr;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * The pool is guarded by a {@link ReentrantLock} rather than
+ * the object's monitor, and threads waiting for a buffer wait
+ * on one of its conditions, so that a waiting thread
+ * never holds a monitor.
  * @author Edward Sciore
  *
  */
 public class BufferMgr {
    private Buffer[] bufferpool;
    private int numAvailable;
+   private int numReserved = 0; // unpinned buffers set aside for grants
+   private int numGranted = 0;  // total size of the outstanding grants
+   private int maxGranted;
+   private ReentrantLock latch = new ReentrantLock();
+   private Condition bufferFreed = latch.newCondition();
    private static final long MAX_TIME = 10000; // 10 seconds
+   private static final double MAX_GRANT_FRACTION = 0.75;
    
    /**
     * Creates a buffer manager having the specified number 
@@ -24,39 +40,311 @@ public class BufferMgr {
    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
       bufferpool = new Buffer[numbuffs];
       numAvailable = numbuffs;
+      maxGranted = Math.max(1, (int)(numbuffs * MAX_GRANT_FRACTION));
       for (int i=0; i<numbuffs; i++)
          bufferpool[i] = new Buffer(fm, lm);
    }
    
    /**
-    * Returns the number of available (i.e. unpinned) buffers.
+    * Returns the number of available (i.e. unpinned) buffers
+    * that are not set aside for a grant.
+    * The value is only a snapshot; operators that need a
+    * number of buffers should {@link #reserve(int, int) reserve} them.
     * @return the number of available buffers
     */
-   public synchronized int available() {
-      return numAvailable;
+   public int available() {
+      latch.lock();
+      try {
+         return numAvailable - numReserved;
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Returns the number of buffers in the pool.
+    * @return the size of the pool
+    */
+   public int size() {
+      return bufferpool.length;
+   }
+   
+   /**
+    * Returns the largest number of buffers that can be
+    * granted at once. The admission controller caps the
+    * total size of all outstanding grants at this value,
+    * so that grants can never starve ordinary pins.
+    * @return the maximum total size of the grants
+    */
+   public int maxGrant() {
+      return maxGranted;
+   }
+   
+   /**
+    * Reserves between min and max buffers for an operator.
+    * The method grants as many buffers as are currently
+    * available, up to max. If fewer than min buffers can be granted,
+    * the calling thread waits until enough are released.
+    * If they do not become available within a fixed
+    * time period, then a {@link BufferAbortException} is thrown.
+    * In a pool too small to grant min buffers at all, the
+    * operator falls back to a grant of a single buffer, and
+    * pins its other buffers outside the grant, as ordinary pins.
+    * @param min the smallest number of buffers the operator can work with
+    * @param max the number of buffers the operator would like
+    * @return the grant
+    */
+   public BufferGrant reserve(int min, int max) {
+      if (min > maxGranted)
+         min = 1;
+      latch.lock();
+      try {
+         long timestamp = System.currentTimeMillis();
+         int n = grantable(max);
+         while (n < min && !waitingTooLong(timestamp)) {
+            bufferFreed.await(MAX_TIME, TimeUnit.MILLISECONDS);
+            n = grantable(max);
+         }
+         if (n < min)
+            throw new BufferAbortException();
+         numReserved += n;
+         numGranted += n;
+         return new BufferGrant(n);
+      }
+      catch(InterruptedException e) {
+         throw new BufferAbortException();
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Returns the specified grant to the pool.
+    * Buffers that are still pinned under the grant
+    * are treated as ordinary pins from then on.
+    * @param grant the grant to be released
+    */
+   public void release(BufferGrant grant) {
+      latch.lock();
+      try {
+         if (grant.isReleased())
+            return;
+         numReserved -= grant.unused();
+         numGranted -= grant.size();
+         grant.release();
+         bufferFreed.signalAll();
+      }
+      finally {
+         latch.unlock();
+      }
    }
    
    /**
     * Flushes the dirty buffers modified by the specified transaction.
     * @param txnum the transaction's id number
     */
-   public synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() == txnum)
-         buff.flush();
+   public void flushAll(int txnum) {
+      latch.lock();
+      try {
+         for (Buffer buff : bufferpool)
+            if (buff.isModifiedBy(txnum))
+            buff.flush();
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   
+   /**
+    * Flushes the dirty buffers whose recovery LSN is less than
+    * the specified LSN, that is, those that have held an
+    * unwritten update since before that point in the log.
+    * The checkpointer calls this method so that no page stays
+    * dirty for long, which bounds the amount of log to redo.
+    * @param lsn the LSN before which updates should be on disk
+    */
+   public void flushOlderThan(int lsn) {
+      latch.lock();
+      try {
+         for (Buffer buff : bufferpool) {
+            int recLSN = buff.recoveryLSN();
+            if (recLSN >= 0 && recLSN < lsn)
+               buff.flush();
+         }
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+
+   /**
+    * Returns the dirty page table: the blocks of the buffers
+    * that hold unwritten logged updates, each mapped to its
+    * recovery LSN.
+    * Each buffer's latch is acquired while it is examined,
+    * so an update that is in progress is either
+    * completely included in the table or logged
+    * after the table was taken.
+    * @return a map from each dirty block to its recovery LSN
+    */
+   public Map<BlockId,Integer> dirtyPages() {
+      latch.lock();
+      try {
+         Map<BlockId,Integer> result = new HashMap<>();
+         for (Buffer buff : bufferpool) {
+            buff.latchShared();
+            try {
+               int recLSN = buff.recoveryLSN();
+               if (recLSN >= 0)
+                  result.put(buff.block(), recLSN);
+            }
+            finally {
+               buff.unlatchShared();
+            }
+         }
+         return result;
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+
+   /**
+    * Returns the blocks currently resident in the pool,
+    * together with the number of times each has been pinned
+    * since it was read in.
+    * @return a map from each resident block to its access count
+    */
+   public Map<BlockId,Integer> residentBlocks() {
+      latch.lock();
+      try {
+         Map<BlockId,Integer> result = new HashMap<>();
+         for (Buffer buff : bufferpool) {
+            BlockId b = buff.block();
+            if (b != null)
+               result.put(b, buff.accessCount());
+         }
+         return result;
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Reads the specified block into a buffer that has never
+    * been assigned to a block, without pinning it.
+    * Nothing happens if the block is already resident.
+    * The method is used to warm up the pool at startup,
+    * so it never evicts a block that is already in the pool,
+    * nor takes a buffer set aside for a grant.
+    * <p>
+    * The buffer is claimed for the block under the pool's latch,
+    * but the block is read after the latch is released, so that
+    * other threads can pin buffers meanwhile. A thread that pins
+    * the block during the read waits until it is complete.
+    * @param blk a reference to a disk block
+    * @return false if there are no unassigned buffers left
+    */
+   public boolean prefetch(BlockId blk) {
+      Buffer claimed = null;
+      latch.lock();
+      try {
+         if (findExistingBuffer(blk) != null)
+            return true;
+         if (numAvailable <= numReserved)
+            return false;
+         for (Buffer buff : bufferpool)
+            if (buff.block() == null && !buff.isPinned()) {
+               buff.claim(blk);
+               numAvailable--;
+               claimed = buff;
+               break;
+            }
+         if (claimed == null)
+            return false;
+      }
+      finally {
+         latch.unlock();
+      }
+      boolean read = false;
+      try {
+         claimed.readClaimed();
+         read = true;
+         return true;
+      }
+      finally {
+         latch.lock();
+         try {
+            claimed.finishRead(read);
+            numAvailable++;
+            bufferFreed.signalAll();
+         }
+         finally {
+            latch.unlock();
+         }
+      }
    }
    
+   /**
+    * Discards the buffers assigned to the blocks of the specified
+    * file from the specified block on, without writing them,
+    * so that those blocks can be truncated from the file.
+    * A pinned block is still in use, so it is not discarded,
+    * and neither are the blocks before it: the returned block
+    * number is then the one after the last pinned block.
+    * @param filename the name of the file
+    * @param blknum the first block to discard
+    * @return the first block that was discarded, and all after it
+    */
+   public int discard(String filename, int blknum) {
+      latch.lock();
+      try {
+         for (Buffer buff : bufferpool) {
+            BlockId b = buff.block();
+            if (b != null && b.fileName().equals(filename)
+                  && b.number() >= blknum && buff.isPinned())
+               blknum = b.number() + 1;
+         }
+         for (Buffer buff : bufferpool) {
+            BlockId b = buff.block();
+            if (b != null && b.fileName().equals(filename) && b.number() >= blknum)
+               buff.discard();
+         }
+         return blknum;
+      }
+      finally {
+         latch.unlock();
+      }
+   }
    
    /**
     * Unpins the specified data buffer. If its pin count
     * goes to zero, then notify any waiting threads.
+    * A buffer that was taken from a grant is set aside
+    * for that grant again, unless the grant has been released.
     * @param buff the buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned()) {
-         numAvailable++;
-         notifyAll();
+   public void unpin(Buffer buff) {
+      latch.lock();
+      try {
+         buff.unpin();
+         if (!buff.isPinned()) {
+            numAvailable++;
+            BufferGrant grant = buff.grant();
+            buff.setGrant(null);
+            if (grant != null && !grant.isReleased()) {
+               grant.unuse();
+               numReserved++;
+            }
+            bufferFreed.signalAll();
+         }
+      }
+      finally {
+         latch.unlock();
       }
    }
    
@@ -68,13 +356,27 @@ public class BufferMgr {
     * @param blk a reference to a disk block
     * @return the buffer pinned to that block
     */
-   public synchronized Buffer pin(BlockId blk) {
+   public Buffer pin(BlockId blk) {
+      return pin(blk, null);
+   }
+   
+   /**
+    * Pins a buffer to the specified block on behalf of a grant.
+    * If the grant has unused buffers, one of them is used
+    * and the call does not need to wait.
+    * Otherwise the method behaves like {@link #pin(BlockId)}.
+    * @param blk a reference to a disk block
+    * @param grant the grant to pin the block under, or null
+    * @return the buffer pinned to that block
+    */
+   public Buffer pin(BlockId blk, BufferGrant grant) {
+      latch.lock();
       try {
          long timestamp = System.currentTimeMillis();
-         Buffer buff = tryToPin(blk);
+         Buffer buff = tryToPin(blk, grant);
          while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = tryToPin(blk);
+            bufferFreed.await(MAX_TIME, TimeUnit.MILLISECONDS);
+            buff = tryToPin(blk, grant);
          }
          if (buff == null)
             throw new BufferAbortException();
@@ -83,6 +385,9 @@ public class BufferMgr {
       catch(InterruptedException e) {
          throw new BufferAbortException();
       }
+      finally {
+         latch.unlock();
+      }
    }  
    
    private boolean waitingTooLong(long starttime) {
@@ -94,12 +399,22 @@ public class BufferMgr {
     * If there is already a buffer assigned to that block
     * then that buffer is used;  
     * otherwise, an unpinned buffer from the pool is chosen.
-    * Returns a null value if there are no available buffers.
+    * Buffers that are reserved for grants can only be taken
+    * by a pin under a grant that still has unused buffers.
+    * Returns a null value if there are no available buffers,
+    * or if the block is still being read by {@link #prefetch(BlockId)}.
     * @param blk a reference to a disk block
+    * @param grant the grant to pin the block under, or null
     * @return the pinned buffer
     */
-   private Buffer tryToPin(BlockId blk) {
+   private Buffer tryToPin(BlockId blk, BufferGrant grant) {
       Buffer buff = findExistingBuffer(blk);
+      if (buff != null && buff.isInTransit())
+         return null;
+      boolean needsFrame = (buff == null || !buff.isPinned());
+      boolean fromGrant = needsFrame && grant != null && grant.unused() > 0;
+      if (needsFrame && !fromGrant && numAvailable <= numReserved)
+         return null;
       if (buff == null) {
          buff = chooseUnpinnedBuffer();
          if (buff == null)
@@ -108,10 +423,21 @@ public class BufferMgr {
       }
       if (!buff.isPinned())
          numAvailable--;
+      if (fromGrant) {
+         numReserved--;
+         grant.use();
+         buff.setGrant(grant);
+      }
       buff.pin();
       return buff;
    }
    
+   private int grantable(int max) {
+      int free = numAvailable - numReserved;
+      int room = maxGranted - numGranted;
+      return Math.min(max, Math.min(free, room));
+   }
+   
    private Buffer findExistingBuffer(BlockId blk) {
       for (Buffer buff : bufferpool) {
          BlockId b = buff.block();
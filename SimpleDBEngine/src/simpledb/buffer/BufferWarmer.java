@@ -0,0 +1,151 @@
+package simpledb.buffer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.file.BlockId;
+import simpledb.file.FileMgr;
+
+/**
+ * Persists the contents of the buffer pool across restarts.
+ * A recorder thread periodically writes the resident blocks,
+ * together with their access counts, to a small text file
+ * in the database directory.
+ * At startup, a loader thread reads that file back and
+ * prefetches the hottest blocks into the pool,
+ * in file/block order so that the reads are mostly sequential.
+ */
+public class BufferWarmer {
+   private File dbDirectory;
+   private File warmfile;
+   private FileMgr fm;
+   private BufferMgr bm;
+   private int numbuffs;
+
+   /**
+    * Creates a warmer for the specified buffer pool.
+    * @param dbDirectory the database directory
+    * @param warmfile the name of the file holding the saved pool contents
+    * @param fm the file manager
+    * @param bm the buffer manager
+    * @param numbuffs the number of buffers in the pool
+    */
+   public BufferWarmer(File dbDirectory, String warmfile, FileMgr fm, BufferMgr bm, int numbuffs) {
+      this.dbDirectory = dbDirectory;
+      this.warmfile = new File(dbDirectory, warmfile);
+      this.fm = fm;
+      this.bm = bm;
+      this.numbuffs = numbuffs;
+   }
+
+   /**
+    * Starts a daemon thread that saves the pool contents
+    * every interval milliseconds.
+    * @param interval the time between two saves, in milliseconds
+    */
+   public void startRecorder(long interval) {
+      Thread t = new Thread(() -> {
+         try {
+            while (true) {
+               Thread.sleep(interval);
+               save();
+            }
+         }
+         catch (InterruptedException e) {}
+      }, "simpledb-buffer-recorder");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Starts a daemon thread that reloads the saved pool contents.
+    * This method should be called after recovery has completed.
+    */
+   public void startLoader() {
+      Thread t = new Thread(this::load, "simpledb-buffer-loader");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Writes the blocks currently resident in the pool to the warm file.
+    * Blocks of temporary tables are not recorded, since those
+    * files are deleted at startup.
+    * The file is written to a scratch file first and then renamed,
+    * so that a crash during the save leaves the previous file intact.
+    */
+   public synchronized void save() {
+      File scratch = new File(dbDirectory, warmfile.getName() + ".new");
+      try (PrintWriter out = new PrintWriter(new FileWriter(scratch))) {
+         for (Map.Entry<BlockId,Integer> e : bm.residentBlocks().entrySet()) {
+            BlockId blk = e.getKey();
+            if (!blk.fileName().startsWith("temp") && blk.number() >= 0)
+               out.println(blk.fileName() + " " + blk.number() + " " + e.getValue());
+         }
+      }
+      catch (IOException e) {
+         return; // the warm file is only a hint
+      }
+      warmfile.delete();
+      scratch.renameTo(warmfile);
+   }
+
+   /**
+    * Reads the warm file and prefetches its blocks.
+    * If the file lists more blocks than fit in the pool,
+    * the most frequently accessed ones are kept.
+    * Blocks that no longer exist are skipped.
+    */
+   public void load() {
+      List<WarmEntry> entries = readEntries();
+      entries.sort(Comparator.comparingInt((WarmEntry e) -> e.count).reversed());
+      if (entries.size() > numbuffs)
+         entries = new ArrayList<>(entries.subList(0, numbuffs));
+      entries.sort(Comparator.comparing((WarmEntry e) -> e.filename)
+                             .thenComparingInt(e -> e.blknum));
+      for (WarmEntry e : entries) {
+         if (!new File(dbDirectory, e.filename).exists()
+               || e.blknum >= fm.length(e.filename))
+            continue;
+         if (!bm.prefetch(new BlockId(e.filename, e.blknum)))
+            return;   // no free buffers left
+      }
+   }
+
+   private List<WarmEntry> readEntries() {
+      List<WarmEntry> entries = new ArrayList<>();
+      if (!warmfile.exists())
+         return entries;
+      try (BufferedReader in = new BufferedReader(new FileReader(warmfile))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length == 3)
+               entries.add(new WarmEntry(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+         }
+      }
+      catch (IOException | NumberFormatException e) {
+         entries.clear(); // a damaged warm file just means a cold start
+      }
+      return entries;
+   }
+
+   private static class WarmEntry {
+      String filename;
+      int blknum, count;
+
+      WarmEntry(String filename, int blknum, int count) {
+         this.filename = filename;
+         this.blknum = blknum;
+         this.count = count;
+      }
+   }
+}
@@ -0,0 +1,70 @@
+package simpledb.buffer;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import simpledb.file.BlockId;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+/**
+ * Pins some blocks, records the pool contents and restarts the
+ * database, whose pool is then warmed up from the recording.
+ * While the loader runs, another thread pins the same blocks,
+ * which must wait for any block still being read and then see
+ * its contents. Finally the recorded blocks must be resident.
+ */
+public class BufferWarmerTest {
+   private static final int NUM_BLOCKS = 12;
+
+   public static void main(String[] args) throws Exception {
+      File dir = new File("warmertest");
+      if (dir.exists()) {
+         for (File f : dir.listFiles())
+            f.delete();
+         dir.delete();
+      }
+      SimpleDB db = new SimpleDB("warmertest", 400, 20);
+      FileMgr fm = db.fileMgr();
+      BufferMgr bm = db.bufferMgr();
+      for (int i=0; i<NUM_BLOCKS; i++) {
+         BlockId blk = fm.append("testfile");
+         Page p = new Page(fm.blockSize());
+         p.setInt(0, i);
+         fm.write(blk, p);
+      }
+      // the blocks are pinned together, since an unpinned buffer is reused first
+      Buffer[] buffs = new Buffer[NUM_BLOCKS];
+      for (int i=0; i<NUM_BLOCKS; i++)
+         buffs[i] = bm.pin(new BlockId("testfile", i));
+      for (int i=0; i<NUM_BLOCKS; i++)
+         bm.unpin(buffs[i]);
+      db.bufferWarmer().save();
+      Set<BlockId> recorded = new HashSet<>(bm.residentBlocks().keySet());
+      System.out.println(recorded.size() + " blocks recorded");
+
+      // restart, and warm up the new pool while pinning its blocks
+      db = new SimpleDB("warmertest", 400, 20);
+      BufferMgr bm2 = db.bufferMgr();
+      BufferWarmer warmer = db.bufferWarmer();
+      Thread loader = new Thread(warmer::load);
+      loader.start();
+      for (int i=NUM_BLOCKS-1; i>=0; i--) {
+         Buffer buff = bm2.pin(new BlockId("testfile", i));
+         if (buff.contents().getInt(0) != i)
+            System.out.println("block " + i + " holds " + buff.contents().getInt(0));
+         bm2.unpin(buff);
+      }
+      loader.join();
+
+      Set<BlockId> resident = bm2.residentBlocks().keySet();
+      int found = 0;
+      for (BlockId blk : recorded)
+         if (resident.contains(blk))
+            found++;
+      System.out.println(found + " of the " + recorded.size()
+                         + " recorded blocks are resident after the restart");
+   }
+}
@@ -3,14 +3,22 @@ package simpledb.file;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class FileMgr {
    private File dbDirectory;
    private int blocksize;
    private boolean isNew;
-   private Map<String,RandomAccessFile> openFiles = new HashMap<>();
+   private Map<String,RandomAccessFile> openFiles = new ConcurrentHashMap<>();
+   private Map<String,ReentrantLock> extensionLatches = new ConcurrentHashMap<>();
+   // held while a file is extended or opened; these do I/O,
+   // so they are guarded by locks rather than monitors
+   private ReentrantLock appendLatch = new ReentrantLock();
+   private ReentrantLock openLatch = new ReentrantLock();
 
    public FileMgr(File dbDirectory, int blocksize) {
       this.dbDirectory = dbDirectory;
@@ -27,41 +35,95 @@ public class FileMgr {
          		new File(dbDirectory, filename).delete();
    }
 
-   public synchronized void read(BlockId blk, Page p) {
+   // Reads and writes use positional channel operations, which
+   // do not move the file pointer, so several threads can read
+   // and write (different) blocks of the same file at once.
+   // A block past the end of the file, which may have been
+   // truncated away, reads as zeros.
+   public void read(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().read(p.contents());
+         FileChannel fc = getFile(blk.fileName()).getChannel();
+         ByteBuffer bb = p.contents();
+         long pos = (long) blk.number() * blocksize;
+         while (bb.hasRemaining() && fc.read(bb, pos + bb.position()) >= 0)
+            ;
+         while (bb.hasRemaining())
+            bb.put((byte) 0);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
       }
    }
 
-   public synchronized void write(BlockId blk, Page p) {
+   public void write(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().write(p.contents());
+         FileChannel fc = getFile(blk.fileName()).getChannel();
+         ByteBuffer bb = p.contents();
+         long pos = (long) blk.number() * blocksize;
+         while (bb.hasRemaining())
+            fc.write(bb, pos + bb.position());
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
       }
    }
 
-   public synchronized BlockId append(String filename) {
-      int newblknum = length(filename);
-      BlockId blk = new BlockId(filename, newblknum);
-      byte[] b = new byte[blocksize];
+   public BlockId append(String filename) {
+      appendLatch.lock();
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.write(b);
+         int newblknum = length(filename);
+         BlockId blk = new BlockId(filename, newblknum);
+         byte[] b = new byte[blocksize];
+         try {
+            RandomAccessFile f = getFile(blk.fileName());
+            f.seek(blk.number() * blocksize);
+            f.write(b);
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot append block" + blk);
+         }
+         return blk;
+      }
+      finally {
+         appendLatch.unlock();
+      }
+   }
+
+   // The caller holds the file's extension latch, and makes
+   // sure that no buffer holds a removed block.
+   // A file that was deleted is not created again.
+   public void truncate(String filename, int numblocks) {
+      appendLatch.lock();
+      try {
+         if (!openFiles.containsKey(filename) && !new File(dbDirectory, filename).exists())
+            return;
+         RandomAccessFile f = getFile(filename);
+         if (f.length() > (long) numblocks * blocksize)
+            f.setLength((long) numblocks * blocksize);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot truncate " + filename);
+      }
+      finally {
+         appendLatch.unlock();
+      }
+   }
+
+   // The caller makes sure that no buffer holds a block of the file.
+   public void delete(String filename) {
+      openLatch.lock();
+      try {
+         RandomAccessFile f = openFiles.remove(filename);
+         if (f != null)
+            f.close();
+         new File(dbDirectory, filename).delete();
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot append block" + blk);
+         throw new RuntimeException("cannot delete " + filename);
+      }
+      finally {
+         openLatch.unlock();
       }
-      return blk;
    }
 
    public int length(String filename) {
@@ -78,6 +140,17 @@ public class FileMgr {
       return isNew;
    }
    
+   // The extension latch of a file is held while a block is
+   // appended to it and formatted, and while its size is read.
+   // It is a short-term latch, not a transaction lock.
+   public void latchExtension(String filename) {
+      extensionLatches.computeIfAbsent(filename, k -> new ReentrantLock()).lock();
+   }
+
+   public void unlatchExtension(String filename) {
+      extensionLatches.get(filename).unlock();
+   }
+
    public int blockSize() {
       return blocksize;
    }
@@ -85,9 +158,18 @@ public class FileMgr {
    private RandomAccessFile getFile(String filename) throws IOException {
       RandomAccessFile f = openFiles.get(filename);
       if (f == null) {
-         File dbTable = new File(dbDirectory, filename);
-         f = new RandomAccessFile(dbTable, "rws");
-         openFiles.put(filename, f);
+         openLatch.lock();
+         try {
+            f = openFiles.get(filename);
+            if (f == null) {
+               File dbTable = new File(dbDirectory, filename);
+               f = new RandomAccessFile(dbTable, "rws");
+               openFiles.put(filename, f);
+            }
+         }
+         finally {
+            openLatch.unlock();
+         }
       }
       return f;
    }
@@ -25,18 +25,43 @@ public class Page {
       bb.putInt(offset, n);
    }
 
+   public long getLong(int offset) {
+      return bb.getLong(offset);
+   }
+
+   public void setLong(int offset, long n) {
+      bb.putLong(offset, n);
+   }
+
+   // Absolute gets and puts do not move the buffer's position,
+   // so concurrent readers of the same page do not interfere.
    public byte[] getBytes(int offset) {
-      bb.position(offset);
-      int length = bb.getInt();
+      int length = bb.getInt(offset);
       byte[] b = new byte[length];
-      bb.get(b);
+      bb.get(offset + Integer.BYTES, b);
       return b;
    }
 
    public void setBytes(int offset, byte[] b) {
-      bb.position(offset);
-      bb.putInt(b.length);
-      bb.put(b);
+      bb.putInt(offset, b.length);
+      bb.put(offset + Integer.BYTES, b);
+   }
+   
+   // Raw byte ranges, without a length prefix,
+   // for log records that operate on a region of the page
+   public byte[] readBytes(int offset, int length) {
+      byte[] b = new byte[length];
+      bb.get(offset, b);
+      return b;
+   }
+
+   public void writeBytes(int offset, byte[] b) {
+      bb.put(offset, b);
+   }
+
+   // Move a range of bytes within the page; the ranges may overlap
+   public void moveBytes(int from, int to, int length) {
+      writeBytes(to, readBytes(from, length));
    }
    
    public String getString(int offset) {
@@ -49,6 +74,13 @@ public class Page {
       setBytes(offset, b);
    }
 
+   // A private copy of the page, for building snapshot versions
+   public Page copy() {
+      byte[] b = new byte[bb.capacity()];
+      bb.get(0, b);
+      return new Page(b);
+   }
+
    public static int maxLength(int strlen) {
       float bytesPerChar = CHARSET.newEncoder().maxBytesPerChar();
       return Integer.BYTES + (strlen * (int)bytesPerChar);
@@ -0,0 +1,86 @@
+package simpledb.file;
+
+/**
+ * The geometry of a page that holds a dense, ordered array of
+ * fixed-size slots together with a count of the used slots,
+ * as B-tree pages do.
+ * The class implements the operations that shift slots
+ * within such a page, so that they can be performed (and
+ * logged) as a single operation rather than value by value.
+ */
+public class SlotArray {
+   private int countpos, firstpos, slotsize;
+
+   /**
+    * Describe a slot array.
+    * @param countpos the offset of the integer holding the number of used slots
+    * @param firstpos the offset of slot 0
+    * @param slotsize the size of each slot
+    */
+   public SlotArray(int countpos, int firstpos, int slotsize) {
+      this.countpos = countpos;
+      this.firstpos = firstpos;
+      this.slotsize = slotsize;
+   }
+
+   public int countPos() {
+      return countpos;
+   }
+
+   public int firstPos() {
+      return firstpos;
+   }
+
+   public int slotSize() {
+      return slotsize;
+   }
+
+   /**
+    * Return the number of used slots of the page.
+    * @param p the page
+    * @return the number of used slots
+    */
+   public int numSlots(Page p) {
+      return p.getInt(countpos);
+   }
+
+   /**
+    * Return the offset of the specified slot.
+    * @param slot the slot number
+    * @return the offset of the slot in the page
+    */
+   public int slotPos(int slot) {
+      return firstpos + slot * slotsize;
+   }
+
+   /**
+    * Insert the specified slots into the page at the specified
+    * position, moving the later slots to the right.
+    * @param p the page
+    * @param slot the position of the first inserted slot
+    * @param slots the contents of the inserted slots
+    */
+   public void insert(Page p, int slot, byte[] slots) {
+      int n = numSlots(p);
+      int k = slots.length / slotsize;
+      p.moveBytes(slotPos(slot), slotPos(slot+k), (n-slot) * slotsize);
+      p.writeBytes(slotPos(slot), slots);
+      p.setInt(countpos, n+k);
+   }
+
+   /**
+    * Delete the specified number of slots from the page,
+    * moving the later slots to the left.
+    * @param p the page
+    * @param slot the position of the first deleted slot
+    * @param count the number of slots to delete
+    * @return the contents of the deleted slots
+    */
+   public byte[] delete(Page p, int slot, int count) {
+      int n = numSlots(p);
+      byte[] slots = p.readBytes(slotPos(slot), count * slotsize);
+      p.moveBytes(slotPos(slot+count), slotPos(slot), (n-slot-count) * slotsize);
+      p.setInt(countpos, n-count);
+      return slots;
+   }
+}
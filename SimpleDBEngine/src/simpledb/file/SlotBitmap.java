@@ -0,0 +1,134 @@
+package simpledb.file;
+
+/**
+ * The geometry of a page of fixed-size slots whose occupancy
+ * is kept in a bitmap, as the record pages of a fixed table are.
+ * <p>
+ * The page begins with the bitmap, one bit per slot, stored in
+ * 8-byte words; a set bit means that the slot holds a record.
+ * The slots follow the bitmap. A formatted page is all zeros,
+ * so all of its slots are empty.
+ * <p>
+ * Finding the next used or empty slot examines a word of
+ * the bitmap at a time, instead of a flag for each slot.
+ * The static methods implement the operations on the page,
+ * which are also used by the log records that redo them;
+ * an instance describes the pages of one table.
+ */
+public class SlotBitmap {
+   private static final int BITS = Long.SIZE;
+   private int slotsize, numslots, headersize;
+
+   /**
+    * Describe the pages of a table.
+    * The page holds as many slots as fit after their bitmap.
+    * @param blocksize the size of a page
+    * @param slotsize the size of each slot, which must be positive
+    */
+   public SlotBitmap(int blocksize, int slotsize) {
+      if (slotsize <= 0)
+         throw new IllegalArgumentException("slot size " + slotsize + " is not positive.");
+      this.slotsize = slotsize;
+      numslots = (blocksize * Byte.SIZE) / (slotsize * Byte.SIZE + 1);
+      while (headerSize(numslots) + numslots * slotsize > blocksize)
+         numslots--;
+      headersize = headerSize(numslots);
+   }
+
+   /**
+    * Return the number of slots in a page.
+    * @return the number of slots
+    */
+   public int numSlots() {
+      return numslots;
+   }
+
+   /**
+    * Return the number of bytes of the bitmap.
+    * @return the size of the bitmap
+    */
+   public int headerSize() {
+      return headersize;
+   }
+
+   /**
+    * Return the offset of the specified slot.
+    * @param slot the slot number
+    * @return the offset of the slot in the page
+    */
+   public int slotPos(int slot) {
+      return headersize + slot * slotsize;
+   }
+
+   /**
+    * Return the number of used slots in the specified bitmap.
+    * @param p the page, or a copy of its bitmap
+    * @return the number of used slots
+    */
+   public int usedSlots(Page p) {
+      int count = 0;
+      for (int pos = 0; pos < headersize; pos += Long.BYTES)
+         count += Long.bitCount(p.getLong(pos));
+      return count;
+   }
+
+   /**
+    * Return the first slot at or after the specified one,
+    * and before the end, that is used or empty as specified.
+    * @param p the page, or a copy of its bitmap
+    * @param from the first slot to consider
+    * @param to the slot after the last one to consider
+    * @param used true to look for a used slot, false for an empty one
+    * @return the slot, or -1 if there is none
+    */
+   public static int next(Page p, int from, int to, boolean used) {
+      for (int w = from / BITS; w * BITS < to; w++) {
+         long word = p.getLong(w * Long.BYTES);
+         if (!used)
+            word = ~word;
+         if (w == from / BITS)
+            word &= -1L << (from % BITS);
+         if (word != 0) {
+            int slot = w * BITS + Long.numberOfTrailingZeros(word);
+            return (slot < to) ? slot : -1;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Return true if the specified slot is used.
+    * @param p the page, or a copy of its bitmap
+    * @param slot the slot
+    * @return true if the slot holds a record
+    */
+   public static boolean isUsed(Page p, int slot) {
+      return (p.getLong(wordPos(slot)) & mask(slot)) != 0;
+   }
+
+   /**
+    * Mark the specified slot as used or empty.
+    * Only the slot's own bit changes, so the slots that share
+    * its word are not affected.
+    * @param p the page
+    * @param slot the slot
+    * @param used the new state of the slot
+    */
+   public static void setUsed(Page p, int slot, boolean used) {
+      int pos = wordPos(slot);
+      long word = p.getLong(pos);
+      p.setLong(pos, used ? (word | mask(slot)) : (word & ~mask(slot)));
+   }
+
+   private static int headerSize(int numslots) {
+      return (numslots + BITS - 1) / BITS * Long.BYTES;
+   }
+
+   private static int wordPos(int slot) {
+      return slot / BITS * Long.BYTES;
+   }
+
+   private static long mask(int slot) {
+      return 1L << (slot % BITS);
+   }
+}
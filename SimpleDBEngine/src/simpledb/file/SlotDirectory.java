@@ -0,0 +1,312 @@
+package simpledb.file;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The geometry of a slotted page, which holds variable-length
+ * tuples, as the record pages of a slotted table do.
+ * <p>
+ * The page begins with a header of three integers: the number of
+ * slots, the start of the tuple area, and the end of the page.
+ * The slot directory follows the header and grows towards the end
+ * of the page; each entry holds the slot's flag and the offset and
+ * size of the region allocated to its tuple. Tuples are allocated
+ * from the end of the page towards the directory, so the free
+ * space is the gap between the two.
+ * <p>
+ * Deleting a tuple, or moving it to a larger region, leaves its
+ * old region unused until the page is compacted. Compaction slides
+ * the tuples that are not pinned towards the end of the page,
+ * trimming each region to the tuple it holds.
+ * Directory entries never move, so a slot number identifies
+ * a tuple for as long as it exists.
+ * <p>
+ * A tuple holds the values of its integer fields, followed by
+ * its strings, each preceded by its length in bytes.
+ * The static methods implement the operations on the page,
+ * which are also used by the log records that redo them;
+ * an instance describes the tuples of one table, which is needed
+ * to compute how much of its region a tuple occupies.
+ */
+public class SlotDirectory {
+   public static final int EMPTY = 0, USED = 1, FORWARD = 2, MOVED = 3;
+   /**
+    * The smallest region allocated to a tuple,
+    * which is large enough for a forwarding address.
+    */
+   public static final int MIN_ALLOC = 2 * Integer.BYTES;
+   private static final int COUNT = 0, FREE = 4, END = 8, HEADER_SIZE = 12;
+   public static final int ENTRY_SIZE = 3 * Integer.BYTES;
+   private int fixedsize, numstrings;
+
+   /**
+    * Describe the tuples of a table.
+    * @param fixedsize the number of bytes of the integer fields
+    * @param numstrings the number of string fields
+    */
+   public SlotDirectory(int fixedsize, int numstrings) {
+      this.fixedsize = fixedsize;
+      this.numstrings = numstrings;
+   }
+
+   /**
+    * Return the number of bytes that the specified tuple
+    * occupies in its region.
+    * @param p the page
+    * @param slot the slot of the tuple
+    * @return the length of the tuple
+    */
+   public int usedLength(Page p, int slot) {
+      if (flag(p, slot) == FORWARD)
+         return MIN_ALLOC;
+      int start = offset(p, slot);
+      int pos = start + fixedsize;
+      for (int i=0; i<numstrings; i++)
+         pos += Integer.BYTES + p.getInt(pos);
+      return pos - start;
+   }
+
+   /**
+    * Return the new region size of each slot of the page if it
+    * were compacted now. A pinned slot keeps its region in place
+    * (shown as -1); a kept slot keeps the size of its region,
+    * but the region may move. Otherwise an empty slot loses its
+    * region (shown as 0), and any other slot is trimmed to its tuple.
+    * @param p the page
+    * @param pinned tells whether the tuple in a slot must stay in place
+    * @param kept tells whether the region of a slot must keep its size
+    * @return the region size of each slot after compaction
+    */
+   public int[] compaction(Page p, IntPredicate pinned, IntPredicate kept) {
+      int n = numSlots(p);
+      int[] allocs = new int[n];
+      for (int slot=0; slot<n; slot++) {
+         if (alloc(p, slot) == 0 || pinned.test(slot))
+            allocs[slot] = -1;
+         else if (kept.test(slot))
+            allocs[slot] = alloc(p, slot);
+         else if (flag(p, slot) == EMPTY)
+            allocs[slot] = 0;
+         else
+            allocs[slot] = Math.max(MIN_ALLOC, usedLength(p, slot));
+      }
+      return allocs;
+   }
+
+   /**
+    * Return the header of a newly formatted slotted page.
+    * @param end the number of bytes of the page available to tuples
+    * @return the header integers
+    */
+   public static int[] header(int end) {
+      return new int[] {0, end, end};
+   }
+
+   public static int countPos() {
+      return COUNT;
+   }
+
+   public static int freePos() {
+      return FREE;
+   }
+
+   public static int numSlots(Page p) {
+      return p.getInt(COUNT);
+   }
+
+   /**
+    * Return the position of a slot's directory entry.
+    * Its flag is stored there, followed by the offset and
+    * the size of its region.
+    * @param slot the slot number
+    * @return the offset of the entry in the page
+    */
+   public static int entryPos(int slot) {
+      return HEADER_SIZE + slot * ENTRY_SIZE;
+   }
+
+   public static int flagPos(int slot) {
+      return entryPos(slot);
+   }
+
+   public static int offsetPos(int slot) {
+      return entryPos(slot) + Integer.BYTES;
+   }
+
+   public static int allocPos(int slot) {
+      return entryPos(slot) + 2 * Integer.BYTES;
+   }
+
+   /**
+    * Return the start of the tuple area.
+    * @param p the page
+    * @return the offset of the lowest allocated region
+    */
+   public static int tupleStart(Page p) {
+      return p.getInt(FREE);
+   }
+
+   /**
+    * Return the end of the part of the page used for tuples.
+    * @param p the page
+    * @return the end of the tuple area
+    */
+   public static int end(Page p) {
+      return p.getInt(END);
+   }
+
+   /**
+    * Return the directory entry of the specified slot,
+    * as its flag, offset and region size.
+    * A slot beyond the directory has an empty entry.
+    * @param p the page
+    * @param slot the slot
+    * @return the entry of the slot
+    */
+   public static int[] entry(Page p, int slot) {
+      if (slot >= numSlots(p))
+         return new int[] {EMPTY, 0, 0};
+      return new int[] {flag(p, slot), offset(p, slot), alloc(p, slot)};
+   }
+
+   public static int flag(Page p, int slot) {
+      return p.getInt(flagPos(slot));
+   }
+
+   public static int offset(Page p, int slot) {
+      return p.getInt(offsetPos(slot));
+   }
+
+   public static int alloc(Page p, int slot) {
+      return p.getInt(allocPos(slot));
+   }
+
+   /**
+    * Return the number of free bytes between the directory
+    * and the tuples, after making room for the specified slot.
+    * @param p the page
+    * @param slot the slot that will be used
+    * @return the free space, which may be negative
+    */
+   public static int freeSpace(Page p, int slot) {
+      int dirend = entryPos(Math.max(numSlots(p), slot+1));
+      return p.getInt(FREE) - dirend;
+   }
+
+   /**
+    * Return the free space that the page would have after
+    * the specified compaction.
+    * @see #compaction(Page, IntPredicate, IntPredicate)
+    */
+   public static int freeSpaceAfter(Page p, int slot, int[] allocs) {
+      int dirend = entryPos(Math.max(numSlots(p), slot+1));
+      return compact(p, allocs, false) - dirend;
+   }
+
+   /**
+    * Allocate a cleared region of the specified size at the start
+    * of the tuple area, and assign it to the specified slot.
+    * If the slot is beyond the directory, the directory grows.
+    * The caller must have checked that there is enough free space.
+    * @param p the page
+    * @param slot the slot
+    * @param flag the new flag of the slot
+    * @param alloc the size of the region
+    */
+   public static void allocate(Page p, int slot, int flag, int alloc) {
+      if (slot >= numSlots(p))
+         p.setInt(COUNT, slot+1);
+      int offset = p.getInt(FREE) - alloc;
+      p.writeBytes(offset, new byte[alloc]);
+      p.setInt(FREE, offset);
+      setEntry(p, slot, flag, offset, alloc);
+   }
+
+   /**
+    * Move the tuple in the specified slot to a newly allocated
+    * region of the specified size. Its old region becomes unused.
+    * The caller must have checked that there is enough free space.
+    * @param p the page
+    * @param slot the slot
+    * @param alloc the size of the new region
+    */
+   public static void move(Page p, int slot, int alloc) {
+      int oldoffset = offset(p, slot);
+      byte[] b = new byte[alloc];
+      byte[] tuple = p.readBytes(oldoffset, Math.min(alloc, alloc(p, slot)));
+      System.arraycopy(tuple, 0, b, 0, tuple.length);
+      int offset = p.getInt(FREE) - alloc;
+      p.writeBytes(offset, b);
+      p.setInt(FREE, offset);
+      setEntry(p, slot, flag(p, slot), offset, alloc);
+   }
+
+   /**
+    * Write bytes into the tuple of the specified slot.
+    * @param p the page
+    * @param slot the slot
+    * @param pos the position of the bytes within the tuple
+    * @param b the bytes
+    */
+   public static void write(Page p, int slot, int pos, byte[] b) {
+      p.writeBytes(offset(p, slot) + pos, b);
+   }
+
+   public static void setFlag(Page p, int slot, int flag) {
+      p.setInt(flagPos(slot), flag);
+   }
+
+   public static void setEntry(Page p, int slot, int flag, int offset, int alloc) {
+      p.setInt(flagPos(slot), flag);
+      p.setInt(offsetPos(slot), offset);
+      p.setInt(allocPos(slot), alloc);
+   }
+
+   /**
+    * Compact the page, as planned by {@link #compaction}.
+    * @param p the page
+    * @param allocs the region size of each slot after compaction
+    */
+   public static void compact(Page p, int[] allocs) {
+      compact(p, allocs, true);
+   }
+
+   /**
+    * Slide the regions towards the end of the page, from the last
+    * region to the first. A pinned region stays where it is, and
+    * the regions before it slide up to it.
+    * Each region moves towards the end of the page and does not
+    * grow, so it never overwrites a region that has yet to move.
+    * @return the start of the tuple area after compaction
+    */
+   private static int compact(Page p, int[] allocs, boolean apply) {
+      int n = allocs.length;
+      Integer[] order = new Integer[n];
+      for (int i=0; i<n; i++)
+         order[i] = i;
+      Arrays.sort(order, (a, b) -> offset(p, b) - offset(p, a));
+      int top = p.getInt(END);
+      for (int slot : order) {
+         int alloc = allocs[slot];
+         if (alloc < 0) {
+            if (alloc(p, slot) > 0)
+               top = offset(p, slot);
+         }
+         else if (alloc == 0) {
+            if (apply)
+               setEntry(p, slot, flag(p, slot), 0, 0);
+         }
+         else {
+            top -= alloc;
+            if (apply) {
+               p.moveBytes(offset(p, slot), top, alloc);
+               setEntry(p, slot, flag(p, slot), top, alloc);
+            }
+         }
+      }
+      if (apply)
+         p.setInt(FREE, top);
+      return top;
+   }
+}
@@ -3,10 +3,11 @@ package simpledb.index.btree;
 import static java.sql.Types.INTEGER;
 
 import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotArray;
 import simpledb.query.Constant;
 import simpledb.record.Layout;
 import simpledb.record.RID;
-import simpledb.record.Schema;
 import simpledb.tx.Transaction;
 
 /**
@@ -14,12 +15,22 @@ import simpledb.tx.Transaction;
  * in particular, their records are stored in sorted order, 
  * and pages split when full.
  * A BTNode object contains this common functionality.
+ * <p>
+ * The records of a page form a {@link SlotArray}, so inserting,
+ * deleting and moving records are each logged as one operation
+ * on the page, rather than as an update of every shifted value.
+ * <p>
+ * The records of an index are sorted by their dataval field.
+ * A leaf of a btree table holds the records of the table,
+ * which are sorted by the table's primary key instead.
  * @author Edward Sciore
  */
 public class BTPage {
    private Transaction tx;
    private BlockId currentblk;
    private Layout layout;
+   private SlotArray slots;
+   private String keyfld;
    
    /**
     * Open a node for the specified B-tree block.
@@ -28,9 +39,22 @@ public class BTPage {
     * @param tx the calling transaction
     */
    public BTPage(Transaction tx, BlockId currentblk, Layout layout) {
+      this(tx, currentblk, layout, "dataval");
+   }
+
+   /**
+    * Open a node whose records are sorted by the specified field.
+    * @param currentblk a reference to the B-tree block
+    * @param layout the metadata for the particular B-tree file
+    * @param keyfld the field that the records are sorted by
+    * @param tx the calling transaction
+    */
+   public BTPage(Transaction tx, BlockId currentblk, Layout layout, String keyfld) {
       this.tx = tx;
       this.currentblk = currentblk;
       this.layout = layout;
+      this.keyfld = keyfld;
+      slots = new SlotArray(Integer.BYTES, 2*Integer.BYTES, layout.slotSize());
       tx.pin(currentblk);
    }
    
@@ -76,8 +100,8 @@ public class BTPage {
    public BlockId split(int splitpos, int flag) {
       BlockId newblk = appendNew(flag);
       BTPage newpage = new BTPage(tx, newblk, layout);
-      transferRecs(splitpos, newpage);
-      newpage.setFlag(flag);
+      byte[] recs = tx.deleteSlots(currentblk, slots, splitpos, getNumRecs()-splitpos);
+      tx.insertSlots(newblk, slots, 0, recs);
       newpage.close();
       return newblk;
    }
@@ -88,7 +112,7 @@ public class BTPage {
     * @return the dataval of the record at that slot
     */
    public Constant getDataVal(int slot) {
-      return getVal(slot, "dataval");
+      return getVal(slot, keyfld);
    }
    
    /**
@@ -117,26 +141,15 @@ public class BTPage {
       BlockId blk = tx.append(currentblk.fileName());
       tx.pin(blk);
       format(blk, flag);
+      tx.unpin(blk);
       return blk;
    }
  
    public void format(BlockId blk, int flag) {
-      tx.setInt(blk, 0, flag, false);
-      tx.setInt(blk, Integer.BYTES, 0, false);  // #records = 0
-      int recsize = layout.slotSize();
-      for (int pos=2*Integer.BYTES; pos+recsize<=tx.blockSize(); pos += recsize)
-         makeDefaultRecord(blk, pos);
+      // the default records are zeros, like the header's #records
+      tx.formatPage(blk, flag, 0);
    }
    
-   private void makeDefaultRecord(BlockId blk, int pos) {
-      for (String fldname : layout.schema().fields()) {
-         int offset = layout.offset(fldname);
-         if (layout.schema().type(fldname) == INTEGER)
-            tx.setInt(blk, pos + offset, 0, false);
-         else
-            tx.setString(blk, pos + offset, "", false);
-      }
-   }
    // Methods called only by BTreeDir
    
    /**
@@ -156,9 +169,10 @@ public class BTPage {
     * @param blknum the block number to be stored
     */
    public void insertDir(int slot, Constant val, int blknum) {
-      insert(slot);
-      setVal(slot, "dataval", val);
-      setInt(slot, "block", blknum);
+      Page rec = new Page(new byte[layout.slotSize()]);
+      setVal(rec, "dataval", val);
+      rec.setInt(layout.offset("block"), blknum);
+      insert(slot, rec);
    }
    
    // Methods called only by BTreeLeaf
@@ -179,10 +193,11 @@ public class BTPage {
     * @param rid the new dataRID
     */
    public void insertLeaf(int slot, Constant val, RID rid) {
-      insert(slot);
-      setVal(slot, "dataval", val);
-      setInt(slot, "block", rid.blockNumber());
-      setInt(slot, "id", rid.slot());
+      Page rec = new Page(new byte[layout.slotSize()]);
+      setVal(rec, "dataval", val);
+      rec.setInt(layout.offset("block"), rid.blockNumber());
+      rec.setInt(layout.offset("id"), rid.slot());
+      insert(slot, rec);
    }
    
    /**
@@ -190,10 +205,7 @@ public class BTPage {
     * @param slot the slot of the deleted index record
     */
    public void delete(int slot) {
-      for (int i=slot+1; i<getNumRecs(); i++)
-         copyRecord(i, i-1);
-      setNumRecs(getNumRecs()-1);
-      return;
+      tx.deleteSlots(currentblk, slots, slot, 1);
    }
    
    /**
@@ -204,19 +216,16 @@ public class BTPage {
       return tx.getInt(currentblk, Integer.BYTES);
    }
    
-   // Private methods
-   
-   private int getInt(int slot, String fldname) {
-      int pos = fldpos(slot, fldname);
-      return tx.getInt(currentblk, pos);
-   }
-   
-   private String getString(int slot, String fldname) {
-      int pos = fldpos(slot, fldname);
-      return tx.getString(currentblk, pos);
-   }
+   // Methods called only by BTreeTableScan
    
-   private Constant getVal(int slot, String fldname) {
+   /**
+    * Return the value of the specified field
+    * of the record at the specified slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field
+    * @return the value of the field
+    */
+   public Constant getVal(int slot, String fldname) {
       int type = layout.schema().type(fldname);
       if (type == INTEGER)
          return new Constant(getInt(slot, fldname));
@@ -224,50 +233,56 @@ public class BTPage {
          return new Constant(getString(slot, fldname));
    }
    
-   private void setInt(int slot, String fldname, int val) {
+   /**
+    * Store a value in the specified field
+    * of the record at the specified slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field
+    * @param val the new value
+    */
+   public void setVal(int slot, String fldname, Constant val) {
       int pos = fldpos(slot, fldname);
-      tx.setInt(currentblk, pos, val, true);
+      if (layout.schema().type(fldname) == INTEGER)
+         tx.setInt(currentblk, pos, val.asInt(), true);
+      else
+         tx.setString(currentblk, pos, val.asString(), true);
    }
    
-   private void setString(int slot, String fldname, String val) {
-      int pos = fldpos(slot, fldname);
-      tx.setString(currentblk, pos, val, true);
+   /**
+    * Insert a record having the specified values at the specified slot.
+    * @param slot the slot of the new record
+    * @param vals the values of the record, by column of the layout
+    */
+   public void insertRecord(int slot, Constant[] vals) {
+      Page rec = new Page(new byte[layout.slotSize()]);
+      for (int col=0; col<vals.length; col++)
+         setVal(rec, layout.schema().fields().get(col), vals[col]);
+      insert(slot, rec);
    }
    
-   private void setVal(int slot, String fldname, Constant val) {
-      int type = layout.schema().type(fldname);
-      if (type == INTEGER)
-         setInt(slot, fldname, val.asInt());
-      else
-         setString(slot, fldname, val.asString());
-   }
+   // Private methods
    
-   private void setNumRecs(int n) {
-      tx.setInt(currentblk, Integer.BYTES, n, true);
+   private int getInt(int slot, String fldname) {
+      int pos = fldpos(slot, fldname);
+      return tx.getInt(currentblk, pos);
    }
    
-   private void insert(int slot) {
-      for (int i=getNumRecs(); i>slot; i--)
-         copyRecord(i-1, i);
-      setNumRecs(getNumRecs()+1);
+   private String getString(int slot, String fldname) {
+      int pos = fldpos(slot, fldname);
+      return tx.getString(currentblk, pos);
    }
    
-   private void copyRecord(int from, int to) {
-      Schema sch = layout.schema();
-      for (String fldname : sch.fields())
-         setVal(to, fldname, getVal(from, fldname));
+   // Store a value in a record that is being built for insertion
+   private void setVal(Page rec, String fldname, Constant val) {
+      int offset = layout.offset(fldname);
+      if (layout.schema().type(fldname) == INTEGER)
+         rec.setInt(offset, val.asInt());
+      else
+         rec.setString(offset, val.asString());
    }
    
-   private void transferRecs(int slot, BTPage dest) {
-      int destslot = 0;
-      while (slot < getNumRecs()) {
-         dest.insert(destslot);
-         Schema sch = layout.schema();
-         for (String fldname : sch.fields())
-            dest.setVal(destslot, fldname, getVal(slot, fldname));
-         delete(slot);
-         destslot++;
-      }
+   private void insert(int slot, Page rec) {
+      tx.insertSlots(currentblk, slots, slot, rec.readBytes(0, layout.slotSize()));
    }
    
    private int fldpos(int slot, String fldname) {
@@ -276,7 +291,6 @@ public class BTPage {
    }
    
    private int slotpos(int slot) {
-      int slotsize = layout.slotSize();
-      return Integer.BYTES + Integer.BYTES + (slot * slotsize);
+      return slots.slotPos(slot);
    }
 }
@@ -0,0 +1,336 @@
+package simpledb.index.btree;
+
+import static java.sql.Types.INTEGER;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.file.BlockId;
+import simpledb.query.Constant;
+import simpledb.query.UpdateScan;
+import simpledb.record.Layout;
+import simpledb.record.RID;
+import simpledb.record.Schema;
+import simpledb.tx.Transaction;
+
+/**
+ * A scan of a btree table, whose records are kept in the
+ * leaves of a B-tree on the table's primary key.
+ * The leaves are in the table's file, and the directory is in
+ * a file of its own. Each leaf holds the number of the next leaf
+ * in its flag, so the scan reads the records in key order,
+ * one leaf after another, and a search for a key reads only
+ * the directory and the leaves that hold the key range.
+ * <p>
+ * A record moves when its leaf splits, so the records of a btree
+ * table have no lasting RIDs; the table cannot be indexed.
+ * A new record is put into its leaf once all of its values are set,
+ * that is, when the scan moves on. A record whose key is changed
+ * is taken out of its leaf, and put back when the scan is closed,
+ * so that the scan does not meet it again.
+ */
+public class BTreeTableScan implements UpdateScan {
+   private Transaction tx;
+   private String tblname, leaffile, keyfld;
+   private Layout layout, dirLayout;
+   private List<String> fields;
+   private int keycol;
+   private BlockId rootblk;
+   private BTPage leaf = null;
+   private int currentblknum, currentslot;
+   private Constant[] rec = null;   // the current record, while it is not in a leaf
+   private boolean recMoved;
+   private List<Constant[]> moved = new ArrayList<>();
+
+   public BTreeTableScan(Transaction tx, String tblname, Layout layout) {
+      this.tx = tx;
+      this.tblname = tblname;
+      this.layout = layout;
+      keyfld = layout.key();
+      fields = layout.schema().fields();
+      keycol = layout.column(keyfld);
+      leaffile = tblname + ".tbl";
+      if (tx.size(leaffile) == 0) {
+         BlockId blk = tx.append(leaffile);
+         BTPage node = new BTPage(tx, blk, layout, keyfld);
+         node.format(blk, -1);
+         node.close();
+      }
+
+      Schema dirsch = new Schema();
+      dirsch.addIntField("block");
+      dirsch.addField("dataval", layout.schema().type(keyfld), layout.schema().length(keyfld));
+      String dirfile = tblname + ".dir";
+      dirLayout = new Layout(dirsch);
+      rootblk = new BlockId(dirfile, 0);
+      if (tx.size(dirfile) == 0) {
+         tx.append(dirfile);
+         BTPage node = new BTPage(tx, rootblk, dirLayout);
+         node.format(rootblk, 0);
+         Constant minval = (layout.type(keycol) == INTEGER) ?
+               new Constant(Integer.MIN_VALUE) :
+               new Constant("");
+         node.insertDir(0, minval, 0);
+         node.close();
+      }
+      beforeFirst();
+   }
+
+   // Methods that implement Scan
+
+   /**
+    * Position the scan before the first record.
+    * The first leaf is always block 0, because a leaf
+    * that splits keeps the lower half of its records.
+    */
+   public void beforeFirst() {
+      placeRecord();
+      moveToLeaf(0);
+      currentslot = -1;
+   }
+
+   /**
+    * Position the scan before the first record
+    * whose key is at least the specified value.
+    * @param key the search key
+    */
+   public void beforeFirst(Constant key) {
+      placeRecord();
+      currentslot = search(key);
+   }
+
+   /**
+    * Move to the next record in key order,
+    * going on to the next leaf at the end of a leaf.
+    */
+   public boolean next() {
+      placeRecord();
+      currentslot++;
+      while (currentslot >= leaf.getNumRecs()) {
+         int next = leaf.getFlag();
+         if (next < 0)
+            return false;
+         moveToLeaf(next);
+         currentslot = 0;
+      }
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return getInt(column(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(column(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(column(fldname));
+   }
+
+   /**
+    * Return the column of the specified field,
+    * which is its column in the table's layout.
+    * @see simpledb.query.Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return layout.column(fldname);
+   }
+
+   public int getInt(int col) {
+      return getVal(col).asInt();
+   }
+
+   public String getString(int col) {
+      return getVal(col).asString();
+   }
+
+   public Constant getVal(int col) {
+      if (rec != null)
+         return rec[col];
+      return leaf.getVal(currentslot, fields.get(col));
+   }
+
+   public boolean hasField(String fldname) {
+      return layout.schema().hasField(fldname);
+   }
+
+   /**
+    * Close the scan, putting the records whose keys
+    * were changed into their new leaves first.
+    */
+   public void close() {
+      if (leaf == null)
+         return;
+      placeRecord();
+      for (Constant[] vals : moved)
+         put(vals);
+      moved.clear();
+      leaf.close();
+      leaf = null;
+   }
+
+   // Methods that implement UpdateScan
+
+   public void setInt(String fldname, int val) {
+      setVal(column(fldname), new Constant(val));
+   }
+
+   public void setString(String fldname, String val) {
+      setVal(column(fldname), new Constant(val));
+   }
+
+   public void setVal(String fldname, Constant val) {
+      setVal(column(fldname), val);
+   }
+
+   public void setInt(int col, int val) {
+      setVal(col, new Constant(val));
+   }
+
+   public void setString(int col, String val) {
+      setVal(col, new Constant(val));
+   }
+
+   /**
+    * Store the value in the current record. A new value for the
+    * key takes the record out of its leaf, to be put back in key
+    * order when the scan is closed.
+    */
+   public void setVal(int col, Constant val) {
+      if (rec == null && col == keycol && !val.equals(getVal(col))) {
+         rec = currentRecord();
+         recMoved = true;
+         moved.add(rec);
+         leaf.delete(currentslot);
+         currentslot--;
+      }
+      if (rec != null)
+         rec[col] = val;
+      else
+         leaf.setVal(currentslot, fields.get(col), val);
+   }
+
+   /**
+    * Start a new record, whose fields are zero or empty
+    * until they are set. The record is put into its leaf
+    * when the scan moves on.
+    */
+   public void insert() {
+      placeRecord();
+      rec = new Constant[fields.size()];
+      for (int col=0; col<rec.length; col++)
+         rec[col] = defaultVal(col);
+      recMoved = false;
+   }
+
+   public void delete() {
+      if (rec != null) {
+         if (recMoved)
+            moved.remove(rec);
+         rec = null;
+      }
+      else {
+         leaf.delete(currentslot);
+         currentslot--;
+      }
+   }
+
+   /**
+    * Return null, because the records of
+    * a btree table have no lasting RIDs.
+    */
+   public RID getRid() {
+      return null;
+   }
+
+   public void moveToRid(RID rid) {
+      throw new UnsupportedOperationException("table " + tblname + " has no RIDs.");
+   }
+
+   // Private auxiliary methods
+
+   /**
+    * Put the record that is not in a leaf into its leaf,
+    * unless its key was changed, in which case it waits
+    * for the scan to close. The scan is left at the record.
+    */
+   private void placeRecord() {
+      if (rec != null && !recMoved)
+         put(rec);
+      rec = null;
+   }
+
+   /**
+    * Insert a record into the leaf for its key, splitting the leaf if
+    * it becomes full, and position the scan at the record.
+    * A record added at the end of the last leaf is likely to be
+    * followed by records with larger keys, so it alone goes to the
+    * new leaf, which leaves the old one full.
+    */
+   private void put(Constant[] vals) {
+      Constant key = vals[keycol];
+      int slot = search(key) + 1;
+      if (slot < leaf.getNumRecs() && leaf.getDataVal(slot).equals(key))
+         throw new RuntimeException("duplicate key " + key + " in table " + tblname + ".");
+      leaf.insertRecord(slot, vals);
+      currentslot = slot;
+      if (!leaf.isFull())
+         return;
+      int n = leaf.getNumRecs();
+      int next = leaf.getFlag();
+      int splitpos = (slot == n-1 && next < 0) ? slot : n/2;
+      Constant splitkey = leaf.getDataVal(splitpos);
+      BlockId newblk = leaf.split(splitpos, next);
+      leaf.setFlag(newblk.number());
+      BTreeDir root = new BTreeDir(tx, rootblk, dirLayout);
+      DirEntry e = root.insert(new DirEntry(splitkey, newblk.number()));
+      if (e != null)
+         root.makeNewRoot(e);
+      root.close();
+      if (slot >= splitpos) {
+         moveToLeaf(newblk.number());
+         currentslot = slot - splitpos;
+      }
+   }
+
+   /**
+    * Move to the leaf for the specified key, and return
+    * the slot before the first record whose key is at least the key.
+    */
+   private int search(Constant key) {
+      BTreeDir root = new BTreeDir(tx, rootblk, dirLayout);
+      int blknum = root.search(key);
+      root.close();
+      moveToLeaf(blknum);
+      return leaf.findSlotBefore(key);
+   }
+
+   private void moveToLeaf(int blknum) {
+      if (leaf != null) {
+         if (blknum == currentblknum)
+            return;
+         leaf.close();
+      }
+      leaf = new BTPage(tx, new BlockId(leaffile, blknum), layout, keyfld);
+      currentblknum = blknum;
+   }
+
+   private Constant[] currentRecord() {
+      Constant[] vals = new Constant[fields.size()];
+      for (int col=0; col<vals.length; col++)
+         vals[col] = leaf.getVal(currentslot, fields.get(col));
+      return vals;
+   }
+
+   private Constant defaultVal(int col) {
+      return (layout.type(col) == INTEGER) ? new Constant(0) : new Constant("");
+   }
+
+   private int column(String fldname) {
+      int col = layout.column(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+}
@@ -0,0 +1,55 @@
+package simpledb.index.btree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.plan.Plan;
+import simpledb.plan.Planner;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Inserts records into a btree table in random order, and checks
+ * that a scan of the table returns them in key order, and that
+ * a range query returns the records of the range.
+ */
+public class BTreeTableTest {
+   private static final int NUM_RECORDS = 2000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("btreetabletest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table T (id int, name varchar(10)) primary key (id)", tx);
+      List<Integer> keys = new ArrayList<>();
+      for (int i=0; i<NUM_RECORDS; i++)
+         keys.add(i);
+      Collections.shuffle(keys, new Random(1));
+      for (int k : keys)
+         planner.executeUpdate("insert into T (id, name) values (" + k + ", 'rec" + k + "')", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      Scan s = planner.createQueryPlan("select id, name from T", tx).open();
+      int expected = 0;
+      while (s.next()) {
+         if (s.getInt("id") != expected || !s.getString("name").equals("rec" + expected))
+            System.out.println("wrong record " + s.getInt("id") + ", expected " + expected);
+         expected++;
+      }
+      s.close();
+      System.out.println("scanned " + expected + " records in key order");
+
+      Plan p = planner.createQueryPlan("select id from T where id >= 500 and id < 600", tx);
+      s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      System.out.println("range query returned " + count + " records, expected 100");
+      tx.commit();
+   }
+}
@@ -1,24 +1,38 @@
 package simpledb.index.planner;
 
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import simpledb.index.Index;
 import simpledb.metadata.IndexInfo;
 import simpledb.metadata.MetadataMgr;
+import simpledb.parse.AddPartitionData;
+import simpledb.parse.CopyData;
 import simpledb.parse.CreateIndexData;
 import simpledb.parse.CreateTableData;
 import simpledb.parse.CreateViewData;
 import simpledb.parse.DeleteData;
+import simpledb.parse.DropPartitionData;
 import simpledb.parse.InsertData;
 import simpledb.parse.ModifyData;
+import simpledb.parse.VacuumData;
+import simpledb.plan.BasicUpdatePlanner;
+import simpledb.plan.CsvReader;
 import simpledb.plan.Plan;
 import simpledb.plan.SelectPlan;
 import simpledb.plan.TablePlan;
 import simpledb.plan.UpdatePlanner;
 import simpledb.query.Constant;
+import simpledb.query.Expression;
 import simpledb.query.UpdateScan;
+import simpledb.record.BulkLoader;
+import simpledb.record.Layout;
 import simpledb.record.RID;
+import simpledb.record.TableVacuum;
 import simpledb.tx.Transaction;
 
 /**
@@ -63,7 +77,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    
    public int executeDelete(DeleteData data, Transaction tx) {
       String tblname = data.tableName();
-      Plan p = new TablePlan(tx, tblname, mdm);
+      Plan p = new TablePlan(tx, tblname, mdm).prune(data.pred());
       p = new SelectPlan(p, data.pred());
       Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
       
@@ -89,19 +103,22 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    public int executeModify(ModifyData data, Transaction tx) {
       String tblname = data.tableName();
       String fldname = data.targetField();
-      Plan p = new TablePlan(tx, tblname, mdm);
+      Plan p = new TablePlan(tx, tblname, mdm).prune(data.pred());
       p = new SelectPlan(p, data.pred());
       
       IndexInfo ii = mdm.getIndexInfo(tblname, tx).get(fldname);
       Index idx = (ii == null) ? null : ii.open();
       
       UpdateScan s = (UpdateScan) p.open();
+      Expression newexpr = data.newValue();
+      int valcol = newexpr.column(s);
+      int targetcol = s.findField(fldname);
       int count = 0;
       while(s.next()) {
          // first, update the record
-         Constant newval = data.newValue().evaluate(s);
-         Constant oldval = s.getVal(fldname);
-         s.setVal(data.targetField(), newval);
+         Constant newval = newexpr.evaluate(s, valcol);
+         Constant oldval = s.getVal(targetcol);
+         s.setVal(targetcol, newval);
          
          // then update the appropriate index, if it exists
          if (idx != null) {
@@ -117,8 +134,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
-      return 0;
+      return new BasicUpdatePlanner(mdm).executeCreateTable(data, tx);
    }
    
    public int executeCreateView(CreateViewData data, Transaction tx) {
@@ -130,4 +146,93 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), data.indexType(), tx);
       return 0;
    }
+   
+   /**
+    * Load the rows of the file into the table, and then
+    * build the entries of each index on the table in bulk.
+    * The entries are collected during the load, and each index
+    * receives its entries sorted by value, so that consecutive
+    * inserts go to the same index block.
+    */
+   public int executeCopy(CopyData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      // a btree table or a partitioned table has no indexes to build
+      if (layout.key() != null || mdm.getPartitionInfo(tblname, tx) != null)
+         return new BasicUpdatePlanner(mdm).executeCopy(data, tx);
+      List<String> flds = (data.fields() != null) ? data.fields() : layout.schema().fields();
+      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      Map<String,List<SimpleEntry<Constant,RID>>> entries = new HashMap<>();
+      for (String fldname : indexes.keySet())
+         entries.put(fldname, new ArrayList<>());
+      
+      CsvReader reader = new CsvReader(data.fileName(), layout.schema(), flds);
+      BulkLoader loader = new BulkLoader(tx, tblname, layout);
+      int[] cols = new int[flds.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = layout.column(flds.get(i));
+      int count = 0;
+      try {
+         for (List<Constant> vals = reader.next(); vals != null; vals = reader.next()) {
+            loader.insert();
+            RID rid = loader.getRid();
+            for (int i=0; i<flds.size(); i++) {
+               loader.setVal(cols[i], vals.get(i));
+               List<SimpleEntry<Constant,RID>> L = entries.get(flds.get(i));
+               if (L != null)
+                  L.add(new SimpleEntry<>(vals.get(i), rid));
+            }
+            count++;
+         }
+      }
+      finally {
+         reader.close();
+      }
+      loader.close();
+      
+      for (String fldname : entries.keySet()) {
+         List<SimpleEntry<Constant,RID>> L = entries.get(fldname);
+         L.sort(Map.Entry.comparingByKey());
+         Index idx = indexes.get(fldname).open();
+         for (SimpleEntry<Constant,RID> e : L)
+            idx.insert(e.getKey(), e.getValue());
+         idx.close();
+      }
+      return count;
+   }
+   
+   /**
+    * Vacuum the table. Each transaction of the vacuum
+    * moves the entries of every index on the table
+    * along with the records that it moves.
+    * The indexes are looked up once, by the calling transaction.
+    */
+   public int executeVacuum(VacuumData data, Transaction tx) {
+      String tblname = data.tableName();
+      // a partitioned table has no indexes to move entries of
+      if (mdm.getPartitionInfo(tblname, tx) != null)
+         return new BasicUpdatePlanner(mdm).executeVacuum(data, tx);
+      Layout layout = mdm.getLayout(tblname, tx);
+      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      TableVacuum vacuum = new TableVacuum(tblname, layout);
+      return vacuum.run(tx, t -> (oldrid, newrid, vals) -> {
+         for (String fldname : indexes.keySet()) {
+            Constant val = vals[layout.column(fldname)];
+            Index idx = indexes.get(fldname).open(t);
+            idx.delete(val, oldrid);
+            idx.insert(val, newrid);
+            idx.close();
+         }
+      });
+   }
+   
+   public int executeAddPartition(AddPartitionData data, Transaction tx) {
+      mdm.addPartition(data.tableName(), data.partitionName(), data.bound(), tx);
+      return 0;
+   }
+   
+   public int executeDropPartition(DropPartitionData data, Transaction tx) {
+      mdm.dropPartition(data.tableName(), data.partitionName(), tx);
+      return 0;
+   }
 }
@@ -0,0 +1,84 @@
+package simpledb.index.planner;
+
+import simpledb.index.btree.BTreeTableScan;
+import simpledb.index.query.KeyRangeScan;
+import simpledb.plan.Plan;
+import simpledb.plan.TablePlan;
+import simpledb.query.Constant;
+import simpledb.query.Scan;
+import simpledb.record.Schema;
+
+/** The Plan class for a range of keys of a btree table.
+  * It is the counterpart of an indexselect for the
+  * primary key of an index-organized table.
+  */
+public class KeyRangePlan implements Plan {
+   private TablePlan p;
+   private String keyfld;
+   private Constant lo, hi;
+   
+   /**
+    * Creates a new key range node in the query tree.
+    * @param p the btree table
+    * @param keyfld the primary key of the table
+    * @param lo the lower bound of the key, or null
+    * @param hi the upper bound of the key, or null
+    */
+   public KeyRangePlan(TablePlan p, String keyfld, Constant lo, Constant hi) {
+      this.p = p;
+      this.keyfld = keyfld;
+      this.lo = lo;
+      this.hi = hi;
+   }
+   
+   /** 
+    * Creates a new key range scan for this query.
+    * @see Plan#open()
+    */
+   public Scan open() {
+      BTreeTableScan ts = (BTreeTableScan) p.open();
+      return new KeyRangeScan(ts, keyfld, lo, hi);
+   }
+   
+   /**
+    * Estimates the number of block accesses of the scan,
+    * which are the directory search and the leaves that hold
+    * the range. The leaves are the same fraction of the table
+    * as the output records.
+    * @see Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      int recs = Math.max(1, p.recordsOutput());
+      return 1 + (int) Math.ceil((double) p.blocksAccessed() * recordsOutput() / recs);
+   }
+   
+   /**
+    * Estimates the number of output records, which is
+    * one for a single key, and otherwise a third of the table.
+    * @see Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      if (lo != null && lo.equals(hi))
+         return 1;
+      return Math.max(1, p.recordsOutput() / 3);
+   }
+   
+   public int distinctValues(String fldname) {
+      if (fldname.equals(keyfld))
+         return recordsOutput();
+      return Math.min(p.distinctValues(fldname), recordsOutput());
+   }
+   
+   public Schema schema() {
+      return p.schema(); 
+   }
+   
+   @Override
+   public String getQueryPlan(String tblname, String currQueryPlan, int margin) {
+      String range = (lo == null) ? "" : lo + " <= ";
+      range += keyfld;
+      if (hi != null)
+         range += " <= " + hi;
+      return String.format("Key range scan on %s (%s)", tblname, range);
+   }
+}
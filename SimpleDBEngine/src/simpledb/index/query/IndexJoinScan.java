@@ -1,8 +1,10 @@
 package simpledb.index.query;
 
 import simpledb.index.Index;
+import simpledb.query.ColumnMap;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
+import simpledb.record.Dictionary;
 import simpledb.record.TableScan;
 
 /**
@@ -18,6 +20,8 @@ public class IndexJoinScan implements Scan {
    private Index idx;
    private String joinfield;
    private TableScan rhs;
+   private int joincol;
+   private ColumnMap cols = new ColumnMap();
    private boolean isEmpty;   // flag for when LHS has no records, so there's no point in setting the index
    
    /**
@@ -33,6 +37,7 @@ public class IndexJoinScan implements Scan {
       this.idx  = idx;
       this.joinfield = joinfield;
       this.rhs = rhs;
+      joincol = lhs.findField(joinfield);
       beforeFirst();
    }
    
@@ -107,6 +112,38 @@ public class IndexJoinScan implements Scan {
          return lhs.getString(fldname);
    }
    
+   /**
+    * Return the column of the specified field, which
+    * records whichever scan contains the field.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return cols.find(fldname, rhs, lhs);
+   }
+
+   public int getInt(int col) {
+      return scan(col).getInt(cols.column(col));
+   }
+
+   public String getString(int col) {
+      return scan(col).getString(cols.column(col));
+   }
+
+   public Constant getVal(int col) {
+      return scan(col).getVal(cols.column(col));
+   }
+
+   /**
+    * Return the dictionary of the field in the specified column,
+    * so that a predicate on the join compares codes where it can.
+    * The index lookup itself is by value, since the index
+    * records hold the values of the field.
+    * @see Scan#dictionary(int)
+    */
+   public Dictionary dictionary(int col) {
+      return scan(col).dictionary(cols.column(col));
+   }
+
    /** Returns true if the field is in the schema.
      * @see Scan#hasField(String)
      */
@@ -124,9 +161,13 @@ public class IndexJoinScan implements Scan {
       rhs.close();
    }
 
+   private Scan scan(int col) {
+      return (cols.side(col) == 0) ? rhs : lhs;
+   }
+
    private void resetIndex() {
       assert !isEmpty;
-      Constant searchkey = lhs.getVal(joinfield);
+      Constant searchkey = lhs.getVal(joincol);
       idx.beforeFirst(searchkey);
    }
 }
@@ -81,6 +81,27 @@ public class IndexSelectScan implements Scan {
       return ts.getVal(fldname);
    }
    
+   /**
+    * Return the column of the specified field,
+    * which is its column in the table scan.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return ts.findField(fldname);
+   }
+
+   public int getInt(int col) {
+      return ts.getInt(col);
+   }
+
+   public String getString(int col) {
+      return ts.getString(col);
+   }
+
+   public Constant getVal(int col) {
+      return ts.getVal(col);
+   }
+
    /**
     * Returns whether the data record has the specified field.
     * @see Scan#hasField(String)
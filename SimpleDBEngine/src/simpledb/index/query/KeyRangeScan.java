@@ -0,0 +1,99 @@
+package simpledb.index.query;
+
+import simpledb.index.btree.BTreeTableScan;
+import simpledb.query.Constant;
+import simpledb.query.Scan;
+
+/**
+ * The scan class for a range of keys of a btree table.
+ * The scan starts at the first record whose key is at least
+ * the lower bound, and ends at the first record whose key is
+ * beyond the upper bound. Either bound may be missing.
+ * Whether the bounds themselves are included is
+ * left to the selection above the scan.
+ */
+public class KeyRangeScan implements Scan {
+   private BTreeTableScan ts;
+   private Constant lo, hi;
+   private int keycol;
+   
+   /**
+    * Creates a scan of the records of the table
+    * whose keys are between the specified bounds.
+    * @param ts a scan of the table
+    * @param keyfld the primary key of the table
+    * @param lo the lower bound, or null
+    * @param hi the upper bound, or null
+    */
+   public KeyRangeScan(BTreeTableScan ts, String keyfld, Constant lo, Constant hi) {
+      this.ts = ts;
+      this.lo = lo;
+      this.hi = hi;
+      keycol = ts.findField(keyfld);
+      beforeFirst();
+   }
+   
+   /**
+    * Positions the scan before the first record of the range,
+    * which the table scan finds by searching its directory.
+    * @see Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      if (lo == null)
+         ts.beforeFirst();
+      else
+         ts.beforeFirst(lo);
+   }
+   
+   /**
+    * Moves to the next record, and returns false
+    * once the key of the record is beyond the range.
+    * @see Scan#next()
+    */
+   public boolean next() {
+      if (!ts.next())
+         return false;
+      return hi == null || ts.getVal(keycol).compareTo(hi) <= 0;
+   }
+   
+   public int getInt(String fldname) {
+      return ts.getInt(fldname);
+   }
+   
+   public String getString(String fldname) {
+      return ts.getString(fldname);
+   }
+   
+   public Constant getVal(String fldname) {
+      return ts.getVal(fldname);
+   }
+   
+   /**
+    * Return the column of the specified field,
+    * which is its column in the table scan.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return ts.findField(fldname);
+   }
+
+   public int getInt(int col) {
+      return ts.getInt(col);
+   }
+
+   public String getString(int col) {
+      return ts.getString(col);
+   }
+
+   public Constant getVal(int col) {
+      return ts.getVal(col);
+   }
+
+   public boolean hasField(String fldname) {
+      return ts.hasField(fldname);
+   }
+   
+   public void close() {
+      ts.close();
+   }
+}
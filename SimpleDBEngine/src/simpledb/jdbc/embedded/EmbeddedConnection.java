@@ -1,6 +1,7 @@
 package simpledb.jdbc.embedded;
 
 import java.rmi.RemoteException;
+import java.sql.Connection;
 import java.sql.SQLException;
 
 import simpledb.jdbc.ConnectionAdapter;
@@ -17,6 +18,8 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
+   private int isolation = Connection.TRANSACTION_SERIALIZABLE;
 
    /**
     * Creates a connection
@@ -25,7 +28,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public EmbeddedConnection(SimpleDB db) {
       this.db = db;
-      currentTx = db.newTx();
+      currentTx = newTx();
       planner = db.planner();
    }
 
@@ -48,7 +51,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -56,7 +59,48 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Puts the connection in read-only mode or takes it out of it.
+    * The current transaction is committed, and the next one
+    * is a read-only transaction if the flag is set.
+    */
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      if (readOnly == this.readOnly)
+         return;
+      this.readOnly = readOnly;
+      commit();
+   }
+
+   /**
+    * Returns true if the connection is in read-only mode.
+    */
+   public boolean isReadOnly() throws SQLException {
+      return readOnly;
+   }
+
+   /**
+    * Sets the isolation level of the connection's transactions.
+    * SimpleDB supports serializable and read committed isolation;
+    * the other JDBC levels are upgraded to the next stronger one.
+    * If the level changes, the current transaction is committed
+    * and the next one runs at the new level.
+    */
+   public void setTransactionIsolation(int level) throws SQLException {
+      level = supportedLevel(level);
+      if (level == isolation)
+         return;
+      isolation = level;
+      commit();
+   }
+
+   /**
+    * Returns the isolation level of the connection's transactions.
+    */
+   public int getTransactionIsolation() throws SQLException {
+      return isolation;
    }
 
    /**
@@ -67,5 +111,19 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {  
       return currentTx;
    }
-}
 
+   private Transaction newTx() {
+      if (readOnly)
+         return db.newReadOnlyTx();
+      Transaction tx = db.newTx();
+      tx.setReadCommitted(isolation == Connection.TRANSACTION_READ_COMMITTED);
+      return tx;
+   }
+
+   private static int supportedLevel(int level) {
+      if (level == Connection.TRANSACTION_READ_UNCOMMITTED
+            || level == Connection.TRANSACTION_READ_COMMITTED)
+         return Connection.TRANSACTION_READ_COMMITTED;
+      return Connection.TRANSACTION_SERIALIZABLE;
+   }
+}
@@ -36,5 +36,40 @@ public class NetworkConnection extends ConnectionAdapter {
          throw new SQLException(e);
       }
    }
+   
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      try {
+         rconn.setReadOnly(readOnly);
+      }
+      catch(Exception e) {
+         throw new SQLException(e);
+      }
+   }
+   
+   public boolean isReadOnly() throws SQLException {
+      try {
+         return rconn.isReadOnly();
+      }
+      catch(Exception e) {
+         throw new SQLException(e);
+      }
+   }
+   
+   public void setTransactionIsolation(int level) throws SQLException {
+      try {
+         rconn.setTransactionIsolation(level);
+      }
+      catch(Exception e) {
+         throw new SQLException(e);
+      }
+   }
+   
+   public int getTransactionIsolation() throws SQLException {
+      try {
+         return rconn.getTransactionIsolation();
+      }
+      catch(Exception e) {
+         throw new SQLException(e);
+      }
+   }
 }
-
@@ -12,5 +12,9 @@ import java.rmi.RemoteException;
 public interface RemoteConnection extends Remote {
    public RemoteStatement createStatement() throws RemoteException;
    public void close() throws RemoteException;
+   public void setReadOnly(boolean readOnly) throws RemoteException;
+   public boolean isReadOnly() throws RemoteException;
+   public void setTransactionIsolation(int level) throws RemoteException;
+   public int getTransactionIsolation() throws RemoteException;
 }
 
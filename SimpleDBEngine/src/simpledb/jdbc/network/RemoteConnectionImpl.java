@@ -2,6 +2,7 @@ package simpledb.jdbc.network;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.sql.Connection;
 
 import simpledb.plan.Planner;
 import simpledb.server.SimpleDB;
@@ -16,6 +17,8 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
+   private int isolation = Connection.TRANSACTION_SERIALIZABLE;
    
    /**
     * Creates a remote connection
@@ -24,7 +27,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    RemoteConnectionImpl(SimpleDB db) throws RemoteException {
       this.db = db;
-      currentTx = db.newTx();
+      currentTx = newTx();
       planner = db.planner();
    }
    
@@ -45,6 +48,51 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
       currentTx.commit();
    }
    
+   /**
+    * Puts the connection in read-only mode or takes it out of it.
+    * The current transaction is committed, and the next one
+    * is a read-only transaction if the flag is set.
+    * @see RemoteConnection#setReadOnly(boolean)
+    */
+   public void setReadOnly(boolean readOnly) throws RemoteException {
+      if (readOnly == this.readOnly)
+         return;
+      this.readOnly = readOnly;
+      commit();
+   }
+   
+   /**
+    * Returns true if the connection is in read-only mode.
+    * @see RemoteConnection#isReadOnly()
+    */
+   public boolean isReadOnly() throws RemoteException {
+      return readOnly;
+   }
+   
+   /**
+    * Sets the isolation level of the connection's transactions.
+    * SimpleDB supports serializable and read committed isolation;
+    * the other JDBC levels are upgraded to the next stronger one.
+    * If the level changes, the current transaction is committed
+    * and the next one runs at the new level.
+    * @see RemoteConnection#setTransactionIsolation(int)
+    */
+   public void setTransactionIsolation(int level) throws RemoteException {
+      level = supportedLevel(level);
+      if (level == isolation)
+         return;
+      isolation = level;
+      commit();
+   }
+   
+   /**
+    * Returns the isolation level of the connection's transactions.
+    * @see RemoteConnection#getTransactionIsolation()
+    */
+   public int getTransactionIsolation() throws RemoteException {
+      return isolation;
+   }
+   
 // The following methods are used by the server-side classes.
    
    /**
@@ -62,7 +110,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void commit() {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
    
    /**
@@ -71,7 +119,21 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void rollback() {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+   
+   private Transaction newTx() {
+      if (readOnly)
+         return db.newReadOnlyTx();
+      Transaction tx = db.newTx();
+      tx.setReadCommitted(isolation == Connection.TRANSACTION_READ_COMMITTED);
+      return tx;
    }
-}
 
+   private static int supportedLevel(int level) {
+      if (level == Connection.TRANSACTION_READ_UNCOMMITTED
+            || level == Connection.TRANSACTION_READ_COMMITTED)
+         return Connection.TRANSACTION_READ_COMMITTED;
+      return Connection.TRANSACTION_SERIALIZABLE;
+   }
+}
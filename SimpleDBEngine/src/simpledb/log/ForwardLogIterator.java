@@ -0,0 +1,89 @@
+package simpledb.log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import simpledb.file.BlockId;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+
+/**
+ * A class that provides the ability to move through the
+ * records of the log file in the order they were written,
+ * starting after a given LSN.
+ * Records are stored right to left within a block, so the
+ * iterator first finds the positions of all records in
+ * a block, and then returns them in reverse.
+ */
+public class ForwardLogIterator implements Iterator<byte[]> {
+   private FileMgr fm;
+   private BlockId blk;
+   private int lastblknum;
+   private int startlsn;
+   private Page p;
+   private List<Integer> positions = new ArrayList<>();
+   private int index = 0;
+   private int lsn = -1;
+
+   /**
+    * Creates an iterator for the records of the log file
+    * that follow the specified LSN.
+    * @param lastblk the last block of the log file
+    * @param startlsn the LSN after which to start, or -1
+    */
+   public ForwardLogIterator(FileMgr fm, BlockId lastblk, int startlsn) {
+      this.fm = fm;
+      this.lastblknum = lastblk.number();
+      this.startlsn = startlsn;
+      p = new Page(new byte[fm.blockSize()]);
+      int blknum = Math.max(startlsn, 0) / fm.blockSize();
+      moveToBlock(new BlockId(lastblk.fileName(), blknum));
+   }
+
+   /**
+    * Determines if there is a later record in the log file.
+    * @return true if there is a later record
+    */
+   public boolean hasNext() {
+      while (index == positions.size() && blk.number() < lastblknum)
+         moveToBlock(new BlockId(blk.fileName(), blk.number()+1));
+      return index < positions.size();
+   }
+
+   /**
+    * Moves to the next log record, in the order of writing.
+    * @return the next later log record
+    */
+   public byte[] next() {
+      hasNext();
+      int pos = positions.get(index++);
+      lsn = LogMgr.lsnOf(blk, pos, fm.blockSize());
+      return p.getBytes(pos);
+   }
+
+   /**
+    * Returns the LSN of the record most recently returned by next().
+    * @return the LSN of the current record
+    */
+   public int lsn() {
+      return lsn;
+   }
+
+   /**
+    * Moves to the specified log block and finds the positions
+    * of its records after the start LSN, oldest first.
+    */
+   private void moveToBlock(BlockId b) {
+      blk = b;
+      fm.read(blk, p);
+      positions.clear();
+      index = 0;
+      int pos = p.getInt(0);
+      while (pos < fm.blockSize()) {
+         if (LogMgr.lsnOf(blk, pos, fm.blockSize()) > startlsn)
+            positions.add(0, pos);
+         pos += Integer.BYTES + p.getInt(pos);
+      }
+   }
+}
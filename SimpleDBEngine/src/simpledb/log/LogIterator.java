@@ -12,12 +12,13 @@ import simpledb.file.Page;
  * 
  * @author Edward Sciore
  */
-class LogIterator implements Iterator<byte[]> {
+public class LogIterator implements Iterator<byte[]> {
    private FileMgr fm;
    private BlockId blk;
    private Page p;
    private int currentpos;
    private int boundary;
+   private int lsn = -1;
 
    /**
     * Creates an iterator for the records in the log file,
@@ -53,10 +54,19 @@ class LogIterator implements Iterator<byte[]> {
          moveToBlock(blk);
       }
       byte[] rec = p.getBytes(currentpos);
+      lsn = LogMgr.lsnOf(blk, currentpos, fm.blockSize());
       currentpos += Integer.BYTES + rec.length;
       return rec;
    }
 
+   /**
+    * Returns the LSN of the record most recently returned by next().
+    * @return the LSN of the current record
+    */
+   public int lsn() {
+      return lsn;
+   }
+
    /**
     * Moves to the specified log block
     * and positions it at the first record in that block
@@ -1,6 +1,6 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
 
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
@@ -11,6 +11,16 @@ import simpledb.file.Page;
  * writing log records into a log file. The tail of 
  * the log is kept in a bytebuffer, which is flushed
  * to disk when needed. 
+ * <p>
+ * The LSN of a log record is its position in the log file:
+ * the number of its block times the block size, plus its
+ * distance from the end of the block. Records are written
+ * right to left within a block, so LSNs increase with every
+ * append, and they remain valid across restarts.
+ * <p>
+ * The log page is guarded by a {@link ReentrantLock}
+ * rather than the object's monitor, because appends and
+ * flushes may write to disk while holding it.
  * @author Edward Sciore
  */
 public class LogMgr {
@@ -20,6 +30,7 @@ public class LogMgr {
    private BlockId currentblk;
    private int latestLSN = 0;
    private int lastSavedLSN = 0;
+   private ReentrantLock latch = new ReentrantLock();
 
    /**
     * Creates the manager for the specified log file.
@@ -39,7 +50,14 @@ public class LogMgr {
       else {
          currentblk = new BlockId(logfile, logsize-1);
          fm.read(currentblk, logpage);
+         // a crash in appendNewBlock can leave the block all zeros
+         if (logpage.getInt(0) == 0) {
+            logpage.setInt(0, fm.blockSize());
+            fm.write(currentblk, logpage);
+         }
       }
+      latestLSN = lsnOf(currentblk, logpage.getInt(0), fm.blockSize());
+      lastSavedLSN = latestLSN;
    }
 
    /**
@@ -49,13 +67,48 @@ public class LogMgr {
     * @param lsn the LSN of a log record
     */
    public void flush(int lsn) {
-      if (lsn >= lastSavedLSN)
+      latch.lock();
+      try {
+         if (lsn >= lastSavedLSN)
+            flush();
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+
+   /**
+    * Returns an iterator over the records of the log,
+    * from the most recent to the oldest.
+    * @return a backward iterator
+    */
+   public LogIterator iterator() {
+      latch.lock();
+      try {
          flush();
+         return new LogIterator(fm, currentblk);
+      }
+      finally {
+         latch.unlock();
+      }
    }
 
-   public Iterator<byte[]> iterator() {
-      flush();
-      return new LogIterator(fm, currentblk);
+   /**
+    * Returns an iterator over the records of the log
+    * whose LSN is greater than the specified one,
+    * from the oldest to the most recent.
+    * @param lsn the LSN after which to start, or -1 for the whole log
+    * @return a forward iterator
+    */
+   public ForwardLogIterator iterator(int lsn) {
+      latch.lock();
+      try {
+         flush();
+         return new ForwardLogIterator(fm, currentblk, lsn);
+      }
+      finally {
+         latch.unlock();
+      }
    }
 
    /**
@@ -70,21 +123,45 @@ public class LogMgr {
     * @param logrec a byte buffer containing the bytes.
     * @return the LSN of the final value
     */
-   public synchronized int append(byte[] logrec) {
-      int boundary = logpage.getInt(0);
-      int recsize = logrec.length;
-      int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
-         flush();        // so move to the next block.
-         currentblk = appendNewBlock();
-         boundary = logpage.getInt(0);
+   public int append(byte[] logrec) {
+      latch.lock();
+      try {
+         int boundary = logpage.getInt(0);
+         int recsize = logrec.length;
+         int bytesneeded = recsize + Integer.BYTES;
+         if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
+            flush();        // so move to the next block.
+            currentblk = appendNewBlock();
+            boundary = logpage.getInt(0);
+         }
+         int recpos = boundary - bytesneeded;
+
+         logpage.setBytes(recpos, logrec);
+         logpage.setInt(0, recpos); // the new boundary
+         latestLSN = lsnOf(currentblk, recpos, fm.blockSize());
+         return latestLSN;
+      }
+      finally {
+         latch.unlock();
       }
-      int recpos = boundary - bytesneeded;
+   }
 
-      logpage.setBytes(recpos, logrec);
-      logpage.setInt(0, recpos); // the new boundary
-      latestLSN += 1;
-      return latestLSN;
+   /**
+    * Return the size of the largest record that fits
+    * in a log block, together with its length and the
+    * block's boundary value.
+    * @return the maximum length of a log record
+    */
+   public int maxRecordSize() {
+      return fm.blockSize() - 2 * Integer.BYTES;
+   }
+
+   /**
+    * Return the LSN of the log record at the specified
+    * position of the specified log block.
+    */
+   static int lsnOf(BlockId blk, int recpos, int blocksize) {
+      return blk.number() * blocksize + (blocksize - recpos);
    }
 
    /**
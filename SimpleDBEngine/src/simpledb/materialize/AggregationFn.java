@@ -10,6 +10,15 @@ import simpledb.query.Scan;
  */
 public interface AggregationFn {
    
+   /**
+    * Find the column of the aggregated field
+    * in the specified scan, from which the
+    * process methods will read it.
+    * @param s the scan to aggregate over.
+    * @see Scan#findField(String)
+    */
+   void bind(Scan s);
+   
    /**
     * Use the current record of the specified scan
     * to be the first record in the group.
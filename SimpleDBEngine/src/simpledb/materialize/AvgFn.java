@@ -11,6 +11,7 @@ import simpledb.query.Scan;
  */
 public class AvgFn implements AggregationFn {
    private String fldname;
+   private int col;
    private int sum;
    private int count; 
    private boolean isDistinct;
@@ -25,6 +26,14 @@ public class AvgFn implements AggregationFn {
       this.isDistinct = isDistinct; 
    }
    
+   /**
+    * Find the column of the aggregated field.
+    * @see AggregationFn#bind(Scan)
+    */
+   public void bind(Scan s) {
+      col = s.findField(fldname);
+   }
+   
    /**
     * Start a new avg.
     * Since SimpleDB does not support null values,
@@ -34,7 +43,7 @@ public class AvgFn implements AggregationFn {
     * @see AggregationFn#processFirst(Scan)
     */
    public void processFirst(Scan s) {
-	   sum = s.getVal(fldname).asInt();
+	   sum = s.getVal(col).asInt();
 	   count = 1; 
 	   set.add(sum); 
    }
@@ -46,7 +55,7 @@ public class AvgFn implements AggregationFn {
     * @see AggregationFn#processNext(Scan)
     */
    public void processNext(Scan s) {
-      int nextVal = s.getVal(fldname).asInt();
+      int nextVal = s.getVal(col).asInt();
 	  if (isDistinct && set.contains(nextVal)) {
 		  return;
 	  }
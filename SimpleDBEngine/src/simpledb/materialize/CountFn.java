@@ -11,6 +11,7 @@ import simpledb.query.Scan;
  */
 public class CountFn implements AggregationFn {
    private String fldname;
+   private int col;
    private int count;
    private HashSet<Constant> set = new HashSet<>(); 
    private boolean isDistinct; 
@@ -24,6 +25,14 @@ public class CountFn implements AggregationFn {
       this.isDistinct = isDistinct; 
    }
    
+   /**
+    * Find the column of the aggregated field.
+    * @see AggregationFn#bind(Scan)
+    */
+   public void bind(Scan s) {
+      col = s.findField(fldname);
+   }
+   
    /**
     * Start a new count.
     * Since SimpleDB does not support null values,
@@ -34,7 +43,7 @@ public class CountFn implements AggregationFn {
     */
    public void processFirst(Scan s) {
       count = 1;
-      set.add(s.getVal(fldname)); 
+      set.add(s.getVal(col)); 
    }
    
    /**
@@ -44,7 +53,7 @@ public class CountFn implements AggregationFn {
     * @see AggregationFn#processNext(Scan)
     */
    public void processNext(Scan s) {
-      Constant nextVal = s.getVal(fldname);
+      Constant nextVal = s.getVal(col);
 	  if (isDistinct && set.contains(nextVal)) {
 		  return;
 	  }
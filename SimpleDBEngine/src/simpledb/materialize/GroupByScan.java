@@ -13,6 +13,7 @@ public class GroupByScan implements Scan {
    private Scan s;
    private List<String> groupfields;
    private List<AggregationFn> aggfns;
+   private int[] groupcols;
    private GroupValue groupval;
    private boolean moregroups;
    
@@ -26,6 +27,11 @@ public class GroupByScan implements Scan {
       this.s = s;
       this.groupfields = groupfields;
       this.aggfns = aggfns;
+      groupcols = new int[groupfields.size()];
+      for (int i=0; i<groupcols.length; i++)
+         groupcols[i] = s.findField(groupfields.get(i));
+      for (AggregationFn fn : aggfns)
+         fn.bind(s);
       beforeFirst();
    }
    
@@ -58,9 +64,9 @@ public class GroupByScan implements Scan {
          return false;
       for (AggregationFn fn : aggfns)
          fn.processFirst(s);
-      groupval = new GroupValue(s, groupfields);
+      groupval = new GroupValue(s, groupcols);
       while(moregroups = s.next()) {
-         GroupValue gv = new GroupValue(s, groupfields);
+         GroupValue gv = new GroupValue(s, groupcols);
          if (!groupval.equals(gv))
             break;
          for (AggregationFn fn : aggfns)
@@ -86,12 +92,10 @@ public class GroupByScan implements Scan {
     * @see Scan#getVal(String)
     */
    public Constant getVal(String fldname) {
-      if (groupfields.contains(fldname))
-         return groupval.getVal(fldname);
-      for (AggregationFn fn : aggfns)
-         if (fn.fieldName().equals(fldname))
-         return fn.value();
-      throw new RuntimeException("field " + fldname + " not found.");
+      int col = findField(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return getVal(col);
    }
    
    /**
@@ -118,17 +122,49 @@ public class GroupByScan implements Scan {
       return getVal(fldname).asString();
    }
    
+   /**
+    * Return the column of the specified field.
+    * The grouping fields come first, in order,
+    * followed by the fields of the aggregation functions.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      int col = groupfields.indexOf(fldname);
+      if (col >= 0)
+         return col;
+      for (int i=0; i<aggfns.size(); i++)
+         if (aggfns.get(i).fieldName().equals(fldname))
+            return groupfields.size() + i;
+      return -1;
+   }
+
+   /**
+    * Get the Constant value of the field in the specified
+    * column, from the saved group value or from the
+    * aggregation function.
+    * @see Scan#getVal(int)
+    */
+   public Constant getVal(int col) {
+      if (col < groupcols.length)
+         return groupval.getVal(col);
+      else
+         return aggfns.get(col - groupcols.length).value();
+   }
+
+   public int getInt(int col) {
+      return getVal(col).asInt();
+   }
+
+   public String getString(int col) {
+      return getVal(col).asString();
+   }
+   
    /** Return true if the specified field is either a 
     * grouping field or created by an aggregation function.
     * @see Scan#hasField(String)
     */
    public boolean hasField(String fldname) {
-      if (groupfields.contains(fldname))
-         return true;
-      for (AggregationFn fn : aggfns)
-         if (fn.fieldName().equals(fldname))
-         return true;
-      return false;
+      return findField(fldname) >= 0;
    }
 }
 
@@ -1,8 +1,6 @@
 package simpledb.materialize;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 import simpledb.query.Constant;
 import simpledb.query.Scan;
@@ -13,29 +11,29 @@ import simpledb.query.Scan;
  * @author Edward Sciore
  */
 public class GroupValue {
-   private Map<String,Constant> vals = new HashMap<>();
+   private Constant[] vals;
    
    /**
     * Create a new group value, given the specified scan
-    * and list of fields.
+    * and the columns of the grouping fields in it.
     * The values in the current record of each field are 
     * stored.
     * @param s a scan
-    * @param fields the list of fields
+    * @param cols the columns of the grouping fields
     */
-   public GroupValue(Scan s, List<String> fields) {
-      vals = new HashMap<String,Constant>();
-      for (String fldname : fields)
-         vals.put(fldname, s.getVal(fldname));
+   public GroupValue(Scan s, int[] cols) {
+      vals = new Constant[cols.length];
+      for (int i=0; i<cols.length; i++)
+         vals[i] = s.getVal(cols[i]);
    }
    
    /**
-    * Return the Constant value of the specified field in the group.
-    * @param fldname the name of a field
+    * Return the Constant value of the specified grouping field in the group.
+    * @param i the position of the field in the list of grouping fields
     * @return the value of the field in the group
     */
-   public Constant getVal(String fldname) {
-      return vals.get(fldname);
+   public Constant getVal(int i) {
+      return vals[i];
    }
    
    /** 
@@ -45,13 +43,7 @@ public class GroupValue {
     */
    public boolean equals(Object obj) {
       GroupValue gv = (GroupValue) obj;
-      for (String fldname : vals.keySet()) {
-         Constant v1 = vals.get(fldname);
-         Constant v2 = gv.getVal(fldname);
-         if (!v1.equals(v2))
-            return false;
-      }
-      return true;
+      return Arrays.equals(vals, gv.vals);
    }
    
    /**
@@ -61,8 +53,8 @@ public class GroupValue {
     */
    public int hashCode() {
       int hashval = 0;
-      for (Constant c: vals.values())
+      for (Constant c: vals)
          hashval += c.hashCode();
       return hashval;
    }
-}
\ No newline at end of file
+}
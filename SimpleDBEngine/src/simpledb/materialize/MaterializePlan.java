@@ -36,10 +36,16 @@ public class MaterializePlan implements Plan {
       TempTable temp = new TempTable(tx, sch);
       Scan src = srcplan.open();
       UpdateScan dest = temp.open();
+      int n = sch.fields().size();
+      int[] srccols = new int[n], destcols = new int[n];
+      for (int i=0; i<n; i++) {
+         srccols[i]  = src.findField(sch.fields().get(i));
+         destcols[i] = dest.findField(sch.fields().get(i));
+      }
       while (src.next()) {
          dest.insert();
-         for (String fldname : sch.fields())
-            dest.setVal(fldname, src.getVal(fldname));
+         for (int i=0; i<n; i++)
+            dest.setVal(destcols[i], src.getVal(srccols[i]));
       }
       src.close();
       dest.beforeFirst();
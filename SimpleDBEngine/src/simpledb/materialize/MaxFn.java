@@ -9,6 +9,7 @@ import simpledb.query.Scan;
  */
 public class MaxFn implements AggregationFn {
    private String fldname;
+   private int col;
    private Constant val;
    
    /**
@@ -19,13 +20,21 @@ public class MaxFn implements AggregationFn {
       this.fldname = fldname;
    }
    
+   /**
+    * Find the column of the aggregated field.
+    * @see AggregationFn#bind(Scan)
+    */
+   public void bind(Scan s) {
+      col = s.findField(fldname);
+   }
+   
    /**
     * Start a new maximum to be the 
     * field value in the current record.
     * @see AggregationFn#processFirst(Scan)
     */
    public void processFirst(Scan s) {
-      val = s.getVal(fldname);
+      val = s.getVal(col);
    }
    
    /**
@@ -34,7 +43,7 @@ public class MaxFn implements AggregationFn {
     * @see AggregationFn#processNext(Scan)
     */
    public void processNext(Scan s) {
-      Constant newval = s.getVal(fldname);
+      Constant newval = s.getVal(col);
       if (newval.compareTo(val) > 0)
          val = newval;
    }
@@ -1,17 +1,27 @@
 package simpledb.materialize;
 
+import simpledb.query.ColumnMap;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
+import simpledb.record.Dictionary;
 
 /**
  * The Scan class for the <i>mergejoin</i> operator.
+ * If the join fields have the same dictionary, the scan tests
+ * whether their values are equal by comparing their codes.
+ * The codes are not in the order of the values, though, so
+ * the values are still compared to see which is smaller.
  * @author Edward Sciore
  */
 public class MergeJoinScan implements Scan {
    private Scan s1;
    private SortScan s2;
    private String fldname1, fldname2;
+   private int col1, col2;
+   private ColumnMap cols = new ColumnMap();
    private Constant joinval = null;
+   private int joincode;
+   private boolean codes;
    
    /**
     * Create a mergejoin scan for the two underlying sorted scans.
@@ -25,6 +35,10 @@ public class MergeJoinScan implements Scan {
       this.s2 = s2;
       this.fldname1 = fldname1;
       this.fldname2 = fldname2;
+      col1 = s1.findField(fldname1);
+      col2 = s2.findField(fldname2);
+      Dictionary dict1 = s1.dictionary(col1), dict2 = s2.dictionary(col2);
+      codes = dict1 != null && dict2 != null && dict1.name().equals(dict2.name());
       beforeFirst();
    }
    
@@ -63,31 +77,39 @@ public class MergeJoinScan implements Scan {
     */
    public boolean next() {
       boolean hasmore2 = s2.next();
-      if (hasmore2 && joinval != null && s2.getVal(fldname2).equals(joinval))
+      if (hasmore2 && joinval != null && isJoinval(s2, col2))
          return true;
 
       boolean hasmore1 = s1.next();
-      if (hasmore1 && joinval != null && s1.getVal(fldname1).equals(joinval)) {
+      if (hasmore1 && joinval != null && isJoinval(s1, col1)) {
          s2.restorePosition();
          return true;
       }
 
       while (hasmore1 && hasmore2) {
-         Constant v1 = s1.getVal(fldname1);
-         Constant v2 = s2.getVal(fldname2);
-         if (v1.compareTo(v2) < 0)
+         int cmp = (codes && s1.getInt(col1) == s2.getInt(col2))
+               ? 0 : s1.getVal(col1).compareTo(s2.getVal(col2));
+         if (cmp < 0)
             hasmore1 = s1.next();
-         else if (v1.compareTo(v2) > 0)
+         else if (cmp > 0)
             hasmore2 = s2.next();
          else {
             s2.savePosition();
-            joinval  = s2.getVal(fldname2);
+            joinval  = s2.getVal(col2);
+            if (codes)
+               joincode = s2.getInt(col2);
             return true;
          }
       }
       return false;
    }
 
+   private boolean isJoinval(Scan s, int col) {
+      if (codes)
+         return s.getInt(col) == joincode;
+      return s.getVal(col).equals(joinval);
+   }
+
    /**
     * Return the integer value of the specified field.
     * The value is obtained from whichever scan
@@ -127,6 +149,31 @@ public class MergeJoinScan implements Scan {
          return s2.getVal(fldname);
    }
    
+   /**
+    * Return the column of the specified field, which
+    * records whichever scan contains the field.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return cols.find(fldname, s1, s2);
+   }
+
+   public int getInt(int col) {
+      return scan(col).getInt(cols.column(col));
+   }
+
+   public String getString(int col) {
+      return scan(col).getString(cols.column(col));
+   }
+
+   public Constant getVal(int col) {
+      return scan(col).getVal(cols.column(col));
+   }
+
+   public Dictionary dictionary(int col) {
+      return scan(col).dictionary(cols.column(col));
+   }
+
    /**
     * Return true if the specified field is in
     * either of the underlying scans.
@@ -135,5 +182,8 @@ public class MergeJoinScan implements Scan {
    public boolean hasField(String fldname) {
       return s1.hasField(fldname) || s2.hasField(fldname);
    }
-}
 
+   private Scan scan(int col) {
+      return (cols.side(col) == 0) ? s1 : s2;
+   }
+}
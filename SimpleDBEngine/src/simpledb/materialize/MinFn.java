@@ -9,6 +9,7 @@ import simpledb.query.Scan;
  */
 public class MinFn implements AggregationFn {
    private String fldname;
+   private int col;
    private Constant val;
    
    /**
@@ -19,6 +20,14 @@ public class MinFn implements AggregationFn {
       this.fldname = fldname;
    }
    
+   /**
+    * Find the column of the aggregated field.
+    * @see AggregationFn#bind(Scan)
+    */
+   public void bind(Scan s) {
+      col = s.findField(fldname);
+   }
+   
    /**
     * Start a new min.
     * Since SimpleDB does not support null values,
@@ -28,7 +37,7 @@ public class MinFn implements AggregationFn {
     * @see AggregationFn#processFirst(Scan)
     */
    public void processFirst(Scan s) {
-	   val = s.getVal(fldname);
+	   val = s.getVal(col);
    }
    
    /**
@@ -38,7 +47,7 @@ public class MinFn implements AggregationFn {
     * @see AggregationFn#processNext(Scan)
     */
    public void processNext(Scan s) {
-	   Constant newval = s.getVal(fldname);
+	   Constant newval = s.getVal(col);
 	   if (newval.compareTo(val) < 0)
 		   val = newval;
    }
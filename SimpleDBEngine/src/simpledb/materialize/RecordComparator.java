@@ -11,6 +11,7 @@ import simpledb.query.Scan;
  */
 public class RecordComparator implements Comparator<Scan> {
    private HashMap<String, String> fields;
+   private boolean[] desc;
    
    /**
     * Create a comparator using the specified fields,
@@ -19,6 +20,10 @@ public class RecordComparator implements Comparator<Scan> {
     */
    public RecordComparator(HashMap<String, String> fields) {
       this.fields = fields;
+      desc = new boolean[fields.size()];
+      int i = 0;
+      for (String fldname : fields.keySet())
+         desc[i++] = fields.get(fldname).equals("desc");
    }
    
    /**
@@ -47,4 +52,40 @@ public class RecordComparator implements Comparator<Scan> {
       }
       return 0;
    }
+
+   /**
+    * Return the columns of the sort fields in the
+    * specified scan, in the order that they are compared.
+    * @param s the scan
+    * @return the columns of the sort fields
+    * @see #compare(Scan, int[], Scan, int[])
+    */
+   public int[] columns(Scan s) {
+      int[] cols = new int[fields.size()];
+      int i = 0;
+      for (String fldname : fields.keySet())
+         cols[i++] = s.findField(fldname);
+      return cols;
+   }
+
+   /**
+    * Compare the current records of the two specified scans,
+    * reading the sort fields by column.
+    * @param s1 the first scan
+    * @param cols1 the columns of the sort fields in the first scan
+    * @param s2 the second scan
+    * @param cols2 the columns of the sort fields in the second scan
+    * @return the result of comparing each scan's current record according to the field list
+    * @see #compare(Scan, Scan)
+    */
+   public int compare(Scan s1, int[] cols1, Scan s2, int[] cols2) {
+      for (int i=0; i<cols1.length; i++) {
+         int result = s1.getVal(cols1[i]).compareTo(s2.getVal(cols2[i]));
+         if (desc[i])
+            result = -result;
+         if (result != 0)
+            return result;
+      }
+      return 0;
+   }
 }
@@ -63,11 +63,12 @@ public class SortPlan implements Plan {
    public int blocksAccessed() {
       Plan mp = new MaterializePlan(tx, p); // not opened; just for analysis
       // calculate cost for sorting 
-      double numPartitions = Math.ceil((double) mp.blocksAccessed() / tx.availableBuffs());
+      int buffs = tx.maxBufferGrant();
+      double numPartitions = Math.ceil((double) mp.blocksAccessed() / buffs);
  
       
-      double x = Math.ceil(numPartitions / tx.availableBuffs()); 
-      double numMergePasses = Math.ceil(Math.log(x) / Math.log((double) tx.availableBuffs() - 1));
+      double x = Math.ceil(numPartitions / buffs); 
+      double numMergePasses = Math.ceil(Math.log(x) / Math.log((double) buffs - 1));
       int result = (int) (mp.blocksAccessed() * (1 + numMergePasses));
       
       return result;
@@ -106,14 +107,19 @@ public class SortPlan implements Plan {
       src.beforeFirst();
       if (!src.next())
          return temps;
-      TempTable currenttemp = new TempTable(tx, sch);
+      // the runs keep the codes of the fields the source reads codes of
+      Map<String,String> dicts = TempTable.dictionaries(src, sch);
+      TempTable currenttemp = new TempTable(tx, sch, dicts);
       temps.add(currenttemp);
       UpdateScan currentscan = currenttemp.open();
-      while (copy(src, currentscan))
-         if (comp.compare(src, currentscan) < 0) {
+      int[] srccols = columns(src), tempcols = columns(currentscan);
+      int[] srccomp = comp.columns(src), tempcomp = comp.columns(currentscan);
+      boolean[] encoded = currenttemp.encoded(tempcols);
+      while (copy(src, srccols, currentscan, tempcols, encoded))
+         if (comp.compare(src, srccomp, currentscan, tempcomp) < 0) {
          // start a new run
          currentscan.close();
-         currenttemp = new TempTable(tx, sch);
+         currenttemp = new TempTable(tx, sch, dicts);
          temps.add(currenttemp);
          currentscan = (UpdateScan) currenttemp.open();
       }
@@ -136,48 +142,67 @@ public class SortPlan implements Plan {
    private TempTable mergeTwoRuns(TempTable p1, TempTable p2) {
       Scan src1 = p1.open();
       Scan src2 = p2.open();
-      TempTable result = new TempTable(tx, sch);
+      TempTable result = new TempTable(tx, sch, p1.dictionaries());
       UpdateScan dest = result.open();
       
+      // the runs and the result have the same layout, and so the same columns
+      int[] cols = columns(dest), compcols = comp.columns(dest);
+      boolean[] encoded = result.encoded(cols);
+      
       boolean hasmore1 = src1.next();
       boolean hasmore2 = src2.next();
       
       while (hasmore1 && hasmore2) {
-    	 int compareResult = comp.compare(src1,  src2);
+    	 int compareResult = comp.compare(src1, compcols, src2, compcols);
 	     if (compareResult < 0)
-	        hasmore1 = copy(src1, dest);
+	        hasmore1 = copy(src1, cols, dest, cols, encoded);
 	     else if (compareResult == 0 && isDistinct)
 	    	hasmore1 = src1.next();
 	     else
-	        hasmore2 = copy(src2, dest);
+	        hasmore2 = copy(src2, cols, dest, cols, encoded);
       }
       
       if (hasmore1)
          while (hasmore1)
-         hasmore1 = copy(src1, dest);
+         hasmore1 = copy(src1, cols, dest, cols, encoded);
       else
          while (hasmore2)
-         hasmore2 = copy(src2, dest);
+         hasmore2 = copy(src2, cols, dest, cols, encoded);
       src1.close();
       src2.close();
       dest.close();
       return result;
    }
    
-   private boolean copy(Scan src, UpdateScan dest) {
-	  HashMap<String, Constant> store = new HashMap<>();
+   /**
+    * Copy the current record of the source scan to the destination,
+    * and move the source to its next record, skipping records
+    * equal to the copied one if the sort removes duplicates.
+    * The fields are read and written by column; the code of
+    * an encoded field is copied as it is.
+    * @return false if the source has no next record
+    */
+   private boolean copy(Scan src, int[] srccols, UpdateScan dest, int[] destcols, boolean[] encoded) {
+      Constant[] store = new Constant[srccols.length];
       dest.insert();
       
-      for (String fldname : sch.fields()) {
-         dest.setVal(fldname, src.getVal(fldname));
-      	 store.put(fldname, src.getVal(fldname));
+      for (int i=0; i<srccols.length; i++) {
+         if (encoded[i]) {
+            store[i] = new Constant(src.getInt(srccols[i]));
+            dest.setInt(destcols[i], store[i].asInt());
+         }
+         else {
+            store[i] = src.getVal(srccols[i]);
+            dest.setVal(destcols[i], store[i]);
+         }
       }
       
       boolean next = src.next();
       if (isDistinct) {
 	      while (next) {
-	    	 for (String fldname : sch.fields()) {
-	             if (!store.get(fldname).equals(src.getVal(fldname))) {
+	    	 for (int i=0; i<srccols.length; i++) {
+	             Constant val = encoded[i] ? new Constant(src.getInt(srccols[i])) : src.getVal(srccols[i]);
+	             if (!store[i].equals(val)) {
 	            	 return next;
 	             }
 	          }
@@ -187,6 +212,18 @@ public class SortPlan implements Plan {
       
       return next;
    }
+
+   /**
+    * Return the columns in the specified scan
+    * of the fields of the sorted schema.
+    */
+   private int[] columns(Scan s) {
+      List<String> fields = sch.fields();
+      int[] cols = new int[fields.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = s.findField(fields.get(i));
+      return cols;
+   }
    
    public String getQueryPlan(String tblname, String currQueryPlan) {
 	   String sortBy = "sort by";
@@ -6,6 +6,7 @@ import java.util.List;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 import simpledb.query.UpdateScan;
+import simpledb.record.Dictionary;
 import simpledb.record.RID;
 
 /**
@@ -15,6 +16,7 @@ import simpledb.record.RID;
 public class SortScan implements Scan {
    private UpdateScan s1, s2=null, currentscan=null;
    private RecordComparator comp;
+   private int[] compcols;
    private boolean hasmore1, hasmore2=false;
    private List<RID> savedposition;
    private boolean isEmpty;
@@ -33,6 +35,8 @@ public class SortScan implements Scan {
       }
       this.comp = comp;
       s1 = (UpdateScan) runs.get(0).open();
+      // the runs have the same layout, and so the same columns
+      compcols = comp.columns(s1);
       hasmore1 = s1.next();
       if (runs.size() > 1) {
          s2 = (UpdateScan) runs.get(1).open();
@@ -79,7 +83,7 @@ public class SortScan implements Scan {
       if (!hasmore1 && !hasmore2)
          return false;
       else if (hasmore1 && hasmore2) {
-         if (comp.compare(s1, s2) < 0)
+         if (comp.compare(s1, compcols, s2, compcols) < 0)
             currentscan = s1;
          else
             currentscan = s2;
@@ -130,6 +134,38 @@ public class SortScan implements Scan {
       return currentscan.getString(fldname);
    }
    
+   /**
+    * Return the column of the specified field.
+    * All the runs have the same layout, so the
+    * column is the same in each of them.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return isEmpty ? -1 : s1.findField(fldname);
+   }
+
+   public Constant getVal(int col) {
+      return currentscan.getVal(col);
+   }
+
+   public int getInt(int col) {
+      return currentscan.getInt(col);
+   }
+
+   public String getString(int col) {
+      return currentscan.getString(col);
+   }
+
+   /**
+    * Return the dictionary of the field in the specified column.
+    * The runs have the same layout, so the dictionary
+    * of the first run serves for both of them.
+    * @see Scan#dictionary(int)
+    */
+   public Dictionary dictionary(int col) {
+      return isEmpty ? null : s1.dictionary(col);
+   }
+
    /**
     * Return true if the specified field is in the current scan.
     * @see Scan#hasField(String)
@@ -11,6 +11,7 @@ import simpledb.query.Scan;
  */
 public class SumFn implements AggregationFn {
    private String fldname;
+   private int col;
    private int sum;
    private boolean isDistinct;
    private HashSet<Integer> set; 
@@ -25,6 +26,14 @@ public class SumFn implements AggregationFn {
       this.set = new HashSet<>();
    }
    
+   /**
+    * Find the column of the aggregated field.
+    * @see AggregationFn#bind(Scan)
+    */
+   public void bind(Scan s) {
+      col = s.findField(fldname);
+   }
+   
    /**
     * Start a new sum.
     * Since SimpleDB does not support null values,
@@ -34,7 +43,7 @@ public class SumFn implements AggregationFn {
     * @see AggregationFn#processFirst(Scan)
     */
    public void processFirst(Scan s) {
-	   sum = s.getVal(fldname).asInt();
+	   sum = s.getVal(col).asInt();
 	   set.add(sum); 
    }
    
@@ -45,7 +54,7 @@ public class SumFn implements AggregationFn {
     * @see AggregationFn#processNext(Scan)
     */
    public void processNext(Scan s) {
-	  int nextVal = s.getVal(fldname).asInt();
+	  int nextVal = s.getVal(col).asInt();
 	  if (isDistinct && set.contains(nextVal)) {
 		  return;
 	  }
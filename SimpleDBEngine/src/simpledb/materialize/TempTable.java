@@ -1,6 +1,12 @@
 package simpledb.materialize;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.query.Scan;
 import simpledb.query.UpdateScan;
+import simpledb.record.Dictionary;
 import simpledb.record.Layout;
 import simpledb.record.Schema;
 import simpledb.record.TableScan;
@@ -11,6 +17,8 @@ import simpledb.tx.Transaction;
  * A temporary table is not registered in the catalog.
  * The class therefore has a method getTableInfo to return the 
  * table's metadata. 
+ * A temporary table may keep the codes of dictionary-encoded
+ * fields, so that its records are compared on their codes.
  * @author Edward Sciore
  */
 public class TempTable {
@@ -18,6 +26,7 @@ public class TempTable {
    private Transaction tx;
    private String tblname;
    private Layout layout;
+   private Map<String,String> dictionaries = Collections.emptyMap();
    
    /**
     * Allocate a name for for a new temporary table
@@ -31,6 +40,62 @@ public class TempTable {
       layout = new Layout(sch);
    }
    
+   /**
+    * Allocate a name for a new temporary table having the
+    * specified schema, which stores the codes of the specified
+    * dictionary-encoded fields.
+    * @param sch the new table's schema
+    * @param dictionaries the name of the dictionary of each encoded field
+    * @param tx the calling transaction
+    * @see #dictionaries(Scan, Schema)
+    */
+   public TempTable(Transaction tx, Schema sch, Map<String,String> dictionaries) {
+      this.tx = tx;
+      tblname = nextTableName();
+      this.dictionaries = dictionaries;
+      layout = new Layout(sch, Layout.FIXED, null, dictionaries);
+   }
+   
+   /**
+    * Return the names of the dictionaries of the fields of the
+    * schema whose codes the specified scan reads. A temporary
+    * table created with them can store the scan's codes as they are.
+    * @param s the scan
+    * @param sch the fields to consider
+    * @return the name of the dictionary of each encoded field
+    */
+   public static Map<String,String> dictionaries(Scan s, Schema sch) {
+      Map<String,String> dicts = new HashMap<>();
+      for (String fldname : sch.fields()) {
+         Dictionary dict = s.dictionary(s.findField(fldname));
+         if (dict != null)
+            dicts.put(fldname, dict.name());
+      }
+      return dicts;
+   }
+   
+   /**
+    * Return the names of the dictionaries of the
+    * encoded fields whose codes the table stores.
+    * @return the name of the dictionary of each encoded field
+    */
+   public Map<String,String> dictionaries() {
+      return dictionaries;
+   }
+   
+   /**
+    * Return, for each of the specified columns of the table,
+    * whether it stores the codes of an encoded field.
+    * @param cols the columns
+    * @return true for each column that stores codes
+    */
+   public boolean[] encoded(int[] cols) {
+      boolean[] encoded = new boolean[cols.length];
+      for (int i=0; i<cols.length; i++)
+         encoded[i] = layout.dictionary(cols[i]) != null;
+      return encoded;
+   }
+   
    /**
     * Open a table scan for the temporary table.
     */
@@ -0,0 +1,33 @@
+package simpledb.metadata;
+
+import java.io.File;
+
+import simpledb.server.SimpleDB;
+
+/**
+ * Creates a database and opens it again, which should succeed.
+ * The format file is then removed, so that the database looks
+ * like one of the older format, and opening it should fail.
+ */
+public class FormatTest {
+   public static void main(String[] args) throws Exception {
+      File dir = new File("formattest");
+      if (dir.exists()) {
+         for (File f : dir.listFiles())
+            f.delete();
+         dir.delete();
+      }
+      new SimpleDB("formattest");
+      new SimpleDB("formattest");
+      System.out.println("a database of the current format opens");
+
+      new File(dir, TableMgr.FORMAT_FILE).delete();
+      try {
+         new SimpleDB("formattest");
+         System.out.println("a database of the older format opened");
+      }
+      catch (RuntimeException e) {
+         System.out.println("a database of the older format is rejected: " + e.getMessage());
+      }
+   }
+}
@@ -51,6 +51,16 @@ public class IndexInfo {
     * @return the Index object associated with this information
     */
    public Index open() {
+      return open(tx);
+   }
+
+   /**
+    * Open the index described by this object
+    * on behalf of the specified transaction.
+    * @param tx the transaction that uses the index
+    * @return the Index object associated with this information
+    */
+   public Index open(Transaction tx) {
       if (idxtype.equals("btree")) {
          return new BTreeIndex(tx, idxname, idxLayout);
       } else {
@@ -19,6 +19,7 @@ class IndexMgr {
    private Layout layout;
    private TableMgr tblmgr;
    private StatMgr statmgr;
+   private PartitionMgr partmgr;
 
    /**
     * Create the index manager.
@@ -27,7 +28,7 @@ class IndexMgr {
     * @param isnew indicates whether this is a new database
     * @param tx the system startup transaction
     */
-   public IndexMgr(boolean isnew, TableMgr tblmgr, StatMgr statmgr, Transaction tx) {
+   public IndexMgr(boolean isnew, TableMgr tblmgr, StatMgr statmgr, PartitionMgr partmgr, Transaction tx) {
       if (isnew) {
          Schema sch = new Schema();
          sch.addStringField("indexname", MAX_NAME);
@@ -38,6 +39,7 @@ class IndexMgr {
       }
       this.tblmgr = tblmgr;
       this.statmgr = statmgr;
+      this.partmgr = partmgr;
       layout = tblmgr.getLayout("idxcat", tx);
    }
    
@@ -49,9 +51,17 @@ class IndexMgr {
     * @param tblname the name of the indexed table
     * @param fldname the name of the indexed field
     * @param idxType the type of the index (btree or hash)
+    * A btree table cannot be indexed, because its records move
+    * within the B-tree and so have no lasting RIDs.
+    * Neither can a partitioned table, whose RIDs do not
+    * say which partition a record is in.
     * @param tx the calling transaction
     */
    public void createIndex(String idxname, String tblname, String fldname, String idxType, Transaction tx) {
+      if (tblmgr.getLayout(tblname, tx).key() != null)
+         throw new RuntimeException("table " + tblname + " is index-organized and cannot be indexed.");
+      if (partmgr.getPartitionInfo(tblname, tx) != null)
+         throw new RuntimeException("table " + tblname + " is partitioned and cannot be indexed.");
       TableScan ts = new TableScan(tx, "idxcat", layout);
       ts.insert();
       ts.setString("indexname", idxname);
@@ -1,5 +1,6 @@
 package simpledb.metadata;
 
+import java.util.List;
 import java.util.Map;
 
 import simpledb.record.Layout;
@@ -11,17 +12,53 @@ public class MetadataMgr {
    private static ViewMgr   viewmgr;
    private static StatMgr   statmgr;
    private static IndexMgr  idxmgr;
+   private static PartitionMgr partmgr;
+   
+   /**
+    * Reject a database whose on-disk format this system cannot read.
+    * It is called before the database is recovered, since the
+    * log of an older format cannot be replayed either.
+    * @param tx the startup transaction
+    */
+   public static void checkFormat(Transaction tx) {
+      TableMgr.checkFormat(tx);
+   }
    
    public MetadataMgr(boolean isnew, Transaction tx) {
       tblmgr  = new TableMgr(isnew, tx);
       viewmgr = new ViewMgr(isnew, tblmgr, tx);
       statmgr = new StatMgr(tblmgr, tx);
-      idxmgr  = new IndexMgr(isnew, tblmgr, statmgr, tx);
+      partmgr = new PartitionMgr(isnew, tblmgr, tx);
+      idxmgr  = new IndexMgr(isnew, tblmgr, statmgr, partmgr, tx);
    }
    
    public void createTable(String tblname, Schema sch, Transaction tx) {
       tblmgr.createTable(tblname, sch, tx);
    }
+
+   /**
+    * Creates a table whose records have the specified format.
+    */
+   public void createTable(String tblname, Schema sch, String format, Transaction tx) {
+      tblmgr.createTable(tblname, sch, format, tx);
+   }
+
+   /**
+    * Creates a table whose records have the specified format,
+    * and for a btree table, are kept in the order of the primary key.
+    */
+   public void createTable(String tblname, Schema sch, String format, String keyfld, Transaction tx) {
+      tblmgr.createTable(tblname, sch, format, keyfld, tx);
+   }
+
+   /**
+    * Creates a table some of whose string fields are dictionary
+    * encoded, with the specified dictionary for each such field.
+    */
+   public void createTable(String tblname, Schema sch, String format, String keyfld,
+                           Map<String,String> dictionaries, Transaction tx) {
+      tblmgr.createTable(tblname, sch, format, keyfld, dictionaries, tx);
+   }
    
    public Layout getLayout(String tblname, Transaction tx) {
       return tblmgr.getLayout(tblname, tx);
@@ -53,6 +90,30 @@ public class MetadataMgr {
       return idxmgr.getIndexInfo(tblname, tx);
    }
    
+   /**
+    * Partitions a new table.
+    */
+   public void createPartitions(String tblname, String fldname, String method,
+                                List<String> partnames, List<Integer> bounds, Transaction tx) {
+      partmgr.createPartitions(tblname, fldname, method, partnames, bounds, tx);
+   }
+   
+   public void addPartition(String tblname, String partname, int bound, Transaction tx) {
+      partmgr.addPartition(tblname, partname, bound, tx);
+   }
+   
+   public void dropPartition(String tblname, String partname, Transaction tx) {
+      partmgr.dropPartition(tblname, partname, tx);
+   }
+   
+   /**
+    * Returns the partitioning of the table, or null
+    * if the table is not partitioned.
+    */
+   public PartitionInfo getPartitionInfo(String tblname, Transaction tx) {
+      return partmgr.getPartitionInfo(tblname, tx);
+   }
+   
    public StatInfo getStatInfo(String tblname, Layout layout, Transaction tx) {
       return statmgr.getStatInfo(tblname, layout, tx);
    }
@@ -0,0 +1,142 @@
+package simpledb.metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.query.Constant;
+import simpledb.query.Predicate;
+
+/**
+ * The information about how a table is partitioned.
+ * Each partition of the table is stored as a table of its own,
+ * whose files are named after the table and the partition.
+ * A record goes to the partition that its value of
+ * the partitioning field selects:
+ * <ul>
+ * <li>For range partitioning, the partitions are ordered by
+ * their bounds, and each partition holds the values from the
+ * bound of the previous partition up to, but not including,
+ * its own bound. The field is an int field.
+ * <li>For hash partitioning, the hash code of the value
+ * selects one of a fixed number of partitions.
+ * </ul>
+ * The planner uses this information to read only the partitions
+ * that may hold the records a predicate selects.
+ */
+public class PartitionInfo {
+   public static final String RANGE = "range";
+   public static final String HASH  = "hash";
+   
+   /**
+    * The bound of a range partition that holds
+    * all the values above the previous bound.
+    */
+   public static final int MAXVALUE = Integer.MAX_VALUE;
+   
+   private String tblname, fldname, method;
+   private List<String> partnames;
+   private List<Integer> bounds;
+   
+   /**
+    * Create a PartitionInfo object for the specified table.
+    * @param tblname the name of the table
+    * @param fldname the name of the partitioning field
+    * @param method the partitioning method (range or hash)
+    * @param partnames the names of the partitions, in order
+    * @param bounds the bounds of the range partitions, in order
+    */
+   public PartitionInfo(String tblname, String fldname, String method,
+                        List<String> partnames, List<Integer> bounds) {
+      this.tblname = tblname;
+      this.fldname = fldname;
+      this.method = method;
+      this.partnames = partnames;
+      this.bounds = bounds;
+   }
+   
+   /**
+    * Return the name of the table that stores
+    * the specified partition of the specified table.
+    * @param tblname the name of the partitioned table
+    * @param partname the name of the partition
+    * @return the name of the partition's table
+    */
+   public static String tableName(String tblname, String partname) {
+      return tblname + "." + partname;
+   }
+   
+   public String fieldName() {
+      return fldname;
+   }
+   
+   public String method() {
+      return method;
+   }
+   
+   /**
+    * Return the names of the partitions, in order.
+    * @return the names of the partitions
+    */
+   public List<String> partitions() {
+      return partnames;
+   }
+   
+   /**
+    * Return the upper bound of the specified range partition.
+    * @param partname the name of the partition
+    * @return the bound, which is MAXVALUE for an unbounded partition
+    */
+   public int bound(String partname) {
+      return bounds.get(partnames.indexOf(partname));
+   }
+   
+   /**
+    * Return the name of the partition that holds
+    * the records having the specified value.
+    * @param val a value of the partitioning field
+    * @return the name of the partition
+    */
+   public String partitionOf(Constant val) {
+      if (method.equals(HASH))
+         return partnames.get(Math.abs(val.hashCode() % partnames.size()));
+      int v = val.asInt();
+      for (int i=0; i<partnames.size(); i++)
+         if (v < bounds.get(i) || bounds.get(i) == MAXVALUE)
+            return partnames.get(i);
+      throw new RuntimeException("no partition of table " + tblname + " holds value " + val + ".");
+   }
+   
+   /**
+    * Return the names of the partitions that may hold records
+    * satisfying the specified predicate, in order.
+    * A range partition is left out if the predicate bounds the
+    * partitioning field outside of its range; a strict bound
+    * excludes the bound itself. A hash partition can
+    * only be chosen when the predicate equates the field with a constant.
+    * @param pred the selection predicate
+    * @return the names of the partitions to read
+    */
+   public List<String> prune(Predicate pred) {
+      Constant lo = pred.lowerBound(fldname);
+      Constant hi = pred.upperBound(fldname);
+      if (method.equals(HASH)) {
+         if (lo != null && lo.equals(hi))
+            return List.of(partitionOf(lo));
+         return partnames;
+      }
+      // the field is an int, so "F>c" is "F>=c+1", and "F<c" is "F<=c-1"
+      long min = (lo == null) ? Long.MIN_VALUE
+                              : lo.asInt() + (pred.isLowerBoundStrict(fldname) ? 1L : 0L);
+      long max = (hi == null) ? Long.MAX_VALUE
+                              : hi.asInt() - (pred.isUpperBoundStrict(fldname) ? 1L : 0L);
+      List<String> result = new ArrayList<>();
+      for (int i=0; i<partnames.size(); i++) {
+         int bound = bounds.get(i);
+         boolean abovelo = bound == MAXVALUE || min < bound;
+         boolean belowhi = i == 0 || max >= bounds.get(i-1);
+         if (abovelo && belowhi)
+            result.add(partnames.get(i));
+      }
+      return result;
+   }
+}
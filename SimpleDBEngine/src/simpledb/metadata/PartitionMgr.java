@@ -0,0 +1,171 @@
+package simpledb.metadata;
+
+import static java.sql.Types.INTEGER;
+import static simpledb.metadata.TableMgr.MAX_NAME;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.record.Layout;
+import simpledb.record.Schema;
+import simpledb.record.TableScan;
+import simpledb.tx.Transaction;
+
+/**
+ * The partition manager.
+ * The partitions of each partitioned table are stored in the
+ * <i>partcat</i> table, one record per partition. The record of
+ * a range partition holds its bound; that of a hash partition
+ * holds its position instead.
+ */
+class PartitionMgr {
+   private static final String[] SUFFIXES = { ".tbl", ".fsm", ".dir" };
+   private Layout layout;
+   private TableMgr tblmgr;
+   
+   /**
+    * Create the partition manager.
+    * If the database is new, then the <i>partcat</i> table is created.
+    * @param isnew indicates whether this is a new database
+    * @param tx the system startup transaction
+    */
+   public PartitionMgr(boolean isnew, TableMgr tblmgr, Transaction tx) {
+      if (isnew) {
+         Schema sch = new Schema();
+         sch.addStringField("tblname", MAX_NAME);
+         sch.addStringField("partname", MAX_NAME);
+         sch.addStringField("fldname", MAX_NAME);
+         sch.addStringField("method", 8);
+         sch.addIntField("bound");
+         tblmgr.createTable("partcat", sch, tx);
+      }
+      this.tblmgr = tblmgr;
+      layout = tblmgr.getLayout("partcat", tx);
+   }
+   
+   /**
+    * Partition the specified table, which must still be empty.
+    * The bounds of range partitions must increase, and only
+    * the last bound may be MAXVALUE.
+    * @param tblname the name of the table
+    * @param fldname the name of the partitioning field
+    * @param method the partitioning method (range or hash)
+    * @param partnames the names of the partitions
+    * @param bounds the bounds of the partitions, or their positions
+    * @param tx the calling transaction
+    */
+   public void createPartitions(String tblname, String fldname, String method,
+                                List<String> partnames, List<Integer> bounds, Transaction tx) {
+      Schema sch = tblmgr.getLayout(tblname, tx).schema();
+      if (!sch.hasField(fldname))
+         throw new RuntimeException("field " + fldname + " not found.");
+      if (method.equals(PartitionInfo.RANGE) && sch.type(fldname) != INTEGER)
+         throw new RuntimeException("table " + tblname + " can only be range partitioned on an int field.");
+      for (int i=0; i<partnames.size(); i++) {
+         if (partnames.indexOf(partnames.get(i)) != i)
+            throw new RuntimeException("partition " + partnames.get(i) + " is defined twice.");
+         if (i > 0 && bounds.get(i) <= bounds.get(i-1))
+            throw new RuntimeException("partition " + partnames.get(i) + " does not follow the bound of the one before it.");
+      }
+      TableScan ts = new TableScan(tx, "partcat", layout);
+      for (int i=0; i<partnames.size(); i++)
+         insert(ts, tblname, partnames.get(i), fldname, method, bounds.get(i));
+      ts.close();
+   }
+   
+   /**
+    * Add a partition to the end of a range partitioned table.
+    * Files left behind by a partition of the same name,
+    * which a crash kept from being deleted, are emptied.
+    * @param tblname the name of the table
+    * @param partname the name of the new partition
+    * @param bound the bound of the new partition
+    * @param tx the calling transaction
+    */
+   public void addPartition(String tblname, String partname, int bound, Transaction tx) {
+      PartitionInfo pi = rangeInfo(tblname, tx);
+      List<String> partnames = pi.partitions();
+      if (partnames.contains(partname))
+         throw new RuntimeException("partition " + partname + " of table " + tblname + " already exists.");
+      if (bound <= pi.bound(partnames.get(partnames.size()-1)))
+         throw new RuntimeException("partition " + partname + " does not follow the bound of the last partition.");
+      TableScan ts = new TableScan(tx, "partcat", layout);
+      insert(ts, tblname, partname, pi.fieldName(), PartitionInfo.RANGE, bound);
+      ts.close();
+      for (String suffix : SUFFIXES)
+         tx.truncate(PartitionInfo.tableName(tblname, partname) + suffix, 0);
+   }
+   
+   /**
+    * Remove a partition from a range partitioned table.
+    * The records of the partition are not deleted one by one:
+    * its files are deleted when the transaction commits.
+    * The values of the partition's range go to the next partition.
+    * @param tblname the name of the table
+    * @param partname the name of the partition
+    * @param tx the calling transaction
+    */
+   public void dropPartition(String tblname, String partname, Transaction tx) {
+      PartitionInfo pi = rangeInfo(tblname, tx);
+      if (!pi.partitions().contains(partname))
+         throw new RuntimeException("partition " + partname + " of table " + tblname + " not found.");
+      if (pi.partitions().size() == 1)
+         throw new RuntimeException("table " + tblname + " has no other partition.");
+      TableScan ts = new TableScan(tx, "partcat", layout);
+      while (ts.next())
+         if (ts.getString("tblname").equals(tblname)
+               && ts.getString("partname").equals(partname))
+            ts.delete();
+      ts.close();
+      for (String suffix : SUFFIXES)
+         tx.dropFile(PartitionInfo.tableName(tblname, partname) + suffix);
+   }
+   
+   /**
+    * Return the partitioning of the specified table,
+    * with its partitions in order.
+    * @param tblname the name of the table
+    * @param tx the calling transaction
+    * @return the partition info, or null if the table is not partitioned
+    */
+   public PartitionInfo getPartitionInfo(String tblname, Transaction tx) {
+      String fldname = null, method = null;
+      List<String> partnames = new ArrayList<>();
+      List<Integer> bounds = new ArrayList<>();
+      TableScan ts = new TableScan(tx, "partcat", layout);
+      while (ts.next())
+         if (ts.getString("tblname").equals(tblname)) {
+            fldname = ts.getString("fldname");
+            method = ts.getString("method");
+            int bound = ts.getInt("bound");
+            int pos = 0;
+            while (pos < bounds.size() && bounds.get(pos) < bound)
+               pos++;
+            partnames.add(pos, ts.getString("partname"));
+            bounds.add(pos, bound);
+         }
+      ts.close();
+      if (partnames.isEmpty())
+         return null;
+      return new PartitionInfo(tblname, fldname, method, partnames, bounds);
+   }
+   
+   private PartitionInfo rangeInfo(String tblname, Transaction tx) {
+      PartitionInfo pi = getPartitionInfo(tblname, tx);
+      if (pi == null)
+         throw new RuntimeException("table " + tblname + " is not partitioned.");
+      if (!pi.method().equals(PartitionInfo.RANGE))
+         throw new RuntimeException("the partitions of table " + tblname + " are fixed by its hash partitioning.");
+      return pi;
+   }
+   
+   private void insert(TableScan ts, String tblname, String partname,
+                       String fldname, String method, int bound) {
+      ts.insert();
+      ts.setString("tblname", tblname);
+      ts.setString("partname", partname);
+      ts.setString("fldname", fldname);
+      ts.setString("method", method);
+      ts.setInt("bound", bound);
+   }
+}
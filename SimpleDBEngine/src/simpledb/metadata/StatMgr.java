@@ -2,7 +2,9 @@ package simpledb.metadata;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
+import simpledb.index.btree.BTreeTableScan;
 import simpledb.record.Layout;
 import simpledb.record.TableScan;
 import simpledb.tx.Transaction;
@@ -13,12 +15,16 @@ import simpledb.tx.Transaction;
  * The manager does not store this information in the database.
  * Instead, it calculates this information on system startup,
  * and periodically refreshes it.
+ * A refresh scans every table, and so may wait for locks
+ * and buffers; the statistics are therefore guarded by a
+ * {@link ReentrantLock} rather than the object's monitor.
  * @author Edward Sciore
  */
 class StatMgr {
    private TableMgr tblMgr;
    private Map<String,StatInfo> tablestats;
    private int numcalls;
+   private ReentrantLock latch = new ReentrantLock();
    
    /**
     * Create the statistics manager.
@@ -38,20 +44,26 @@ class StatMgr {
     * @param tx the calling transaction
     * @return the statistical information about the table
     */
-   public synchronized StatInfo getStatInfo(String tblname, 
+   public StatInfo getStatInfo(String tblname, 
                               Layout layout, Transaction tx) {
-      numcalls++;
-      if (numcalls > 100)
-         refreshStatistics(tx);
-      StatInfo si = tablestats.get(tblname);
-      if (si == null) {
-         si = calcTableStats(tblname, layout, tx);
-         tablestats.put(tblname, si);
+      latch.lock();
+      try {
+         numcalls++;
+         if (numcalls > 100)
+            refreshStatistics(tx);
+         StatInfo si = tablestats.get(tblname);
+         if (si == null) {
+            si = calcTableStats(tblname, layout, tx);
+            tablestats.put(tblname, si);
+         }
+         return si;
+      }
+      finally {
+         latch.unlock();
       }
-      return si;
    }
    
-   private synchronized void refreshStatistics(Transaction tx) {
+   private void refreshStatistics(Transaction tx) {
       tablestats = new HashMap<String,StatInfo>();
       numcalls = 0;
       Layout tcatlayout = tblMgr.getLayout("tblcat", tx);
@@ -65,10 +77,23 @@ class StatMgr {
       tcat.close();
    }
    
-   private synchronized StatInfo calcTableStats(String tblname, 
+   private StatInfo calcTableStats(String tblname, 
                               Layout layout, Transaction tx) {
       int numRecs = 0;
       int numblocks = 0;
+      // the records of a partitioned table are in its partitions,
+      // and a scan would give the table itself a first block
+      if (tx.size(tblname + ".tbl") == 0)
+         return new StatInfo(0, 0);
+      if (layout.key() != null) {
+         // the records of a btree table have no RIDs,
+         // and every block of its file is a leaf
+         BTreeTableScan ts = new BTreeTableScan(tx, tblname, layout);
+         while (ts.next())
+            numRecs++;
+         ts.close();
+         return new StatInfo(tx.size(tblname + ".tbl"), numRecs);
+      }
       TableScan ts = new TableScan(tx, tblname, layout);
       while (ts.next()) {
          numRecs++;
@@ -1,8 +1,12 @@
 package simpledb.metadata;
 
+import static java.sql.Types.VARCHAR;
+
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import simpledb.file.BlockId;
 import simpledb.record.Layout;
 import simpledb.record.Schema;
 import simpledb.record.TableScan;
@@ -13,11 +17,28 @@ import simpledb.tx.Transaction;
  * There are methods to create a table, save the metadata
  * in the catalog, and obtain the metadata of a
  * previously-created table.
+ * The catalog also names the dictionary of each
+ * dictionary-encoded field.
+ * <p>
+ * The first block of a format file records the version of the
+ * on-disk format that the database was created with.
+ * Databases of an older format, whose fixed records began with
+ * an in-use flag instead of having their slots kept in a bitmap,
+ * have no format file; their catalog would be read with the wrong
+ * field offsets, so they are rejected when the database starts.
  * @author Edward Sciore
  */
 class TableMgr {
    // The max characters a tablename or fieldname can have.
    public static final int MAX_NAME = 16;
+   // The max characters of the name of a record format.
+   public static final int MAX_FORMAT = 8;
+   // The max characters of the name of a dictionary,
+   // which is "tblname.fldname" unless one is given.
+   public static final int MAX_DICT = 2 * MAX_NAME + 1;
+   // The file that records the on-disk format, and its version.
+   public static final String FORMAT_FILE = "catalog.fmt";
+   public static final int FORMAT_VERSION = 2;
    private Layout tcatLayout, fcatLayout;
 
    /**
@@ -31,6 +52,8 @@ class TableMgr {
       Schema tcatSchema = new Schema();
       tcatSchema.addStringField("tblname", MAX_NAME);
       tcatSchema.addIntField("slotsize");
+      tcatSchema.addStringField("format", MAX_FORMAT);
+      tcatSchema.addStringField("keyfld", MAX_NAME);
       tcatLayout = new Layout(tcatSchema);
 
       Schema fcatSchema = new Schema();
@@ -39,12 +62,44 @@ class TableMgr {
       fcatSchema.addIntField("type");
       fcatSchema.addIntField("length");
       fcatSchema.addIntField("offset");
+      fcatSchema.addStringField("dictionary", MAX_DICT);
       fcatLayout = new Layout(fcatSchema);
 
       if (isNew) {
+         BlockId blk = tx.append(FORMAT_FILE);
+         tx.pin(blk);
+         tx.setInt(blk, 0, FORMAT_VERSION, true);
+         tx.unpin(blk);
          createTable("tblcat", tcatSchema, tx);
          createTable("fldcat", fcatSchema, tx);
       }
+      else {
+         checkFormat(tx);
+         int version = FORMAT_VERSION;
+         if (tx.size(FORMAT_FILE) > 0) {
+            BlockId blk = new BlockId(FORMAT_FILE, 0);
+            tx.pin(blk);
+            version = tx.getInt(blk, 0);
+            tx.unpin(blk);
+         }
+         if (version != FORMAT_VERSION)
+            throw new RuntimeException("the database has format version " + version
+                                       + ", but this system reads only version " + FORMAT_VERSION + ".");
+      }
+   }
+
+   /**
+    * Reject a database whose catalog was created in the older
+    * format, which has no format file. The check looks only at
+    * the files' sizes, so it may be made before recovery: the format
+    * file is extended on disk when the database is created, even
+    * if the block that records the version is not yet written.
+    * @param tx the startup transaction
+    */
+   static void checkFormat(Transaction tx) {
+      if (tx.size("tblcat.tbl") > 0 && tx.size(FORMAT_FILE) == 0)
+         throw new RuntimeException("the database was created in an older format, "
+                                    + "whose records begin with an in-use flag, and cannot be opened.");
    }
 
    /**
@@ -54,12 +109,60 @@ class TableMgr {
     * @param tx the transaction creating the table
     */
    public void createTable(String tblname, Schema sch, Transaction tx) {
-      Layout layout = new Layout(sch);
+      createTable(tblname, sch, Layout.FIXED, tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema
+    * and record format.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the record format of the table
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, String format, Transaction tx) {
+      createTable(tblname, sch, format, null, tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema,
+    * record format and primary key.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the record format of the table
+    * @param keyfld the primary key of a btree table, or null
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, String format, String keyfld, Transaction tx) {
+      createTable(tblname, sch, format, keyfld, Collections.emptyMap(), tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema,
+    * record format and primary key, whose specified string fields
+    * are dictionary encoded. Fields that name the same dictionary
+    * share it, and must have the same length.
+    * The records of a btree table are compared by the values
+    * of their fields, which are therefore not encoded.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the record format of the table
+    * @param keyfld the primary key of a btree table, or null
+    * @param dictionaries the name of the dictionary of each encoded field
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, String format, String keyfld,
+                           Map<String,String> dictionaries, Transaction tx) {
+      if (!dictionaries.isEmpty())
+         checkDictionaries(sch, format, dictionaries, tx);
+      Layout layout = new Layout(sch, format, keyfld, dictionaries);
       // insert one record into tblcat
       TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       tcat.insert();
       tcat.setString("tblname", tblname);
       tcat.setInt("slotsize", layout.slotSize());
+      tcat.setString("format", format);
+      tcat.setString("keyfld", (keyfld == null) ? "" : keyfld);
       tcat.close();
 
       // insert a record into fldcat for each field
@@ -71,6 +174,7 @@ class TableMgr {
          fcat.setInt   ("type",   sch.type(fldname));
          fcat.setInt   ("length", sch.length(fldname));
          fcat.setInt   ("offset", layout.offset(fldname));
+         fcat.setString("dictionary", dictionaries.getOrDefault(fldname, ""));
       }
       fcat.close();
    }
@@ -84,16 +188,22 @@ class TableMgr {
     */
    public Layout getLayout(String tblname, Transaction tx) {
       int size = -1;
-    TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
+      String format = Layout.FIXED, keyfld = null;
+      TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       while(tcat.next())
          if(tcat.getString("tblname").equals(tblname)) {
             size = tcat.getInt("slotsize");
+            format = tcat.getString("format");
+            keyfld = tcat.getString("keyfld");
+            if (keyfld.isEmpty())
+               keyfld = null;
             break;
          }
       tcat.close();
 
       Schema sch = new Schema();
       Map<String,Integer> offsets = new HashMap<String,Integer>();
+      Map<String,String> dictionaries = new HashMap<String,String>();
       TableScan fcat = new TableScan(tx, "fldcat", fcatLayout);
       while(fcat.next())
          if(fcat.getString("tblname").equals(tblname)) {
@@ -101,10 +211,41 @@ class TableMgr {
             int fldtype    = fcat.getInt("type");
             int fldlen     = fcat.getInt("length");
             int offset     = fcat.getInt("offset");
+            String dict    = fcat.getString("dictionary");
             offsets.put(fldname, offset);
+            if (!dict.isEmpty())
+               dictionaries.put(fldname, dict);
             sch.addField(fldname, fldtype, fldlen);
          }
       fcat.close();
-      return new Layout(sch, offsets, size);
+      return new Layout(sch, offsets, size, format, keyfld, dictionaries);
+   }
+
+   /**
+    * Check that the encoded fields are string fields of a table
+    * that is not a btree table, and that a field that shares the
+    * dictionary of another, in this table or an existing one,
+    * has the same length.
+    */
+   private void checkDictionaries(Schema sch, String format,
+                                  Map<String,String> dictionaries, Transaction tx) {
+      if (format.equals(Layout.BTREE))
+         throw new RuntimeException("the fields of a btree table cannot be dictionary encoded.");
+      Map<String,Integer> lengths = new HashMap<String,Integer>();
+      TableScan fcat = new TableScan(tx, "fldcat", fcatLayout);
+      while (fcat.next())
+         if (!fcat.getString("dictionary").isEmpty())
+            lengths.put(fcat.getString("dictionary"), fcat.getInt("length"));
+      fcat.close();
+      for (Map.Entry<String,String> e : dictionaries.entrySet()) {
+         String fldname = e.getKey(), dict = e.getValue();
+         if (!sch.hasField(fldname) || sch.type(fldname) != VARCHAR)
+            throw new RuntimeException("field " + fldname + " is not a string field, and cannot be dictionary encoded.");
+         if (dict.length() > MAX_DICT)
+            throw new RuntimeException("dictionary name " + dict + " is too long.");
+         Integer length = lengths.putIfAbsent(dict, sch.length(fldname));
+         if (length != null && length != sch.length(fldname))
+            throw new RuntimeException("the fields of dictionary " + dict + " must have length " + length + ".");
+      }
    }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import java.util.List;
 import simpledb.file.BlockId;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
+import simpledb.record.Dictionary;
 import simpledb.record.Layout;
 import simpledb.record.RecordPage;
 import simpledb.tx.Transaction;
@@ -23,6 +24,7 @@ public class ChunkScan implements Scan {
    private Layout layout;
    private int startbnum, endbnum, currentbnum;
    private RecordPage rp;
+   private Dictionary[] dicts;
    private int currentslot;
 
    /**
@@ -40,7 +42,7 @@ public class ChunkScan implements Scan {
       this.endbnum   = endbnum;
       for (int i=startbnum; i<=endbnum; i++) {
          BlockId blk = new BlockId(filename, i);
-         buffs.add(new RecordPage(tx, blk, layout));
+         buffs.add(RecordPage.open(tx, blk, layout));
       }
       moveToBlock(startbnum);
    }
@@ -49,6 +51,7 @@ public class ChunkScan implements Scan {
     * @see Scan#close()
     */
    public void close() {
+      leaveRecord();
       for (int i=0; i<buffs.size(); i++) {
          BlockId blk = new BlockId(filename, startbnum+i);
          tx.unpin(blk);
@@ -70,6 +73,7 @@ public class ChunkScan implements Scan {
     * @see Scan#next()
     */
    public boolean next() {
+      leaveRecord();
       currentslot = rp.nextAfter(currentslot);
       while (currentslot < 0) {
          if (currentbnum == endbnum)
@@ -84,24 +88,54 @@ public class ChunkScan implements Scan {
     * @see Scan#getInt(String)
     */
    public int getInt(String fldname) {
-      return rp.getInt(currentslot, fldname);
+      return getInt(column(fldname));
    }
 
    /**
     * @see Scan#getString(String)
     */
    public String getString(String fldname) {
-      return rp.getString(currentslot, fldname);
+      return getString(column(fldname));
    }
 
    /**
     * @see Scan#getVal(String)
     */
    public Constant getVal(String fldname) {
-      if (layout.schema().type(fldname) == INTEGER)
-         return new Constant(getInt(fldname));
+      return getVal(column(fldname));
+   }
+
+   /**
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return layout.column(fldname);
+   }
+
+   /**
+    * @see Scan#getInt(int)
+    */
+   public int getInt(int col) {
+      return rp.getInt(currentslot, col);
+   }
+
+   /**
+    * @see Scan#getString(int)
+    */
+   public String getString(int col) {
+      if (layout.dictionary(col) != null)
+         return dictionary(col).decode(rp.getInt(currentslot, col));
+      return rp.getString(currentslot, col);
+   }
+
+   /**
+    * @see Scan#getVal(int)
+    */
+   public Constant getVal(int col) {
+      if (layout.type(col) == INTEGER && layout.dictionary(col) == null)
+         return new Constant(getInt(col));
       else
-         return new Constant(getString(fldname));
+         return new Constant(getString(col));
    }
 
   /**
@@ -111,9 +145,36 @@ public class ChunkScan implements Scan {
       return layout.schema().hasField(fldname);
    }
 
+   /**
+    * @see Scan#dictionary(int)
+    */
+   public Dictionary dictionary(int col) {
+      if (layout.dictionary(col) == null)
+         return null;
+      if (dicts == null)
+         dicts = new Dictionary[layout.schema().fields().size()];
+      if (dicts[col] == null)
+         dicts[col] = Dictionary.open(tx, layout, col);
+      return dicts[col];
+   }
+
    private void moveToBlock(int blknum) {
+      if (rp != null)
+         leaveRecord();
       currentbnum = blknum;
       rp = buffs.get(currentbnum - startbnum);
       currentslot = -1;
    }
+
+   private int column(String fldname) {
+      int col = layout.column(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+
+   private void leaveRecord() {
+      if (currentslot >= 0)
+         rp.release(currentslot);
+   }
 }
\ No newline at end of file
@@ -54,14 +54,14 @@ public class MultibufferProductPlan implements Plan {
     * required to execute the query. The formula is:
     * <pre> B(product(p1,p2)) = B(p2) + B(p1)*C(p2) </pre>
     * where C(p2) is the number of chunks of p2.
-    * The method uses the current number of available buffers
+    * The method uses the largest possible buffer grant
     * to calculate C(p2), and so this value may differ
     * when the query scan is opened.
     * @see Plan#blocksAccessed()
     */
    public int blocksAccessed() {
       // this guesses at the # of chunks
-      int avail = tx.availableBuffs();
+      int avail = tx.maxBufferGrant();
       int size = new MaterializePlan(tx, rhs).blocksAccessed();
       int numchunks = Math.max(1, size / avail);
       return rhs.blocksAccessed() +
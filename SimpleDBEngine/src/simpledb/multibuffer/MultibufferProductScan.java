@@ -1,8 +1,11 @@
 package simpledb.multibuffer;
 
+import simpledb.buffer.BufferGrant;
+import simpledb.query.ColumnMap;
 import simpledb.query.Constant;
 import simpledb.query.ProductScan;
 import simpledb.query.Scan;
+import simpledb.record.Dictionary;
 import simpledb.record.Layout;
 import simpledb.tx.Transaction;
 
@@ -16,7 +19,9 @@ public class MultibufferProductScan implements Scan {
    private Scan lhsscan, rhsscan=null, prodscan;
    private String filename;
    private Layout layout;
+   private BufferGrant grant;
    private int chunksize, nextblknum, filesize;
+   private ColumnMap cols = new ColumnMap();
    private boolean isEmpty;   // flag for when LHS has no records, so there's no point in creating ChunkScans
    
    /**
@@ -32,8 +37,8 @@ public class MultibufferProductScan implements Scan {
       this.filename = tblname + ".tbl";
       this.layout = layout;
       filesize = tx.size(filename);
-      int available = tx.availableBuffs();
-      chunksize = BufferNeeds.bestFactor(available, filesize);
+      grant = tx.reserveBuffers(3, Math.max(3, filesize + 2));
+      chunksize = BufferNeeds.bestFactor(grant.size(), filesize);
       beforeFirst();
    }
    
@@ -71,13 +76,15 @@ public class MultibufferProductScan implements Scan {
    }
    
    /**
-    * Closes the current scan. If this scan is empty in the first place,
-    * there is nothing to close.
+    * Closes the current scan and returns the buffer grant.
+    * If this scan is empty in the first place,
+    * there is no product scan to close.
     * @see Scan#close()
     */
    public void close() {
-      if (isEmpty) return;
-      prodscan.close();
+      if (!isEmpty)
+         prodscan.close();
+      tx.releaseBuffers(grant);
    }
 
    /** 
@@ -110,6 +117,43 @@ public class MultibufferProductScan implements Scan {
       return prodscan.getString(fldname);
    }
    
+   /**
+    * Return the column of the specified field.
+    * The product scan of each chunk is new, so the
+    * columns refer to the LHS scan and to the table's
+    * layout, which all the chunks share.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      int col = cols.find(fldname, lhsscan);
+      if (col < 0 && layout.column(fldname) >= 0)
+         col = cols.add(fldname, 1, layout.column(fldname));
+      return col;
+   }
+
+   public int getInt(int col) {
+      return scan(col).getInt(cols.column(col));
+   }
+
+   public String getString(int col) {
+      return scan(col).getString(cols.column(col));
+   }
+
+   public Constant getVal(int col) {
+      return scan(col).getVal(cols.column(col));
+   }
+
+   /**
+    * Return the dictionary of the field in the specified column.
+    * The chunks of the table all read its codes, so the
+    * dictionary of the first chunk serves for all of them.
+    * @see Scan#dictionary(int)
+    */
+   public Dictionary dictionary(int col) {
+      Scan s = scan(col);
+      return (s == null) ? null : s.dictionary(cols.column(col));
+   }
+
    /**
     * Returns true if the specified field is in
     * either of the underlying scans.
@@ -119,6 +163,10 @@ public class MultibufferProductScan implements Scan {
       return prodscan.hasField(fldname);
    }
    
+   private Scan scan(int col) {
+      return (cols.side(col) == 0) ? lhsscan : rhsscan;
+   }
+
    private boolean useNextChunk() {
       if (nextblknum >= filesize)
          return false;
@@ -127,7 +175,13 @@ public class MultibufferProductScan implements Scan {
       int end = nextblknum + chunksize - 1;
       if (end >= filesize)
          end = filesize - 1;
-      rhsscan = new ChunkScan(tx, filename, layout, nextblknum, end);
+      BufferGrant prev = tx.chargeTo(grant);
+      try {
+         rhsscan = new ChunkScan(tx, filename, layout, nextblknum, end);
+      }
+      finally {
+         tx.chargeTo(prev);
+      }
       lhsscan.beforeFirst();
       prodscan = new ProductScan(lhsscan, rhsscan);
       nextblknum = end + 1;
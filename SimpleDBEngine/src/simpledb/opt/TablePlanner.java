@@ -4,6 +4,7 @@ import java.util.*;
 
 import simpledb.index.planner.IndexJoinPlan;
 import simpledb.index.planner.IndexSelectPlan;
+import simpledb.index.planner.KeyRangePlan;
 import simpledb.materialize.*;
 import simpledb.metadata.IndexInfo;
 import simpledb.metadata.MetadataMgr;
@@ -35,6 +36,8 @@ class TablePlanner {
     * The table planner is responsible for determining
     * which portion of the predicate is useful to the table,
     * and when indexes are useful.
+    * Of a partitioned table, only the partitions that
+    * the predicate may select records from are read.
     * @param tblname the name of the table
     * @param mypred the query predicate
     * @param tx the calling transaction
@@ -44,17 +47,23 @@ class TablePlanner {
       this.tx  = tx;
       myplan   = new TablePlan(tx, tblname, mdm);
       myschema = myplan.schema();
+      Predicate selectpred = mypred.selectSubPred(myschema);
+      if (selectpred != null)
+         myplan = myplan.prune(selectpred);
       indexes  = mdm.getIndexInfo(tblname, tx);
       this.tblname = tblname;
    }
    
    /**
     * Constructs a select plan for the table.
-    * The plan will use an indexselect, if possible.
+    * The plan will use the primary key of a btree table
+    * or an indexselect, if possible.
     * @return a select plan for the table.
     */
    public Plan makeSelectPlan() {
-      Plan p = makeIndexSelect();
+      Plan p = makeKeyRange();
+      if (p == null)
+         p = makeIndexSelect();
       if (p == null)
          p = myplan;
       return addSelectPred(p);
@@ -130,6 +139,19 @@ class TablePlanner {
       return new BnlJoinPlan(tx, current, addSelectPred(myplan), subPred, fields[0], fields[1]);
    }
 
+   private Plan makeKeyRange() {
+      String keyfld = myplan.layout().key();
+      // a partitioned table has a B-tree in each of its partitions
+      if (keyfld == null || myplan.isPartitioned())
+         return null;
+      Constant lo = mypred.lowerBound(keyfld);
+      Constant hi = mypred.upperBound(keyfld);
+      if (lo == null && hi == null)
+         return null;
+      System.out.println("*key range on " + keyfld + " used*");
+      return new KeyRangePlan(myplan, keyfld, lo, hi);
+   }
+
    private Plan makeIndexSelect() {
       for (String fldname : indexes.keySet()) {
          Constant val = mypred.equatesWithConstant(fldname);
@@ -0,0 +1,42 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>alter table ... add partition</i> statement.
+ */
+public class AddPartitionData {
+   private String tblname, partname;
+   private int bound;
+   
+   /**
+    * Saves the table name, and the name and bound of the new partition.
+    */
+   public AddPartitionData(String tblname, String partname, int bound) {
+      this.tblname = tblname;
+      this.partname = partname;
+      this.bound = bound;
+   }
+   
+   /**
+    * Returns the name of the partitioned table.
+    * @return the name of the table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the name of the new partition.
+    * @return the name of the partition
+    */
+   public String partitionName() {
+      return partname;
+   }
+   
+   /**
+    * Returns the bound of the new partition.
+    * @return the bound of the partition
+    */
+   public int bound() {
+      return bound;
+   }
+}
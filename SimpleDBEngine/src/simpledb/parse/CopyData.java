@@ -0,0 +1,47 @@
+package simpledb.parse;
+
+import java.util.List;
+
+/**
+ * Data for the SQL <i>copy</i> statement,
+ * which loads the rows of a CSV file into a table.
+ */
+public class CopyData {
+   private String tblname, filename;
+   private List<String> flds;
+   
+   /**
+    * Saves the table name, the field list and the file name.
+    */
+   public CopyData(String tblname, List<String> flds, String filename) {
+      this.tblname = tblname;
+      this.flds = flds;
+      this.filename = filename;
+   }
+   
+   /**
+    * Returns the name of the affected table.
+    * @return the name of the affected table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the fields that the columns of the file
+    * hold, in order, or null if the file holds
+    * every field of the table, in the order of its schema.
+    * @return a list of field names, or null
+    */
+   public List<String> fields() {
+      return flds;
+   }
+   
+   /**
+    * Returns the name of the file to load.
+    * @return the name of the file
+    */
+   public String fileName() {
+      return filename;
+   }
+}
@@ -1,5 +1,8 @@
 package simpledb.parse;
 
+import java.util.Collections;
+import java.util.Map;
+
 import simpledb.record.Schema;
 
 /**
@@ -9,13 +12,44 @@ import simpledb.record.Schema;
 public class CreateTableData {
    private String tblname;
    private Schema sch;
+   private String format, keyfld;
+   private PartitionData part;
+   private Map<String,String> dictionaries;
+   
+   /**
+    * Saves the table name, schema and record format.
+    */
+   public CreateTableData(String tblname, Schema sch, String format) {
+      this(tblname, sch, format, null);
+   }
    
    /**
-    * Saves the table name and schema.
+    * Saves the table name, schema, record format and primary key.
     */
-   public CreateTableData(String tblname, Schema sch) {
+   public CreateTableData(String tblname, Schema sch, String format, String keyfld) {
+      this(tblname, sch, format, keyfld, null);
+   }
+   
+   /**
+    * Saves the table name, schema, record format, primary key
+    * and partitioning.
+    */
+   public CreateTableData(String tblname, Schema sch, String format, String keyfld, PartitionData part) {
+      this(tblname, sch, format, keyfld, part, Collections.emptyMap());
+   }
+   
+   /**
+    * Saves the table name, schema, record format, primary key,
+    * partitioning and the dictionaries of the encoded fields.
+    */
+   public CreateTableData(String tblname, Schema sch, String format, String keyfld,
+                          PartitionData part, Map<String,String> dictionaries) {
       this.tblname = tblname;
       this.sch = sch;
+      this.format = format;
+      this.keyfld = keyfld;
+      this.part = part;
+      this.dictionaries = dictionaries;
    }
    
    /**
@@ -33,5 +67,39 @@ public class CreateTableData {
    public Schema newSchema() {
       return sch;
    }
+
+   /**
+    * Returns the record format of the new table.
+    * @return the record format (fixed, slotted, pax or btree)
+    */
+   public String format() {
+      return format;
+   }
+
+   /**
+    * Returns the primary key of the new table, if it is
+    * a btree table.
+    * @return the name of the key field, or null
+    */
+   public String keyField() {
+      return keyfld;
+   }
+
+   /**
+    * Returns the partitioning of the new table.
+    * @return the partitioning, or null if the table is not partitioned
+    */
+   public PartitionData partitioning() {
+      return part;
+   }
+
+   /**
+    * Returns the dictionary of each dictionary-encoded
+    * field of the new table.
+    * @return a map from the encoded fields to the names of their dictionaries
+    */
+   public Map<String,String> dictionaries() {
+      return dictionaries;
+   }
 }
 
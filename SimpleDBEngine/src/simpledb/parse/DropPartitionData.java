@@ -0,0 +1,32 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>alter table ... drop partition</i> statement.
+ */
+public class DropPartitionData {
+   private String tblname, partname;
+   
+   /**
+    * Saves the table name and the name of the partition.
+    */
+   public DropPartitionData(String tblname, String partname) {
+      this.tblname = tblname;
+      this.partname = partname;
+   }
+   
+   /**
+    * Returns the name of the partitioned table.
+    * @return the name of the table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the name of the partition to drop.
+    * @return the name of the partition
+    */
+   public String partitionName() {
+      return partname;
+   }
+}
@@ -13,6 +13,7 @@ import java.util.Collection;
 public class Lexer {
    private Collection<String> keywords;
    private Collection<String> indexes;
+   private Collection<String> formats;
    private Collection<String> sorts;
    private StreamTokenizer tok;
    
@@ -23,6 +24,7 @@ public class Lexer {
    public Lexer(String s) {
       initKeywords();
       initIndexes();
+      initFormats();
       initSorts();
       tok = new StreamTokenizer(new StringReader(s));
       tok.ordinaryChar('.');   //disallow "." in identifiers
@@ -84,6 +86,14 @@ public class Lexer {
       return tok.ttype==StreamTokenizer.TT_WORD && indexes.contains(tok.sval);
    }
 
+   /**
+    * Returns true if the current token is a legal word for record format
+    * ("fixed", "slotted" or "pax")
+    */
+   public boolean matchFormat() {
+      return tok.ttype==StreamTokenizer.TT_WORD && formats.contains(tok.sval);
+   }
+
    /**
     * Returns true if the current token is a legal word for sorting order
     * (either "asc" or "desc")
@@ -216,6 +226,20 @@ public class Lexer {
       return s;
    }
 
+   /**
+    * Eats a word for the record format ("fixed", "slotted" or "pax").
+    * Throws BadSyntaxException if the current token is not a record format.
+    * @return the string value of the record format
+    */
+   public String eatFormat() {
+      if (!matchFormat()) {
+         throw new BadSyntaxException();
+      }
+      String s = tok.sval;
+      nextToken();
+      return s;
+   }
+
    /**
     * Eats a word for the sorting order ("asc" or "desc").
     * Throws a BadSyntaxError if the current token is neither of these values.
@@ -243,13 +267,18 @@ public class Lexer {
    private void initKeywords() {
       keywords = Arrays.asList("select", "from", "where", "and",
                                "insert", "into", "values", "delete", "update", "set", 
-                               "create", "table", "int", "varchar", "view", "as", "index", "on");
+                               "create", "table", "int", "varchar", "view", "as", "index", "on",
+                               "copy", "vacuum", "alter");
    }
 
    private void initIndexes() {
       indexes = Arrays.asList("btree", "hash");
    }
 
+   private void initFormats() {
+      formats = Arrays.asList("fixed", "slotted", "pax");
+   }
+
    private void initSorts() {
       sorts = Arrays.asList("desc", "asc");
    }
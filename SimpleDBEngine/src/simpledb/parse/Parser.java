@@ -8,10 +8,12 @@ import simpledb.materialize.CountFn;
 import simpledb.materialize.MaxFn;
 import simpledb.materialize.MinFn;
 import simpledb.materialize.SumFn;
+import simpledb.metadata.PartitionInfo;
 import simpledb.query.Constant;
 import simpledb.query.Expression;
 import simpledb.query.Predicate;
 import simpledb.query.Term;
+import simpledb.record.Layout;
 import simpledb.record.Schema;
 
 /**
@@ -240,6 +242,12 @@ public class Parser {
          return delete();
       else if (lex.matchKeyword("update"))
          return modify();
+      else if (lex.matchKeyword("copy"))
+         return copy();
+      else if (lex.matchKeyword("vacuum"))
+         return vacuum();
+      else if (lex.matchKeyword("alter"))
+         return alter();
       else
          return create();
    }
@@ -284,6 +292,29 @@ public class Parser {
       return new InsertData(tblname, flds, vals);
    }
    
+// Method for parsing copy commands
+
+   public CopyData copy() {
+      lex.eatKeyword("copy");
+      String tblname = lex.eatId();
+      List<String> flds = null;
+      if (lex.matchDelim('(')) {
+         lex.eatDelim('(');
+         flds = fieldList();
+         lex.eatDelim(')');
+      }
+      lex.eatKeyword("from");
+      String filename = lex.eatStringConstant();
+      return new CopyData(tblname, flds, filename);
+   }
+   
+// Method for parsing vacuum commands
+
+   public VacuumData vacuum() {
+      lex.eatKeyword("vacuum");
+      return new VacuumData(lex.eatId());
+   }
+   
    private List<String> fieldList() {
       List<String> L = new ArrayList<String>();
       L.add(field());
@@ -327,24 +358,133 @@ public class Parser {
       lex.eatKeyword("table");
       String tblname = lex.eatId();
       lex.eatDelim('(');
-      Schema sch = fieldDefs();
+      Map<String,String> dictionaries = new HashMap<String,String>();
+      Schema sch = fieldDefs(dictionaries);
+      lex.eatDelim(')');
+      // a field's own dictionary is named after the table and field
+      for (Map.Entry<String,String> e : dictionaries.entrySet())
+         if (e.getValue() == null)
+            e.setValue(tblname + "." + e.getKey());
+      String format = Layout.FIXED;
+      String keyfld = null;
+      if (lex.matchKeyword("primary")) {
+         // the table is kept in a B-tree on its primary key
+         lex.eatKeyword("primary");
+         lex.eatKeyword("key");
+         lex.eatDelim('(');
+         keyfld = field();
+         lex.eatDelim(')');
+         if (!sch.hasField(keyfld))
+            throw new BadSyntaxException();
+         format = Layout.BTREE;
+      }
+      else if (lex.matchKeyword("using")) {
+         lex.eatKeyword("using");
+         format = lex.eatFormat();
+      }
+      PartitionData part = null;
+      if (lex.matchKeyword("partition"))
+         part = partitioning();
+      return new CreateTableData(tblname, sch, format, keyfld, part, dictionaries);
+   }
+   
+   /**
+    * Parse "partition by range (F) (partition P values less than (N), ...)",
+    * where the last bound may be "maxvalue", or
+    * "partition by hash (F) partitions N", whose partitions are p0 to pN-1.
+    */
+   private PartitionData partitioning() {
+      lex.eatKeyword("partition");
+      lex.eatKeyword("by");
+      List<String> partnames = new ArrayList<String>();
+      List<Integer> bounds = new ArrayList<Integer>();
+      if (lex.matchKeyword(PartitionInfo.HASH)) {
+         lex.eatKeyword(PartitionInfo.HASH);
+         String fldname = partitionField();
+         lex.eatKeyword("partitions");
+         int n = lex.eatIntConstant();
+         if (n < 1)
+            throw new BadSyntaxException();
+         for (int i=0; i<n; i++) {
+            partnames.add("p" + i);
+            bounds.add(i);
+         }
+         return new PartitionData(fldname, PartitionInfo.HASH, partnames, bounds);
+      }
+      lex.eatKeyword(PartitionInfo.RANGE);
+      String fldname = partitionField();
+      lex.eatDelim('(');
+      partnames.add(rangePartition(bounds));
+      while (lex.matchDelim(',')) {
+         lex.eatDelim(',');
+         partnames.add(rangePartition(bounds));
+      }
+      lex.eatDelim(')');
+      return new PartitionData(fldname, PartitionInfo.RANGE, partnames, bounds);
+   }
+   
+   private String partitionField() {
+      lex.eatDelim('(');
+      String fldname = field();
+      lex.eatDelim(')');
+      return fldname;
+   }
+   
+   // Parse "partition P values less than (N)", adding N to the bounds
+   private String rangePartition(List<Integer> bounds) {
+      lex.eatKeyword("partition");
+      String partname = lex.eatId();
+      lex.eatKeyword("values");
+      lex.eatKeyword("less");
+      lex.eatKeyword("than");
+      lex.eatDelim('(');
+      if (lex.matchKeyword("maxvalue")) {
+         lex.eatKeyword("maxvalue");
+         bounds.add(PartitionInfo.MAXVALUE);
+      }
+      else
+         bounds.add(lex.eatIntConstant());
       lex.eatDelim(')');
-      return new CreateTableData(tblname, sch);
+      return partname;
+   }
+   
+// Methods for parsing alter table commands
+   
+   public Object alter() {
+      lex.eatKeyword("alter");
+      lex.eatKeyword("table");
+      String tblname = lex.eatId();
+      if (lex.matchKeyword("add")) {
+         lex.eatKeyword("add");
+         List<Integer> bounds = new ArrayList<Integer>();
+         String partname = rangePartition(bounds);
+         return new AddPartitionData(tblname, partname, bounds.get(0));
+      }
+      lex.eatKeyword("drop");
+      lex.eatKeyword("partition");
+      return new DropPartitionData(tblname, lex.eatId());
    }
    
-   private Schema fieldDefs() {
-      Schema schema = fieldDef();
+   private Schema fieldDefs(Map<String,String> dictionaries) {
+      Schema schema = fieldDef(dictionaries);
       if (lex.matchDelim(',')) {
          lex.eatDelim(',');
-         Schema schema2 = fieldDefs();
+         Schema schema2 = fieldDefs(dictionaries);
          schema.addAll(schema2);
       }
       return schema;
    }
    
-   private Schema fieldDef() {
+   // Parse "F type", or "F varchar(N) dictionary [D]" for an encoded field,
+   // recording the name of its dictionary, or null if it has its own
+   private Schema fieldDef(Map<String,String> dictionaries) {
       String fldname = field();
-      return fieldType(fldname);
+      Schema schema = fieldType(fldname);
+      if (lex.matchKeyword("dictionary")) {
+         lex.eatKeyword("dictionary");
+         dictionaries.put(fldname, lex.matchId() ? lex.eatId() : null);
+      }
+      return schema;
    }
    
    private Schema fieldType(String fldname) {
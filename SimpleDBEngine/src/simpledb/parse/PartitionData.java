@@ -0,0 +1,57 @@
+package simpledb.parse;
+
+import java.util.List;
+
+/**
+ * Data for the <i>partition by</i> clause
+ * of the SQL <i>create table</i> statement.
+ */
+public class PartitionData {
+   private String fldname, method;
+   private List<String> partnames;
+   private List<Integer> bounds;
+   
+   /**
+    * Saves the partitioning field and method, and the names and
+    * bounds of the partitions. The bound of a hash partition
+    * is its position.
+    */
+   public PartitionData(String fldname, String method, List<String> partnames, List<Integer> bounds) {
+      this.fldname = fldname;
+      this.method = method;
+      this.partnames = partnames;
+      this.bounds = bounds;
+   }
+   
+   /**
+    * Returns the name of the partitioning field.
+    * @return the name of the partitioning field
+    */
+   public String fieldName() {
+      return fldname;
+   }
+   
+   /**
+    * Returns the partitioning method.
+    * @return the partitioning method (range or hash)
+    */
+   public String method() {
+      return method;
+   }
+   
+   /**
+    * Returns the names of the partitions, in order.
+    * @return the names of the partitions
+    */
+   public List<String> partitionNames() {
+      return partnames;
+   }
+   
+   /**
+    * Returns the bounds of the partitions, in order.
+    * @return the bounds of the partitions
+    */
+   public List<Integer> bounds() {
+      return bounds;
+   }
+}
@@ -1,16 +1,27 @@
 package simpledb.plan;
 
 import java.util.Iterator;
+import java.util.List;
 
 import simpledb.metadata.MetadataMgr;
+import simpledb.metadata.PartitionInfo;
+import simpledb.parse.AddPartitionData;
+import simpledb.parse.CopyData;
 import simpledb.parse.CreateIndexData;
 import simpledb.parse.CreateTableData;
 import simpledb.parse.CreateViewData;
 import simpledb.parse.DeleteData;
+import simpledb.parse.DropPartitionData;
 import simpledb.parse.InsertData;
 import simpledb.parse.ModifyData;
+import simpledb.parse.PartitionData;
+import simpledb.parse.VacuumData;
 import simpledb.query.Constant;
+import simpledb.query.Expression;
 import simpledb.query.UpdateScan;
+import simpledb.record.BulkLoader;
+import simpledb.record.Layout;
+import simpledb.record.TableVacuum;
 import simpledb.tx.Transaction;
 
 /**
@@ -25,7 +36,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeDelete(DeleteData data, Transaction tx) {
-      Plan p = new TablePlan(tx, data.tableName(), mdm);
+      Plan p = new TablePlan(tx, data.tableName(), mdm).prune(data.pred());
       p = new SelectPlan(p, data.pred());
       UpdateScan us = (UpdateScan) p.open();
       int count = 0;
@@ -38,13 +49,16 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeModify(ModifyData data, Transaction tx) {
-      Plan p = new TablePlan(tx, data.tableName(), mdm);
+      Plan p = new TablePlan(tx, data.tableName(), mdm).prune(data.pred());
       p = new SelectPlan(p, data.pred());
       UpdateScan us = (UpdateScan) p.open();
+      Expression newval = data.newValue();
+      int valcol = newval.column(us);
+      int targetcol = us.findField(data.targetField());
       int count = 0;
       while(us.next()) {
-         Constant val = data.newValue().evaluate(us);
-         us.setVal(data.targetField(), val);
+         Constant val = newval.evaluate(us, valcol);
+         us.setVal(targetcol, val);
          count++;
       }
       us.close();
@@ -65,7 +79,12 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.format(), data.keyField(),
+                      data.dictionaries(), tx);
+      PartitionData part = data.partitioning();
+      if (part != null)
+         mdm.createPartitions(data.tableName(), part.fieldName(), part.method(),
+                              part.partitionNames(), part.bounds(), tx);
       return 0;
    }
    
@@ -77,4 +96,81 @@ public class BasicUpdatePlanner implements UpdatePlanner {
       mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), tx);
       return 0;  
    }
+   
+   /**
+    * Load the rows of the file into the table. The rows of a
+    * btree table go into its B-tree one at a time, so they are
+    * loaded fastest in the order of the primary key.
+    * The rows of a partitioned table are inserted one at a time
+    * into their partitions as well.
+    */
+   public int executeCopy(CopyData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      List<String> flds = (data.fields() != null) ? data.fields() : layout.schema().fields();
+      CsvReader reader = new CsvReader(data.fileName(), layout.schema(), flds);
+      int[] cols = new int[flds.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = layout.column(flds.get(i));
+      if (layout.key() != null || mdm.getPartitionInfo(tblname, tx) != null)
+         return copyByScan(reader, cols, new TablePlan(tx, tblname, mdm));
+      BulkLoader loader = new BulkLoader(tx, tblname, layout);
+      int count = 0;
+      try {
+         for (List<Constant> vals = reader.next(); vals != null; vals = reader.next()) {
+            loader.insert();
+            for (int i=0; i<flds.size(); i++)
+               loader.setVal(cols[i], vals.get(i));
+            count++;
+         }
+      }
+      finally {
+         reader.close();
+      }
+      loader.close();
+      return count;
+   }
+   
+   private int copyByScan(CsvReader reader, int[] cols, Plan p) {
+      UpdateScan us = (UpdateScan) p.open();
+      int count = 0;
+      try {
+         for (List<Constant> vals = reader.next(); vals != null; vals = reader.next()) {
+            us.insert();
+            for (int i=0; i<cols.length; i++)
+               us.setVal(cols[i], vals.get(i));
+            count++;
+         }
+      }
+      finally {
+         reader.close();
+      }
+      us.close();
+      return count;
+   }
+   
+   /**
+    * Vacuum the table, or each partition of a partitioned table.
+    */
+   public int executeVacuum(VacuumData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      PartitionInfo pi = mdm.getPartitionInfo(tblname, tx);
+      if (pi == null)
+         return new TableVacuum(tblname, layout).run(tx);
+      int count = 0;
+      for (String partname : pi.partitions())
+         count += new TableVacuum(PartitionInfo.tableName(tblname, partname), layout).run(tx);
+      return count;
+   }
+   
+   public int executeAddPartition(AddPartitionData data, Transaction tx) {
+      mdm.addPartition(data.tableName(), data.partitionName(), data.bound(), tx);
+      return 0;
+   }
+   
+   public int executeDropPartition(DropPartitionData data, Transaction tx) {
+      mdm.dropPartition(data.tableName(), data.partitionName(), tx);
+      return 0;
+   }
 }
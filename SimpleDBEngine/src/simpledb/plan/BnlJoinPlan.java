@@ -58,7 +58,7 @@ public class BnlJoinPlan implements Plan {
 
     @Override
     public int blocksAccessed() {
-        int available = tx.availableBuffs() - 2;
+        int available = Math.max(1, tx.maxBufferGrant() - 2);
         int leftBlocks = new MaterializePlan(tx, lhs).blocksAccessed();
         int numChunks = (int) Math.ceil((double) leftBlocks / available);
         return leftBlocks + (numChunks * rhs.blocksAccessed());
@@ -2,6 +2,7 @@ package simpledb.plan;
 
 import java.sql.SQLException;
 
+import simpledb.buffer.BufferGrant;
 import simpledb.multibuffer.ChunkScan;
 import simpledb.query.*;
 import simpledb.record.Layout;
@@ -19,6 +20,8 @@ public class BnlJoinScan implements Scan {
     private String filename;
     private Layout layout;
     private Predicate joinPred;
+    private ColumnMap cols = new ColumnMap();
+    private BufferGrant grant;
     private int chunksize, nextblknum, filesize;
     private boolean isEmpty;   // flag for when either table has no records, in which case there's no point in creating ChunkScans
 
@@ -40,11 +43,11 @@ public class BnlJoinScan implements Scan {
         this.joinPred = joinPred;
         this.isEmpty = !lhsHasTuples;
         filesize = tx.size(filename);
-        chunksize = tx.availableBuffs() - 2;
+        // Reserve a chunk of at least 1 block, plus 2 buffers for the RHS scan and the output;
+        // a very small pool may grant fewer, and the rest are then ordinary pins
+        grant = tx.reserveBuffers(3, Math.max(3, filesize + 2));
+        chunksize = Math.max(1, grant.size() - 2);
         // System.out.println("chunksize: " + chunksize);
-        if (chunksize <= 0) {
-            throw new RuntimeException("Not enough buffer");
-        }
         beforeFirst();
     }
 
@@ -103,7 +106,12 @@ public class BnlJoinScan implements Scan {
             end = filesize - 1;
         }
         // Bring in the next LSH chunk. Reposition RHS table to the first record
-        lshScan = new ChunkScan(tx, filename, layout, nextblknum, end);
+        BufferGrant prev = tx.chargeTo(grant);
+        try {
+            lshScan = new ChunkScan(tx, filename, layout, nextblknum, end);
+        } finally {
+            tx.chargeTo(prev);
+        }
         rhsScan.beforeFirst();
         // select from the product scan of LHS chunk and RHS table
         selectFromChunkScan = new SelectScan(new ProductScan(lshScan, rhsScan), joinPred);
@@ -127,19 +135,56 @@ public class BnlJoinScan implements Scan {
         return selectFromChunkScan.getVal(fldname);
     }
 
+    /**
+     * Returns the column of the specified field.
+     * The scans of each chunk are new, so the columns
+     * refer to the layout of the LHS table, which all
+     * the chunks share, and to the RHS scan.
+     */
+    @Override
+    public int findField(String fldname) {
+        int col = cols.indexOf(fldname);
+        if (col >= 0)
+            return col;
+        if (layout.column(fldname) >= 0)
+            return cols.add(fldname, 0, layout.column(fldname));
+        col = rhsScan.findField(fldname);
+        return (col < 0) ? -1 : cols.add(fldname, 1, col);
+    }
+
+    @Override
+    public int getInt(int col) {
+        return scan(col).getInt(cols.column(col));
+    }
+
+    @Override
+    public String getString(int col) {
+        return scan(col).getString(cols.column(col));
+    }
+
+    @Override
+    public Constant getVal(int col) {
+        return scan(col).getVal(cols.column(col));
+    }
+
+    private Scan scan(int col) {
+        return (cols.side(col) == 0) ? lshScan : rhsScan;
+    }
+
     @Override
     public boolean hasField(String fldname) {
         return selectFromChunkScan.hasField(fldname);
     }
 
     /**
-     * Closes the current chunk scan.
-     * If the Bnl scan is empty in the first place, there is nothing to close.
+     * Closes the current chunk scan and returns the buffer grant.
+     * If the Bnl scan is empty in the first place, there is no chunk to close.
      * @see Scan#close()
      */
     @Override
     public void close() {
-        if (isEmpty) return;
-        selectFromChunkScan.close();
+        if (!isEmpty)
+            selectFromChunkScan.close();
+        tx.releaseBuffers(grant);
     }
 }
@@ -0,0 +1,121 @@
+package simpledb.plan;
+
+import static java.sql.Types.INTEGER;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.query.Constant;
+import simpledb.record.Schema;
+
+/**
+ * Reads the rows of a CSV file for the copy statement.
+ * Each line of the file is a row, whose values are separated
+ * by commas. A value may be enclosed in double quotes, so that
+ * it can contain commas; a doubled quote inside it stands
+ * for a single quote. Blank lines are skipped.
+ * Each value is converted to a constant of its field's type.
+ */
+public class CsvReader {
+   private BufferedReader reader;
+   private String filename;
+   private Schema sch;
+   private List<String> flds;
+   private int linenum = 0;
+
+   /**
+    * Open the specified file.
+    * @param filename the name of the file
+    * @param sch the schema of the table being loaded
+    * @param flds the fields that the values of a row are for
+    */
+   public CsvReader(String filename, Schema sch, List<String> flds) {
+      this.filename = filename;
+      this.sch = sch;
+      this.flds = flds;
+      try {
+         reader = new BufferedReader(new FileReader(filename));
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + filename);
+      }
+   }
+
+   /**
+    * Return the values of the next row of the file.
+    * @return the values, one per field, or null at the end of the file
+    */
+   public List<Constant> next() {
+      String line;
+      try {
+         do {
+            line = reader.readLine();
+            linenum++;
+         } while (line != null && line.isBlank());
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + filename);
+      }
+      if (line == null)
+         return null;
+      List<String> strs = split(line);
+      if (strs.size() != flds.size())
+         throw new RuntimeException(error("has " + strs.size() + " values"));
+      List<Constant> vals = new ArrayList<>();
+      for (int i=0; i<flds.size(); i++) {
+         String fldname = flds.get(i);
+         if (sch.type(fldname) != INTEGER)
+            vals.add(new Constant(strs.get(i)));
+         else {
+            try {
+               vals.add(new Constant(Integer.parseInt(strs.get(i).trim())));
+            }
+            catch (NumberFormatException e) {
+               throw new RuntimeException(error("has a bad value for " + fldname));
+            }
+         }
+      }
+      return vals;
+   }
+
+   public void close() {
+      try {
+         reader.close();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + filename);
+      }
+   }
+
+   private List<String> split(String line) {
+      List<String> strs = new ArrayList<>();
+      StringBuilder sb = new StringBuilder();
+      boolean quoted = false;
+      for (int i=0; i<line.length(); i++) {
+         char c = line.charAt(i);
+         if (quoted && c == '"' && i+1 < line.length() && line.charAt(i+1) == '"') {
+            sb.append('"');
+            i++;
+         }
+         else if (c == '"')
+            quoted = !quoted;
+         else if (c == ',' && !quoted) {
+            strs.add(sb.toString());
+            sb.setLength(0);
+         }
+         else
+            sb.append(c);
+      }
+      if (quoted)
+         throw new RuntimeException(error("has an unterminated quote"));
+      strs.add(sb.toString());
+      return strs;
+   }
+
+   private String error(String problem) {
+      return "line " + linenum + " of " + filename + " " + problem;
+   }
+}
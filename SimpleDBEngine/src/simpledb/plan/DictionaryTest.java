@@ -0,0 +1,102 @@
+package simpledb.plan;
+
+import simpledb.materialize.MergeJoinPlan;
+import simpledb.query.Scan;
+import simpledb.record.Dictionary;
+import simpledb.server.SimpleDB;
+import simpledb.tx.ReadOnlyException;
+import simpledb.tx.Transaction;
+
+/**
+ * Fills two tables with the same records, one of which encodes
+ * its city field with a dictionary, and compares their sizes
+ * and the answers of a query on the field. An update that a
+ * read-only transaction cannot write must not add its value
+ * to the dictionary. Finally two tables whose fields share a
+ * dictionary are joined on those fields by a hash join and
+ * a merge join, which must keep and compare the codes.
+ */
+public class DictionaryTest {
+   private static final int NUM_RECORDS = 2000, NUM_VISITS = 50;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("dictionarytest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table plain (id int, city varchar(20))", tx);
+      planner.executeUpdate("create table encoded (id int, city varchar(20) dictionary)", tx);
+      for (int i=0; i<NUM_RECORDS; i++)
+         for (String tblname : new String[] {"plain", "encoded"})
+            planner.executeUpdate("insert into " + tblname + " (id, city) values ("
+                  + i + ", 'city" + (i % 10) + "')", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      System.out.println("plain has " + tx.size("plain.tbl") + " blocks, encoded has "
+            + tx.size("encoded.tbl") + " blocks and a dictionary of "
+            + tx.size("encoded.city.dict") + " blocks");
+      for (String tblname : new String[] {"plain", "encoded"}) {
+         Plan p = planner.createQueryPlan("select id from " + tblname + " where city = 'city3'", tx);
+         Scan s = p.open();
+         int count = 0;
+         while (s.next())
+            count++;
+         s.close();
+         System.out.println(tblname + " has " + count + " records in city3, expected " + (NUM_RECORDS / 10));
+      }
+      tx.commit();
+
+      // an update that cannot be written adds nothing to the dictionary
+      tx = db.newReadOnlyTx();
+      try {
+         planner.executeUpdate("update encoded set city = 'nowhere' where id = 1", tx);
+         System.out.println("a read-only transaction updated a record");
+      }
+      catch (ReadOnlyException e) {
+         System.out.println("a read-only transaction cannot update a record");
+      }
+      tx.commit();
+      tx = db.newTx();
+      System.out.println("code of the value it wrote: "
+            + new Dictionary(tx, "encoded.city", 20).code("nowhere") + ", expected -1");
+      tx.commit();
+
+      tx = db.newTx();
+      planner.executeUpdate("create table residents (rid int, home varchar(20) dictionary places)", tx);
+      planner.executeUpdate("create table visits (vid int, place varchar(20) dictionary places)", tx);
+      for (int i=0; i<NUM_RECORDS; i++)
+         planner.executeUpdate("insert into residents (rid, home) values ("
+               + i + ", 'city" + (i % 10) + "')", tx);
+      for (int i=0; i<NUM_VISITS; i++)
+         planner.executeUpdate("insert into visits (vid, place) values ("
+               + i + ", 'city" + (i % 12) + "')", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      Plan residents = new TablePlan(tx, "residents", db.mdMgr());
+      Plan visits = new TablePlan(tx, "visits", db.mdMgr());
+      join("hash join", new HashJoinPlan(tx, residents, visits, "home", "place"));
+      join("merge join", new MergeJoinPlan(tx, residents, visits, "home", "place"));
+      tx.commit();
+   }
+
+   /**
+    * Each of city0 to city9 is the home of NUM_RECORDS / 10 residents,
+    * and the visits to them are those whose vid mod 12 is below 10.
+    */
+   private static void join(String name, Plan p) {
+      Scan s = p.open();
+      int homecol = s.findField("home"), placecol = s.findField("place");
+      boolean codes = s.dictionary(homecol) != null && s.dictionary(placecol) != null;
+      int count = 0;
+      while (s.next()) {
+         if (s.getInt(homecol) != s.getInt(placecol) || !s.getString(homecol).equals(s.getString(placecol)))
+            System.out.println(name + " joined " + s.getString(homecol) + " with " + s.getString(placecol));
+         count++;
+      }
+      s.close();
+      int visited = (NUM_VISITS / 12) * 10 + Math.min(NUM_VISITS % 12, 10);
+      System.out.println(name + " has " + count + " records, expected " + (NUM_RECORDS / 10) * visited
+            + (codes ? ", on codes" : ", on values"));
+   }
+}
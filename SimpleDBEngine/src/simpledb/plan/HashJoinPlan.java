@@ -27,11 +27,7 @@ public class HashJoinPlan implements Plan {
      * @param fldnameRight the right-hand join field
      */
     public HashJoinPlan(Transaction tx, Plan left, Plan right, String fldnameLeft, String fldnameRight) {
-        int numPartitions = tx.availableBuffs() - 1;
-        if (numPartitions < 2) {
-            // We can not work with just 1 partition
-            throw new RuntimeException("not enough buffer");
-        }
+        // the scan always makes at least 2 partitions, even if the pool cannot grant it 3 buffers
         this.tx = tx;
         this.left = left;
         this.right = right;
@@ -2,10 +2,13 @@ package simpledb.plan;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import simpledb.buffer.BufferGrant;
 import simpledb.materialize.TempTable;
 import simpledb.multibuffer.MultibufferProductScan;
 import simpledb.query.*;
+import simpledb.record.Dictionary;
 import simpledb.record.Schema;
 import simpledb.tx.Transaction;
 
@@ -22,7 +25,8 @@ public class HashJoinScan implements Scan {
     private String lField, rField;
 
     /* Necessary info for partitioning */
-    private int numBuff;    // Number of buffers available
+    private int numBuff;    // Number of buffers granted for the partition phase
+    private BufferGrant grant;    // The grant that the partitions are written under, during the partition phase
     private TempTable[] lPartitions, rPartitions;    // Arrays holding the partitions of the left and right scans
     private List<Integer> failedPartitionNums;   // Some partition pairs are too big, and need to be recursively hash joined.
                                                  // This list keeps track of those partitions.
@@ -30,6 +34,16 @@ public class HashJoinScan implements Scan {
     int currPartition;   // The pointer to the Current partition. We join on the fly, so we need to know which partition is currently being joined
     Scan currentScan;     // The scan that will yield resultant records. This scan is built from joining the partitions.
 
+    /* The columns of this scan are the positions of the fields in the list below, which stay the same
+       as currentScan changes. currentCols holds the column of each field in the current scan. */
+    private List<String> fields;
+    private int[] currentCols;
+
+    /* The partitions keep the codes of dictionary-encoded fields. If the join fields have the same
+       dictionary, the records are hashed on the codes, and the join compares them. */
+    private Dictionary[] dicts;
+    private boolean codes;
+
     /**
      * Creates a hash join scan from the two underlying scans.
      * @param tx the calling transaction
@@ -48,15 +62,32 @@ public class HashJoinScan implements Scan {
         this.rSchema = rSchema;
         this.lField = lField;
         this.rField = rField;
+        fields = new ArrayList<>(lSchema.fields());
+        for (String f : rSchema.fields())
+            if (!fields.contains(f))
+                fields.add(f);
+
+        dicts = new Dictionary[fields.size()];
+        for (int i = 0; i < dicts.length; i++) {
+            Scan s = lSchema.hasField(fields.get(i)) ? L : R;
+            dicts[i] = s.dictionary(s.findField(fields.get(i)));
+        }
+        Dictionary lDict = dicts[fields.indexOf(lField)], rDict = dicts[fields.indexOf(rField)];
+        codes = lDict != null && rDict != null && lDict.name().equals(rDict.name());
 
-        numBuff = tx.availableBuffs();
         failedPartitionNums = new ArrayList<>();
 
         currPartition = 0;
         currentScan = null;
 
         choosePrimesForHash();
+        // Reserve the partition buffers up front; we need at least 2 partitions + 1 input buffer,
+        // which a very small pool may not be able to grant, so some of them are then ordinary pins
+        grant = tx.reserveBuffers(3, tx.maxBufferGrant());
+        numBuff = Math.max(3, grant.size());
         runPartitionPhase();
+        tx.releaseBuffers(grant);
+        grant = null;
         JoinMore();
     }
 
@@ -72,12 +103,11 @@ public class HashJoinScan implements Scan {
 
     /**
      * Hash function used for partitioning.
-     * @param val        the value of the field to be hashed
+     * @param h          the hash code of the value of the field to be hashed, or its code
      * @param numBuckets the number of buckets in the partition
      * @return the bucket this value should go into.
      */
-    private int hashFunc(Constant val, int numBuckets) {
-        int h = val.hashCode();
+    private int hashFunc(int h, int numBuckets) {
         return ((h * PRIME1) % PRIME2) % numBuckets;
     }
 
@@ -94,20 +124,47 @@ public class HashJoinScan implements Scan {
         Schema sch = (isLeft) ? lSchema : rSchema;
 
         // Open scans for k temporary tables (they act as buffers when we partition)
+        // The partitions keep the codes of the fields that the scan reads codes of
+        Map<String, String> partDicts = TempTable.dictionaries(s, sch);
+        // Only the pins of the partitions are charged to the grant, not those of the source scan
         TempTable[] partitions = new TempTable[numBuff - 1];
         UpdateScan[] tempScans = new UpdateScan[numBuff -1];
-        for (int i = 0; i < numBuff - 1; i++) {
-            partitions[i] = new TempTable(tx, sch);
-            tempScans[i] = partitions[i].open();
+        BufferGrant prev = tx.chargeTo(grant);
+        try {
+            for (int i = 0; i < numBuff - 1; i++) {
+                partitions[i] = new TempTable(tx, sch, partDicts);
+                tempScans[i] = partitions[i].open();
+            }
+        } finally {
+            tx.chargeTo(prev);
+        }
+
+        // Find the columns once; the partitions all have the same layout
+        int hashCol = s.findField(fieldName);
+        int n = sch.fields().size();
+        int[] srcCols = new int[n], tempCols = new int[n];
+        for (int i = 0; i < n; i++) {
+            srcCols[i] = s.findField(sch.fields().get(i));
+            tempCols[i] = tempScans[0].findField(sch.fields().get(i));
         }
+        boolean[] encoded = partitions[0].encoded(tempCols);
 
         // Hash records one by one, and put them in their partition
         while (s.next()) {
-            int bucket = hashFunc(s.getVal(fieldName), numBuff - 1);
+            int h = codes ? s.getInt(hashCol) : s.getVal(hashCol).hashCode();
+            int bucket = hashFunc(h, numBuff - 1);
             UpdateScan partition = tempScans[bucket];
-            partition.insert();
-            for (String f : sch.fields()) {
-                partition.setVal(f, s.getVal(f));
+            prev = tx.chargeTo(grant);
+            try {
+                partition.insert();
+                for (int i = 0; i < n; i++) {
+                    if (encoded[i])
+                        partition.setInt(tempCols[i], s.getInt(srcCols[i]));
+                    else
+                        partition.setVal(tempCols[i], s.getVal(srcCols[i]));
+                }
+            } finally {
+                tx.chargeTo(prev);
             }
         }
 
@@ -148,6 +205,7 @@ public class HashJoinScan implements Scan {
                 currentScan = new SelectScan(
                         new MultibufferProductScan(tx, other.open(), fit.tableName(), fit.getLayout()),
                         new Predicate(new Term(new Expression(lField), new Expression(rField), "=")));
+                bindCurrentScan();
                 currentScan.beforeFirst();
                 return;
             } else {        // This pair of partition is too big, skip them. We'll recursively HJ them later.
@@ -177,10 +235,19 @@ public class HashJoinScan implements Scan {
         Scan leftPartition = lPartitions[failedNum].open();
         Scan rightPartition = rPartitions[failedNum].open();
         currentScan = new HashJoinScan(tx, leftPartition, rightPartition, lSchema, rSchema, lField, rField);
+        bindCurrentScan();
         currentScan.beforeFirst();
         failedPartitionNums.remove(0);
     }
 
+    /**
+     * Finds the column of each field in the new current scan.
+     */
+    private void bindCurrentScan() {
+        currentCols = new int[fields.size()];
+        for (int i = 0; i < currentCols.length; i++)
+            currentCols[i] = currentScan.findField(fields.get(i));
+    }
 
     // --------- Methods implementing Scan interface ----------------------
 
@@ -251,6 +318,39 @@ public class HashJoinScan implements Scan {
         return currentScan.getString(fldname);
     }
 
+    /**
+     * Returns the column of the specified field,
+     * which is its position in the fields of the two schemas.
+     * @see simpledb.query.Scan#findField(String)
+     */
+    public int findField(String fldname) {
+        return fields.indexOf(fldname);
+    }
+
+    public Constant getVal(int col) {
+        assert currentScan != null;
+        return currentScan.getVal(currentCols[col]);
+    }
+
+    public int getInt(int col) {
+        assert currentScan != null;
+        return currentScan.getInt(currentCols[col]);
+    }
+
+    public String getString(int col) {
+        assert currentScan != null;
+        return currentScan.getString(currentCols[col]);
+    }
+
+    /**
+     * Returns the dictionary of the field in the specified column,
+     * whose codes the partitions keep.
+     * @see simpledb.query.Scan#dictionary(int)
+     */
+    public Dictionary dictionary(int col) {
+        return dicts[col];
+    }
+
     /**
      * Returns true if the specified field is in
      * either of the underlying scans.
@@ -0,0 +1,269 @@
+package simpledb.plan;
+
+import static java.sql.Types.INTEGER;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.index.btree.BTreeTableScan;
+import simpledb.metadata.PartitionInfo;
+import simpledb.query.Constant;
+import simpledb.query.UpdateScan;
+import simpledb.record.Layout;
+import simpledb.record.RID;
+import simpledb.record.TableScan;
+import simpledb.tx.Transaction;
+
+/**
+ * A scan of a partitioned table, which reads the
+ * specified partitions of the table one after another.
+ * <p>
+ * A new record is put into the partition that its value of the
+ * partitioning field selects once all of its values are set,
+ * that is, when the scan moves on. A record whose partitioning
+ * value is changed to that of another partition is deleted from
+ * its partition, and inserted into the other one when the scan
+ * is closed, so that the scan does not meet it again.
+ * A record of a partitioned table has no RID that identifies it
+ * within the table.
+ */
+public class PartitionScan implements UpdateScan {
+   private Transaction tx;
+   private String tblname;
+   private Layout layout;
+   private PartitionInfo pi;
+   private List<String> partnames;
+   private int partcol;
+   private int current = -1;
+   private UpdateScan s = null;   // the scan of the current partition
+   private Map<String,UpdateScan> inserters = new HashMap<>();
+   private Constant[] rec = null; // the current record, while it is not in a partition
+   private boolean recMoved;
+   private List<Constant[]> moved = new ArrayList<>();
+
+   /**
+    * Create a scan of the specified partitions of the table.
+    * @param tx the calling transaction
+    * @param tblname the name of the table
+    * @param layout the table's layout
+    * @param pi the partitioning of the table
+    * @param partnames the partitions to read, in order
+    */
+   public PartitionScan(Transaction tx, String tblname, Layout layout,
+                        PartitionInfo pi, List<String> partnames) {
+      this.tx = tx;
+      this.tblname = tblname;
+      this.layout = layout;
+      this.pi = pi;
+      this.partnames = partnames;
+      partcol = layout.column(pi.fieldName());
+   }
+
+   // Methods that implement Scan
+
+   public void beforeFirst() {
+      placeRecord();
+      if (s != null)
+         s.close();
+      s = null;
+      current = -1;
+   }
+
+   /**
+    * Move to the next record of the current partition,
+    * going on to the next partition at its end.
+    */
+   public boolean next() {
+      placeRecord();
+      while (s == null || !s.next()) {
+         if (s != null)
+            s.close();
+         s = null;
+         if (current+1 >= partnames.size())
+            return false;
+         current++;
+         s = open(partnames.get(current));
+      }
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return getInt(column(fldname));
+   }
+
+   public String getString(String fldname) {
+      return getString(column(fldname));
+   }
+
+   public Constant getVal(String fldname) {
+      return getVal(column(fldname));
+   }
+
+   /**
+    * Return the column of the specified field,
+    * which is its column in the table's layout.
+    * @see simpledb.query.Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return layout.column(fldname);
+   }
+
+   public int getInt(int col) {
+      return getVal(col).asInt();
+   }
+
+   public String getString(int col) {
+      return getVal(col).asString();
+   }
+
+   public Constant getVal(int col) {
+      if (rec != null)
+         return rec[col];
+      return s.getVal(col);
+   }
+
+   public boolean hasField(String fldname) {
+      return layout.schema().hasField(fldname);
+   }
+
+   /**
+    * Close the scan, putting the records whose partitioning
+    * values were changed into their new partitions first.
+    */
+   public void close() {
+      placeRecord();
+      for (Constant[] vals : moved)
+         put(vals);
+      moved.clear();
+      if (s != null)
+         s.close();
+      s = null;
+      for (UpdateScan us : inserters.values())
+         us.close();
+      inserters.clear();
+   }
+
+   // Methods that implement UpdateScan
+
+   public void setInt(String fldname, int val) {
+      setVal(column(fldname), new Constant(val));
+   }
+
+   public void setString(String fldname, String val) {
+      setVal(column(fldname), new Constant(val));
+   }
+
+   public void setVal(String fldname, Constant val) {
+      setVal(column(fldname), val);
+   }
+
+   public void setInt(int col, int val) {
+      setVal(col, new Constant(val));
+   }
+
+   public void setString(int col, String val) {
+      setVal(col, new Constant(val));
+   }
+
+   /**
+    * Store the value in the current record. A partitioning value
+    * that belongs to another partition takes the record out of its
+    * partition, to be put into the other one when the scan is closed.
+    */
+   public void setVal(int col, Constant val) {
+      if (rec == null && col == partcol
+            && !pi.partitionOf(val).equals(partnames.get(current))) {
+         rec = currentRecord();
+         recMoved = true;
+         moved.add(rec);
+         s.delete();
+      }
+      if (rec != null)
+         rec[col] = val;
+      else
+         s.setVal(col, val);
+   }
+
+   /**
+    * Start a new record, whose fields are zero or empty
+    * until they are set. The record is put into its partition
+    * when the scan moves on.
+    */
+   public void insert() {
+      placeRecord();
+      List<String> fields = layout.schema().fields();
+      rec = new Constant[fields.size()];
+      for (int col=0; col<rec.length; col++)
+         rec[col] = (layout.schema().type(fields.get(col)) == INTEGER) ? new Constant(0) : new Constant("");
+      recMoved = false;
+   }
+
+   public void delete() {
+      if (rec != null) {
+         if (recMoved)
+            moved.remove(rec);
+         rec = null;
+      }
+      else
+         s.delete();
+   }
+
+   /**
+    * Return null, because a RID does not
+    * say which partition the record is in.
+    */
+   public RID getRid() {
+      return null;
+   }
+
+   public void moveToRid(RID rid) {
+      throw new UnsupportedOperationException("table " + tblname + " is partitioned and has no RIDs.");
+   }
+
+   // Private auxiliary methods
+
+   /**
+    * Put the new record into its partition, unless it was
+    * moved out of one, in which case it waits for the scan to close.
+    */
+   private void placeRecord() {
+      if (rec != null && !recMoved)
+         put(rec);
+      rec = null;
+   }
+
+   private void put(Constant[] vals) {
+      String partname = pi.partitionOf(vals[partcol]);
+      UpdateScan us = inserters.computeIfAbsent(partname, this::open);
+      us.insert();
+      for (int col=0; col<vals.length; col++)
+         us.setVal(col, vals[col]);
+   }
+
+   /**
+    * Open the table of the specified partition, which for a
+    * btree table reads the records in the order of its primary key.
+    */
+   private UpdateScan open(String partname) {
+      String name = PartitionInfo.tableName(tblname, partname);
+      if (layout.key() != null)
+         return new BTreeTableScan(tx, name, layout);
+      return new TableScan(tx, name, layout);
+   }
+
+   private Constant[] currentRecord() {
+      Constant[] vals = new Constant[layout.schema().fields().size()];
+      for (int col=0; col<vals.length; col++)
+         vals[col] = s.getVal(col);
+      return vals;
+   }
+
+   private int column(String fldname) {
+      int col = layout.column(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+}
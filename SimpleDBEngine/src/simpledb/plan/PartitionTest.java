@@ -0,0 +1,73 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.List;
+
+import simpledb.metadata.PartitionInfo;
+import simpledb.parse.Parser;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Fills a table that is partitioned by range, checks that a query
+ * on the partitioning field reads only the partitions it needs,
+ * also when it bounds the field strictly by a partition's bound,
+ * and drops the oldest partition, whose file should be deleted.
+ */
+public class PartitionTest {
+   private static final int NUM_RECORDS = 3000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("partitiontest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table events (id int, day int) partition by range (day) "
+            + "(partition d1 values less than (10), partition d2 values less than (20), "
+            + "partition d3 values less than (maxvalue))", tx);
+      for (int i=0; i<NUM_RECORDS; i++)
+         planner.executeUpdate("insert into events (id, day) values (" + i + ", " + (i % 30) + ")", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      Plan p = planner.createQueryPlan("select id from events where day = 25", tx);
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      System.out.println("day 25 has " + count + " records, expected " + (NUM_RECORDS / 30));
+
+      // a strict bound excludes the partition that starts at it
+      PartitionInfo pi = db.mdMgr().getPartitionInfo("events", tx);
+      String[] queries = {"day < 10", "day <= 10", "day > 19", "day > 9 and day < 20"};
+      String[] expected = {"[d1]", "[d1, d2]", "[d3]", "[d2]"};
+      for (int i=0; i<queries.length; i++) {
+         String qry = "select id from events where " + queries[i];
+         List<String> parts = pi.prune(new Parser(qry).query().pred());
+         System.out.println(queries[i] + " reads " + parts + ", expected " + expected[i]);
+      }
+      s = planner.createQueryPlan("select id from events where day < 10", tx).open();
+      count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      System.out.println("days below 10 have " + count + " records, expected " + (NUM_RECORDS / 3));
+      tx.commit();
+
+      tx = db.newTx();
+      planner.executeUpdate("alter table events drop partition d1", tx);
+      tx.commit();
+      File dir = new File("partitiontest");
+      System.out.println("file of d1 exists: " + new File(dir, "events.d1.tbl").exists());
+
+      tx = db.newTx();
+      s = planner.createQueryPlan("select id from events", tx).open();
+      count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      tx.commit();
+      System.out.println("events has " + count + " records, expected " + (NUM_RECORDS * 2 / 3));
+   }
+}
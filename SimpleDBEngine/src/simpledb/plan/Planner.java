@@ -1,13 +1,17 @@
 package simpledb.plan;
 
+import simpledb.parse.AddPartitionData;
+import simpledb.parse.CopyData;
 import simpledb.parse.CreateIndexData;
 import simpledb.parse.CreateTableData;
 import simpledb.parse.CreateViewData;
 import simpledb.parse.DeleteData;
+import simpledb.parse.DropPartitionData;
 import simpledb.parse.InsertData;
 import simpledb.parse.ModifyData;
 import simpledb.parse.Parser;
 import simpledb.parse.QueryData;
+import simpledb.parse.VacuumData;
 import simpledb.tx.Transaction;
 
 /**
@@ -37,8 +41,8 @@ public class Planner {
    }
    
    /**
-    * Executes an SQL insert, delete, modify, or
-    * create statement.
+    * Executes an SQL insert, delete, modify, copy, vacuum,
+    * create or alter statement.
     * The method dispatches to the appropriate method of the
     * supplied update planner,
     * depending on what the parser returns.
@@ -62,6 +66,14 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)data, tx);
       else if (data instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)data, tx);
+      else if (data instanceof CopyData)
+         return uplanner.executeCopy((CopyData)data, tx);
+      else if (data instanceof VacuumData)
+         return uplanner.executeVacuum((VacuumData)data, tx);
+      else if (data instanceof AddPartitionData)
+         return uplanner.executeAddPartition((AddPartitionData)data, tx);
+      else if (data instanceof DropPartitionData)
+         return uplanner.executeDropPartition((DropPartitionData)data, tx);
       else
          return 0;
    }
@@ -1,6 +1,7 @@
 package simpledb.plan;
 
 import simpledb.index.planner.IndexSelectPlan;
+import simpledb.index.planner.KeyRangePlan;
 import simpledb.query.Predicate;
 import simpledb.query.Scan;
 import simpledb.query.SelectScan;
@@ -92,7 +93,8 @@ public class SelectPlan implements Plan {
    @Override
    public String getQueryPlan(String tblname, String currQueryPlan, int margin) {
       String s = String.format("Select on %s (pred: %s)", tblname, pred);
-      if (p instanceof IndexSelectPlan) {
+      if (p instanceof IndexSelectPlan || p instanceof KeyRangePlan
+            || (p instanceof TablePlan && ((TablePlan) p).isPartitioned())) {
          s += String.format("\n  -> %s", p.getQueryPlan(tblname, "dummy", -1));
       }
       return s;
@@ -1,7 +1,12 @@
 package simpledb.plan;
 
+import java.util.List;
+
+import simpledb.index.btree.BTreeTableScan;
 import simpledb.metadata.MetadataMgr;
+import simpledb.metadata.PartitionInfo;
 import simpledb.metadata.StatInfo;
+import simpledb.query.Predicate;
 import simpledb.query.Scan;
 import simpledb.record.Layout;
 import simpledb.record.Schema;
@@ -16,25 +21,66 @@ public class TablePlan implements Plan {
    private Transaction tx;
    private Layout layout;
    private StatInfo si;
+   private MetadataMgr md;
+   private PartitionInfo pi;
+   private List<String> partitions;
    
    /**
     * Creates a leaf node in the query tree corresponding
     * to the specified table.
+    * The statistics of a partitioned table are
+    * the sums of those of its partitions.
     * @param tblname the name of the table
     * @param tx the calling transaction
     */
    public TablePlan(Transaction tx, String tblname, MetadataMgr md) {
       this.tblname = tblname;
       this.tx = tx;
+      this.md = md;
       layout = md.getLayout(tblname, tx);
-      si = md.getStatInfo(tblname, layout, tx);
+      pi = md.getPartitionInfo(tblname, tx);
+      if (pi == null)
+         si = md.getStatInfo(tblname, layout, tx);
+      else {
+         partitions = pi.partitions();
+         si = partitionStats();
+      }
+   }
+   
+   private TablePlan(TablePlan p, List<String> partitions) {
+      tblname = p.tblname;
+      tx = p.tx;
+      md = p.md;
+      layout = p.layout;
+      pi = p.pi;
+      this.partitions = partitions;
+      si = partitionStats();
    }
    
    /**
-    * Creates a table scan for this query.
+    * Returns a plan that reads only the partitions of the table
+    * that may hold records satisfying the specified predicate.
+    * The plan of a table that is not partitioned is unchanged.
+    * @param pred the predicate that the records will be selected by
+    * @return a plan for the same table
+    */
+   public TablePlan prune(Predicate pred) {
+      if (pi == null)
+         return this;
+      return new TablePlan(this, pi.prune(pred));
+   }
+   
+   /**
+    * Creates a table scan for this query, which for a btree
+    * table reads the records in the order of its primary key,
+    * and for a partitioned table, reads the partitions in order.
     * @see Plan#open()
     */
    public Scan open() {
+      if (pi != null)
+         return new PartitionScan(tx, tblname, layout, pi, partitions);
+      if (layout.key() != null)
+         return new BTreeTableScan(tx, tblname, layout);
       return new TableScan(tx, tblname, layout);
    }
    
@@ -74,12 +120,43 @@ public class TablePlan implements Plan {
       return layout.schema();
    }
 
+   /**
+    * Return the layout of the table.
+    * @return the table's layout
+    */
+   public Layout layout() {
+      return layout;
+   }
+
+   /**
+    * Return true if the table is partitioned.
+    * @return true if the table is partitioned
+    */
+   public boolean isPartitioned() {
+      return pi != null;
+   }
+
    public String getQueryPlan(String tblname, String currQueryPlan) {
+      if (pi != null)
+         return String.format("(scan on %s partitions %s)", tblname, partitions);
       return String.format("(scan on %s)", tblname);
    }
 
    @Override
    public String getQueryPlan(String tblname, String currQueryPlan, int margin) {
+      if (pi != null)
+         return String.format("Scan on %s partitions %s", tblname, partitions);
       return String.format("Scan on %s", tblname);
    }
+   
+   private StatInfo partitionStats() {
+      int numblocks = 0, numrecs = 0;
+      for (String partname : partitions) {
+         String name = PartitionInfo.tableName(tblname, partname);
+         StatInfo psi = md.getStatInfo(name, layout, tx);
+         numblocks += psi.blocksAccessed();
+         numrecs += psi.recordsOutput();
+      }
+      return new StatInfo(numblocks, numrecs);
+   }
 }
@@ -1,11 +1,15 @@
 package simpledb.plan;
 
+import simpledb.parse.AddPartitionData;
+import simpledb.parse.CopyData;
 import simpledb.parse.CreateIndexData;
 import simpledb.parse.CreateTableData;
 import simpledb.parse.CreateViewData;
 import simpledb.parse.DeleteData;
+import simpledb.parse.DropPartitionData;
 import simpledb.parse.InsertData;
 import simpledb.parse.ModifyData;
+import simpledb.parse.VacuumData;
 import simpledb.tx.Transaction;
 
 /**
@@ -68,4 +72,46 @@ public interface UpdatePlanner {
     * @return the number of affected records
     */
    public int executeCreateIndex(CreateIndexData data, Transaction tx);
+   
+   /**
+    * Executes the specified copy statement, which loads
+    * the rows of a file into a table, and
+    * returns the number of affected records.
+    * @param data the parsed representation of the copy statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeCopy(CopyData data, Transaction tx);
+   
+   /**
+    * Executes the specified vacuum statement, which moves
+    * records to the free space at the start of a table
+    * and then shrinks its file. The work is done by a series
+    * of short transactions, so that the table stays available;
+    * the calling transaction does not modify the table.
+    * @param data the parsed representation of the vacuum statement
+    * @param tx the calling transaction
+    * @return the number of blocks removed from the table
+    */
+   public int executeVacuum(VacuumData data, Transaction tx);
+   
+   /**
+    * Executes the specified alter table statement,
+    * which adds a partition to a range partitioned table.
+    * @param data the parsed representation of the statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeAddPartition(AddPartitionData data, Transaction tx);
+   
+   /**
+    * Executes the specified alter table statement, which
+    * removes a partition of a range partitioned table along
+    * with its records. The files of the partition are
+    * deleted when the transaction commits.
+    * @param data the parsed representation of the statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeDropPartition(DropPartitionData data, Transaction tx);
 }
@@ -0,0 +1,83 @@
+package simpledb.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The columns of a scan whose fields come from several
+ * underlying scans, such as a product or a join.
+ * The underlying scans are numbered by the caller, and
+ * each column records the number of the scan that has the
+ * field and the field's column in that scan.
+ * A column is added when the field is first looked for,
+ * so the columns are those that the scan's consumers use.
+ */
+public class ColumnMap {
+   private List<String> fields = new ArrayList<>();
+   private int[] sides = new int[8], cols = new int[8];
+
+   /**
+    * Return the column of the specified field, looking for
+    * it in each of the specified scans in turn, if it does
+    * not have a column yet. The position of a scan in the
+    * argument list is its number.
+    * @param fldname the name of the field
+    * @param scans the underlying scans
+    * @return the column of the field, or -1 if no scan has it
+    */
+   public int find(String fldname, Scan... scans) {
+      int col = fields.indexOf(fldname);
+      if (col >= 0)
+         return col;
+      for (int side=0; side<scans.length; side++) {
+         int c = scans[side].findField(fldname);
+         if (c >= 0)
+            return add(fldname, side, c);
+      }
+      return -1;
+   }
+
+   /**
+    * Return the column of the specified field,
+    * or -1 if it does not have one yet.
+    */
+   public int indexOf(String fldname) {
+      return fields.indexOf(fldname);
+   }
+
+   /**
+    * Add a column for the specified field.
+    * @param fldname the name of the field
+    * @param side the number of the underlying scan that has it
+    * @param col the field's column in that scan
+    * @return the new column
+    */
+   public int add(String fldname, int side, int col) {
+      int n = fields.size();
+      if (n == sides.length) {
+         sides = Arrays.copyOf(sides, 2 * n);
+         cols  = Arrays.copyOf(cols, 2 * n);
+      }
+      fields.add(fldname);
+      sides[n] = side;
+      cols[n] = col;
+      return n;
+   }
+
+   /**
+    * Return the number of the underlying scan
+    * that has the field in the specified column.
+    */
+   public int side(int col) {
+      return sides[col];
+   }
+
+   /**
+    * Return the column, in its underlying scan,
+    * of the field in the specified column.
+    */
+   public int column(int col) {
+      return cols[col];
+   }
+}
@@ -28,6 +28,29 @@ public class Expression {
    public Constant evaluate(Scan s) {
       return (val != null) ? val : s.getVal(fldname);
    }
+
+   /**
+    * Evaluate the expression with respect to the
+    * current record of the specified scan, whose
+    * column for the expression's field is given.
+    * @param s the scan
+    * @param col the expression's column in the scan
+    * @return the value of the expression, as a Constant
+    * @see #column(Scan)
+    */
+   public Constant evaluate(Scan s, int col) {
+      return (val != null) ? val : s.getVal(col);
+   }
+
+   /**
+    * Return the column in the specified scan of the
+    * field that the expression denotes.
+    * @param s the scan
+    * @return the field's column, or -1 for a constant
+    */
+   public int column(Scan s) {
+      return (val != null) ? -1 : s.findField(fldname);
+   }
    
    /**
     * Return true if the expression is a field reference.
@@ -57,6 +57,71 @@ public class Predicate {
       return true;
    }
 
+   /**
+    * Return the columns in the specified scan of the
+    * expressions of the predicate's terms, two per term.
+    * A scan that evaluates the predicate for each of
+    * its records finds them once, when it is set up.
+    * @param s the scan
+    * @return the columns of the expressions
+    * @see #isSatisfied(Scan, int[])
+    */
+   public int[] columns(Scan s) {
+      int[] cols = new int[2 * terms.size()];
+      for (int i=0; i<terms.size(); i++) {
+         cols[2*i]   = terms.get(i).getLhs().column(s);
+         cols[2*i+1] = terms.get(i).getRhs().column(s);
+      }
+      return cols;
+   }
+
+   /**
+    * Returns true if the predicate evaluates to true
+    * with respect to the specified scan, whose columns
+    * for the predicate's expressions are given.
+    * @param s the scan
+    * @param cols the columns returned by {@link #columns(Scan)}
+    * @return true if the predicate is true in the scan
+    */
+   public boolean isSatisfied(Scan s, int[] cols) {
+      for (int i=0; i<terms.size(); i++)
+         if (!terms.get(i).isSatisfied(s, cols[2*i], cols[2*i+1]))
+            return false;
+      return true;
+   }
+
+   /**
+    * Return how each term of the predicate is evaluated
+    * on the specified scan, which compares the codes of its
+    * dictionary-encoded fields instead of their values where
+    * it can. The codes are found once, when the scan is set up.
+    * @param s the scan
+    * @param cols the columns returned by {@link #columns(Scan)}
+    * @return the value of {@link Term#code(Scan, int, int)} for each term
+    */
+   public int[] codes(Scan s, int[] cols) {
+      int[] codes = new int[terms.size()];
+      for (int i=0; i<terms.size(); i++)
+         codes[i] = terms.get(i).code(s, cols[2*i], cols[2*i+1]);
+      return codes;
+   }
+
+   /**
+    * Returns true if the predicate evaluates to true
+    * with respect to the specified scan, comparing
+    * codes where {@link #codes(Scan, int[])} found that it can.
+    * @param s the scan
+    * @param cols the columns returned by {@link #columns(Scan)}
+    * @param codes the codes returned by {@link #codes(Scan, int[])}
+    * @return true if the predicate is true in the scan
+    */
+   public boolean isSatisfied(Scan s, int[] cols, int[] codes) {
+      for (int i=0; i<terms.size(); i++)
+         if (!terms.get(i).isSatisfied(s, cols[2*i], cols[2*i+1], codes[i]))
+            return false;
+      return true;
+   }
+
    /** 
     * Calculate the extent to which selecting on the predicate
     * reduces the number of records output by a query.
@@ -129,6 +194,77 @@ public class Predicate {
       return null;
    }
 
+   /**
+    * Return the largest constant that a term of the predicate
+    * bounds the specified field from below with, or null
+    * if no term does.
+    * @see Term#lowerBound(String)
+    * @param fldname the name of the field
+    * @return the lower bound, or null
+    */
+   public Constant lowerBound(String fldname) {
+      Constant result = null;
+      for (Term t : terms) {
+         Constant c = t.lowerBound(fldname);
+         if (c != null && (result == null || c.compareTo(result) > 0))
+            result = c;
+      }
+      return result;
+   }
+
+   /**
+    * Return the smallest constant that a term of the predicate
+    * bounds the specified field from above with, or null
+    * if no term does.
+    * @see Term#upperBound(String)
+    * @param fldname the name of the field
+    * @return the upper bound, or null
+    */
+   public Constant upperBound(String fldname) {
+      Constant result = null;
+      for (Term t : terms) {
+         Constant c = t.upperBound(fldname);
+         if (c != null && (result == null || c.compareTo(result) < 0))
+            result = c;
+      }
+      return result;
+   }
+
+   /**
+    * Return true if the field may not equal its lower bound,
+    * because a term bounding it from below with that
+    * constant is strict, as in "F>c".
+    * @see #lowerBound(String)
+    * @param fldname the name of the field
+    * @return true if the lower bound is strict
+    */
+   public boolean isLowerBoundStrict(String fldname) {
+      return isStrict(fldname, lowerBound(fldname), true);
+   }
+
+   /**
+    * Return true if the field may not equal its upper bound,
+    * because a term bounding it from above with that
+    * constant is strict, as in "F<c".
+    * @see #upperBound(String)
+    * @param fldname the name of the field
+    * @return true if the upper bound is strict
+    */
+   public boolean isUpperBoundStrict(String fldname) {
+      return isStrict(fldname, upperBound(fldname), false);
+   }
+
+   private boolean isStrict(String fldname, Constant bound, boolean lower) {
+      if (bound == null)
+         return false;
+      for (Term t : terms) {
+         Constant c = lower ? t.lowerBound(fldname) : t.upperBound(fldname);
+         if (c != null && c.equals(bound) && t.isStrictBound(fldname))
+            return true;
+      }
+      return false;
+   }
+
    /**
     * Determine if there is a term of the form "F1=F2"
     * where F1 is the specified field and F2 is another field.
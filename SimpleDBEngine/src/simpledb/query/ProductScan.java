@@ -1,5 +1,7 @@
 package simpledb.query;
 
+import simpledb.record.Dictionary;
+
 /**
  * The scan class corresponding to the <i>product</i> relational
  * algebra operator.
@@ -7,6 +9,7 @@ package simpledb.query;
  */
 public class ProductScan implements Scan {
    private Scan s1, s2;
+   private ColumnMap cols = new ColumnMap();
 
    /**
     * Create a product scan having the two underlying scans.
@@ -88,6 +91,31 @@ public class ProductScan implements Scan {
          return s2.getVal(fldname);
    }
 
+   /**
+    * Return the column of the specified field, which
+    * records whichever scan contains the field.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return cols.find(fldname, s1, s2);
+   }
+
+   public int getInt(int col) {
+      return scan(col).getInt(cols.column(col));
+   }
+
+   public String getString(int col) {
+      return scan(col).getString(cols.column(col));
+   }
+
+   public Constant getVal(int col) {
+      return scan(col).getVal(cols.column(col));
+   }
+
+   public Dictionary dictionary(int col) {
+      return scan(col).dictionary(cols.column(col));
+   }
+
    /**
     * Returns true if the specified field is in
     * either of the underlying scans.
@@ -105,4 +133,8 @@ public class ProductScan implements Scan {
       s1.close();
       s2.close();
    }
+
+   private Scan scan(int col) {
+      return (cols.side(col) == 0) ? s1 : s2;
+   }
 }
@@ -2,16 +2,20 @@ package simpledb.query;
 
 import java.util.List;
 
+import simpledb.record.Dictionary;
+
 /**
  * The scan class corresponding to the <i>project</i> relational
  * algebra operator.
  * All methods except hasField delegate their work to the
- * underlying scan.
+ * underlying scan. The columns of the scan are the
+ * positions of its fields in the field list.
  * @author Edward Sciore
  */
 public class ProjectScan implements Scan {
    private Scan s;
    private List<String> fieldlist;
+   private int[] cols;
    
    /**
     * Create a project scan having the specified
@@ -22,6 +26,9 @@ public class ProjectScan implements Scan {
    public ProjectScan(Scan s, List<String> fieldlist) {
       this.s = s;
       this.fieldlist = fieldlist;
+      cols = new int[fieldlist.size()];
+      for (int i=0; i<cols.length; i++)
+         cols[i] = s.findField(fieldlist.get(i));
    }
    
    public void beforeFirst() {
@@ -33,31 +40,54 @@ public class ProjectScan implements Scan {
    }
    
    public int getInt(String fldname) {
-      if (hasField(fldname))
-         return s.getInt(fldname);
-      else
-         throw new RuntimeException("field " + fldname + " not found.");
+      return getInt(column(fldname));
    }
    
    public String getString(String fldname) {
-      if (hasField(fldname))
-         return s.getString(fldname);
-      else
-         throw new RuntimeException("field " + fldname + " not found.");
+      return getString(column(fldname));
    }
    
    public Constant getVal(String fldname) {
-      if (hasField(fldname))
-         return s.getVal(fldname);
-      else
-         throw new RuntimeException("field " + fldname + " not found.");
+      return getVal(column(fldname));
+   }
+
+   /**
+    * Return the column of the specified field,
+    * which is its position in the field list.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return fieldlist.indexOf(fldname);
+   }
+
+   public int getInt(int col) {
+      return s.getInt(cols[col]);
+   }
+
+   public String getString(int col) {
+      return s.getString(cols[col]);
+   }
+
+   public Constant getVal(int col) {
+      return s.getVal(cols[col]);
    }
 
    public boolean hasField(String fldname) {
       return fieldlist.contains(fldname);
    }
+
+   public Dictionary dictionary(int col) {
+      return s.dictionary(cols[col]);
+   }
    
    public void close() {
       s.close();
    }
+
+   private int column(String fldname) {
+      int col = findField(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
 }
@@ -1,5 +1,7 @@
 package simpledb.query;
 
+import simpledb.record.Dictionary;
+
 /**
  * The interface will be implemented by each query scan.
  * There is a Scan class for each relational
@@ -44,12 +46,59 @@ public interface Scan {
     */
    public Constant getVal(String fldname);
    
+   /**
+    * Return the column of the specified field in this scan.
+    * The methods that take a column read the field without
+    * looking up its name, so a consumer of the scan finds
+    * the columns of its fields once, when it is set up,
+    * and uses them for every record.
+    * @param fldname the name of the field
+    * @return the field's column, or -1 if the scan does not have the field
+    */
+   public int findField(String fldname);
+
+   /**
+    * Return the value of the integer field in the
+    * specified column of the current record.
+    * @param col the column of the field
+    * @return the field's integer value in the current record
+    */
+   public int getInt(int col);
+
+   /**
+    * Return the value of the string field in the
+    * specified column of the current record.
+    * @param col the column of the field
+    * @return the field's string value in the current record
+    */
+   public String getString(int col);
+
+   /**
+    * Return the value of the field in the specified
+    * column of the current record, as a Constant.
+    * @param col the column of the field
+    * @return the value of that field, expressed as a Constant.
+    */
+   public Constant getVal(int col);
+
    /**
     * Return true if the scan has the specified field.
     * @param fldname the name of the field
     * @return true if the scan has that field
     */
    public boolean hasField(String fldname);
+
+   /**
+    * Return the dictionary of the string field in the specified
+    * column, if the field is dictionary-encoded and the scan reads
+    * its codes. The value of getInt on the column is then the
+    * code of the value. Scans that do not read codes return null.
+    * @param col the column of the field
+    * @return the field's dictionary, or null
+    */
+   public default Dictionary dictionary(int col) {
+      return null;
+   }
    
    /**
     * Close the scan and its subscans, if any. 
@@ -1,5 +1,6 @@
 package simpledb.query;
 
+import simpledb.record.Dictionary;
 import simpledb.record.RID;
 
 /**
@@ -7,11 +8,14 @@ import simpledb.record.RID;
  * algebra operator.
  * All methods except next delegate their work to the
  * underlying scan.
+ * The predicate compares the codes of the dictionary-encoded
+ * fields of the underlying scan where it can.
  * @author Edward Sciore
  */
 public class SelectScan implements UpdateScan {
 	private Scan s;
 	private Predicate pred;
+	private int[] predcols, predcodes;
 
 	/**
 	 * Create a select scan having the specified underlying
@@ -22,6 +26,8 @@ public class SelectScan implements UpdateScan {
 	public SelectScan(Scan s, Predicate pred) {
 		this.s = s;
 		this.pred = pred;
+		predcols = pred.columns(s);
+		predcodes = pred.codes(s, predcols);
 	}
 
 	// Scan methods
@@ -32,7 +38,7 @@ public class SelectScan implements UpdateScan {
 
 	public boolean next() {
 		while (s.next()) {
-			if (pred.isSatisfied(s))
+			if (pred.isSatisfied(s, predcols, predcodes))
 				return true;
 		}
 		return false;
@@ -52,10 +58,30 @@ public class SelectScan implements UpdateScan {
       return val;
    }
 
+	public int findField(String fldname) {
+		return s.findField(fldname);
+	}
+
+	public int getInt(int col) {
+		return s.getInt(col);
+	}
+
+	public String getString(int col) {
+		return s.getString(col);
+	}
+
+	public Constant getVal(int col) {
+		return s.getVal(col);
+	}
+
 	public boolean hasField(String fldname) {
 		return s.hasField(fldname);
 	}
 
+	public Dictionary dictionary(int col) {
+		return s.dictionary(col);
+	}
+
    public void close() {
       s.close();
    }
@@ -77,6 +103,21 @@ public class SelectScan implements UpdateScan {
       us.setVal(fldname, val);
    }
 
+	public void setInt(int col, int val) {
+		UpdateScan us = (UpdateScan) s;
+		us.setInt(col, val);
+	}
+
+	public void setString(int col, String val) {
+		UpdateScan us = (UpdateScan) s;
+		us.setString(col, val);
+	}
+
+	public void setVal(int col, Constant val) {
+		UpdateScan us = (UpdateScan) s;
+		us.setVal(col, val);
+	}
+
 	public void delete() {
 		UpdateScan us = (UpdateScan) s;
 		us.delete();
@@ -2,6 +2,7 @@ package simpledb.query;
 
 import simpledb.parse.*;
 import simpledb.plan.Plan;
+import simpledb.record.Dictionary;
 import simpledb.record.Schema;
 
 /**
@@ -10,6 +11,12 @@ import simpledb.record.Schema;
  *
  */
 public class Term {
+   /**
+    * Returned by {@link #code(Scan, int, int)} for a term
+    * that compares values, or the codes of two fields.
+    */
+   public static final int VALUES = -1, CODES = -2;
+
    private Expression lhs, rhs;
    private String opr;
    
@@ -55,8 +62,74 @@ public class Term {
     * @return true if both expressions have the same value in the scan
     */
    public boolean isSatisfied(Scan s) {
-      Constant lhsval = lhs.evaluate(s);
-      Constant rhsval = rhs.evaluate(s);
+      return compare(lhs.evaluate(s), rhs.evaluate(s));
+   }
+
+   /**
+    * Return true if the term is satisfied by the current
+    * record of the specified scan, whose columns for the
+    * term's expressions are given.
+    * @param s the scan
+    * @param lhscol the column of the LHS expression
+    * @param rhscol the column of the RHS expression
+    * @return true if the term is satisfied in the scan
+    * @see Expression#column(Scan)
+    */
+   public boolean isSatisfied(Scan s, int lhscol, int rhscol) {
+      return compare(lhs.evaluate(s, lhscol), rhs.evaluate(s, rhscol));
+   }
+
+   /**
+    * Determine whether the term can be evaluated on the codes of
+    * the dictionary-encoded fields of the specified scan.
+    * An equality or inequality of an encoded field and a string
+    * constant compares the field's code with the code of the
+    * constant, which the method returns. One of two fields that
+    * have the same dictionary compares their codes, and the method
+    * returns CODES. Otherwise, or if the constant is not in the
+    * dictionary, the method returns VALUES.
+    * @param s the scan
+    * @param lhscol the column of the LHS expression
+    * @param rhscol the column of the RHS expression
+    * @return the code of the constant, CODES or VALUES
+    */
+   public int code(Scan s, int lhscol, int rhscol) {
+      if (!opr.equals("=") && !opr.equals("<>") && !opr.equals("!="))
+         return VALUES;
+      Dictionary lhsdict = lhs.isFieldName() ? s.dictionary(lhscol) : null;
+      Dictionary rhsdict = rhs.isFieldName() ? s.dictionary(rhscol) : null;
+      if (lhsdict != null && rhsdict != null)
+         return lhsdict.name().equals(rhsdict.name()) ? CODES : VALUES;
+      Dictionary dict = (lhsdict != null) ? lhsdict : rhsdict;
+      Expression other = (lhsdict != null) ? rhs : lhs;
+      if (dict == null || other.isFieldName() || other.asConstant().asString() == null)
+         return VALUES;
+      int code = dict.code(other.asConstant().asString());
+      return (code < 0) ? VALUES : code;
+   }
+
+   /**
+    * Return true if the term is satisfied by the current record
+    * of the specified scan, comparing codes as determined by
+    * {@link #code(Scan, int, int)}.
+    * @param s the scan
+    * @param lhscol the column of the LHS expression
+    * @param rhscol the column of the RHS expression
+    * @param code the code of the constant, CODES or VALUES
+    * @return true if the term is satisfied in the scan
+    */
+   public boolean isSatisfied(Scan s, int lhscol, int rhscol, int code) {
+      if (code == VALUES)
+         return isSatisfied(s, lhscol, rhscol);
+      boolean equal;
+      if (code == CODES)
+         equal = s.getInt(lhscol) == s.getInt(rhscol);
+      else
+         equal = s.getInt(lhs.isFieldName() ? lhscol : rhscol) == code;
+      return opr.equals("=") ? equal : !equal;
+   }
+
+   private boolean compare(Constant lhsval, Constant rhsval) {
       switch (opr) {
       case "=":
          return lhsval.equals(rhsval);
@@ -128,6 +201,42 @@ public class Term {
          return null;
    }
    
+   /**
+    * Determine if this term bounds the specified field from below,
+    * being of the form "F=c", "F>c" or "F>=c" (or "c<F" and so on).
+    * If so, the method returns the constant, which the field
+    * may or may not be allowed to equal.
+    * If not, the method returns null.
+    * @param fldname the name of the field
+    * @return either the constant or null
+    */
+   public Constant lowerBound(String fldname) {
+      return bound(fldname, ">");
+   }
+   
+   /**
+    * Determine if this term bounds the specified field from above,
+    * being of the form "F=c", "F<c" or "F<=c" (or "c>F" and so on).
+    * @see #lowerBound(String)
+    * @param fldname the name of the field
+    * @return either the constant or null
+    */
+   public Constant upperBound(String fldname) {
+      return bound(fldname, "<");
+   }
+   
+   /**
+    * Determine if this term bounds the specified field strictly,
+    * being of the form "F<c" or "F>c" (or "c>F" and so on),
+    * so that the field may not equal the bound.
+    * @param fldname the name of the field
+    * @return true if the term is a strict bound on the field
+    */
+   public boolean isStrictBound(String fldname) {
+      String op = operatorOn(fldname);
+      return op != null && (op.equals("<") || op.equals(">"));
+   }
+   
    /**
     * Determine if this term is of the form "F1=F2"
     * where F1 is the specified field and F2 is another field.
@@ -163,6 +272,27 @@ public class Term {
       return lhs.toString() + " " + opr + " " + rhs.toString();
    }
 
+   private Constant bound(String fldname, String dir) {
+      String op = operatorOn(fldname);
+      if (op == null || !(op.equals("=") || op.equals(dir) || op.equals(dir + "=")))
+         return null;
+      return equatesWithConstant(fldname);
+   }
+
+   /**
+    * Return the operator of a term that compares the specified
+    * field with a constant, written as if the field came first,
+    * or null if the term is not of that kind.
+    */
+   private String operatorOn(String fldname) {
+      if (equatesWithConstant(fldname) == null)
+         return null;
+      if (lhs.isFieldName())
+         return opr;
+      // read "c<F" as "F>c"
+      return opr.replace('<', '#').replace('>', '<').replace('#', '>');
+   }
+
    public boolean isNonEqualityTerm() {
       return !opr.equals("=");
    }
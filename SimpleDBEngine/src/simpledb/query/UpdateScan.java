@@ -28,6 +28,31 @@ public interface UpdateScan extends Scan {
     */
    public void setString(String fldname, String val);
    
+   /**
+    * Modify the field value in the specified column
+    * of the current record.
+    * @param col the column of the field
+    * @param val the new value, expressed as a Constant
+    * @see Scan#findField(String)
+    */
+   public void setVal(int col, Constant val);
+
+   /**
+    * Modify the field value in the specified column
+    * of the current record.
+    * @param col the column of the field
+    * @param val the new integer value
+    */
+   public void setInt(int col, int val);
+
+   /**
+    * Modify the field value in the specified column
+    * of the current record.
+    * @param col the column of the field
+    * @param val the new string value
+    */
+   public void setString(int col, String val);
+
    /**
     * Insert a new record somewhere in the scan.
     */
@@ -0,0 +1,68 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Loads the same records into one table with a table scan
+ * and into another with a bulk loader, and reports how long
+ * each took. A second bulk load into the table is then
+ * rolled back, which should leave the table as it was.
+ */
+public class BulkLoadTest {
+   private static final int NUM_RECORDS = 50000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("bulkloadtest", 4096, 64);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 20);
+      Layout layout = new Layout(sch);
+
+      long start = System.currentTimeMillis();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T1", layout);
+      for (int i=0; i<NUM_RECORDS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setString("name", "rec" + i);
+      }
+      ts.close();
+      tx.commit();
+      System.out.println("table scan: " + NUM_RECORDS + " inserts took "
+                         + (System.currentTimeMillis() - start) + " ms");
+
+      start = System.currentTimeMillis();
+      load(db, "T2", layout, false);
+      System.out.println("bulk loader: " + NUM_RECORDS + " inserts took "
+                         + (System.currentTimeMillis() - start) + " ms");
+
+      load(db, "T2", layout, true);
+      tx = db.newTx();
+      ts = new TableScan(tx, "T2", layout);
+      int count = 0;
+      while (ts.next()) {
+         if (!ts.getString("name").equals("rec" + ts.getInt("id")))
+            System.out.println("wrong record " + ts.getInt("id"));
+         count++;
+      }
+      ts.close();
+      tx.commit();
+      System.out.println("T2 has " + count + " records after the rolled back load");
+   }
+
+   private static void load(SimpleDB db, String tblname, Layout layout, boolean rollback) {
+      Transaction tx = db.newTx();
+      BulkLoader loader = new BulkLoader(tx, tblname, layout);
+      for (int i=0; i<NUM_RECORDS; i++) {
+         loader.insert();
+         loader.setInt("id", i);
+         loader.setString("name", rollback ? "bad" + i : "rec" + i);
+      }
+      loader.close();
+      if (rollback)
+         tx.rollback();
+      else
+         tx.commit();
+   }
+}
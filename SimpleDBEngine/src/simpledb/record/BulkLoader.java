@@ -0,0 +1,110 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+
+import simpledb.query.Constant;
+import simpledb.tx.Transaction;
+
+/**
+ * Loads records into a table in bulk.
+ * Unlike a table scan, the loader never looks for room in the
+ * existing blocks of the table: it appends new blocks and fills
+ * them one after another. They are loaded blocks of the transaction
+ * (see {@link Transaction#beginLoad(String)}), so the values stored
+ * in them are not logged, and the transaction writes them to disk
+ * when it commits. The table is XLocked until then.
+ */
+public class BulkLoader {
+   private Transaction tx;
+   private Layout layout;
+   private String tblname, filename;
+   private RecordPage rp;
+   private Dictionary[] dicts;
+   private int currentslot = -1;
+
+   public BulkLoader(Transaction tx, String tblname, Layout layout) {
+      this.tx = tx;
+      this.layout = layout;
+      this.tblname = tblname;
+      filename = tblname + ".tbl";
+      tx.beginLoad(filename);
+   }
+
+   /**
+    * Insert a new record into the current block,
+    * or into a new block if the current one is full.
+    */
+   public void insert() {
+      if (rp != null)
+         currentslot = rp.insertAfter(currentslot);
+      if (rp == null || currentslot < 0) {
+         moveToNewBlock();
+         currentslot = rp.insertAfter(currentslot);
+      }
+   }
+
+   public void setInt(String fldname, int val) {
+      rp.setInt(currentslot, layout.column(fldname), val);
+   }
+
+   public void setString(String fldname, String val) {
+      setVal(layout.column(fldname), new Constant(val));
+   }
+
+   public void setVal(String fldname, Constant val) {
+      setVal(layout.column(fldname), val);
+   }
+
+   /**
+    * Store a value in the field of the specified column
+    * of the layout (see {@link Layout#column(String)}).
+    * The value of a dictionary-encoded field is stored as its code.
+    * @param col the column of the field
+    * @param val the value
+    */
+   public void setVal(int col, Constant val) {
+      if (layout.dictionary(col) != null)
+         rp.setInt(currentslot, col, dictionary(col).encode(val.asString()));
+      else if (layout.type(col) == INTEGER)
+         rp.setInt(currentslot, col, val.asInt());
+      else
+         rp.setString(currentslot, col, val.asString());
+   }
+
+   private Dictionary dictionary(int col) {
+      if (dicts == null)
+         dicts = new Dictionary[layout.schema().fields().size()];
+      if (dicts[col] == null)
+         dicts[col] = Dictionary.open(tx, layout, col);
+      return dicts[col];
+   }
+
+   public RID getRid() {
+      return new RID(rp.block().number(), currentslot);
+   }
+
+   /**
+    * Finish the load, recording the free space of the last
+    * block in the table's free-space map. The entries of the
+    * other loaded blocks show them as full, which they are.
+    */
+   public void close() {
+      if (rp != null) {
+         if (!tblname.startsWith("temp"))
+            new FreeSpaceMap(tx, tblname, layout).update(rp.block().number(), rp.freeSpace());
+         tx.unpin(rp.block());
+         rp = null;
+      }
+   }
+
+   private void moveToNewBlock() {
+      if (rp != null)
+         tx.unpin(rp.block());
+      // the block is formatted before other transactions can see it
+      tx.append(filename, blk -> {
+         rp = RecordPage.open(tx, blk, layout);
+         rp.format();
+      });
+      currentslot = -1;
+   }
+}
@@ -0,0 +1,190 @@
+package simpledb.record;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.tx.ReadOnlyException;
+import simpledb.tx.Transaction;
+
+/**
+ * The dictionary of a dictionary-encoded string field.
+ * Each distinct value of the field has an integer code,
+ * which the records of the table store instead of the value.
+ * The codes are given out in the order that the values first
+ * appear, so two values are equal exactly when their codes
+ * are, but codes do not sort like their values.
+ * <p>
+ * The dictionary is a file of its own. Each block holds its number
+ * of entries, followed by the values, and a new block is appended
+ * only when the last one is full, so the code of a value is its
+ * position in the file. An entry is never changed or removed.
+ * A new value is added by a transaction of its own, which commits
+ * at once. Like the numbers of a sequence generator, dictionary
+ * entries are never rolled back: the entry stays if the transaction
+ * that inserted the value rolls back, or fails to write its record,
+ * and is simply not used. A read-only transaction adds no values.
+ * <p>
+ * A dictionary object holds the values in memory. They are read
+ * when the object is created, and the entries added since then
+ * are read when a value or code is not found. Reading takes an
+ * SLock on the file, so that only committed entries are read,
+ * but releases it at once, since committed entries never change.
+ */
+public class Dictionary {
+   private Transaction tx;
+   private String name, filename;
+   private int entrysize, perblock;
+   private List<String> values = new ArrayList<>();
+   private Map<String,Integer> codes = new HashMap<>();
+
+   /**
+    * Open the specified dictionary, creating it if necessary.
+    * @param tx the transaction
+    * @param name the name of the dictionary
+    * @param length the declared length of the field's values
+    */
+   public Dictionary(Transaction tx, String name, int length) {
+      this.tx = tx;
+      this.name = name;
+      filename = name + ".dict";
+      entrysize = Page.maxLength(length);
+      perblock = (tx.blockSize() - Integer.BYTES) / entrysize;
+      load(tx);
+   }
+
+   /**
+    * Open the dictionary of the encoded field
+    * in the specified column of the layout.
+    * @param tx the transaction
+    * @param layout the layout of the table
+    * @param col the column of the field
+    * @return the field's dictionary
+    */
+   public static Dictionary open(Transaction tx, Layout layout, int col) {
+      Schema sch = layout.schema();
+      int length = sch.length(sch.fields().get(col));
+      return new Dictionary(tx, layout.dictionary(col), length);
+   }
+
+   /**
+    * Return the name of the dictionary. Fields that have
+    * the same dictionary have the same codes for their values.
+    * @return the name of the dictionary
+    */
+   public String name() {
+      return name;
+   }
+
+   /**
+    * Return the value that has the specified code.
+    * @param code the code of a value
+    * @return the value
+    */
+   public String decode(int code) {
+      if (code >= values.size())
+         load(tx);
+      return values.get(code);
+   }
+
+   /**
+    * Return the code of the specified value,
+    * or -1 if the value is not in the dictionary.
+    * @param val the value
+    * @return the code of the value, or -1
+    */
+   public int code(String val) {
+      Integer code = codes.get(val);
+      if (code == null) {
+         load(tx);
+         code = codes.get(val);
+      }
+      return (code == null) ? -1 : code;
+   }
+
+   /**
+    * Return the code of the specified value, adding
+    * the value to the dictionary if it is not there.
+    * The addition commits on its own, so it is made only
+    * for a transaction that may write the encoded record.
+    * @param val the value
+    * @return the code of the value
+    */
+   public int encode(String val) {
+      int code = code(val);
+      if (code >= 0)
+         return code;
+      if (tx.isReadOnly())
+         throw new ReadOnlyException();
+      Transaction t = tx.newTransaction();
+      try {
+         // other transactions may be adding values
+         t.xLockFile(filename);
+         load(t);
+         Integer c = codes.get(val);
+         if (c == null)
+            c = add(t, val);
+         t.commit();
+         codes.put(val, c);
+         return c;
+      }
+      catch (RuntimeException e) {
+         t.rollback();
+         throw e;
+      }
+   }
+
+   /**
+    * Write the value in the next entry of the file,
+    * appending a block if the last one is full.
+    * A block appended by an addition that rolled back
+    * is empty, and is used instead.
+    * The value is recorded in memory once the entry commits.
+    */
+   private int add(Transaction t, String val) {
+      int code = values.size();
+      int blknum = code / perblock;
+      int slot = code % perblock;
+      BlockId blk = (blknum < t.size(filename)) ? new BlockId(filename, blknum)
+                                                : t.append(filename);
+      t.pin(blk);
+      if (slot == 0)
+         t.formatPage(blk, 0);
+      t.setString(blk, Integer.BYTES + slot * entrysize, val, true);
+      t.setInt(blk, 0, slot + 1, true);
+      t.unpin(blk);
+      return code;
+   }
+
+   /**
+    * Read the entries that are not yet in memory.
+    * The SLock on the file waits for any addition in progress,
+    * which may yet roll back. A transaction that already holds a
+    * lock on the file, as an addition does, keeps it.
+    */
+   private void load(Transaction t) {
+      boolean shortLock = !t.hasLocks(filename);
+      t.sLockFile(filename);
+      try {
+         int size = t.size(filename);
+         for (int blknum = values.size() / perblock; blknum < size; blknum++) {
+            BlockId blk = new BlockId(filename, blknum);
+            t.pin(blk);
+            int n = t.readInt(blk, 0);
+            for (int slot = values.size() - blknum * perblock; slot < n; slot++) {
+               String val = t.readString(blk, Integer.BYTES + slot * entrysize);
+               codes.put(val, values.size());
+               values.add(val);
+            }
+            t.unpin(blk);
+         }
+      }
+      finally {
+         if (shortLock)
+            t.sUnlockFile(filename);
+      }
+   }
+}
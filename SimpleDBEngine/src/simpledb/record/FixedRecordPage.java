@@ -0,0 +1,238 @@
+package simpledb.record;
+
+import java.util.Collections;
+import java.util.Map;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotBitmap;
+import simpledb.tx.Transaction;
+import simpledb.tx.recovery.SlotBitRecord;
+
+/**
+ * Store a record at a given location in a block,
+ * where each slot has the same fixed size.
+ * Which slots are in use is kept in a bitmap at the
+ * start of the block (see {@link SlotBitmap}).
+ * <p>
+ * The slots of a fixed table follow the bitmap one after another.
+ * In a pax table, the block is instead divided into a minipage
+ * per field, which holds that field's value for every slot, so
+ * that a scan reading a few fields touches only their minipages.
+ * Slot numbers, locking and logging are the same for both.
+ * Records are locked individually: reading a field takes
+ * an SLock on its record, and modifying it takes an XLock.
+ * The page bytes themselves are protected by the buffer's latch.
+ * Only formatting a new block locks the whole block.
+ * @author Edward Sciore
+ */
+public class FixedRecordPage implements RecordPage {
+   private Transaction tx;
+   private BlockId blk;
+   private Layout layout;
+   private SlotBitmap sb;
+   private boolean pax;
+
+   public FixedRecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this.tx = tx;
+      this.blk = blk;
+      this.layout = layout;
+      // the layout of an unknown table has no fields
+      if (layout.slotSize() <= 0)
+         throw new RuntimeException("the records of " + blk.fileName() + " have no fields.");
+      sb = new SlotBitmap(tx.blockSize(), layout.slotSize());
+      pax = layout.format().equals(Layout.PAX);
+      tx.pin(blk);
+   }
+
+   /**
+    * Return the integer value stored for the
+    * specified field of a specified slot.
+    * @param col the column of the field.
+    * @return the integer stored in that field
+    */
+   public int getInt(int slot, int col) {
+      int fldpos = fieldPos(slot, col);
+      tx.sLockRecord(blk, slot);
+      return tx.readInt(blk, fldpos);
+   }
+
+   /**
+    * Return the string value stored for the
+    * specified field of the specified slot.
+    * @param col the column of the field.
+    * @return the string stored in that field
+    */
+   public String getString(int slot, int col) {
+      int fldpos = fieldPos(slot, col);
+      tx.sLockRecord(blk, slot);
+      return tx.readString(blk, fldpos);
+   }
+
+   /**
+    * Store an integer at the specified field
+    * of the specified slot.
+    * @param col the column of the field
+    * @param val the integer value stored in that field
+    */
+   public void setInt(int slot, int col, int val) {
+      int fldpos = fieldPos(slot, col);
+      tx.xLockRecord(blk, slot);
+      tx.writeInt(blk, fldpos, val, true);
+   }
+
+   /**
+    * Store a string at the specified field
+    * of the specified slot.
+    * @param col the column of the field
+    * @param val the string value stored in that field
+    */
+   public void setString(int slot, int col, String val) {
+      int fldpos = fieldPos(slot, col);
+      tx.xLockRecord(blk, slot);
+      tx.writeString(blk, fldpos, val, true);
+   }
+   
+   /**
+    * Indicate that the caller has finished reading the
+    * record in the specified slot. At read committed isolation,
+    * this releases the transaction's SLock on the record.
+    * @param slot the slot of the record
+    */
+   public void release(int slot) {
+      tx.releaseRecord(blk, slot);
+   }
+
+   public void delete(int slot) {
+      tx.xLockRecord(blk, slot);
+      tx.update(blk, SlotBitRecord.update(slot, false), true);
+   }
+   
+   /** Use the layout to format a new block of records.
+    *  An empty bitmap and the default values are all zeros,
+    *  so formatting clears the page, which is logged as a
+    *  single operation.
+    *  No locks are needed, because the block is
+    *  not yet visible to other transactions.
+    */ 
+   public void format() {
+      tx.formatPage(blk);
+   }
+
+   /**
+    * Return the next used slot after the specified one,
+    * and SLock its record.
+    * A slot that is empty but XLocked by another transaction
+    * may hold an uncommitted delete, so the method waits for
+    * that transaction before deciding to skip the slot.
+    * @param slot the slot to search after, or -1
+    * @return the next used slot, or -1 if there is none
+    */
+   public int nextAfter(int slot) {
+      slot = searchAfter(slot, true);
+      while (slot >= 0) {
+         tx.sLockRecord(blk, slot);
+         if (SlotBitmap.isUsed(bitmap(), slot))   // the bit may have changed while we waited
+            return slot;
+         tx.releaseRecord(blk, slot);
+         slot = searchAfter(slot, true);
+      }
+      return -1;
+   }
+ 
+   /**
+    * Find an empty slot after the specified one,
+    * XLock its record and mark it as used.
+    * Slots whose record is locked by another transaction
+    * (for example, by an uncommitted delete) are skipped,
+    * so that inserts never wait on each other.
+    * @param slot the slot to search after, or -1
+    * @return the new slot, or -1 if there is none
+    */
+   public int insertAfter(int slot) {
+      int newslot = searchAfter(slot, false);
+      while (newslot >= 0) {
+         if (tx.tryXLockRecord(blk, newslot) && !SlotBitmap.isUsed(bitmap(), newslot)) {
+            tx.update(blk, SlotBitRecord.update(newslot, true), true);
+            return newslot;
+         }
+         newslot = searchAfter(newslot, false);
+      }
+      return -1;
+   }
+  
+   public int freeSpace() {
+      return (sb.numSlots() - sb.usedSlots(bitmap())) * layout.slotSize();
+   }
+
+   public boolean isEmpty() {
+      return sb.usedSlots(bitmap()) == 0;
+   }
+
+   /**
+    * Return an empty map: fixed-size records never move.
+    */
+   public Map<Integer,RID> forwardedSlots() {
+      return Collections.emptyMap();
+   }
+
+   public int insertSpace() {
+      return layout.slotSize();
+   }
+
+   public int recordSpace(int slot) {
+      return layout.slotSize();
+   }
+  
+   public BlockId block() {
+      return blk;
+   }
+   
+   // Private auxiliary methods
+   
+   /**
+    * Return a copy of the block's bitmap,
+    * read under the latch in a single call.
+    */
+   private Page bitmap() {
+      return new Page(tx.readBytes(blk, 0, sb.headerSize()));
+   }
+
+   /**
+    * Find the next used or empty slot, as specified,
+    * by scanning a copy of the bitmap.
+    * When looking for used slots, empty slots that another
+    * transaction has XLocked are also returned,
+    * so that the caller can wait for them. The lock table
+    * is consulted for the empty slots only if another
+    * transaction may be modifying the file; the bitmap is
+    * read first, so that a transaction whose delete it shows
+    * is seen holding its lock on the file.
+    */
+   private int searchAfter(int slot, boolean used) {
+      Page bitmap = bitmap();
+      int next = SlotBitmap.next(bitmap, slot+1, sb.numSlots(), used);
+      if (used && tx.isFileModifiedByOther(blk.fileName())) {
+         int end = (next < 0) ? sb.numSlots() : next;
+         for (int s = SlotBitmap.next(bitmap, slot+1, end, false); s >= 0;
+                  s = SlotBitmap.next(bitmap, s+1, end, false))
+            if (tx.isRecordXLockedByOther(blk, s))
+               return s;
+      }
+      return next;
+   }
+
+   /**
+    * Return the offset in the block of the specified field of
+    * the specified slot. A field's minipage starts after the
+    * minipages of the fields before it, so its offset
+    * in the pax block is its offset in a record times
+    * the number of slots.
+    */
+   private int fieldPos(int slot, int col) {
+      if (pax)
+         return sb.slotPos(0) + layout.offset(col) * sb.numSlots()
+                              + slot * layout.lengthInBytes(col);
+      return sb.slotPos(slot) + layout.offset(col);
+   }
+}
@@ -0,0 +1,127 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * The free-space map of a table: a file that holds, for each
+ * block of the table, the number of bytes of the block that are
+ * available to new records. An insert uses the map to go directly
+ * to a block that has room, instead of searching the table for one.
+ * <p>
+ * The map is only a hint. Its pages are read and written under
+ * the buffer latch, without locks, and its updates are not logged,
+ * so that concurrent inserters never wait for each other.
+ * As a result, an entry may be out of date: after a crash,
+ * or after an insert is rolled back. An entry that is too high
+ * is corrected by the next insert that finds the block full;
+ * an entry that is too low leaves the space unused until
+ * a record in the block is deleted.
+ * <p>
+ * A page of the map is built when it is first needed, by reading
+ * the free space of the blocks of the table that it covers. So a
+ * table created before the map existed gets its map a page at a
+ * time, as inserts search it, instead of all at once by the first
+ * insert. A page is built while the map's extension latch is held,
+ * so other inserters wait for it instead of building it again.
+ */
+public class FreeSpaceMap {
+   private Transaction tx;
+   private Layout layout;
+   private String tblfile, filename;
+   private int perblock;
+
+   /**
+    * Open the free-space map of the specified table,
+    * creating it if necessary.
+    * @param tx the transaction
+    * @param tblname the name of the table
+    * @param layout the layout of the table
+    */
+   public FreeSpaceMap(Transaction tx, String tblname, Layout layout) {
+      this.tx = tx;
+      this.layout = layout;
+      tblfile = tblname + ".tbl";
+      filename = tblname + ".fsm";
+      perblock = tx.blockSize() / Integer.BYTES;
+   }
+
+   /**
+    * Return the first block, at or after the specified one,
+    * whose entry shows at least the specified number of free bytes.
+    * @param need the number of bytes needed
+    * @param start the first block to consider
+    * @return the block number, or -1 if no block has room
+    */
+   public int find(int need, int start) {
+      int tblsize = tx.size(tblfile);
+      int mapsize = (tblsize + perblock - 1) / perblock;
+      for (int fsmblk = start / perblock; fsmblk < mapsize; fsmblk++) {
+         if (tx.size(filename) <= fsmblk)
+            tx.extend(filename, fsmblk + 1, this::build);
+         BlockId blk = new BlockId(filename, fsmblk);
+         tx.pin(blk);
+         try {
+            int first = Math.max(start, fsmblk * perblock);
+            int last = Math.min(tblsize, (fsmblk + 1) * perblock);
+            for (int blknum = first; blknum < last; blknum++)
+               if (tx.readInt(blk, offset(blknum)) >= need)
+                  return blknum;
+         }
+         finally {
+            tx.unpin(blk);
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Record the number of free bytes of the specified block,
+    * building the map up to the block if it is beyond its end.
+    * @param blknum the block of the table
+    * @param free the number of bytes available to new records
+    */
+   public void update(int blknum, int free) {
+      int fsmblk = blknum / perblock;
+      if (tx.size(filename) <= fsmblk)
+         tx.extend(filename, fsmblk + 1, this::build);
+      BlockId blk = new BlockId(filename, fsmblk);
+      tx.pin(blk);
+      try {
+         if (tx.readInt(blk, offset(blknum)) != free)
+            tx.writeInt(blk, offset(blknum), free, false);
+      }
+      finally {
+         tx.unpin(blk);
+      }
+   }
+
+   /**
+    * Fill in a new page of the map by reading the free space of
+    * each block of the table that the page covers. A new page
+    * is all zeros, which shows each block as full, so only
+    * blocks with room are written.
+    * @param blk the new page of the map
+    */
+   private void build(BlockId blk) {
+      int first = blk.number() * perblock;
+      int last = Math.min(tx.size(tblfile), first + perblock);
+      tx.pin(blk);
+      try {
+         for (int blknum = first; blknum < last; blknum++) {
+            RecordPage rp = RecordPage.open(tx, new BlockId(tblfile, blknum), layout);
+            int free = rp.freeSpace();
+            tx.unpin(rp.block());
+            if (free > 0)
+               tx.writeInt(blk, offset(blknum), free, false);
+         }
+      }
+      finally {
+         tx.unpin(blk);
+      }
+   }
+
+   private int offset(int blknum) {
+      return (blknum % perblock) * Integer.BYTES;
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Inserts records one at a time into a large table, each in its own
+ * transaction with a new table scan, as a SQL insert does.
+ * Without the free-space map, each insert searched the table
+ * from its first block; with it, the inserts go straight to the
+ * blocks that deletes have freed, and then to new blocks.
+ * Finally the map is removed, as for a table created before it
+ * existed, and a record in the middle of the table is deleted;
+ * the next insert must build only the map pages it searches.
+ */
+public class FreeSpaceMapTest {
+   private static final int NUM_RECORDS = 20000, NUM_DELETED = 50, NUM_INSERTS = 200;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("freespacemaptest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 10);
+      Layout layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<NUM_RECORDS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setString("name", "rec" + i);
+      }
+      ts.close();
+      tx.commit();
+
+      // free some slots near the end of the table
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      while (ts.next())
+         if (ts.getInt("id") >= NUM_RECORDS - 2 * NUM_DELETED && ts.getInt("id") % 2 == 0)
+            ts.delete();
+      ts.close();
+      tx.commit();
+      int before = size(db);
+
+      long start = System.currentTimeMillis();
+      int reused = 0;
+      for (int i=0; i<NUM_INSERTS; i++) {
+         tx = db.newTx();
+         ts = new TableScan(tx, "T", layout);
+         ts.insert();
+         ts.setInt("id", NUM_RECORDS + i);
+         ts.setString("name", "new" + i);
+         if (ts.getRid().blockNumber() < before)
+            reused++;
+         ts.close();
+         tx.commit();
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      System.out.println(NUM_INSERTS + " inserts into a table of " + before + " blocks took "
+                         + elapsed + " ms");
+      System.out.println(reused + " of them reused deleted slots; the table grew by "
+                         + (size(db) - before) + " blocks");
+
+      int target = size(db) / 2;
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      while (ts.next())
+         if (ts.getRid().blockNumber() == target) {
+            ts.delete();
+            break;
+         }
+      ts.close();
+      tx.truncate("T.fsm", 0);
+      tx.commit();
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      ts.insert();
+      ts.setInt("id", -1);
+      ts.setString("name", "middle");
+      int blknum = ts.getRid().blockNumber();
+      ts.close();
+      int built = tx.size("T.fsm");
+      int perblock = tx.blockSize() / Integer.BYTES;
+      tx.commit();
+      System.out.println("without a map, an insert went to block " + blknum + ", expected " + target
+                         + ", and built " + built + " map pages, expected " + (target / perblock + 1));
+   }
+
+   private static int size(SimpleDB db) {
+      Transaction tx = db.newTx();
+      int n = tx.size("T.tbl");
+      tx.commit();
+      return n;
+   }
+}
@@ -2,7 +2,9 @@ package simpledb.record;
 
 import static java.sql.Types.INTEGER;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import simpledb.file.Page;
@@ -11,13 +13,34 @@ import simpledb.file.Page;
  * Description of the structure of a record.
  * It contains the name, type, length and offset of
  * each field of the table.
+ * <p>
+ * A string field may be dictionary encoded: each of its values
+ * is stored in the record as the integer code of the value in
+ * the field's {@link Dictionary}, so the field takes the space
+ * of an integer field.
  * @author Edward Sciore
  *
  */
 public class Layout {
+   /**
+    * The record formats. A fixed table stores its records in
+    * fixed-size slots; a slotted table stores them as tuples of
+    * varying length, whose strings take only the space they need.
+    * A pax table has fixed-size slots, but each block stores the
+    * values of a field together, in a minipage per field.
+    * A btree table is index-organized: its records are fixed-size
+    * slots in the leaves of a B-tree on its primary key.
+    */
+   public static final String FIXED = "fixed", SLOTTED = "slotted", PAX = "pax",
+                              BTREE = "btree";
    private Schema schema;
    private Map<String,Integer> offsets;
    private int slotsize;
+   private String format, keyfld;
+   private Map<String,String> dictionaries;
+   private Map<String,Integer> columns = new HashMap<>();
+   private int[] coloffsets, coltypes, colwidths;
+   private String[] coldicts;
 
    /**
     * This constructor creates a Layout object from a schema. 
@@ -28,14 +51,75 @@ public class Layout {
     * @param schema the schema of the table's records
     */
    public Layout(Schema schema) {
+      this(schema, FIXED);
+   }
+
+   /**
+    * Create a Layout object for a new table of the specified format.
+    * In a fixed or pax record, each field has its own offset; whether
+    * the slot is in use is kept in the page's bitmap, not in the
+    * record. In a slotted tuple, the integer
+    * fields come first, and then its strings, each taking only
+    * the space it needs. The offset of a string field is
+    * its offset in a tuple whose earlier strings are all empty.
+    * For all formats, the slot size is the size of the largest record.
+    * @param schema the schema of the table's records
+    * @param format the record format
+    */
+   public Layout(Schema schema, String format) {
+      this(schema, format, null);
+   }
+
+   /**
+    * Create a Layout object for a new table of the specified
+    * format and primary key.
+    * @see #Layout(Schema, String)
+    * @param keyfld the primary key of a btree table, or null
+    */
+   public Layout(Schema schema, String format, String keyfld) {
+      this(schema, format, keyfld, Collections.emptyMap());
+   }
+
+   /**
+    * Create a Layout object for a new table of the specified
+    * format and primary key, some of whose string fields are
+    * dictionary encoded. An encoded field is laid out
+    * as an integer field.
+    * @see #Layout(Schema, String)
+    * @param keyfld the primary key of a btree table, or null
+    * @param dictionaries the name of the dictionary of each encoded field
+    */
+   public Layout(Schema schema, String format, String keyfld, Map<String,String> dictionaries) {
       this.schema = schema;
+      this.format = format;
+      this.keyfld = keyfld;
+      this.dictionaries = dictionaries;
       offsets  = new HashMap<>();
-      int pos = Integer.BYTES; // leave space for the empty/inuse flag
-      for (String fldname : schema.fields()) {
-         offsets.put(fldname, pos);
-         pos += lengthInBytes(fldname);
+      if (format.equals(SLOTTED)) {
+         int pos = 0;
+         for (String fldname : schema.fields())
+            if (storedType(fldname) == INTEGER) {
+               offsets.put(fldname, pos);
+               pos += Integer.BYTES;
+            }
+         int size = pos;
+         for (String fldname : schema.fields())
+            if (storedType(fldname) != INTEGER) {
+               offsets.put(fldname, pos);
+               pos += Integer.BYTES;
+               size += lengthInBytes(fldname);
+            }
+         slotsize = size;
       }
-      slotsize = pos;
+      else {
+         int pos = 0;
+         for (String fldname : schema.fields()) {
+            offsets.put(fldname, pos);
+            pos += lengthInBytes(fldname);
+         }
+         slotsize = pos;
+      }
+      setColumns();
    }
 
    /**
@@ -48,9 +132,48 @@ public class Layout {
     * @param recordlen the already-calculated length of each record
     */
    public Layout(Schema schema, Map<String,Integer> offsets, int slotsize) {
+      this(schema, offsets, slotsize, FIXED);
+   }
+
+   /**
+    * Create a Layout object of the specified format
+    * from the specified metadata.
+    * @see #Layout(Schema, Map, int)
+    * @param format the record format
+    */
+   public Layout(Schema schema, Map<String,Integer> offsets, int slotsize, String format) {
+      this(schema, offsets, slotsize, format, null);
+   }
+
+   /**
+    * Create a Layout object of the specified format and
+    * primary key from the specified metadata.
+    * @see #Layout(Schema, Map, int)
+    * @param format the record format
+    * @param keyfld the primary key of a btree table, or null
+    */
+   public Layout(Schema schema, Map<String,Integer> offsets, int slotsize,
+                 String format, String keyfld) {
+      this(schema, offsets, slotsize, format, keyfld, Collections.emptyMap());
+   }
+
+   /**
+    * Create a Layout object of the specified format and primary
+    * key, with the specified encoded fields, from the specified metadata.
+    * @see #Layout(Schema, Map, int)
+    * @param format the record format
+    * @param keyfld the primary key of a btree table, or null
+    * @param dictionaries the name of the dictionary of each encoded field
+    */
+   public Layout(Schema schema, Map<String,Integer> offsets, int slotsize,
+                 String format, String keyfld, Map<String,String> dictionaries) {
       this.schema    = schema;
       this.offsets   = offsets;
       this.slotsize = slotsize;
+      this.format   = format;
+      this.keyfld   = keyfld;
+      this.dictionaries = dictionaries;
+      setColumns();
    }
 
    /**
@@ -70,6 +193,57 @@ public class Layout {
       return offsets.get(fldname);
    }
 
+   /**
+    * Return the column of the specified field, which is
+    * its position in the schema's list of fields.
+    * Scans read their fields by column, so that the
+    * offset and type of a field are looked up by name
+    * only once, when the scan is set up.
+    * @param fldname the name of the field
+    * @return the column of that field, or -1 if there is none
+    */
+   public int column(String fldname) {
+      Integer col = columns.get(fldname);
+      return (col == null) ? -1 : col;
+   }
+
+   /**
+    * Return the offset of the field in the specified column.
+    * @see #offset(String)
+    */
+   public int offset(int col) {
+      return coloffsets[col];
+   }
+
+   /**
+    * Return the type that the field in the specified column
+    * is stored as, which is INTEGER for an encoded string field.
+    * @param col the column of the field
+    * @return INTEGER or VARCHAR
+    */
+   public int type(int col) {
+      return coltypes[col];
+   }
+
+   /**
+    * Return the name of the dictionary of the field
+    * in the specified column, if the field is encoded.
+    * @param col the column of the field
+    * @return the name of the dictionary, or null
+    */
+   public String dictionary(int col) {
+      return coldicts[col];
+   }
+
+   /**
+    * Return the size in a fixed-size slot of
+    * the field in the specified column.
+    * @see #lengthInBytes(String)
+    */
+   public int lengthInBytes(int col) {
+      return colwidths[col];
+   }
+
    /**
     * Return the size of a slot, in bytes.
     * @return the size of a slot
@@ -78,12 +252,54 @@ public class Layout {
       return slotsize;
    }
 
-   private int lengthInBytes(String fldname) {
-      int fldtype = schema.type(fldname);
+   /**
+    * Return the record format of the table.
+    * @return FIXED, SLOTTED, PAX or BTREE
+    */
+   public String format() {
+      return format;
+   }
+
+   /**
+    * Return the primary key of a btree table,
+    * whose records are kept in the order of the key.
+    * @return the name of the key field, or null for other formats
+    */
+   public String key() {
+      return keyfld;
+   }
+
+   /**
+    * Return the number of bytes that a value of the
+    * specified field takes in a fixed-size slot.
+    * @param fldname the name of the field
+    * @return the size of the field's values
+    */
+   public int lengthInBytes(String fldname) {
+      int fldtype = storedType(fldname);
       if (fldtype == INTEGER)
          return Integer.BYTES;
       else // fldtype == VARCHAR
          return Page.maxLength(schema.length(fldname));
    }
-}
 
+   private void setColumns() {
+      List<String> fields = schema.fields();
+      coloffsets = new int[fields.size()];
+      coltypes   = new int[fields.size()];
+      colwidths  = new int[fields.size()];
+      coldicts   = new String[fields.size()];
+      for (int col=0; col<fields.size(); col++) {
+         String fldname = fields.get(col);
+         columns.put(fldname, col);
+         coloffsets[col] = offsets.get(fldname);
+         coltypes[col]   = storedType(fldname);
+         colwidths[col]  = lengthInBytes(fldname);
+         coldicts[col]   = dictionaries.get(fldname);
+      }
+   }
+
+   private int storedType(String fldname) {
+      return dictionaries.containsKey(fldname) ? INTEGER : schema.type(fldname);
+   }
+}
@@ -0,0 +1,123 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotBitmap;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Stores records in a pax table, deletes some of them, and updates
+ * a field of the others in a transaction that commits and in one
+ * that is rolled back. The blocks are then read directly, to check
+ * that each field's values lie together in its minipage and that
+ * the bitmap marks exactly the deleted slots as empty.
+ * Finally the same records are stored in a fixed table, and
+ * scans of each table reading one of its five fields are timed.
+ */
+public class PaxPageTest {
+   private static final int NUM_RECORDS = 5000, NUM_SCANS = 20;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("paxpagetest", 4096, 64);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 30);
+      sch.addIntField("amount");
+      sch.addStringField("note", 40);
+      sch.addIntField("kind");
+      Layout pax = new Layout(sch, Layout.PAX);
+      load(db, "Tpax", pax);
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "Tpax", pax);
+      while (ts.next())
+         if (ts.getInt("kind") == 3)
+            ts.delete();
+      ts.close();
+      tx.commit();
+      update(db, "Tpax", pax, 1, false);
+      update(db, "Tpax", pax, 1000, true);
+      checkMinipages(db, "Tpax", pax);
+
+      load(db, "Tfixed", new Layout(sch, Layout.FIXED));
+      for (String format : new String[] {Layout.FIXED, Layout.PAX}) {
+         Layout layout = new Layout(sch, format);
+         long start = System.currentTimeMillis();
+         for (int i=0; i<NUM_SCANS; i++) {
+            tx = db.newTx();
+            ts = new TableScan(tx, "T" + format, layout);
+            while (ts.next())
+               ts.getInt("amount");
+            ts.close();
+            tx.commit();
+         }
+         System.out.println(format + ": " + NUM_SCANS + " scans of one field took "
+                            + (System.currentTimeMillis() - start) + " ms");
+      }
+   }
+
+   private static void load(SimpleDB db, String tblname, Layout layout) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=0; i<NUM_RECORDS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setString("name", "name" + i);
+         ts.setInt("amount", i * 2);
+         ts.setString("note", "note" + i);
+         ts.setInt("kind", i % 7);
+      }
+      ts.close();
+      tx.commit();
+   }
+
+   private static void update(SimpleDB db, String tblname, Layout layout, int delta, boolean rollback) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      while (ts.next())
+         ts.setInt("amount", ts.getInt("amount") + delta);
+      ts.close();
+      if (rollback)
+         tx.rollback();
+      else
+         tx.commit();
+   }
+
+   /**
+    * Read the blocks of the table as pages. The value of a field
+    * for slot s is at the start of the field's minipage plus
+    * s times the field's length, and the minipages follow the
+    * bitmap in the order of the fields' offsets in a record.
+    * The records were inserted in order, so slot s of block b
+    * holds record b*n + s. A deleted slot keeps its values,
+    * but not its bit.
+    */
+   private static void checkMinipages(SimpleDB db, String tblname, Layout layout) {
+      Transaction tx = db.newTx();
+      SlotBitmap sb = new SlotBitmap(tx.blockSize(), layout.slotSize());
+      int n = sb.numSlots();
+      int used = 0;
+      for (int b=0; b<tx.size(tblname + ".tbl"); b++) {
+         RecordPage rp = new FixedRecordPage(tx, new BlockId(tblname + ".tbl", b), layout);
+         Page p = new Page(tx.readBytes(rp.block(), 0, tx.blockSize()));
+         for (int s=0; s<n && b*n + s < NUM_RECORDS; s++) {
+            int id = p.getInt(sb.slotPos(0) + layout.offset("id") * n + s * Integer.BYTES);
+            int amount = p.getInt(sb.slotPos(0) + layout.offset("amount") * n + s * Integer.BYTES);
+            String note = p.getString(sb.slotPos(0) + layout.offset("note") * n
+                                      + s * layout.lengthInBytes("note"));
+            boolean deleted = (id % 7 == 3);
+            if (id != b*n + s || SlotBitmap.isUsed(p, s) == deleted
+                  || amount != id * 2 + (deleted ? 0 : 1) || !note.equals("note" + id))
+               System.out.println("wrong slot " + s + " of block " + b + ": "
+                                  + id + ", " + amount + ", " + note);
+            if (SlotBitmap.isUsed(p, s))
+               used++;
+         }
+         tx.unpin(rp.block());
+      }
+      tx.commit();
+      int expected = NUM_RECORDS - (NUM_RECORDS + 3) / 7;
+      if (used != expected)
+         System.out.println(tblname + " has " + used + " records, not " + expected);
+   }
+}
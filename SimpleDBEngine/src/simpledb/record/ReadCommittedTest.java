@@ -0,0 +1,116 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.ConcurrencyMgr;
+
+/**
+ * A reader scans a table slowly while a writer updates
+ * a record that the reader has already passed.
+ * A serializable reader still holds its SLock on that record,
+ * so the writer waits until the reader commits; a read committed
+ * reader has released it, so the writer proceeds at once.
+ * A read committed reader that reads more blocks than the
+ * escalation threshold does not lock their whole file either,
+ * so a writer of another block of the file does not wait.
+ */
+public class ReadCommittedTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("readcommittedtest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<10; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+      }
+      ts.close();
+      tx.commit();
+
+      run(false);
+      run(true);
+      runEscalation();
+   }
+
+   private static void runEscalation() throws Exception {
+      ConcurrencyMgr.setEscalationThreshold(3);
+      Transaction tx = db.newTx();
+      for (int i=0; i<6; i++)
+         tx.append("pages");
+      tx.commit();
+
+      Transaction reader = db.newTx();
+      reader.setReadCommitted(true);
+      for (int i=0; i<5; i++) {
+         BlockId blk = new BlockId("pages", i);
+         reader.pin(blk);
+         reader.getInt(blk, 0);
+         reader.unpin(blk);
+      }
+      long[] waited = new long[1];
+      Thread writer = new Thread(() -> {
+         long start = System.currentTimeMillis();
+         Transaction wtx = db.newTx();
+         BlockId blk = new BlockId("pages", 5);
+         wtx.pin(blk);
+         wtx.setInt(blk, 0, 1, true);
+         waited[0] = System.currentTimeMillis() - start;
+         wtx.unpin(blk);
+         wtx.commit();
+      });
+      writer.start();
+      Thread.sleep(500);
+      reader.commit();
+      writer.join();
+      ConcurrencyMgr.setEscalationThreshold(1000);
+      System.out.println("Writer waited " + waited[0] + " ms for a read committed reader of 5 blocks");
+   }
+
+   private static void run(boolean readCommitted) throws Exception {
+      String level = readCommitted ? "read committed" : "serializable";
+      Thread reader = new Thread(new Reader(readCommitted));
+      reader.start();
+      Thread.sleep(300);  // the reader is past the first record
+
+      long start = System.currentTimeMillis();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      ts.moveToRid(new RID(0, 0));
+      ts.setInt("A", 100);
+      long waited = System.currentTimeMillis() - start;
+      ts.close();
+      tx.commit();
+      reader.join();
+      System.out.println("Writer waited " + waited + " ms for a " + level + " reader");
+   }
+
+   static class Reader implements Runnable {
+      private boolean readCommitted;
+
+      Reader(boolean readCommitted) {
+         this.readCommitted = readCommitted;
+      }
+
+      public void run() {
+         try {
+            Transaction tx = db.newTx();
+            tx.setReadCommitted(readCommitted);
+            TableScan ts = new TableScan(tx, "T", layout);
+            while (ts.next()) {
+               ts.getInt("A");
+               Thread.sleep(100);
+            }
+            ts.close();
+            tx.commit();
+         }
+         catch(InterruptedException e) {};
+      }
+   }
+}
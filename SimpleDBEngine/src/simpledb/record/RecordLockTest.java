@@ -0,0 +1,64 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+public class RecordLockTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("recordlocktest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      layout = new Layout(sch);
+
+      // two records in the same block
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<2; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+      tx.commit();
+
+      Thread a = new Thread(new Updater("A", 0, 2000));
+      Thread b = new Thread(new Updater("B", 1, 0));
+      a.start();
+      Thread.sleep(200);
+      b.start();
+      a.join();
+      b.join();
+   }
+
+   static class Updater implements Runnable {
+      private String name;
+      private int slot;
+      private long holdtime;
+
+      Updater(String name, int slot, long holdtime) {
+         this.name = name;
+         this.slot = slot;
+         this.holdtime = holdtime;
+      }
+
+      public void run() {
+         try {
+            Transaction tx = db.newTx();
+            TableScan ts = new TableScan(tx, "T", layout);
+            ts.moveToRid(new RID(0, slot));
+            System.out.println("Tx " + name + ": request xlock on slot " + slot);
+            ts.setInt("A", 100 + slot);
+            System.out.println("Tx " + name + ": receive xlock on slot " + slot);
+            Thread.sleep(holdtime);
+            ts.close();
+            tx.commit();
+            System.out.println("Tx " + name + ": commit");
+         }
+         catch(InterruptedException e) {};
+      }
+   }
+}
@@ -1,142 +1,139 @@
 package simpledb.record;
 
-import static java.sql.Types.INTEGER;
+import java.util.Map;
 
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 
 /**
- * Store a record at a given location in a block. 
+ * The records stored in one block of a table.
+ * A record page pins its block when it is created;
+ * the caller unpins the block when it is done with the page.
+ * How the records are arranged in the block depends on
+ * the format of the table's layout.
+ * Fields are identified by their column in the layout
+ * (see {@link Layout#column(String)}).
  * @author Edward Sciore
  */
-public class RecordPage {
-   public static final int EMPTY = 0, USED = 1;
-   private Transaction tx;
-   private BlockId blk;
-   private Layout layout;
-
-   public RecordPage(Transaction tx, BlockId blk, Layout layout) {
-      this.tx = tx;
-      this.blk = blk;
-      this.layout = layout;
-      tx.pin(blk);
+public interface RecordPage {
+   /**
+    * Create a record page for the specified block,
+    * in the format of the specified layout.
+    * @param tx the transaction
+    * @param blk a reference to the disk block
+    * @param layout the layout of the table
+    * @return the record page
+    */
+   static RecordPage open(Transaction tx, BlockId blk, Layout layout) {
+      if (layout.format().equals(Layout.SLOTTED))
+         return new SlottedRecordPage(tx, blk, layout);
+      else
+         return new FixedRecordPage(tx, blk, layout);
    }
 
    /**
     * Return the integer value stored for the
     * specified field of a specified slot.
-    * @param fldname the name of the field.
+    * @param col the column of the field in the layout
     * @return the integer stored in that field
     */
-   public int getInt(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getInt(blk, fldpos);
-   }
+   int getInt(int slot, int col);
 
    /**
     * Return the string value stored for the
     * specified field of the specified slot.
-    * @param fldname the name of the field.
+    * @param col the column of the field in the layout
     * @return the string stored in that field
     */
-   public String getString(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getString(blk, fldpos);
-   }
+   String getString(int slot, int col);
 
    /**
     * Store an integer at the specified field
     * of the specified slot.
-    * @param fldname the name of the field
+    * @param col the column of the field in the layout
     * @param val the integer value stored in that field
     */
-   public void setInt(int slot, String fldname, int val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setInt(blk, fldpos, val, true);
-   }
+   void setInt(int slot, int col, int val);
 
    /**
     * Store a string at the specified field
     * of the specified slot.
-    * @param fldname the name of the field
+    * @param col the column of the field in the layout
     * @param val the string value stored in that field
     */
-   public void setString(int slot, String fldname, String val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setString(blk, fldpos, val, true);
-   }
-   
-   public void delete(int slot) {
-      setFlag(slot, EMPTY);
-   }
-   
-   /** Use the layout to format a new block of records.
-    *  These values should not be logged 
-    *  (because the old values are meaningless).
-    */ 
-   public void format() {
-      int slot = 0;
-      while (isValidSlot(slot)) {
-         tx.setInt(blk, offset(slot), EMPTY, false); 
-         Schema sch = layout.schema();
-         for (String fldname : sch.fields()) {
-            int fldpos = offset(slot) + layout.offset(fldname);
-            if (sch.type(fldname) == INTEGER)
-               tx.setInt(blk, fldpos, 0, false);
-            else
-               tx.setString(blk, fldpos, "", false);
-         }
-         slot++;
-      }
-   }
+   void setString(int slot, int col, String val);
 
-   public int nextAfter(int slot) {
-      return searchAfter(slot, USED);
-   }
- 
-   public int insertAfter(int slot) {
-      int newslot = searchAfter(slot, EMPTY);
-      if (newslot >= 0)
-         setFlag(newslot, USED);
-      return newslot;
-   }
-  
-   public BlockId block() {
-      return blk;
-   }
-   
-   // Private auxiliary methods
-   
    /**
-    * Set the record's empty/inuse flag.
+    * Indicate that the caller has finished reading the
+    * record in the specified slot. At read committed isolation,
+    * this releases the transaction's SLock on the record.
+    * @param slot the slot of the record
     */
-   private void setFlag(int slot, int flag) {
-      tx.setInt(blk, offset(slot), flag, true); 
-   }
-
-   private int searchAfter(int slot, int flag) {
-      slot++;
-      while (isValidSlot(slot)) {
-         if (tx.getInt(blk, offset(slot)) == flag)
-            return slot;
-         slot++;
-      }
-      return -1;
-   }
+   void release(int slot);
 
-   private boolean isValidSlot(int slot) {
-      return offset(slot+1) <= tx.blockSize();
-   }
+   void delete(int slot);
 
-   private int offset(int slot) {
-      return slot * layout.slotSize();
-   }
-}
+   /**
+    * Format a newly appended block, so that it has no records.
+    */
+   void format();
 
+   /**
+    * Return the next used slot after the specified one,
+    * and SLock its record.
+    * @param slot the slot to search after, or -1
+    * @return the next used slot, or -1 if there is none
+    */
+   int nextAfter(int slot);
 
+   /**
+    * Find an empty slot after the specified one,
+    * XLock its record and mark it as used.
+    * @param slot the slot to search after, or -1
+    * @return the new slot, or -1 if there is none
+    */
+   int insertAfter(int slot);
 
+   /**
+    * Return the number of bytes of the block that could
+    * hold new records, counting the space of empty slots.
+    * The value is read under the latch only, so it is an estimate:
+    * some empty slots may be locked by other transactions.
+    * @return the free space of the block
+    */
+   int freeSpace();
 
+   /**
+    * Return true if no slot of the block holds a tuple,
+    * neither a record nor a tuple moved here from another block.
+    * Like {@link #freeSpace()}, the value is read under the latch only.
+    * @return true if the block is empty
+    */
+   boolean isEmpty();
 
+   /**
+    * Return the records of the block whose tuples have been
+    * moved to other blocks, each mapped to the RID of the slot
+    * that holds its tuple now. The block is read under the
+    * latch only, so the result may be out of date.
+    * @return a map from slots to the places of their tuples
+    */
+   Map<Integer,RID> forwardedSlots();
 
+   /**
+    * Return the number of free bytes that inserting
+    * a record into the block needs.
+    * @return the space needed by an insert
+    */
+   int insertSpace();
 
+   /**
+    * Return the number of free bytes that inserting a copy
+    * of the record in the specified slot needs.
+    * @param slot the slot of the record
+    * @return the space needed by the copy
+    */
+   int recordSpace(int slot);
 
+   BlockId block();
+}
@@ -19,15 +19,16 @@ public class RecordTest {
       }
       BlockId blk = tx.append("testfile");
       tx.pin(blk);
-      RecordPage rp = new RecordPage(tx, blk, layout);
+      RecordPage rp = RecordPage.open(tx, blk, layout);
       rp.format();
+      int acol = layout.column("A"), bcol = layout.column("B");
 
       System.out.println("Filling the page with random records.");
       int slot = rp.insertAfter(-1);
       while (slot >= 0) {  
          int n = (int) Math.round(Math.random() * 50);
-         rp.setInt(slot, "A", n);
-         rp.setString(slot, "B", "rec"+n);
+         rp.setInt(slot, acol, n);
+         rp.setString(slot, bcol, "rec"+n);
          System.out.println("inserting into slot " + slot + ": {" + n + ", " + "rec"+n + "}");
          slot = rp.insertAfter(slot);
       }
@@ -36,8 +37,8 @@ public class RecordTest {
       int count = 0;
       slot = rp.nextAfter(-1);
       while (slot >= 0) {
-         int a = rp.getInt(slot, "A");
-         String b = rp.getString(slot, "B");
+         int a = rp.getInt(slot, acol);
+         String b = rp.getString(slot, bcol);
          if (a < 25) {
             count++;
             System.out.println("slot " + slot + ": {" + a + ", " + b + "}");
@@ -50,8 +51,8 @@ public class RecordTest {
       System.out.println("Here are the remaining records.");
       slot = rp.nextAfter(-1);
       while (slot >= 0) {
-         int a = rp.getInt(slot, "A");
-         String b = rp.getString(slot, "B");
+         int a = rp.getInt(slot, acol);
+         String b = rp.getString(slot, bcol);
          System.out.println("slot " + slot + ": {" + a + ", " + b + "}");
          slot = rp.nextAfter(slot);
       }
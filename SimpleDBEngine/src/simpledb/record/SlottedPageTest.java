@@ -0,0 +1,131 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Stores the same records in a fixed table and in a slotted one,
+ * whose strings are mostly much shorter than their declared length,
+ * and compares the number of blocks each needs.
+ * A string of each slotted record then grows, so that the tuples
+ * outgrow their pages and are forwarded; the values are checked
+ * after that update and after another one that is rolled back,
+ * which must leave the forwarding addresses as they were.
+ * Finally the strings shrink again, and new records are inserted;
+ * they fit in the space that compacting the pages reclaims.
+ */
+public class SlottedPageTest {
+   private static final int NUM_RECORDS = 2000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("slottedpagetest", 400, 16);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 40);
+      sch.addStringField("note", 40);
+      Layout layout = null;
+      for (String format : new String[] {Layout.FIXED, Layout.SLOTTED}) {
+         layout = new Layout(sch, format);
+         Transaction tx = db.newTx();
+         TableScan ts = new TableScan(tx, "T" + format, layout);
+         for (int i=0; i<NUM_RECORDS; i++)
+            insert(ts, i);
+         ts.close();
+         tx.commit();
+         System.out.println(format + ": " + blocks(db, "T" + format) + " blocks");
+      }
+
+      String tblname = "T" + Layout.SLOTTED;
+      update(db, tblname, layout, "grown", false);
+      check(db, tblname, layout, "grown", NUM_RECORDS);
+      int forwarded = forwarded(db, tblname, layout);
+      System.out.println("after lengthening every name: " + blocks(db, tblname)
+                         + " blocks, " + forwarded + " tuples forwarded");
+
+      update(db, tblname, layout, "grown again", true);
+      check(db, tblname, layout, "grown", NUM_RECORDS);
+      if (forwarded(db, tblname, layout) != forwarded)
+         System.out.println("the rollback changed the forwarding addresses");
+      System.out.println("after lengthening them again and rolling back: "
+                         + blocks(db, tblname) + " blocks");
+
+      update(db, tblname, layout, "n", false);
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=NUM_RECORDS; i<2*NUM_RECORDS; i++)
+         insert(ts, i);
+      ts.close();
+      tx.commit();
+      check(db, tblname, layout, "n", 2*NUM_RECORDS);
+      System.out.println("after shortening them and inserting " + NUM_RECORDS
+                         + " more records: " + blocks(db, tblname) + " blocks");
+   }
+
+   private static void insert(TableScan ts, int id) {
+      ts.insert();
+      ts.setInt("id", id);
+      ts.setString("name", "n" + id);
+      ts.setString("note", (id % 10 == 0) ? longString(id) : "");
+   }
+
+   private static void update(SimpleDB db, String tblname, Layout layout, String prefix, boolean rollback) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      while (ts.next())
+         ts.setString("name", name(prefix, ts.getInt("id")));
+      ts.close();
+      if (rollback)
+         tx.rollback();
+      else
+         tx.commit();
+   }
+
+   private static void check(SimpleDB db, String tblname, Layout layout, String prefix, int expected) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      int count = 0;
+      while (ts.next()) {
+         int id = ts.getInt("id");
+         String name = ts.getString("name");
+         String note = ts.getString("note");
+         String expectedName = name((id < NUM_RECORDS) ? prefix : "n", id);
+         if (!name.equals(expectedName) || !note.equals((id % 10 == 0) ? longString(id) : ""))
+            System.out.println("wrong record " + id + ": " + name + ", " + note);
+         count++;
+      }
+      ts.close();
+      tx.commit();
+      if (count != expected)
+         System.out.println(tblname + " has " + count + " records, not " + expected);
+   }
+
+   private static int forwarded(SimpleDB db, String tblname, Layout layout) {
+      Transaction tx = db.newTx();
+      int count = 0;
+      for (int b=0; b<tx.size(tblname + ".tbl"); b++) {
+         RecordPage rp = new SlottedRecordPage(tx, new BlockId(tblname + ".tbl", b), layout);
+         count += rp.forwardedSlots().size();
+         tx.unpin(rp.block());
+      }
+      tx.commit();
+      return count;
+   }
+
+   private static int blocks(SimpleDB db, String tblname) {
+      Transaction tx = db.newTx();
+      int n = tx.size(tblname + ".tbl");
+      tx.commit();
+      return n;
+   }
+
+   private static String name(String prefix, int id) {
+      if (prefix.equals("n"))
+         return "n" + id;
+      return prefix + id + "-" + longString(id).substring(0, 20);
+   }
+
+   private static String longString(int i) {
+      return ("note " + i + " ").repeat(10).substring(0, 40);
+   }
+}
@@ -0,0 +1,476 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import static simpledb.file.SlotDirectory.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotDirectory;
+import simpledb.tx.Transaction;
+import simpledb.tx.recovery.CompactRecord;
+import simpledb.tx.recovery.TupleAllocRecord;
+import simpledb.tx.recovery.TupleEntryRecord;
+import simpledb.tx.recovery.TupleMoveRecord;
+import simpledb.tx.recovery.TupleWriteRecord;
+
+/**
+ * Store records as variable-length tuples in a slotted page.
+ * A record is identified by its slot in the page's directory,
+ * which stays the same wherever its tuple is stored.
+ * <p>
+ * A new tuple is allocated a region just large enough for its
+ * empty strings. When an update makes a tuple outgrow its region,
+ * the tuple moves to a new region of the page, and the page is
+ * compacted when it runs out of free space. If the page has no
+ * room even then, the tuple moves to another page of the table,
+ * and its slot is left holding the forwarding address. The moved tuple is marked
+ * so that scans of its new page skip it, and it is always reached
+ * through its original slot, whose lock also covers it.
+ * <p>
+ * Reading or writing a tuple locks its record first, and only then
+ * reads its directory entry, so a concurrent compaction never
+ * moves the tuple while it is being used.
+ */
+public class SlottedRecordPage implements RecordPage {
+   private Transaction tx;
+   private BlockId blk;
+   private Layout layout;
+   private SlotDirectory sd;
+   private int fixedsize, numstrings, minalloc;
+
+   public SlottedRecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this.tx = tx;
+      this.blk = blk;
+      this.layout = layout;
+      for (int col=0; col<layout.schema().fields().size(); col++)
+         if (layout.type(col) == INTEGER)
+            fixedsize += Integer.BYTES;
+         else
+            numstrings++;
+      sd = new SlotDirectory(fixedsize, numstrings);
+      minalloc = Math.max(MIN_ALLOC, fixedsize + numstrings * Integer.BYTES);
+      tx.pin(blk);
+   }
+
+   public int getInt(int slot, int col) {
+      return withTuple(slot, false, (b, s) ->
+            tx.readInt(b, tupleOffset(b, s) + layout.offset(col)));
+   }
+
+   public String getString(int slot, int col) {
+      return withTuple(slot, false, (b, s) ->
+            tx.readString(b, stringPos(b, s, stringIndex(col))));
+   }
+
+   public void setInt(int slot, int col, int val) {
+      byte[] bytes = ByteBuffer.allocate(Integer.BYTES).putInt(val).array();
+      withTuple(slot, true, (b, s) -> {
+         writeTuple(b, s, layout.offset(col), bytes, Integer.BYTES);
+         return null;
+      });
+   }
+
+   /**
+    * Store a string at the specified field of the specified slot.
+    * The strings that follow it in the tuple are shifted
+    * by the change in its length.
+    * @param col the column of the field
+    * @param val the string value stored in that field
+    */
+   public void setString(int slot, int col, String val) {
+      withTuple(slot, true, (b, s) -> {
+         int start = tupleOffset(b, s);
+         int pos = stringPos(b, s, stringIndex(col)) - start;
+         int end = stringPos(b, s, numstrings) - start;
+         int next = pos + Integer.BYTES + tx.readInt(b, start + pos);
+         byte[] tail = tx.readBytes(b, start + next, end - next);
+         byte[] strbytes = val.getBytes(Page.CHARSET);
+         byte[] newbytes = ByteBuffer.allocate(Integer.BYTES + strbytes.length + tail.length)
+                                     .putInt(strbytes.length).put(strbytes).put(tail).array();
+         int newend = pos + newbytes.length;
+         if (newend <= tx.readInt(b, allocPos(s)) || moveTuple(b, s, newend))
+            writeTuple(b, s, pos, newbytes, end - pos);
+         else {
+            // the failed move may have compacted the page
+            byte[] prefix = tx.readBytes(b, tupleOffset(b, s), pos);
+            byte[] tuple = ByteBuffer.allocate(newend).put(prefix).put(newbytes).array();
+            forward(slot, b, s, tuple);
+         }
+         return null;
+      });
+   }
+
+   public void release(int slot) {
+      if (!tx.isReadCommitted())
+         return;
+      if (flag(blk, slot) == FORWARD) {
+         int start = tupleOffset(blk, slot);
+         BlockId b = new BlockId(blk.fileName(), tx.readInt(blk, start));
+         tx.releaseRecord(b, tx.readInt(blk, start + Integer.BYTES));
+      }
+      tx.releaseRecord(blk, slot);
+   }
+
+   /**
+    * Delete the record in the specified slot.
+    * The tuple's region is kept until the transaction completes,
+    * so that the deletion can be undone.
+    * @param slot the slot of the record
+    */
+   public void delete(int slot) {
+      withTuple(slot, true, (b, s) -> {
+         if (!b.equals(blk))
+            writeFlag(b, s, EMPTY);
+         return null;
+      });
+      writeFlag(blk, slot, EMPTY);
+   }
+
+   /**
+    * Format a new block with an empty slot directory.
+    * No locks are needed, because the block is
+    * not yet visible to other transactions.
+    */
+   public void format() {
+      tx.formatPage(blk, SlotDirectory.header(tx.blockSize()));
+   }
+
+   /**
+    * Return the next slot after the specified one that holds
+    * a record, and SLock the record.
+    * A slot that is empty but XLocked by another transaction
+    * may hold an uncommitted delete, so the method waits for
+    * that transaction before deciding to skip the slot.
+    * Tuples that were moved here from other pages are skipped.
+    * @param slot the slot to search after, or -1
+    * @return the next used slot, or -1 if there is none
+    */
+   public int nextAfter(int slot) {
+      slot = searchAfter(slot);
+      while (slot >= 0) {
+         tx.sLockRecord(blk, slot);
+         int flag = flag(blk, slot);   // the flag may have changed while we waited
+         if (flag == USED || flag == FORWARD)
+            return slot;
+         tx.releaseRecord(blk, slot);
+         slot = searchAfter(slot);
+      }
+      return -1;
+   }
+
+   /**
+    * Insert a new tuple in an empty slot after the specified one,
+    * or in a new slot. Slots locked by another transaction
+    * are skipped, so that inserts never wait on each other.
+    * @param slot the slot to search after, or -1
+    * @return the new slot, or -1 if the page is full
+    */
+   public int insertAfter(int slot) {
+      return insertTuple(blk, slot, USED, minalloc);
+   }
+
+   /**
+    * Return the free space between the slot directory and
+    * the tuples, plus the space that compaction reclaims once
+    * no transaction holds locks on the page's records:
+    * the entries and regions of the empty slots, the old
+    * region of each forwarded tuple beyond its forwarding
+    * address, the unused end of each other region, and the
+    * gaps left by tuples that moved to larger regions.
+    * The page is copied under the latch and examined there.
+    */
+   public int freeSpace() {
+      Page p = new Page(tx.readBytes(blk, 0, tx.blockSize()));
+      int numslots = SlotDirectory.numSlots(p);
+      int free = SlotDirectory.freeSpaceAfter(p, -1, sd.compaction(p, s -> false, s -> false));
+      for (int slot=0; slot<numslots; slot++)
+         if (SlotDirectory.flag(p, slot) == EMPTY)
+            free += ENTRY_SIZE;
+      return free;
+   }
+
+   public boolean isEmpty() {
+      int numslots = tx.readInt(blk, countPos());
+      for (int slot=0; slot<numslots; slot++)
+         if (flag(blk, slot) != EMPTY)
+            return false;
+      return true;
+   }
+
+   public Map<Integer,RID> forwardedSlots() {
+      Map<Integer,RID> result = new HashMap<>();
+      int numslots = tx.readInt(blk, countPos());
+      for (int slot=0; slot<numslots; slot++)
+         if (flag(blk, slot) == FORWARD) {
+            int start = tupleOffset(blk, slot);
+            result.put(slot, new RID(tx.readInt(blk, start), tx.readInt(blk, start + Integer.BYTES)));
+         }
+      return result;
+   }
+
+   public int insertSpace() {
+      return ENTRY_SIZE + minalloc;
+   }
+
+   public int recordSpace(int slot) {
+      int length = withTuple(slot, false, (b, s) -> stringPos(b, s, numstrings) - tupleOffset(b, s));
+      return ENTRY_SIZE + Math.max(minalloc, length);
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   // Private auxiliary methods
+
+   /**
+    * Lock the record in the specified slot, find its tuple,
+    * and perform the action on it. If the tuple has been moved
+    * to another page, its slot there is locked in the same mode,
+    * and its block is pinned while the action runs.
+    */
+   private <T> T withTuple(int slot, boolean modify, TupleAction<T> action) {
+      lock(blk, slot, modify);
+      if (flag(blk, slot) != FORWARD)
+         return action.apply(blk, slot);
+      int start = tupleOffset(blk, slot);
+      BlockId b = new BlockId(blk.fileName(), tx.readInt(blk, start));
+      int s = tx.readInt(blk, start + Integer.BYTES);
+      lock(b, s, modify);
+      tx.pin(b);
+      try {
+         return action.apply(b, s);
+      }
+      finally {
+         tx.unpin(b);
+      }
+   }
+
+   /**
+    * Move the tuple of the specified record to another page,
+    * and store the forwarding address in the record's slot.
+    * If the tuple had already been moved, its previous
+    * place is freed.
+    * @param slot the slot of the record
+    * @param b the block where the tuple is now
+    * @param s the slot where the tuple is now
+    * @param tuple the new value of the tuple
+    */
+   private void forward(int slot, BlockId b, int s, byte[] tuple) {
+      FreeSpaceMap fsm = new FreeSpaceMap(tx, tableName(), layout);
+      RID rid = placeElsewhere(fsm, tuple);
+      byte[] address = ByteBuffer.allocate(MIN_ALLOC)
+                                 .putInt(rid.blockNumber()).putInt(rid.slot()).array();
+      writeTuple(blk, slot, 0, address, MIN_ALLOC);
+      if (b.equals(blk))
+         writeFlag(blk, slot, FORWARD);
+      else
+         writeFlag(b, s, EMPTY);
+      // the old region is counted, and reclaimed once the transaction completes
+      fsm.update(blk.number(), freeSpace());
+   }
+
+   /**
+    * Store a moved tuple in a block of the table that the
+    * free-space map shows to have room, or in a new block
+    * if there is none. The new slot is XLocked by the transaction.
+    * The search starts after this block: the blocks before it
+    * may hold space that the transaction has freed by forwarding
+    * their tuples, but that it cannot reuse until it completes.
+    * A block that turns out to be full has its entry lowered
+    * below the space needed, so that later searches skip it
+    * until the block changes again.
+    */
+   private RID placeElsewhere(FreeSpaceMap fsm, byte[] tuple) {
+      String filename = blk.fileName();
+      int alloc = tuple.length;
+      int need = ENTRY_SIZE + alloc;
+      RecordPage rp = null;
+      int s = -1;
+      for (int blknum = fsm.find(need, blk.number()+1); blknum >= 0; blknum = fsm.find(need, blknum+1)) {
+         rp = new SlottedRecordPage(tx, new BlockId(filename, blknum), layout);
+         s = insertTuple(rp.block(), -1, MOVED, alloc);
+         if (s >= 0)
+            break;
+         fsm.update(blknum, Math.min(rp.freeSpace(), need-1));
+         tx.unpin(rp.block());
+      }
+      if (s < 0) {
+         BlockId b = tx.append(filename, newblk -> {
+            new SlottedRecordPage(tx, newblk, layout).format();
+         });
+         rp = new SlottedRecordPage(tx, b, layout);
+         tx.unpin(b);   // the formatter pinned it too
+         s = insertTuple(b, -1, MOVED, alloc);
+      }
+      BlockId b = rp.block();
+      writeTuple(b, s, 0, tuple, 0);
+      fsm.update(b.number(), rp.freeSpace());
+      tx.unpin(b);
+      return new RID(b.number(), s);
+   }
+
+   /**
+    * Insert a tuple into the specified block of the table:
+    * find a slot after the specified one that is empty, that
+    * no other transaction has locked, and that does not hold a
+    * tuple this transaction deleted or that a snapshot may
+    * still read (a snapshot restores only the flag of a slot,
+    * so it would read the new tuple); XLock its record, and
+    * allocate a cleared region to it. If there is no empty slot,
+    * the directory grows by one. The page is compacted if that
+    * is needed to make room for the region.
+    * All of this happens under the exclusive latch of the page,
+    * so that the lock states seen by the compaction cannot change
+    * until it is complete.
+    * @return the slot of the new tuple, or -1 if the page is full
+    */
+   private int insertTuple(BlockId b, int slot, int flag, int alloc) {
+      return tx.latched(b, p -> {
+         int n = SlotDirectory.numSlots(p);
+         Set<Integer> saved = tx.savedSlots(b);
+         for (int s=slot+1; s<=n; s++) {
+            if (s < n && (SlotDirectory.flag(p, s) != EMPTY
+                          || holdsOwnDelete(b, p, s) || saved.contains(s)))
+               continue;
+            if (!makeRoom(b, p, s, alloc))
+               return -1;
+            if (tx.tryXLockRecord(b, s)) {
+               tx.update(b, TupleAllocRecord.update(s, flag, alloc), true);
+               return s;
+            }
+         }
+         return -1;
+      });
+   }
+
+   /**
+    * Move the tuple in the specified slot to a new region
+    * of the specified size, compacting the page if needed.
+    * The caller holds an XLock on the tuple's record.
+    * @return false if the page has no room for the new region
+    */
+   private boolean moveTuple(BlockId b, int s, int alloc) {
+      return tx.latched(b, p -> {
+         if (!makeRoom(b, p, s, alloc))
+            return false;
+         tx.update(b, TupleMoveRecord.update(s, alloc), true);
+         return true;
+      });
+   }
+
+   /**
+    * Make sure that the page has room for a region of the
+    * specified size, compacting it if necessary.
+    * A tuple whose record is locked by another transaction may be
+    * in use, and does not move. A tuple that this transaction has
+    * XLocked may move, but its region does not shrink, so that
+    * undoing the transaction's changes to it still fits; and if it
+    * has been deleted or forwarded, its old value is still needed,
+    * so it does not move either. The region of a tuple whose old
+    * values a snapshot may still need does not shrink either.
+    * The caller holds the exclusive latch of the page.
+    */
+   private boolean makeRoom(BlockId b, Page p, int slot, int alloc) {
+      if (SlotDirectory.freeSpace(p, slot) >= alloc)
+         return true;
+      Set<Integer> saved = tx.savedSlots(b);
+      IntPredicate mine = s -> tx.hasRecordXLock(b, s);
+      IntPredicate pinned = s -> tx.isRecordLockedByOther(b, s)
+            || (mine.test(s) && SlotDirectory.flag(p, s) != USED
+                             && SlotDirectory.flag(p, s) != MOVED);
+      IntPredicate kept = s -> mine.test(s) || saved.contains(s);
+      int[] allocs = sd.compaction(p, pinned, kept);
+      if (SlotDirectory.freeSpaceAfter(p, slot, allocs) < alloc)
+         return false;
+      tx.update(b, CompactRecord.update(allocs), true);
+      return true;
+   }
+
+   /**
+    * Return true if the specified empty slot still holds a
+    * tuple that this transaction deleted.
+    * Rolling back would restore the tuple in that region,
+    * so the slot is not reused until the transaction completes.
+    */
+   private boolean holdsOwnDelete(BlockId b, Page p, int s) {
+      return !tx.isReadOnly() && SlotDirectory.alloc(p, s) > 0 && tx.hasRecordXLock(b, s);
+   }
+
+   /**
+    * Write bytes into the tuple in the specified slot.
+    * The change is logged relative to the tuple, so that it can
+    * be undone wherever the tuple is when the undo happens.
+    */
+   private void writeTuple(BlockId b, int s, int pos, byte[] bytes, int oldlength) {
+      tx.update(b, TupleWriteRecord.update(s, pos, bytes, oldlength), true);
+   }
+
+   private void writeFlag(BlockId b, int s, int flag) {
+      tx.update(b, TupleEntryRecord.update(s, flag, -1, -1), true);
+   }
+
+   /**
+    * Find the next slot that holds a record, reading the
+    * flags under the latch only. Empty slots that another
+    * transaction has XLocked are also returned,
+    * so that the caller can wait for them.
+    */
+   private int searchAfter(int slot) {
+      slot++;
+      while (slot < tx.readInt(blk, countPos())) {
+         int flag = flag(blk, slot);
+         if (flag == USED || flag == FORWARD)
+            return slot;
+         if (flag == EMPTY && tx.isRecordXLockedByOther(blk, slot))
+            return slot;
+         slot++;
+      }
+      return -1;
+   }
+
+   private String tableName() {
+      String filename = blk.fileName();
+      return filename.substring(0, filename.length() - ".tbl".length());
+   }
+
+   private void lock(BlockId b, int s, boolean modify) {
+      if (modify)
+         tx.xLockRecord(b, s);
+      else
+         tx.sLockRecord(b, s);
+   }
+
+   private int flag(BlockId b, int s) {
+      return tx.readInt(b, flagPos(s));
+   }
+
+   private int tupleOffset(BlockId b, int s) {
+      return tx.readInt(b, offsetPos(s));
+   }
+
+   private int stringIndex(int col) {
+      return (layout.offset(col) - fixedsize) / Integer.BYTES;
+   }
+
+   /**
+    * Return the offset in the page of the specified
+    * string of a tuple, by skipping the strings before it.
+    */
+   private int stringPos(BlockId b, int s, int index) {
+      int pos = tupleOffset(b, s) + fixedsize;
+      for (int i=0; i<index; i++)
+         pos += Integer.BYTES + tx.readInt(b, pos);
+      return pos;
+   }
+
+   private interface TupleAction<T> {
+      T apply(BlockId b, int s);
+   }
+}
@@ -8,18 +8,27 @@ import simpledb.tx.Transaction;
 /**
  * Provides the abstraction of an arbitrarily large array
  * of records.
+ * Inserts and deletes keep the table's free-space map up to date,
+ * and an insert that does not fit in the current block uses the map
+ * to find a block with room. Temporary tables have no map:
+ * their transaction only ever appends to them.
+ * The values of a dictionary-encoded field are translated by its
+ * dictionary; reading the field as an int gives the stored code.
  * @author sciore
  */
 public class TableScan implements UpdateScan {
    private Transaction tx;
    private Layout layout;
    private RecordPage rp;
-   private String filename;
+   private String tblname, filename;
+   private FreeSpaceMap fsm;
+   private Dictionary[] dicts;
    private int currentslot;
 
    public TableScan(Transaction tx, String tblname, Layout layout) {
       this.tx = tx;
       this.layout = layout;
+      this.tblname = tblname;
       filename = tblname + ".tbl";
       if (tx.size(filename) == 0)
          moveToNewBlock();
@@ -34,6 +43,7 @@ public class TableScan implements UpdateScan {
    }
 
    public boolean next() {
+      leaveRecord();
       currentslot = rp.nextAfter(currentslot);
       while (currentslot < 0) {
          if (atLastBlock())
@@ -45,65 +55,153 @@ public class TableScan implements UpdateScan {
    }
 
    public int getInt(String fldname) {
-      return rp.getInt(currentslot, fldname);
+      return getInt(column(fldname));
    }
 
    public String getString(String fldname) {
-      return rp.getString(currentslot, fldname);
+      return getString(column(fldname));
    }
 
    public Constant getVal(String fldname) {
-      if (layout.schema().type(fldname) == INTEGER)
-         return new Constant(getInt(fldname));
+      return getVal(column(fldname));
+   }
+
+   /**
+    * Return the column of the specified field,
+    * which is its column in the table's layout.
+    * @see Scan#findField(String)
+    */
+   public int findField(String fldname) {
+      return layout.column(fldname);
+   }
+
+   public int getInt(int col) {
+      return rp.getInt(currentslot, col);
+   }
+
+   public String getString(int col) {
+      if (layout.dictionary(col) != null)
+         return dictionary(col).decode(rp.getInt(currentslot, col));
+      return rp.getString(currentslot, col);
+   }
+
+   public Constant getVal(int col) {
+      if (layout.type(col) == INTEGER && layout.dictionary(col) == null)
+         return new Constant(getInt(col));
       else
-         return new Constant(getString(fldname));
+         return new Constant(getString(col));
    }
 
    public boolean hasField(String fldname) {
       return layout.schema().hasField(fldname);
    }
 
+   /**
+    * Return the dictionary of the field in the specified
+    * column, opening it when it is first needed.
+    * @see Scan#dictionary(int)
+    */
+   public Dictionary dictionary(int col) {
+      if (layout.dictionary(col) == null)
+         return null;
+      if (dicts == null)
+         dicts = new Dictionary[layout.schema().fields().size()];
+      if (dicts[col] == null)
+         dicts[col] = Dictionary.open(tx, layout, col);
+      return dicts[col];
+   }
+
    public void close() {
-      if (rp != null)
+      if (rp != null) {
+         leaveRecord();
          tx.unpin(rp.block());
+      }
    }
 
    // Methods that implement UpdateScan
 
    public void setInt(String fldname, int val) {
-      rp.setInt(currentslot, fldname, val);
+      setInt(column(fldname), val);
    }
    
    public void setString(String fldname, String val) {
-      rp.setString(currentslot, fldname, val);
+      setString(column(fldname), val);
    }
 
    public void setVal(String fldname, Constant val) {
-      if (layout.schema().type(fldname) == INTEGER)
-         setInt(fldname, val.asInt());
+      setVal(column(fldname), val);
+   }
+
+   public void setInt(int col, int val) {
+      rp.setInt(currentslot, col, val);
+   }
+
+   public void setString(int col, String val) {
+      if (layout.dictionary(col) != null) {
+         // a new value is added to the dictionary at once,
+         // so the record is locked for the write beforehand
+         tx.xLockRecord(rp.block(), currentslot);
+         rp.setInt(currentslot, col, dictionary(col).encode(val));
+      }
       else
-         setString(fldname, val.asString());
+         rp.setString(currentslot, col, val);
    }
 
+   public void setVal(int col, Constant val) {
+      if (layout.type(col) == INTEGER && layout.dictionary(col) == null)
+         setInt(col, val.asInt());
+      else
+         setString(col, val.asString());
+   }
+
+   /**
+    * Insert a new record into the current block if it has room,
+    * and otherwise into the first block that the free-space map
+    * shows to have room, or into a new block at the end of the table.
+    * A block that turns out to be full has its entry lowered
+    * below the space an insertion needs, since the free space
+    * that it shows may be held by this transaction,
+    * and the search continues after it.
+    */
    public void insert() {
       currentslot = rp.insertAfter(currentslot);
+      int blknum = -1;
+      boolean appended = false;
       while (currentslot < 0) {
-         if (atLastBlock()) 
-            moveToNewBlock();
-         else 
-            moveToBlock(rp.block().number()+1);
+         if (isTemp()) {
+            if (atLastBlock())
+               moveToNewBlock();
+            else
+               moveToBlock(rp.block().number()+1);
+         }
+         else {
+            fsm().update(rp.block().number(), Math.min(rp.freeSpace(), rp.insertSpace()-1));
+            blknum = fsm().find(rp.insertSpace(), blknum+1);
+            if (blknum >= 0)
+               moveToBlock(blknum);
+            else {
+               moveToNewBlock();
+               blknum = rp.block().number();
+               appended = true;
+            }
+         }
          currentslot = rp.insertAfter(currentslot);
       }
+      // other inserters can now find the new block
+      if (appended)
+         fsm().update(blknum, rp.freeSpace());
    }
 
    public void delete() {
       rp.delete(currentslot);
+      if (!isTemp())
+         fsm().update(rp.block().number(), rp.freeSpace());
    }
 
    public void moveToRid(RID rid) {
       close();
       BlockId blk = new BlockId(filename, rid.blockNumber());
-      rp = new RecordPage(tx, blk, layout);
+      rp = RecordPage.open(tx, blk, layout);
       currentslot = rid.slot();
    }
 
@@ -116,18 +214,50 @@ public class TableScan implements UpdateScan {
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = RecordPage.open(tx, blk, layout);
       currentslot = -1;
    }
 
    private void moveToNewBlock() {
       close();
-      BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
-      rp.format();
+      // the block is formatted before other inserters can see it
+      tx.append(filename, blk -> {
+         rp = RecordPage.open(tx, blk, layout);
+         rp.format();
+      });
       currentslot = -1;
    }
 
+   /**
+    * The scan is moving off the current record,
+    * which a read committed transaction need not keep locked.
+    */
+   private void leaveRecord() {
+      if (currentslot >= 0)
+         rp.release(currentslot);
+   }
+
+   /**
+    * Open the free-space map when it is first needed,
+    * so that scans which only read do not touch it.
+    */
+   private FreeSpaceMap fsm() {
+      if (fsm == null)
+         fsm = new FreeSpaceMap(tx, tblname, layout);
+      return fsm;
+   }
+
+   private int column(String fldname) {
+      int col = layout.column(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+
+   private boolean isTemp() {
+      return tblname.startsWith("temp");
+   }
+
    private boolean atLastBlock() {
       return rp.block().number() == tx.size(filename) - 1;
    }
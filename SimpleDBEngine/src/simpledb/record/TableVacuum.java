@@ -0,0 +1,291 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import simpledb.file.BlockId;
+import simpledb.query.Constant;
+import simpledb.tx.ReadOnlyException;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.LockAbortException;
+
+/**
+ * Shrinks the file of a table while the table is in use.
+ * A delete only marks its slot as empty, so a table never
+ * gives back the space of its deleted records by itself.
+ * The vacuum moves the records of the last blocks of the table
+ * into the free space of the earlier blocks, and then truncates
+ * the blocks that it has emptied from the end of the file.
+ * <p>
+ * The work is done in a series of short transactions, one for
+ * each block that is emptied, so that the vacuum never holds
+ * many locks, and other transactions can read and modify the
+ * table in between. The deletes of the vacuum do not update
+ * the free-space map, so that inserts do not move into the
+ * blocks it empties; the entries of the blocks that are not
+ * truncated are brought up to date at the end.
+ * A record that is locked by another transaction is waited for;
+ * if the wait is aborted, the vacuum stops moving records.
+ * <p>
+ * Moving a record changes its RID, so the caller supplies a
+ * {@link Mover} that updates the indexes of the table.
+ * A block of a slotted table may also hold tuples forwarded from
+ * records in other blocks; those records are moved as well.
+ */
+public class TableVacuum {
+   private String tblname, filename;
+   private Layout layout;
+   private Map<RID,RID> homes = null;
+   private RecordPage dest;   // where the current transaction moves records to
+   private int start;         // the first block it may still find room in
+   private Dictionary[] dicts;
+
+   /**
+    * Told about each record that the vacuum moves,
+    * within the transaction that moves it.
+    */
+   public interface Mover {
+      /**
+       * Called after the record has been copied to its new slot,
+       * and before it is deleted from its old one.
+       * @param oldrid the RID of the record before the move
+       * @param newrid the RID of the record after the move
+       * @param vals the values of the record, by column of the layout
+       */
+      void moved(RID oldrid, RID newrid, Constant[] vals);
+   }
+
+   public TableVacuum(String tblname, Layout layout) {
+      this.tblname = tblname;
+      this.layout = layout;
+      filename = tblname + ".tbl";
+   }
+
+   /**
+    * Vacuum the table, for a table without indexes.
+    * @see #run(Transaction, Function)
+    */
+   public int run(Transaction tx) {
+      return run(tx, t -> (oldrid, newrid, vals) -> {});
+   }
+
+   /**
+    * Vacuum the table. The specified transaction is used only to
+    * start the transactions that do the work, each of which asks
+    * the function for the mover of its records. It must not
+    * hold locks on the table, since the vacuum would wait for
+    * them forever; the caller's changes to the table must be
+    * committed first.
+    * @param tx the transaction running the vacuum
+    * @param movers returns the mover to use in a transaction
+    * @return the number of blocks removed from the table
+    */
+   public int run(Transaction tx, Function<Transaction,Mover> movers) {
+      if (tx.isReadOnly())
+         throw new ReadOnlyException();
+      if (tx.hasLocks(filename))
+         throw new RuntimeException("VACUUM must run in its own transaction: "
+                                    + "this one has locked " + tblname + ".");
+      // a btree table keeps its records in the leaves of its B-tree,
+      // which are not compacted
+      if (layout.key() != null)
+         return 0;
+      Transaction t = tx.newTransaction();
+      int size = t.size(filename);
+      t.commit();
+      if (size <= 1)
+         return 0;
+      int last = size - 1;
+      while (last > 0 && step(tx, last, last, movers))
+         last--;
+      // the blocks that inserts appended meanwhile are emptied as well
+      t = tx.newTransaction();
+      int end = t.size(filename);
+      t.commit();
+      boolean emptied = true;
+      for (int blknum = end-1; blknum >= size && emptied; blknum--)
+         emptied = step(tx, blknum, last+1, movers);
+
+      t = tx.newTransaction();
+      int newsize = end;
+      try {
+         if (last < end - 1)
+            newsize = truncate(t, last + 1);
+      }
+      catch (LockAbortException e) {
+         t.rollback();
+         t = tx.newTransaction();
+      }
+      // the blocks that remain can take inserts again;
+      // the map is not logged, so this survives a rollback
+      FreeSpaceMap fsm = new FreeSpaceMap(t, tblname, layout);
+      for (int blknum = last; blknum < Math.min(newsize, end); blknum++) {
+         RecordPage rp = RecordPage.open(t, new BlockId(filename, blknum), layout);
+         fsm.update(blknum, rp.freeSpace());
+         t.unpin(rp.block());
+      }
+      t.commit();
+      return Math.max(0, end - newsize);
+   }
+
+   /**
+    * Empty the specified block in a transaction of its own.
+    * @return true if the block was emptied
+    */
+   private boolean step(Transaction tx, int blknum, int limit, Function<Transaction,Mover> movers) {
+      Transaction t = tx.newTransaction();
+      try {
+         boolean emptied = empty(t, blknum, limit, movers.apply(t));
+         t.commit();
+         return emptied;
+      }
+      catch (LockAbortException e) {
+         t.rollback();
+         return false;
+      }
+      catch (RuntimeException e) {
+         t.rollback();
+         throw e;
+      }
+   }
+
+   /**
+    * Move the records of the specified block into the blocks
+    * before the specified limit. The tuples that are left were forwarded to the block from
+    * records in other blocks, and those records are moved next.
+    * @return true if the block is now empty
+    */
+   private boolean empty(Transaction tx, int blknum, int limit, Mover mover) {
+      dicts = new Dictionary[layout.schema().fields().size()];
+      FreeSpaceMap fsm = new FreeSpaceMap(tx, tblname, layout);
+      RecordPage src = RecordPage.open(tx, new BlockId(filename, blknum), layout);
+      dest = null;
+      start = 0;
+      try {
+         for (int slot = src.nextAfter(-1); slot >= 0; slot = src.nextAfter(slot))
+            if (!move(tx, fsm, src, slot, limit, mover))
+               return false;
+         if (src.isEmpty())
+            return true;
+         for (Map.Entry<RID,RID> e : homes(tx, blknum).entrySet()) {
+            if (e.getKey().blockNumber() != blknum)
+               continue;
+            RID home = e.getValue();
+            RecordPage rp = RecordPage.open(tx, new BlockId(filename, home.blockNumber()), layout);
+            try {
+               // the record may have changed since the map was read
+               if (rp.nextAfter(home.slot()-1) == home.slot()
+                     && e.getKey().equals(rp.forwardedSlots().get(home.slot()))
+                     && !move(tx, fsm, rp, home.slot(), limit, mover))
+                  return false;
+            }
+            finally {
+               tx.unpin(rp.block());
+            }
+         }
+         return src.isEmpty();
+      }
+      finally {
+         if (dest != null) {
+            fsm.update(dest.block().number(), dest.freeSpace());
+            tx.unpin(dest.block());
+         }
+         tx.unpin(src.block());
+      }
+   }
+
+   /**
+    * Copy the record in the specified slot to a block before
+    * the limit, and delete it from its slot.
+    * @return false if no block before the limit has room for it
+    */
+   private boolean move(Transaction tx, FreeSpaceMap fsm, RecordPage rp, int slot,
+                        int limit, Mover mover) {
+      int need = rp.recordSpace(slot);
+      int newslot = (dest == null || dest.freeSpace() < need) ? -1 : dest.insertAfter(-1);
+      while (newslot < 0) {
+         if (dest != null) {
+            fsm.update(dest.block().number(), dest.freeSpace());
+            tx.unpin(dest.block());
+            dest = null;
+         }
+         int destnum = fsm.find(need, start);
+         if (destnum < 0 || destnum >= limit)
+            return false;
+         dest = RecordPage.open(tx, new BlockId(filename, destnum), layout);
+         start = destnum + 1;
+         newslot = dest.insertAfter(-1);
+      }
+      Constant[] vals = new Constant[layout.schema().fields().size()];
+      for (int col=0; col<vals.length; col++) {
+         if (layout.dictionary(col) != null) {
+            // the code is copied, and the mover is given the value
+            int code = rp.getInt(slot, col);
+            dest.setInt(newslot, col, code);
+            if (dicts[col] == null)
+               dicts[col] = Dictionary.open(tx, layout, col);
+            vals[col] = new Constant(dicts[col].decode(code));
+         }
+         else if (layout.type(col) == INTEGER) {
+            vals[col] = new Constant(rp.getInt(slot, col));
+            dest.setInt(newslot, col, vals[col].asInt());
+         }
+         else {
+            vals[col] = new Constant(rp.getString(slot, col));
+            dest.setString(newslot, col, vals[col].asString());
+         }
+      }
+      // a copy that did not fit after all is not kept
+      // if it went to the end of the table
+      RID place = dest.forwardedSlots().get(newslot);
+      if (place != null && place.blockNumber() >= limit) {
+         dest.delete(newslot);
+         return false;
+      }
+      RID oldrid = new RID(rp.block().number(), slot);
+      mover.moved(oldrid, new RID(dest.block().number(), newslot), vals);
+      rp.delete(slot);
+      return true;
+   }
+
+   /**
+    * Return where the tuples forwarded from the blocks before
+    * the specified one belong, mapping the RID of each tuple
+    * to the RID of its record. The blocks are read once,
+    * without locks, when the map is first needed.
+    */
+   private Map<RID,RID> homes(Transaction tx, int blknum) {
+      if (homes == null) {
+         homes = new HashMap<>();
+         for (int b=0; b<blknum; b++) {
+            RecordPage rp = RecordPage.open(tx, new BlockId(filename, b), layout);
+            for (Map.Entry<Integer,RID> e : rp.forwardedSlots().entrySet())
+               homes.put(e.getValue(), new RID(b, e.getKey()));
+            tx.unpin(rp.block());
+         }
+      }
+      return homes;
+   }
+
+   /**
+    * Truncate the empty blocks at the end of the table,
+    * keeping at least the specified number of blocks.
+    * @return the new size of the table
+    */
+   private int truncate(Transaction tx, int keep) {
+      tx.xLockFile(filename);
+      int newsize = tx.size(filename);
+      while (newsize > keep) {
+         RecordPage rp = RecordPage.open(tx, new BlockId(filename, newsize-1), layout);
+         boolean empty = rp.isEmpty();
+         tx.unpin(rp.block());
+         if (!empty)
+            break;
+         newsize--;
+      }
+      return tx.truncate(filename, newsize);
+   }
+}
@@ -0,0 +1,68 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Fills a table, deletes most of its records, and vacuums it.
+ * The table should shrink, and still hold the records
+ * that were not deleted. A transaction that has inserted
+ * into the table is then refused a vacuum of it.
+ */
+public class VacuumTest {
+   private static final int NUM_RECORDS = 10000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("vacuumtest", 400, 16);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 20);
+      Layout layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<NUM_RECORDS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setString("name", "rec" + i);
+      }
+      ts.beforeFirst();
+      while (ts.next())
+         if (ts.getInt("id") % 7 != 0)
+            ts.delete();
+      ts.close();
+      System.out.println("size before vacuum: " + tx.size("T.tbl"));
+      tx.commit();
+
+      tx = db.newTx();
+      int removed = new TableVacuum("T", layout).run(tx);
+      System.out.println("vacuum removed " + removed + " blocks, size now " + tx.size("T.tbl"));
+
+      ts = new TableScan(tx, "T", layout);
+      int count = 0;
+      while (ts.next()) {
+         if (ts.getInt("id") % 7 != 0 || !ts.getString("name").equals("rec" + ts.getInt("id")))
+            System.out.println("wrong record " + ts.getInt("id"));
+         count++;
+      }
+      ts.close();
+      tx.commit();
+      System.out.println("T has " + count + " records, expected " + ((NUM_RECORDS + 6) / 7));
+
+      // a transaction that has locked the table cannot vacuum it
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      ts.insert();
+      ts.setInt("id", NUM_RECORDS);
+      ts.setString("name", "rec" + NUM_RECORDS);
+      ts.close();
+      try {
+         new TableVacuum("T", layout).run(tx);
+         System.out.println("vacuum after an insert did not fail");
+      }
+      catch (RuntimeException e) {
+         System.out.println("vacuum after an insert: " + e.getMessage());
+      }
+      tx.rollback();
+   }
+}
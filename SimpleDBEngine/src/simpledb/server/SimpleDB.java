@@ -3,6 +3,7 @@ package simpledb.server;
 import java.io.File;
 
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferWarmer;
 import simpledb.file.FileMgr;
 import simpledb.index.planner.IndexUpdatePlanner;
 import simpledb.log.LogMgr;
@@ -12,6 +13,9 @@ import simpledb.plan.Planner;
 import simpledb.plan.QueryPlanner;
 import simpledb.plan.UpdatePlanner;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.recovery.Checkpointer;
+import simpledb.tx.recovery.RecoveryMgr;
 
 /**
  * The class that configures the system.
@@ -22,12 +26,20 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   public static String WARM_FILE = "simpledb.warm";
+   public static boolean BUFFER_WARMUP = false;
+   public static long WARMUP_INTERVAL = 60000; // 1 minute
+   public static int LOCK_ESCALATION_THRESHOLD = 1000; // record locks per file
+   public static long CHECKPOINT_INTERVAL = 30000; // 30 seconds; 0 disables
+   public static int RECOVERY_THREADS = 4;
 
    private  FileMgr     fm;
    private  BufferMgr   bm;
    private  LogMgr      lm;
    private  MetadataMgr mdm;
    private  Planner planner;
+   private  BufferWarmer warmer;
+   private  Checkpointer checkpointer;
 
    /**
     * A constructor useful for debugging.
@@ -40,6 +52,10 @@ public class SimpleDB {
       fm = new FileMgr(dbDirectory, blocksize);
       lm = new LogMgr(fm, LOG_FILE);
       bm = new BufferMgr(fm, lm, buffsize); 
+      warmer = new BufferWarmer(dbDirectory, WARM_FILE, fm, bm, buffsize);
+      checkpointer = new Checkpointer(lm, bm);
+      ConcurrencyMgr.setEscalationThreshold(LOCK_ESCALATION_THRESHOLD);
+      RecoveryMgr.setRecoveryThreads(RECOVERY_THREADS);
    }
    
    /**
@@ -55,6 +71,7 @@ public class SimpleDB {
          System.out.println("creating new database");
       else {
          System.out.println("recovering existing database");
+         MetadataMgr.checkFormat(tx);
          tx.recover();
       }
       mdm = new MetadataMgr(isnew, tx);
@@ -64,6 +81,12 @@ public class SimpleDB {
       UpdatePlanner up = new IndexUpdatePlanner(mdm);
       planner = new Planner(qp, up);
       tx.commit();
+      if (BUFFER_WARMUP) {
+         warmer.startLoader();
+         warmer.startRecorder(WARMUP_INTERVAL);
+      }
+      if (CHECKPOINT_INTERVAL > 0)
+         checkpointer.start(CHECKPOINT_INTERVAL);
    }
    
    /**
@@ -74,6 +97,15 @@ public class SimpleDB {
       return new Transaction(fm, lm, bm);
    }
    
+   /**
+    * Create a read-only transaction, which reads from a snapshot
+    * of the committed database without obtaining locks,
+    * and writes nothing to the log.
+    */
+   public Transaction newReadOnlyTx() {
+      return new Transaction(fm, lm, bm, true);
+   }
+   
    public MetadataMgr mdMgr() {
       return mdm;
    }
@@ -92,4 +124,10 @@ public class SimpleDB {
    public BufferMgr bufferMgr() {
       return bm;
    }   
+   public BufferWarmer bufferWarmer() {
+      return warmer;
+   }   
+   public Checkpointer checkpointer() {
+      return checkpointer;
+   }   
  }
@@ -0,0 +1,55 @@
+package simpledb.tx;
+
+import simpledb.buffer.BufferGrant;
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+
+/**
+ * Two transactions each reserve buffers for an operator, and
+ * together they ask for more than the pool can grant. The first
+ * is granted at once; it charges only some of its pins to its
+ * grant. The second must wait for its grant until the first
+ * releases its own, rather than share the buffers with it.
+ */
+public class BufferGrantTest {
+   private static final int GRANT = 10;
+   private static volatile long grantedAt = 0;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("buffergranttest", 400, 20);
+      Transaction tx = db.newTx();
+      for (int i=0; i<GRANT; i++)
+         tx.append("testfile");
+      tx.commit();
+
+      Transaction txA = db.newTx();
+      BufferGrant grantA = txA.reserveBuffers(GRANT, GRANT);
+      txA.pin(new BlockId("testfile", 0));   // an ordinary pin, as by an input scan
+      BufferGrant prev = txA.chargeTo(grantA);
+      for (int i=1; i<4; i++)
+         txA.pin(new BlockId("testfile", i));
+      txA.chargeTo(prev);
+      System.out.println("A was granted " + grantA.size() + " buffers and uses "
+                         + grantA.inUse() + " of them, expected 3");
+
+      Thread b = new Thread(() -> {
+         Transaction txB = db.newTx();
+         BufferGrant grantB = txB.reserveBuffers(GRANT, GRANT);
+         grantedAt = System.currentTimeMillis();
+         System.out.println("B was granted " + grantB.size() + " buffers");
+         txB.commit();
+      });
+      b.start();
+      Thread.sleep(500);
+      if (grantedAt != 0)
+         System.out.println("B was granted its buffers while A held its grant");
+      else
+         System.out.println("B waits while A holds its grant");
+      long releasedAt = System.currentTimeMillis();
+      txA.releaseBuffers(grantA);
+      b.join();
+      System.out.println("B was granted its buffers " + (grantedAt >= releasedAt ? "after" : "before")
+                         + " A released its grant");
+      txA.commit();
+   }
+}
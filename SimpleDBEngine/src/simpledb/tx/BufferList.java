@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import simpledb.buffer.Buffer;
+import simpledb.buffer.BufferGrant;
 import simpledb.buffer.BufferMgr;
 import simpledb.file.BlockId;
 
@@ -16,6 +17,8 @@ import simpledb.file.BlockId;
 class BufferList {
    private Map<BlockId,Buffer> buffers = new HashMap<>();
    private List<BlockId> pins = new ArrayList<>();
+   private List<BufferGrant> grants = new ArrayList<>();
+   private BufferGrant current = null; // the grant that pins are charged to
    private BufferMgr bm;
   
    public BufferList(BufferMgr bm) {
@@ -38,7 +41,7 @@ class BufferList {
     * @param blk a reference to the disk block
     */
    void pin(BlockId blk) {
-      Buffer buff = bm.pin(blk);
+      Buffer buff = bm.pin(blk, current);
       buffers.put(blk, buff);
       pins.add(blk);
    }
@@ -65,5 +68,59 @@ class BufferList {
       }
       buffers.clear();
       pins.clear();
+      releaseGrants();
    }
+   
+   /**
+    * Reserve buffers from the buffer manager.
+    * Only pins made while the grant is charged
+    * use the reserved buffers.
+    * @see #chargeTo(BufferGrant)
+    * The transaction keeps its own pins while it waits for
+    * the grant, so it never waits for more buffers than
+    * the pool has besides those.
+    * @param min the smallest acceptable number of buffers
+    * @param max the desired number of buffers
+    * @return the grant
+    */
+   BufferGrant reserve(int min, int max) {
+      min = Math.max(1, Math.min(min, bm.size() - buffers.size()));
+      BufferGrant grant = bm.reserve(min, max);
+      grants.add(grant);
+      return grant;
+   }
+   
+   /**
+    * Return the specified grant to the buffer manager.
+    * @param grant the grant to be released
+    */
+   void release(BufferGrant grant) {
+      grants.remove(grant);
+      if (current == grant)
+         current = null;
+      bm.release(grant);
+   }
+
+   /**
+    * Charge the subsequent pins to the specified grant,
+    * which may be null for ordinary pins.
+    * @param grant the grant to charge
+    * @return the grant that was charged before
+    */
+   BufferGrant chargeTo(BufferGrant grant) {
+      BufferGrant previous = current;
+      current = grant;
+      return previous;
+   }
+   
+   /**
+    * Release any grants still held by this transaction.
+    */
+   void releaseGrants() {
+      for (BufferGrant grant : grants)
+         bm.release(grant);
+      grants.clear();
+      current = null;
+   }
+
 }
\ No newline at end of file
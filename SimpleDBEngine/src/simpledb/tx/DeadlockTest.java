@@ -0,0 +1,62 @@
+package simpledb.tx;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+import simpledb.tx.concurrency.LockAbortException;
+
+public class DeadlockTest {
+   private static FileMgr fm;
+   private static LogMgr lm;
+   private static BufferMgr bm;
+
+   public static void main(String[] args) {
+      //initialize the database system
+      SimpleDB db = new SimpleDB("deadlocktest", 400, 8);
+      fm = db.fileMgr();
+      lm = db.logMgr();
+      bm = db.bufferMgr();
+      // A is older than B, so B is chosen as the victim
+      Transaction txA = new Transaction(fm, lm, bm);
+      Transaction txB = new Transaction(fm, lm, bm);
+      new Thread(new Worker("A", txA, 1, 2)).start();
+      new Thread(new Worker("B", txB, 2, 1)).start();
+   }
+
+   static class Worker implements Runnable {
+      private String name;
+      private Transaction tx;
+      private BlockId first, second;
+
+      Worker(String name, Transaction tx, int first, int second) {
+         this.name = name;
+         this.tx = tx;
+         this.first = new BlockId("testfile", first);
+         this.second = new BlockId("testfile", second);
+      }
+
+      public void run() {
+         long start = System.currentTimeMillis();
+         try {
+            tx.pin(first);
+            tx.pin(second);
+            System.out.println("Tx " + name + ": request xlock " + first.number());
+            tx.setInt(first, 0, 0, false);
+            System.out.println("Tx " + name + ": receive xlock " + first.number());
+            Thread.sleep(500);
+            System.out.println("Tx " + name + ": request xlock " + second.number());
+            tx.setInt(second, 0, 0, false);
+            System.out.println("Tx " + name + ": receive xlock " + second.number());
+            tx.commit();
+            System.out.println("Tx " + name + ": commit");
+         }
+         catch(LockAbortException e) {
+            long elapsed = System.currentTimeMillis() - start;
+            System.out.println("Tx " + name + ": chosen as deadlock victim after " + elapsed + " ms");
+            tx.rollback();
+         }
+         catch(InterruptedException e) {};
+      }
+   }
+}
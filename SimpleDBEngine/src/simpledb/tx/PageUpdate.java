@@ -0,0 +1,45 @@
+package simpledb.tx;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.mvcc.VersionStore;
+
+/**
+ * A physiological update: an operation on a single page that
+ * is logged as one log record, which names the operation
+ * rather than listing the bytes it changes.
+ * Each log record class of this kind creates the updates
+ * that it describes, and {@link Transaction#update} performs them,
+ * without knowing how the page is laid out.
+ */
+public interface PageUpdate {
+   /**
+    * Write the log record that describes the update,
+    * which must be able to redo and to undo it.
+    * The page has not yet been changed.
+    * @param lm the log manager
+    * @param txnum the id of the updating transaction
+    * @param blk a reference to the disk block
+    * @param p the contents of the block
+    * @return the LSN of the log record
+    */
+   int log(LogMgr lm, int txnum, BlockId blk, Page p);
+
+   /**
+    * Save the values that the update is about to overwrite,
+    * so that the snapshots of other transactions can still read them.
+    * An update that is not undone for snapshots saves nothing.
+    * @param versions the version store
+    * @param txnum the id of the updating transaction
+    * @param blk a reference to the disk block
+    * @param p the contents of the block
+    */
+   default void save(VersionStore versions, int txnum, BlockId blk, Page p) {}
+
+   /**
+    * Apply the update to the page.
+    * @param p the contents of the block
+    */
+   void apply(Page p);
+}
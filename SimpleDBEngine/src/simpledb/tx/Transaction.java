@@ -1,12 +1,25 @@
 package simpledb.tx;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 import simpledb.buffer.Buffer;
+import simpledb.buffer.BufferGrant;
 import simpledb.buffer.BufferMgr;
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
 import simpledb.file.Page;
+import simpledb.file.SlotArray;
 import simpledb.log.LogMgr;
 import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.mvcc.Snapshot;
+import simpledb.tx.mvcc.VersionStore;
+import simpledb.tx.recovery.FormatRecord;
 import simpledb.tx.recovery.RecoveryMgr;
 
 /**
@@ -17,13 +30,21 @@ import simpledb.tx.recovery.RecoveryMgr;
  */
 public class Transaction {
    private static int nextTxNum = 0;
-   private static final int END_OF_FILE = -1;
+   private static VersionStore versions = new VersionStore();
    private RecoveryMgr    recoveryMgr;
    private ConcurrencyMgr concurMgr;
    private BufferMgr bm;
    private FileMgr fm;
+   private LogMgr lm;
    private int txnum;
    private BufferList mybuffers;
+   private boolean readOnly;
+   private boolean readCommitted = false;
+   private Snapshot snapshot = null;
+   private Map<BlockId,Page> snapshotPages = new HashMap<>();
+   private Set<String> loadingFiles = new HashSet<>();
+   private Set<BlockId> loadedBlocks = new HashSet<>();
+   private Set<String> droppedFiles = new HashSet<>();
    
    /**
     * Create a new transaction and its associated 
@@ -38,12 +59,77 @@ public class Transaction {
     * is called first.
     */
    public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm) {
+      this(fm, lm, bm, false);
+   }
+   
+   /**
+    * Create a new transaction, which is read-only if the flag is set.
+    * A read-only transaction sees the database as of the moment
+    * it started, reconstructed from the values saved by
+    * concurrent writers. It obtains no locks, so it never waits
+    * for writers, and writers never wait for it.
+    * It has no recovery manager: it writes no log records,
+    * and its commit does not flush anything.
+    * It may create and modify temporary tables, but any attempt
+    * to modify another table throws a {@link ReadOnlyException}.
+    * @param readOnly true for a read-only transaction
+    */
+   public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm, boolean readOnly) {
       this.fm = fm;
+      this.lm = lm;
       this.bm = bm;
+      this.readOnly = readOnly;
       txnum       = nextTxNumber();
-      recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
-      concurMgr   = new ConcurrencyMgr();
       mybuffers = new BufferList(bm);
+      if (readOnly)
+         snapshot = versions.beginSnapshot();
+      else {
+         recoveryMgr = new RecoveryMgr(this, txnum, fm, lm, bm);
+         concurMgr   = new ConcurrencyMgr(txnum);
+      }
+   }
+   
+   /**
+    * Create a new updating transaction on the same database.
+    * The new transaction is independent of this one:
+    * it has its own locks, and commits or rolls back on its own.
+    * @return the new transaction
+    */
+   public Transaction newTransaction() {
+      return new Transaction(fm, lm, bm);
+   }
+   
+   /**
+    * Return true if this is a read-only transaction.
+    * @return true if the transaction is read-only
+    */
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+   
+   /**
+    * Set the isolation level of the transaction.
+    * By default a transaction is serializable: it holds its
+    * locks until it completes. At read committed isolation,
+    * the SLock on a table record is released as soon as the
+    * scan reading it moves on, so the transaction sees only
+    * committed values but a record it reads again may have changed.
+    * XLocks, and the block locks of indexes and the catalog,
+    * are still held until the transaction completes, but the
+    * read locks are not escalated to a lock on their file.
+    * @param readCommitted true for read committed isolation
+    */
+   public void setReadCommitted(boolean readCommitted) {
+      this.readCommitted = readCommitted;
+      concurMgr.setReadCommitted(readCommitted);
+   }
+   
+   /**
+    * Return true if the transaction runs at read committed isolation.
+    * @return true if the transaction is read committed
+    */
+   public boolean isReadCommitted() {
+      return readCommitted;
    }
    
    /**
@@ -51,12 +137,27 @@ public class Transaction {
     * Flush all modified buffers (and their log records),
     * write and flush a commit record to the log,
     * release all locks, and unpin any pinned buffers.
+    * A read-only transaction has nothing to flush or log,
+    * and just releases its snapshot and unpins its buffers.
+    * The files that the transaction dropped are deleted
+    * once the commit record is on disk.
     */
    public void commit() {
-      recoveryMgr.commit();
+      if (!readOnly) {
+         if (!loadedBlocks.isEmpty())
+            bm.flushAll(txnum);   // their contents were not logged
+         recoveryMgr.commit();
+         versions.commit(txnum);
+         if (!droppedFiles.isEmpty()) {
+            // the files are still locked, but no longer pinned
+            mybuffers.unpinAll();
+            for (String filename : droppedFiles)
+               if (truncate(filename, 0) == 0)
+                  fm.delete(filename);
+         }
+      }
       System.out.println("transaction " + txnum + " committed");
-      concurMgr.release();
-      mybuffers.unpinAll();
+      endTx();
    }
    
    /**
@@ -67,10 +168,16 @@ public class Transaction {
     * release all locks, and unpin any pinned buffers.
     */
    public void rollback() {
-      recoveryMgr.rollback();
+      if (!readOnly) {
+         // the loaded blocks are emptied by logged formatting
+         loadingFiles.clear();
+         loadedBlocks.clear();
+         droppedFiles.clear();
+         recoveryMgr.rollback();
+         versions.rollback(txnum);
+      }
       System.out.println("transaction " + txnum + " rolled back");
-      concurMgr.release();
-      mybuffers.unpinAll();
+      endTx();
    }
    
    /**
@@ -103,6 +210,8 @@ public class Transaction {
     */
    public void unpin(BlockId blk) {
       mybuffers.unpin(blk);
+      if (mybuffers.getBuffer(blk) == null)
+         snapshotPages.remove(blk);
    }
    
    /**
@@ -115,9 +224,9 @@ public class Transaction {
     * @return the integer stored at that offset
     */
    public int getInt(BlockId blk, int offset) {
-      concurMgr.sLock(blk);
-      Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getInt(offset);
+      if (!readOnly)
+         concurMgr.sLock(blk);
+      return readInt(blk, offset);
    }
    
    /**
@@ -130,9 +239,9 @@ public class Transaction {
     * @return the string stored at that offset
     */
    public String getString(BlockId blk, int offset) {
-      concurMgr.sLock(blk);
-      Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getString(offset);
+      if (!readOnly)
+         concurMgr.sLock(blk);
+      return readString(blk, offset);
    }
    
    /**
@@ -149,14 +258,10 @@ public class Transaction {
     * @param val the value to be stored
     */
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
-      concurMgr.xLock(blk);
-      Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setInt(buff, offset, val);
-      Page p = buff.contents();
-      p.setInt(offset, val);
-      buff.setModified(txnum, lsn);
+      checkWritable(blk);
+      if (!readOnly)
+         concurMgr.xLock(blk);
+      writeInt(blk, offset, val, okToLog);
    }
    
    /**
@@ -173,52 +278,768 @@ public class Transaction {
     * @param val the value to be stored
     */
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
-      concurMgr.xLock(blk);
+      checkWritable(blk);
+      if (!readOnly)
+         concurMgr.xLock(blk);
+      writeString(blk, offset, val, okToLog);
+   }
+   
+   /**
+    * Obtain an SLock on the record in the specified slot of the block.
+    * Record locks are held until the transaction completes,
+    * except at read committed isolation (see {@link #releaseRecord}).
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void sLockRecord(BlockId blk, int slot) {
+      if (!readOnly)
+         concurMgr.sLock(blk, slot);
+   }
+   
+   /**
+    * Indicate that the transaction has finished reading the record
+    * in the specified slot of the block. At read committed isolation
+    * its SLock on the record is released; otherwise nothing happens.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void releaseRecord(BlockId blk, int slot) {
+      if (readCommitted && !readOnly)
+         concurMgr.sUnlock(blk, slot);
+   }
+   
+   /**
+    * Obtain an SLock on the whole file, so that the transaction
+    * can read all of its blocks and records without
+    * obtaining a lock for each one.
+    * @param filename the name of the file
+    */
+   public void sLockFile(String filename) {
+      if (!readOnly)
+         concurMgr.sLockFile(filename);
+   }
+   
+   /**
+    * Release the transaction's SLock on the whole file before
+    * the transaction completes. This is safe only for a file
+    * whose contents, once committed, never change, so that
+    * reading it again could not give a different answer.
+    * @param filename the name of the file
+    */
+   public void sUnlockFile(String filename) {
+      if (!readOnly)
+         concurMgr.sUnlockFile(filename);
+   }
+   
+   /**
+    * Obtain an XLock on the whole file.
+    * @see #sLockFile(String)
+    * @param filename the name of the file
+    */
+   public void xLockFile(String filename) {
+      checkWritable(filename);
+      if (!readOnly)
+         concurMgr.xLockFile(filename);
+   }
+   
+   /**
+    * Obtain an XLock on the record in the specified slot of the block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void xLockRecord(BlockId blk, int slot) {
+      checkWritable(blk);
+      if (!readOnly)
+         concurMgr.xLock(blk, slot);
+   }
+   
+   /**
+    * Obtain an XLock on the record in the specified slot
+    * of the block, if that can be done without waiting.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the lock was obtained
+    */
+   public boolean tryXLockRecord(BlockId blk, int slot) {
+      checkWritable(blk);
+      return readOnly || concurMgr.tryXLock(blk, slot);
+   }
+   
+   /**
+    * Return true if another transaction holds an XLock
+    * on the record in the specified slot of the block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the record is being modified by another transaction
+    */
+   public boolean isRecordXLockedByOther(BlockId blk, int slot) {
+      if (readOnly)
+         return false;
+      return concurMgr.isXLockedByOther(blk, slot);
+   }
+   
+   /**
+    * Return true if another transaction holds any lock on the
+    * record in the specified slot of the block, and so may be using it.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the record is locked by another transaction
+    */
+   public boolean isRecordLockedByOther(BlockId blk, int slot) {
+      if (readOnly)
+         return false;
+      return concurMgr.isLockedByOther(blk, slot);
+   }
+   
+   /**
+    * Return true if the transaction may modify the record in
+    * the specified slot of the block without further locking.
+    * A read-only transaction modifies only its temporary
+    * tables, which no other transaction sees.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction holds an XLock on the record
+    */
+   public boolean hasRecordXLock(BlockId blk, int slot) {
+      return readOnly || concurMgr.hasXLock(blk, slot);
+   }
+   
+   /**
+    * Return true if the transaction holds a lock on the
+    * specified file, or on any of its blocks and records.
+    * @param filename the name of the file
+    * @return true if the transaction has locked part of the file
+    */
+   public boolean hasLocks(String filename) {
+      return !readOnly && concurMgr.hasLocks(filename);
+   }
+   
+   /**
+    * Return the slots of the specified block whose old values
+    * a snapshot may still read. Such a slot is not reused,
+    * and the region of its tuple does not shrink.
+    * @param blk a reference to the disk block
+    * @return the slots with saved values
+    */
+   public Set<Integer> savedSlots(BlockId blk) {
+      return versions.savedSlots(blk);
+   }
+   
+   /**
+    * Return true if another transaction may hold XLocks
+    * on records of the specified file. When it returns false,
+    * {@link #isRecordXLockedByOther} is false for every record of the file.
+    * @param filename the name of the file
+    * @return true if the file may be being modified by another transaction
+    */
+   public boolean isFileModifiedByOther(String filename) {
+      if (readOnly)
+         return false;
+      return concurMgr.isFileModifiedByOther(filename);
+   }
+   
+   /**
+    * Return the integer value stored at the specified offset
+    * of the specified block, without obtaining a lock.
+    * The page is protected by a shared latch for the
+    * duration of the read. The caller is responsible for
+    * holding an appropriate record or block lock.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @return the integer stored at that offset
+    */
+   public int readInt(BlockId blk, int offset) {
+      if (readsSnapshot(blk))
+         return snapshotPage(blk).getInt(offset);
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchShared();
+      try {
+         return buff.contents().getInt(offset);
+      }
+      finally {
+         buff.unlatchShared();
+      }
+   }
+   
+   /**
+    * Return the string value stored at the specified offset
+    * of the specified block, without obtaining a lock.
+    * @see #readInt(BlockId, int)
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @return the string stored at that offset
+    */
+   public String readString(BlockId blk, int offset) {
+      if (readsSnapshot(blk))
+         return snapshotPage(blk).getString(offset);
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchShared();
+      try {
+         return buff.contents().getString(offset);
+      }
+      finally {
+         buff.unlatchShared();
+      }
+   }
+   
+   /**
+    * Return the bytes stored at the specified offset
+    * of the specified block, without obtaining a lock.
+    * @see #readInt(BlockId, int)
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @param length the number of bytes
+    * @return the bytes stored at that offset
+    */
+   public byte[] readBytes(BlockId blk, int offset, int length) {
+      if (readsSnapshot(blk))
+         return snapshotPage(blk).readBytes(offset, length);
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchShared();
+      try {
+         return buff.contents().readBytes(offset, length);
+      }
+      finally {
+         buff.unlatchShared();
+      }
+   }
+   
+   /**
+    * Store an integer at the specified offset of the specified
+    * block, without obtaining a lock.
+    * The page is protected by an exclusive latch while the
+    * update is logged and applied. The caller is responsible
+    * for holding an appropriate record or block XLock.
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val the value to be stored
+    */
+   public void writeInt(BlockId blk, int offset, int val, boolean okToLog) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchExclusive();
+      try {
+         int lsn = -1;
+         Page p = buff.contents();
+         if (logsUpdates(blk, okToLog)) {
+            versions.saveInt(blk, offset, p.getInt(offset), txnum);
+            lsn = recoveryMgr.setInt(buff, offset, val);
+         }
+         p.setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+   }
+   
+   /**
+    * Store a string at the specified offset of the specified
+    * block, without obtaining a lock.
+    * @see #writeInt(BlockId, int, int, boolean)
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val the value to be stored
+    */
+   public void writeString(BlockId blk, int offset, String val, boolean okToLog) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchExclusive();
+      try {
+         int lsn = -1;
+         Page p = buff.contents();
+         if (logsUpdates(blk, okToLog)) {
+            versions.saveString(blk, offset, p.getString(offset), txnum);
+            lsn = recoveryMgr.setString(buff, offset, val);
+         }
+         p.setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+   }
+
+   /**
+    * Insert slots into the slot array of the specified block,
+    * after obtaining an XLock on the block.
+    * The insertion is logged as a single operation,
+    * rather than as an update of each shifted value.
+    * @param blk a reference to the disk block
+    * @param sa the slot array of the block
+    * @param slot the position of the first inserted slot
+    * @param slots the contents of the inserted slots
+    */
+   public void insertSlots(BlockId blk, SlotArray sa, int slot, byte[] slots) {
+      checkWritable(blk);
+      if (!readOnly)
+         concurMgr.xLock(blk);
+      writeInsertSlots(blk, sa, slot, slots, true);
+   }
+
+   /**
+    * Delete slots from the slot array of the specified block,
+    * after obtaining an XLock on the block.
+    * @see #insertSlots(BlockId, SlotArray, int, byte[])
+    * @param blk a reference to the disk block
+    * @param sa the slot array of the block
+    * @param slot the position of the first deleted slot
+    * @param count the number of slots to delete
+    * @return the contents of the deleted slots
+    */
+   public byte[] deleteSlots(BlockId blk, SlotArray sa, int slot, int count) {
+      checkWritable(blk);
+      if (!readOnly)
+         concurMgr.xLock(blk);
+      return writeDeleteSlots(blk, sa, slot, count, true);
+   }
+
+   /**
+    * Insert slots into the slot array of the specified block,
+    * without obtaining a lock.
+    * If the slots do not fit in one log record, the insertion
+    * is performed as several consecutive operations.
+    * @see #writeInt(BlockId, int, int, boolean)
+    * @param blk a reference to the disk block
+    * @param sa the slot array of the block
+    * @param slot the position of the first inserted slot
+    * @param slots the contents of the inserted slots
+    */
+   public void writeInsertSlots(BlockId blk, SlotArray sa, int slot, byte[] slots, boolean okToLog) {
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setString(buff, offset, val);
-      Page p = buff.contents();
-      p.setString(offset, val);
-      buff.setModified(txnum, lsn);
+      int slotsize = sa.slotSize();
+      int total = slots.length / slotsize;
+      int max = logsUpdates(blk, okToLog) ? recoveryMgr.maxSlotsPerRecord(blk, slotsize) : total;
+      buff.latchExclusive();
+      try {
+         Page p = buff.contents();
+         for (int done=0; done<total; done+=max) {
+            int pos = slot + done;
+            int k = Math.min(max, total - done);
+            byte[] part = Arrays.copyOfRange(slots, done*slotsize, (done+k)*slotsize);
+            int lsn = -1;
+            if (logsUpdates(blk, okToLog)) {
+               int n = sa.numSlots(p);
+               versions.saveBytes(blk, sa.slotPos(pos), p.readBytes(sa.slotPos(pos), (n+k-pos)*slotsize), txnum);
+               versions.saveInt(blk, sa.countPos(), n, txnum);
+               lsn = recoveryMgr.insertSlots(buff, sa, pos, part);
+            }
+            sa.insert(p, pos, part);
+            buff.setModified(txnum, lsn);
+         }
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+   }
+
+   /**
+    * Delete slots from the slot array of the specified block,
+    * without obtaining a lock.
+    * @see #writeInsertSlots(BlockId, SlotArray, int, byte[], boolean)
+    * @param blk a reference to the disk block
+    * @param sa the slot array of the block
+    * @param slot the position of the first deleted slot
+    * @param count the number of slots to delete
+    * @return the contents of the deleted slots
+    */
+   public byte[] writeDeleteSlots(BlockId blk, SlotArray sa, int slot, int count, boolean okToLog) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      int slotsize = sa.slotSize();
+      int max = logsUpdates(blk, okToLog) ? recoveryMgr.maxSlotsPerRecord(blk, slotsize) : count;
+      byte[] result = new byte[count * slotsize];
+      buff.latchExclusive();
+      try {
+         Page p = buff.contents();
+         for (int done=0; done<count; done+=max) {
+            int k = Math.min(max, count - done);
+            int lsn = -1;
+            if (logsUpdates(blk, okToLog)) {
+               int n = sa.numSlots(p);
+               versions.saveBytes(blk, sa.slotPos(slot), p.readBytes(sa.slotPos(slot), (n-slot)*slotsize), txnum);
+               versions.saveInt(blk, sa.countPos(), n, txnum);
+               lsn = recoveryMgr.deleteSlots(buff, sa, slot, k);
+            }
+            byte[] part = sa.delete(p, slot, k);
+            System.arraycopy(part, 0, result, done*slotsize, part.length);
+            buff.setModified(txnum, lsn);
+         }
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+      return result;
+   }
+
+   /**
+    * Perform a physiological update of the specified block,
+    * without obtaining a lock. The update is logged as a
+    * single operation, and the values it overwrites are
+    * saved for snapshots, before it is applied to the page.
+    * @see #writeInt(BlockId, int, int, boolean)
+    * @param blk a reference to the disk block
+    * @param u the update
+    */
+   public void update(BlockId blk, PageUpdate u, boolean okToLog) {
+      checkWritable(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchExclusive();
+      try {
+         int lsn = -1;
+         Page p = buff.contents();
+         if (logsUpdates(blk, okToLog)) {
+            u.save(versions, txnum, blk, p);
+            lsn = recoveryMgr.log(buff, u);
+         }
+         u.apply(p);
+         buff.setModified(txnum, lsn);
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+   }
+
+   /**
+    * Perform the action while holding the exclusive latch
+    * of the specified block, so that no other transaction
+    * reads or changes the page until the action is complete.
+    * The action is given the page to read, and changes it
+    * through {@link #update(BlockId, PageUpdate, boolean)},
+    * which can be called while the latch is held.
+    * @param blk a reference to the disk block
+    * @param action the action, which returns a result
+    * @return the result of the action
+    */
+   public <T> T latched(BlockId blk, Function<Page,T> action) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchExclusive();
+      try {
+         return action.apply(buff.contents());
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+   }
+
+   /**
+    * Format a newly appended block: clear the page,
+    * and store the specified integers at its start.
+    * The formatting is logged as a single operation.
+    * No lock is needed, because the block is
+    * not yet visible to other transactions.
+    * @param blk a reference to the disk block
+    * @param header the integers to store at the start of the page
+    */
+   public void formatPage(BlockId blk, int... header) {
+      checkWritable(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      buff.latchExclusive();
+      try {
+         Page p = buff.contents();
+         int lsn = -1;
+         boolean load = loadingFiles.contains(blk.fileName());
+         // the formatting is not undone, even for snapshots:
+         // other transactions may already be using the block
+         if (logsUpdates(blk, true))
+            lsn = load ? recoveryMgr.load(buff, blockSize(), header)
+                       : recoveryMgr.format(buff, blockSize(), header);
+         FormatRecord.format(p, blockSize(), header);
+         if (load && lsn >= 0) {
+            // but a loaded block is another transaction's only
+            // once the load commits, so snapshots see it empty
+            versions.saveBytes(blk, 0, p.readBytes(0, blockSize()), txnum);
+            loadedBlocks.add(blk);
+         }
+         buff.setModified(txnum, lsn);
+      }
+      finally {
+         buff.unlatchExclusive();
+      }
+   }
+
+   /**
+    * Start a bulk load into the specified file.
+    * The transaction obtains an XLock on the whole file, so that
+    * no other transaction sees the load until it commits.
+    * From now on, each block that the transaction formats in the
+    * file is a loaded block: the formatting is logged as a LOAD record,
+    * the updates to the block are not logged, and the commit
+    * writes the block to disk before it writes the commit record.
+    * A rollback, or recovery after a crash, formats the loaded
+    * blocks again, which leaves them empty.
+    * Blocks formatted before the load, and the updates to them,
+    * are logged as usual.
+    * @param filename the name of the file
+    */
+   public void beginLoad(String filename) {
+      xLockFile(filename);
+      if (!readOnly)
+         loadingFiles.add(filename);
    }
 
    /**
     * Return the number of blocks in the specified file.
-    * This method first obtains an SLock on the 
-    * "end of the file", before asking the file manager
-    * to return the file size.
+    * The file's extension latch is held while the file manager
+    * reports the size, so that a block that is still being
+    * formatted by {@link #append(String, Consumer)} is not seen.
+    * No lock is held on the end of the file, so the size may
+    * grow while the transaction runs.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
    public int size(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.sLock(dummyblk);
-      return fm.length(filename);
+      fm.latchExtension(filename);
+      try {
+         return fm.length(filename);
+      }
+      finally {
+         fm.unlatchExtension(filename);
+      }
+   }
+   
+   /**
+    * Remove the blocks at the end of the specified file,
+    * leaving it with the specified number of blocks.
+    * The caller must have made sure that the removed blocks
+    * are empty. The transaction obtains an XLock on the file,
+    * so no other transaction is using them.
+    * <p>
+    * Fewer blocks may be removed than requested.
+    * A block with saved values is kept, because a snapshot
+    * may still read an older version of it, and so is a block
+    * that is pinned; the blocks before them are kept too.
+    * <p>
+    * The truncation is logged, and the log is flushed, before
+    * the file is shortened, so that recovery does not redo the
+    * earlier updates of the removed blocks. It is not undone if
+    * the transaction rolls back: the blocks were empty anyway.
+    * @param filename the name of the file
+    * @param size the number of blocks to keep
+    * @return the number of blocks the file now has
+    */
+   public int truncate(String filename, int size) {
+      xLockFile(filename);
+      fm.latchExtension(filename);
+      try {
+         int oldsize = fm.length(filename);
+         for (int blknum = oldsize-1; blknum >= size; blknum--)
+            if (versions.hasVersions(new BlockId(filename, blknum))) {
+               size = blknum + 1;
+               break;
+            }
+         if (size >= oldsize)
+            return oldsize;
+         size = bm.discard(filename, size);
+         if (size >= oldsize)
+            return oldsize;
+         if (!readOnly)
+            recoveryMgr.truncate(filename, size);
+         fm.truncate(filename, size);
+         return size;
+      }
+      finally {
+         fm.unlatchExtension(filename);
+      }
+   }
+   
+   /**
+    * Delete the specified file when the transaction commits.
+    * The transaction obtains an XLock on the file, so no other
+    * transaction is using it by then. Nothing is deleted if the
+    * transaction rolls back.
+    * <p>
+    * The file is emptied by a truncation before it is deleted,
+    * so that recovery does not bring its blocks back. If a snapshot
+    * still needs some of the blocks, they are kept, and so is the file.
+    * @param filename the name of the file
+    */
+   public void dropFile(String filename) {
+      checkWritable(filename);
+      xLockFile(filename);
+      droppedFiles.add(filename);
    }
    
    /**
     * Append a new block to the end of the specified file
     * and returns a reference to it.
-    * This method first obtains an XLock on the
-    * "end of the file", before performing the append.
+    * The file's extension latch is held only for the duration
+    * of the append, so the new block is immediately visible
+    * to other transactions. The append is not undone if the
+    * transaction rolls back: the block remains in the file,
+    * as an empty page.
     * @param filename the name of the file
     * @return a reference to the newly-created disk block
     */
    public BlockId append(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.xLock(dummyblk);
-      return fm.append(filename);
+      return append(filename, blk -> {});
    }
    
+   /**
+    * Append a new block to the end of the specified file,
+    * call the formatter on it, and return a reference to it.
+    * The file's extension latch is held until the formatter
+    * returns, so other transactions do not see the block
+    * before it has been formatted.
+    * The formatter should write its values without logging them,
+    * and without obtaining locks.
+    * @param filename the name of the file
+    * @param formatter initializes the new block
+    * @return a reference to the newly-created disk block
+    */
+   public BlockId append(String filename, Consumer<BlockId> formatter) {
+      checkWritable(filename);
+      fm.latchExtension(filename);
+      try {
+         BlockId blk = fm.append(filename);
+         formatter.accept(blk);
+         return blk;
+      }
+      finally {
+         fm.unlatchExtension(filename);
+      }
+   }
+   
+   /**
+    * Append blocks to the specified file until it has at least
+    * the specified number of blocks, calling the formatter on
+    * each of them as {@link #append(String, Consumer)} does.
+    * The size is checked under the file's extension latch, so
+    * transactions that extend the file at the same time do not
+    * both append the same blocks.
+    * @param filename the name of the file
+    * @param size the number of blocks the file should have
+    * @param formatter initializes each new block
+    */
+   public void extend(String filename, int size, Consumer<BlockId> formatter) {
+      checkWritable(filename);
+      fm.latchExtension(filename);
+      try {
+         while (fm.length(filename) < size)
+            formatter.accept(fm.append(filename));
+      }
+      finally {
+         fm.unlatchExtension(filename);
+      }
+   }
+   
+   /**
+    * Return the number of bytes of a block that are available
+    * for data. The end of each block holds the page LSN,
+    * and is reserved for the recovery manager.
+    * @return the usable size of a block
+    */
    public int blockSize() {
-      return fm.blockSize();
+      return fm.blockSize() - Buffer.LSN_SIZE;
    }
    
    public int availableBuffs() {
       return bm.available();
    }
    
+   /**
+    * Reserve buffers for an operator of this transaction.
+    * The pins that the operator charges to the grant use the
+    * reserved buffers, so the operator is guaranteed
+    * to be able to pin that many blocks; the transaction's
+    * other pins, such as those of the operator's inputs, do not.
+    * @see #chargeTo(BufferGrant)
+    * The grant is released when the operator calls
+    * {@link #releaseBuffers(BufferGrant)}, or at the latest
+    * when the transaction commits or rolls back.
+    * @param min the smallest number of buffers the operator can work with
+    * @param max the number of buffers the operator would like
+    * @return the grant
+    */
+   public BufferGrant reserveBuffers(int min, int max) {
+      return mybuffers.reserve(min, max);
+   }
+   
+   /**
+    * Charge the transaction's subsequent pins to the specified
+    * grant. An operator charges its grant around the code that
+    * pins its own blocks, and then restores the returned grant:
+    * <pre>
+    * BufferGrant prev = tx.chargeTo(grant);
+    * try { ... } finally { tx.chargeTo(prev); }
+    * </pre>
+    * A null grant makes the pins ordinary ones.
+    * @param grant a grant obtained by {@link #reserveBuffers(int, int)}, or null
+    * @return the grant that was charged before
+    */
+   public BufferGrant chargeTo(BufferGrant grant) {
+      return mybuffers.chargeTo(grant);
+   }
+   
+   /**
+    * Return a grant obtained by {@link #reserveBuffers(int, int)}.
+    * @param grant the grant to be released
+    */
+   public void releaseBuffers(BufferGrant grant) {
+      mybuffers.release(grant);
+   }
+   
+   /**
+    * Return the largest number of buffers that an operator
+    * could be granted. Unlike {@link #availableBuffs()}, this value
+    * does not depend on concurrent transactions, and so it
+    * is suitable for cost estimates.
+    * @return the maximum grant size
+    */
+   public int maxBufferGrant() {
+      return bm.maxGrant();
+   }
+   
+   private void endTx() {
+      if (snapshot != null) {
+         versions.endSnapshot(snapshot);
+         snapshot = null;
+         snapshotPages.clear();
+      }
+      loadingFiles.clear();
+      loadedBlocks.clear();
+      droppedFiles.clear();
+      if (concurMgr != null)
+         concurMgr.release();
+      mybuffers.unpinAll();
+   }
+   
+   /**
+    * A read-only transaction reads the tables of the database
+    * from its snapshot, and its own temporary tables directly.
+    */
+   private boolean readsSnapshot(BlockId blk) {
+      return readOnly && !isTemp(blk.fileName());
+   }
+   
+   /**
+    * A read-only transaction writes only to temporary tables,
+    * and never logs its updates. Nor are the updates
+    * to a block that is being loaded logged.
+    */
+   private boolean logsUpdates(BlockId blk, boolean okToLog) {
+      return okToLog && !readOnly && !loadedBlocks.contains(blk);
+   }
+   
+   private void checkWritable(BlockId blk) {
+      checkWritable(blk.fileName());
+   }
+   
+   private void checkWritable(String filename) {
+      if (readOnly && !isTemp(filename))
+         throw new ReadOnlyException();
+   }
+   
+   private static boolean isTemp(String filename) {
+      return filename.startsWith("temp");
+   }
+   
+   private Page snapshotPage(BlockId blk) {
+      Page p = snapshotPages.get(blk);
+      if (p == null) {
+         p = versions.read(mybuffers.getBuffer(blk), snapshot);
+         snapshotPages.put(blk, p);
+      }
+      return p;
+   }
+   
    private static synchronized int nextTxNumber() {
       nextTxNum++;
       return nextTxNum;
@@ -1,7 +1,9 @@
 package simpledb.tx.concurrency;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import simpledb.file.BlockId;
 
@@ -11,16 +13,63 @@ import simpledb.file.BlockId;
  * The concurrency manager keeps track of which locks the 
  * transaction currently has, and interacts with the
  * global lock table as needed. 
+ * Locks can be taken on whole blocks or on individual records.
+ * Record locks are used for reading and writing table records;
+ * block locks are used for index pages and the catalog.
+ * <p>
+ * Locking is hierarchical: before locking a block or record,
+ * the transaction obtains an IS or IX lock on its file.
+ * A transaction that holds an S or X lock on the whole file
+ * needs no further locks on its blocks and records.
+ * When a transaction accumulates more block and record locks
+ * in one file than the escalation threshold, they are replaced
+ * by a single S or X lock on the file. The read locks of a read
+ * committed transaction are not escalated, since a file SLock
+ * would be held until the transaction completes.
  * @author Edward Sciore
  */
 public class ConcurrencyMgr {
+   private static int escalationThreshold = 1000;
 
    /**
     * The global lock table. This variable is static because 
     * all transactions share the same table.
     */
    private static LockTable locktbl = new LockTable();
-   private Map<BlockId,String> locks  = new HashMap<BlockId,String>();
+   // thread-safe, because deadlock detection reads the locks of other transactions
+   private Map<Object,String> locks  = new ConcurrentHashMap<Object,String>();
+   // the number of block and record locks held in each file
+   private Map<String,Integer> fineLocks = new HashMap<>();
+   private int txnum;
+   private boolean readCommitted = false;
+
+   /**
+    * Set the number of block and record locks that a transaction
+    * may hold in one file before they are escalated to a file lock.
+    * @param threshold the escalation threshold
+    */
+   public static void setEscalationThreshold(int threshold) {
+      escalationThreshold = threshold;
+   }
+
+   /**
+    * Create the concurrency manager for the specified transaction.
+    * @param txnum the id of the transaction
+    */
+   public ConcurrencyMgr(int txnum) {
+      this.txnum = txnum;
+      locktbl.register(txnum, locks);
+   }
+
+   /**
+    * Indicate whether the transaction runs at read committed
+    * isolation, in which case its read locks are never
+    * escalated to an SLock on their file.
+    * @param readCommitted true for read committed isolation
+    */
+   public void setReadCommitted(boolean readCommitted) {
+      this.readCommitted = readCommitted;
+   }
 
    /**
     * Obtain an SLock on the block, if necessary.
@@ -29,10 +78,7 @@ public class ConcurrencyMgr {
     * @param blk a reference to the disk block
     */
    public void sLock(BlockId blk) {
-      if (locks.get(blk) == null) {
-         locktbl.sLock(blk);
-         locks.put(blk, "S");
-      }
+      lockShared(blk, blk.fileName());
    }
 
    /**
@@ -43,11 +89,192 @@ public class ConcurrencyMgr {
     * @param blk a reference to the disk block
     */
    public void xLock(BlockId blk) {
-      if (!hasXLock(blk)) {
-         sLock(blk);
-         locktbl.xLock(blk);
-         locks.put(blk, "X");
+      lockExclusive(blk, blk.fileName());
+   }
+
+   /**
+    * Obtain an SLock on the record in the specified slot
+    * of the block, if necessary.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void sLock(BlockId blk, int slot) {
+      lockShared(new RecordKey(blk, slot), blk.fileName());
+   }
+
+   /**
+    * Obtain an XLock on the record in the specified slot
+    * of the block, if necessary.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void xLock(BlockId blk, int slot) {
+      lockExclusive(new RecordKey(blk, slot), blk.fileName());
+   }
+
+   /**
+    * Release the SLock on the record in the specified slot
+    * of the block, if the transaction holds one.
+    * An XLock on the record is kept, as is the lock on its file.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void sUnlock(BlockId blk, int slot) {
+      RecordKey key = new RecordKey(blk, slot);
+      String locktype = locks.get(key);
+      if (locktype == null || !locktype.equals("S"))
+         return;
+      locktbl.unlock(key);
+      locks.remove(key);
+      fineLocks.computeIfPresent(blk.fileName(), (k, n) -> n > 1 ? n-1 : null);
+   }
+
+   /**
+    * Release the SLock on the specified file, if the
+    * transaction holds one. Any other lock on the file is kept.
+    * @param filename the name of the file
+    */
+   public void sUnlockFile(String filename) {
+      FileKey key = new FileKey(filename);
+      String locktype = locks.get(key);
+      if (locktype == null || !locktype.equals("S"))
+         return;
+      locktbl.unlockFile(key, "S");
+      locks.remove(key);
+   }
+
+   /**
+    * Obtain an SLock on the whole file, so that its blocks
+    * and records can be read without further locking.
+    * @param filename the name of the file
+    */
+   public void sLockFile(String filename) {
+      lockFile(filename, "S");
+   }
+
+   /**
+    * Obtain an XLock on the whole file, so that its blocks
+    * and records can be read and modified without further locking.
+    * @param filename the name of the file
+    */
+   public void xLockFile(String filename) {
+      lockFile(filename, "X");
+   }
+
+   /**
+    * Obtain an XLock on the record in the specified slot,
+    * but only if it can be granted without waiting.
+    * If the lock cannot be granted, the transaction is left
+    * holding no new locks on the record.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction now holds an XLock on the record
+    */
+   public boolean tryXLock(BlockId blk, int slot) {
+      String filename = blk.fileName();
+      RecordKey key = new RecordKey(blk, slot);
+      if (hasXLock(key) || covers(filename, "X"))
+         return true;
+      FileKey fkey = new FileKey(filename);
+      String held = locks.get(fkey);
+      String wanted = combine(held, "IX");
+      if (!wanted.equals(held)) {
+         registerIfReleased();
+         if (!locktbl.tryLockFile(fkey, held, wanted))
+            return false;
+         locks.put(fkey, wanted);
+         if (covers(filename, "X"))
+            return true;
       }
+      boolean hadSLock = locks.get(key) != null;
+      if (!hadSLock && !locktbl.trySLock(key))
+         return false;
+      if (locktbl.tryXLock(key)) {
+         locks.put(key, "X");
+         if (!hadSLock)
+            countFineLock(filename, false);  // escalating could wait
+         return true;
+      }
+      if (!hadSLock)
+         locktbl.unlock(key); // nothing was read under the new SLock
+      return false;
+   }
+
+   /**
+    * Return true if another transaction currently
+    * holds an XLock on the record in the specified slot,
+    * either directly or through an XLock on the whole file.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the record is exclusively locked by another transaction
+    */
+   public boolean isXLockedByOther(BlockId blk, int slot) {
+      String filename = blk.fileName();
+      RecordKey key = new RecordKey(blk, slot);
+      if (hasXLock(key) || covers(filename, "X"))
+         return false;
+      return locktbl.hasXlock(key) || locktbl.hasFileXlock(new FileKey(filename));
+   }
+
+   /**
+    * Return true if another transaction holds a lock on the
+    * record in the specified slot, either directly or through
+    * an SLock or XLock on the whole file.
+    * The lock table is only inspected, so the method never waits.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the record is locked by another transaction
+    */
+   public boolean isLockedByOther(BlockId blk, int slot) {
+      RecordKey key = new RecordKey(blk, slot);
+      if (locktbl.holders(key) > (locks.containsKey(key) ? 1 : 0))
+         return true;
+      FileKey fkey = new FileKey(blk.fileName());
+      String held = locks.get(fkey);
+      for (String mode : new String[] {"S", "X"})
+         if (locktbl.fileHolders(fkey, mode) > (mode.equals(held) ? 1 : 0))
+            return true;
+      return false;
+   }
+
+   /**
+    * Return true if another transaction holds an IX or X lock
+    * on the specified file, and so may hold an XLock on
+    * any of its blocks and records.
+    * The lock table is only inspected, so the method never waits.
+    * @param filename the name of the file
+    * @return true if the file may be being modified by another transaction
+    */
+   public boolean isFileModifiedByOther(String filename) {
+      FileKey fkey = new FileKey(filename);
+      String held = locks.get(fkey);
+      for (String mode : new String[] {"IX", "X"})
+         if (locktbl.fileHolders(fkey, mode) > (mode.equals(held) ? 1 : 0))
+            return true;
+      return false;
+   }
+
+   /**
+    * Return true if this transaction holds an XLock on the
+    * record in the specified slot, either directly
+    * or through an XLock on the whole file.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction may modify the record
+    */
+   public boolean hasXLock(BlockId blk, int slot) {
+      return hasXLock(new RecordKey(blk, slot)) || covers(blk.fileName(), "X");
+   }
+
+   /**
+    * Return true if this transaction holds a lock on the
+    * specified file, or on any of its blocks and records,
+    * since those are locked only under a lock on the file.
+    * @param filename the name of the file
+    * @return true if the transaction has locked part of the file
+    */
+   public boolean hasLocks(String filename) {
+      return locks.containsKey(new FileKey(filename));
    }
 
    /**
@@ -55,13 +282,130 @@ public class ConcurrencyMgr {
     * unlock each one.
     */
    public void release() {
-      for (BlockId blk : locks.keySet()) 
-         locktbl.unlock(blk);
+      for (Map.Entry<Object,String> e : locks.entrySet())
+         unlock(e.getKey(), e.getValue());
       locks.clear();
+      fineLocks.clear();
+      locktbl.unregister(txnum);
+   }
+
+   private void lockShared(Object item, String filename) {
+      if (locks.get(item) != null || covers(filename, "S"))
+         return;
+      lockFile(filename, "IS");
+      locktbl.sLock(item, txnum);
+      locks.put(item, "S");
+      countFineLock(filename, !readCommitted);
+   }
+
+   private void lockExclusive(Object item, String filename) {
+      if (hasXLock(item) || covers(filename, "X"))
+         return;
+      lockFile(filename, "IX");
+      if (covers(filename, "X"))
+         return;   // an SLock on the file was upgraded to an XLock
+      boolean isNew = locks.get(item) == null;
+      if (isNew) {
+         locktbl.sLock(item, txnum);
+         locks.put(item, "S");
+      }
+      locktbl.xLock(item, txnum);
+      locks.put(item, "X");
+      if (isNew)
+         countFineLock(filename, true);
+   }
+
+   /**
+    * Strengthen the transaction's lock on the file, if necessary,
+    * so that it is at least as strong as the specified mode.
+    */
+   private void lockFile(String filename, String mode) {
+      FileKey key = new FileKey(filename);
+      String held = locks.get(key);
+      String wanted = combine(held, mode);
+      if (wanted.equals(held))
+         return;
+      registerIfReleased();
+      locktbl.lockFile(key, txnum, held, wanted);
+      locks.put(key, wanted);
    }
 
-   private boolean hasXLock(BlockId blk) {
-      String locktype = locks.get(blk);
+   /**
+    * Return true if the transaction's lock on the file
+    * makes a block or record lock of the specified mode unnecessary.
+    */
+   private boolean covers(String filename, String mode) {
+      String held = locks.get(new FileKey(filename));
+      return held != null && (held.equals("X") || held.equals(mode));
+   }
+
+   /**
+    * Count a new block or record lock in the file, and escalate
+    * the transaction's locks on the file if there are too many.
+    */
+   private void countFineLock(String filename, boolean mayEscalate) {
+      int n = fineLocks.merge(filename, 1, Integer::sum);
+      if (mayEscalate && n > escalationThreshold)
+         escalate(filename);
+   }
+
+   /**
+    * Replace the transaction's block and record locks on the file
+    * by a single file lock: an SLock if the transaction has only read
+    * the file, and an XLock if it has also modified it.
+    */
+   private void escalate(String filename) {
+      boolean modified = locks.get(new FileKey(filename)).equals("IX");
+      lockFile(filename, modified ? "X" : "S");
+      Iterator<Map.Entry<Object,String>> iter = locks.entrySet().iterator();
+      while (iter.hasNext()) {
+         Map.Entry<Object,String> e = iter.next();
+         Object item = e.getKey();
+         if (!(item instanceof FileKey) && fileOf(item).equals(filename)) {
+            locktbl.unlock(item);
+            iter.remove();
+         }
+      }
+      fineLocks.remove(filename);
+   }
+
+   private void unlock(Object item, String mode) {
+      if (item instanceof FileKey)
+         locktbl.unlockFile((FileKey) item, mode);
+      else
+         locktbl.unlock(item);
+   }
+
+   private void registerIfReleased() {
+      if (locks.isEmpty())
+         locktbl.register(txnum, locks); // in case the transaction is used after release
+   }
+
+   private boolean hasXLock(Object item) {
+      String locktype = locks.get(item);
       return locktype != null && locktype.equals("X");
    }
+
+   private static String fileOf(Object item) {
+      if (item instanceof RecordKey)
+         return ((RecordKey) item).fileName();
+      return ((BlockId) item).fileName();
+   }
+
+   /**
+    * Return the weakest file lock mode that is at least as strong
+    * as both the held mode and the wanted one.
+    * There is no SIX mode, so S combined with IX is X.
+    */
+   private static String combine(String held, String wanted) {
+      if (held == null || held.equals(wanted))
+         return wanted;
+      if (held.equals("X") || wanted.equals("X"))
+         return "X";
+      if (held.equals("IS"))
+         return wanted;
+      if (wanted.equals("IS"))
+         return held;
+      return "X";   // S and IX
+   }
 }
@@ -0,0 +1,29 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The lock table key for a whole file (that is, a table
+ * or an index). File locks are the top level of the lock
+ * hierarchy: a transaction must hold an intention lock on
+ * a file before it locks any block or record of that file.
+ */
+class FileKey {
+   private String filename;
+
+   FileKey(String filename) {
+      this.filename = filename;
+   }
+
+   public boolean equals(Object obj) {
+      if (!(obj instanceof FileKey))
+         return false;
+      return filename.equals(((FileKey) obj).filename);
+   }
+
+   public int hashCode() {
+      return filename.hashCode();
+   }
+
+   public String toString() {
+      return "[file " + filename + "]";
+   }
+}
@@ -1,105 +1,536 @@
 package simpledb.tx.concurrency;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-
-import simpledb.file.BlockId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * The lock table, which provides methods to lock and unlock blocks.
- * If a transaction requests a lock that causes a conflict with an
- * existing lock, then that transaction is placed on a wait list.
- * There is only one wait list for all blocks.
- * When the last lock on a block is unlocked, then all transactions
- * are removed from the wait list and rescheduled.
- * If one of those transactions discovers that the lock it is waiting for
- * is still locked, it will place itself back on the wait list.
+ * The lock table, which provides methods to lock and unlock
+ * lockable items. An item is either a block ({@link simpledb.file.BlockId})
+ * or a single record ({@link RecordKey}).
+ * <p>
+ * Each locked item has its own lock state, whose value is
+ * the number of SLocks held on the item, or -1 for an XLock.
+ * The states live in a fixed number of concurrent hash maps
+ * (stripes), chosen by the item's hash code.
+ * An uncontended lock or unlock is a single compare-and-set
+ * on the item's state; no global monitor is involved.
+ * If a transaction requests a lock that conflicts with an
+ * existing lock, then it waits on the wait list of that item only,
+ * and is woken up when the item is unlocked.
+ * If the lock is still unavailable, it waits again.
+ * <p>
+ * Files are locked in one of four modes: IS and IX (the intention
+ * to SLock or XLock some of the file's blocks or records),
+ * S and X. File locks are taken once per transaction and file,
+ * so their states are kept simple: a count of the holders
+ * of each mode, protected by the state's mutex.
+ * <p>
+ * Waiting is done on a {@link Condition} of the state's
+ * {@link ReentrantLock}, not on an object monitor,
+ * so a waiting thread holds no monitor.
+ * <p>
+ * There is no limit on how long a transaction may wait.
+ * Instead, a transaction that is about to wait records itself in the
+ * {@link WaitForGraph}, which detects deadlocks and chooses a victim.
+ * Waiting transactions repeat the check periodically,
+ * in case the graph changed while they were waiting.
  * @author Edward Sciore
  */
 class LockTable {
-   private static final long MAX_TIME = 10000; // 10 seconds
-   
-   private Map<BlockId,Integer> locks = new HashMap<BlockId,Integer>();
-   
+   private static final long DETECT_INTERVAL = 1000; // 1 second
+   private static final int NUM_STRIPES = 16;  // must be a power of 2
+   private static final int DEAD = Integer.MIN_VALUE; // state has been removed from its stripe
+
+   private List<ConcurrentHashMap<Object,LockState>> stripes = new ArrayList<>(NUM_STRIPES);
+   private List<ConcurrentHashMap<FileKey,FileLockState>> fileStripes = new ArrayList<>(NUM_STRIPES);
+   private WaitForGraph graph = new WaitForGraph();
+
+   LockTable() {
+      for (int i=0; i<NUM_STRIPES; i++) {
+         stripes.add(new ConcurrentHashMap<>());
+         fileStripes.add(new ConcurrentHashMap<>());
+      }
+   }
+
    /**
-    * Grant an SLock on the specified block.
+    * Grant an SLock on the specified item.
     * If an XLock exists when the method is called,
-    * then the calling thread will be placed on a wait list
+    * then the calling thread will be placed on the item's wait list
     * until the lock is released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * If waiting would cause a deadlock and the calling transaction
+    * is the youngest one involved, then an exception is thrown.
+    * @param item a reference to the block or record
+    * @param txnum the id of the requesting transaction
+    */
+   public void sLock(Object item, int txnum) {
+      lock(item, txnum, true);
+   }
+
+   /**
+    * Grant an XLock on the specified item.
+    * The calling transaction is assumed to hold an SLock on the item.
+    * If another lock exists when the method is called,
+    * then the calling thread will be placed on the item's wait list
+    * until the locks are released.
+    * If waiting would cause a deadlock and the calling transaction
+    * is the youngest one involved, then an exception is thrown.
+    * @param item a reference to the block or record
+    * @param txnum the id of the requesting transaction
+    */
+   void xLock(Object item, int txnum) {
+      lock(item, txnum, false);
+   }
+
+   /**
+    * Change the caller's lock on the specified file
+    * from the held mode to the wanted mode.
+    * The wanted mode must be at least as strong as the held one.
+    * If the wanted mode conflicts with a lock of another transaction,
+    * then the calling thread waits, as for {@link #xLock(Object, int)}.
+    * @param key the file
+    * @param txnum the id of the requesting transaction
+    * @param held the mode the caller currently holds, or null
+    * @param wanted the mode the caller needs
     */
-   public synchronized void sLock(BlockId blk) {
+   void lockFile(FileKey key, int txnum, String held, String wanted) {
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasXlock(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasXlock(blk))
-            throw new LockAbortException();
-         int val = getLockVal(blk);  // will not be negative
-         locks.put(blk, val+1);
+         while (true) {
+            FileLockState state = fileStateOf(key);
+            int r = state.tryLock(held, wanted);
+            if (r == LockState.GRANTED)
+               return;
+            if (r == LockState.RETRY)
+               continue;
+            if (graph.isVictim(txnum))
+               throw new LockAbortException();
+            int victim = graph.startWaiting(txnum, key, wanted);
+            if (victim == txnum)
+               throw new LockAbortException();
+            if (victim >= 0)
+               wakeUp(graph.waitedItem(victim));
+            r = state.await(held, wanted, DETECT_INTERVAL);
+            if (r == LockState.GRANTED)
+               return;
+         }
       }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
+      finally {
+         graph.stopWaiting(txnum);
       }
    }
-   
+
    /**
-    * Grant an XLock on the specified block.
-    * If a lock of any type exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the locks are released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * Change the caller's lock on the specified file to the
+    * wanted mode, if that can be done without waiting.
+    * @param key the file
+    * @param held the mode the caller currently holds, or null
+    * @param wanted the mode the caller needs
+    * @return true if the lock was granted
     */
-   synchronized void xLock(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasOtherSLocks(blk))
-            throw new LockAbortException();
-         locks.put(blk, -1);
+   boolean tryLockFile(FileKey key, String held, String wanted) {
+      while (true) {
+         int r = fileStateOf(key).tryLock(held, wanted);
+         if (r != LockState.RETRY)
+            return r == LockState.GRANTED;
       }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
+   }
+
+   /**
+    * Release the caller's lock on the specified file.
+    * @param key the file
+    * @param held the mode of the lock
+    */
+   void unlockFile(FileKey key, String held) {
+      FileLockState state = fileStripe(key).get(key);
+      if (state != null)
+         state.unlock(key, held, this);
+   }
+
+   /**
+    * Return true if some transaction holds an XLock on the file.
+    * @param key the file
+    * @return true if the file is exclusively locked
+    */
+   boolean hasFileXlock(FileKey key) {
+      return fileHolders(key, "X") > 0;
+   }
+
+   /**
+    * Return the number of transactions holding
+    * a lock of the specified mode on the file.
+    * @param key the file
+    * @param mode the lock mode
+    * @return the number of holders of that mode
+    */
+   int fileHolders(FileKey key, String mode) {
+      FileLockState state = fileStripe(key).get(key);
+      return (state == null) ? 0 : state.count(mode);
+   }
+
+   /**
+    * Return true if a lock in the first mode and a lock in the
+    * second mode can be held on the same item by different transactions.
+    * @param m1 a lock mode: IS, IX, S or X
+    * @param m2 another lock mode
+    * @return true if the modes are compatible
+    */
+   static boolean compatible(String m1, String m2) {
+      if (m1.equals("X") || m2.equals("X"))
+         return false;
+      if (m1.equals("IS") || m2.equals("IS"))
+         return true;
+      return m1.equals(m2);   // IX with IX, or S with S
+   }
+
+   /**
+    * Make the specified transaction's locks visible to deadlock detection.
+    * @param txnum the id of the transaction
+    * @param locks the transaction's lock map, which must be thread-safe
+    */
+   void register(int txnum, Map<Object,String> locks) {
+      graph.register(txnum, locks);
+   }
+
+   /**
+    * Remove the specified transaction from deadlock detection.
+    * @param txnum the id of the transaction
+    */
+   void unregister(int txnum) {
+      graph.unregister(txnum);
+   }
+
+   /**
+    * Release a lock on the specified item.
+    * If this lock is the last lock on that item,
+    * then the transactions waiting for the item are notified.
+    * @param item a reference to the block or record
+    */
+   void unlock(Object item) {
+      LockState state = stripe(item).get(item);
+      if (state != null)
+         state.unlock(item, this);
+   }
+
+   /**
+    * Grant an SLock on the specified item if it can be
+    * granted immediately.
+    * @param item a reference to the block or record
+    * @return true if the lock was granted
+    */
+   boolean trySLock(Object item) {
+      while (true) {
+         int r = stateOf(item).trySLock();
+         if (r != LockState.RETRY)
+            return r == LockState.GRANTED;
       }
    }
-   
+
+   /**
+    * Upgrade the caller's SLock on the specified item to an XLock
+    * if that can be done immediately.
+    * @param item a reference to the block or record
+    * @return true if the lock was granted
+    */
+   boolean tryXLock(Object item) {
+      while (true) {
+         int r = stateOf(item).tryXLock();
+         if (r != LockState.RETRY)
+            return r == LockState.GRANTED;
+      }
+   }
+
+   /**
+    * Return true if some transaction holds an XLock on the item.
+    * @param item a reference to the block or record
+    * @return true if the item is exclusively locked
+    */
+   boolean hasXlock(Object item) {
+      LockState state = stripe(item).get(item);
+      return state != null && state.val.get() == -1;
+   }
+
    /**
-    * Release a lock on the specified block.
-    * If this lock is the last lock on that block,
-    * then the waiting transactions are notified.
-    * @param blk a reference to the disk block
+    * Return the number of transactions holding
+    * a lock on the item.
+    * @param item a reference to the block or record
+    * @return the number of SLock holders, or 1 if the item is XLocked
     */
-   synchronized void unlock(BlockId blk) {
-      int val = getLockVal(blk);
-      if (val > 1)
-         locks.put(blk, val-1);
-      else {
-         locks.remove(blk);
-         notifyAll();
+   int holders(Object item) {
+      LockState state = stripe(item).get(item);
+      if (state == null)
+         return 0;
+      int v = state.val.get();
+      return (v == -1) ? 1 : Math.max(v, 0);
+   }
+
+   private void lock(Object item, int txnum, boolean shared) {
+      try {
+         while (true) {
+            LockState state = stateOf(item);
+            int r = shared ? state.trySLock() : state.tryXLock();
+            if (r == LockState.GRANTED)
+               return;
+            if (r == LockState.RETRY)
+               continue;   // the state was removed concurrently; look it up again
+            if (graph.isVictim(txnum))
+               throw new LockAbortException();
+            int victim = graph.startWaiting(txnum, item, shared ? "S" : "X");
+            if (victim == txnum)
+               throw new LockAbortException();
+            if (victim >= 0)
+               wakeUp(graph.waitedItem(victim));
+            r = state.await(shared, DETECT_INTERVAL);
+            if (r == LockState.GRANTED)
+               return;
+         }
       }
+      finally {
+         graph.stopWaiting(txnum);
+      }
+   }
+
+   /**
+    * Wake up the transactions waiting for the specified item,
+    * so that a deadlock victim among them notices that it must abort.
+    */
+   private void wakeUp(Object item) {
+      if (item == null)
+         return;
+      Object state = (item instanceof FileKey) ? fileStripe((FileKey) item).get(item)
+                                               : stripe(item).get(item);
+      if (state != null)
+         ((WaitList) state).wakeAll();
+   }
+
+   private ConcurrentHashMap<Object,LockState> stripe(Object item) {
+      return stripes.get(stripeIndex(item));
+   }
+
+   private ConcurrentHashMap<FileKey,FileLockState> fileStripe(FileKey key) {
+      return fileStripes.get(stripeIndex(key));
    }
-   
-   private boolean hasXlock(BlockId blk) {
-      return getLockVal(blk) < 0;
+
+   private int stripeIndex(Object item) {
+      int h = item.hashCode();
+      h ^= (h >>> 16);
+      return h & (NUM_STRIPES-1);
+   }
+
+   private FileLockState fileStateOf(FileKey key) {
+      return fileStripe(key).computeIfAbsent(key, k -> new FileLockState());
    }
-   
-   private boolean hasOtherSLocks(BlockId blk) {
-      return getLockVal(blk) > 1;
+
+   private LockState stateOf(Object item) {
+      return stripe(item).computeIfAbsent(item, k -> new LockState());
    }
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+
+   /**
+    * Remove the item's state from its stripe once it is
+    * unlocked and nobody is waiting for it, so that the
+    * table does not grow with every item ever locked.
+    */
+   private void discard(Object item, LockState state) {
+      if (state.waiters == 0 && state.val.compareAndSet(0, DEAD))
+         stripe(item).remove(item, state);
    }
-   
-   private int getLockVal(BlockId blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+
+   /**
+    * The wait list of a lock state: a mutex and a condition
+    * that is signalled whenever the state is unlocked.
+    */
+   private static class WaitList {
+      ReentrantLock mutex = new ReentrantLock();
+      Condition unlocked = mutex.newCondition();
+
+      void wakeAll() {
+         mutex.lock();
+         try {
+            unlocked.signalAll();
+         }
+         finally {
+            mutex.unlock();
+         }
+      }
+   }
+
+   /**
+    * The lock state of a single item, together with
+    * the wait list of the transactions waiting for it.
+    */
+   private static class LockState extends WaitList {
+      static final int GRANTED = 0, CONFLICT = 1, RETRY = 2;
+
+      AtomicInteger val = new AtomicInteger(0);
+      volatile int waiters = 0;
+
+      int trySLock() {
+         while (true) {
+            int v = val.get();
+            if (v == DEAD)
+               return RETRY;
+            if (v < 0)
+               return CONFLICT;
+            if (val.compareAndSet(v, v+1))
+               return GRANTED;
+         }
+      }
+
+      int tryXLock() {
+         while (true) {
+            int v = val.get();
+            if (v == DEAD)
+               return RETRY;
+            if (v == -1 || v > 1)
+               return CONFLICT;
+            if (val.compareAndSet(v, -1))   // the caller holds the only SLock
+               return GRANTED;
+         }
+      }
+
+      /**
+       * Wait on this item until it is unlocked, or until the
+       * specified time has passed, and then try again to get the lock.
+       * @return GRANTED, CONFLICT, or RETRY if the state was discarded
+       */
+      int await(boolean shared, long maxtime) {
+         mutex.lock();
+         waiters++;
+         try {
+            int r = shared ? trySLock() : tryXLock();
+            if (r == CONFLICT) {
+               unlocked.await(maxtime, TimeUnit.MILLISECONDS);
+               r = shared ? trySLock() : tryXLock();
+            }
+            return r;
+         }
+         catch(InterruptedException e) {
+            throw new LockAbortException();
+         }
+         finally {
+            waiters--;
+            mutex.unlock();
+         }
+      }
+
+      void unlock(Object item, LockTable tbl) {
+         while (true) {
+            int v = val.get();
+            if (v == DEAD || v == 0)
+               return;
+            int newval = (v > 1) ? v-1 : 0;
+            if (val.compareAndSet(v, newval)) {
+               // an XLock may be grantable even if SLocks remain (an upgrade),
+               // so the waiters are woken on every unlock
+               if (waiters > 0)
+                  wakeAll();
+               else if (newval == 0)
+                  tbl.discard(item, this);
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * The lock state of a file: the number of transactions
+    * holding the file in each mode.
+    * A transaction holds at most one mode on a file; a stronger
+    * mode replaces a weaker one.
+    */
+   private static class FileLockState extends WaitList {
+      private static final String[] MODES = {"IS", "IX", "S", "X"};
+
+      int[] counts = new int[MODES.length];
+      int waiters = 0;
+      boolean dead = false;  // the state has been removed from its stripe
+
+      int tryLock(String held, String wanted) {
+         mutex.lock();
+         try {
+            if (dead)
+               return LockState.RETRY;
+            if (held != null)
+               counts[index(held)]--;   // the caller's own lock never conflicts
+            boolean ok = true;
+            for (int i=0; i<MODES.length; i++)
+               if (counts[i] > 0 && !compatible(MODES[i], wanted))
+                  ok = false;
+            if (ok)
+               counts[index(wanted)]++;
+            else if (held != null)
+               counts[index(held)]++;
+            return ok ? LockState.GRANTED : LockState.CONFLICT;
+         }
+         finally {
+            mutex.unlock();
+         }
+      }
+
+      int await(String held, String wanted, long maxtime) {
+         mutex.lock();
+         waiters++;
+         try {
+            int r = tryLock(held, wanted);
+            if (r == LockState.CONFLICT) {
+               unlocked.await(maxtime, TimeUnit.MILLISECONDS);
+               r = tryLock(held, wanted);
+            }
+            return r;
+         }
+         catch(InterruptedException e) {
+            throw new LockAbortException();
+         }
+         finally {
+            waiters--;
+            mutex.unlock();
+         }
+      }
+
+      int count(String mode) {
+         mutex.lock();
+         try {
+            return counts[index(mode)];
+         }
+         finally {
+            mutex.unlock();
+         }
+      }
+
+      void unlock(FileKey key, String held, LockTable tbl) {
+         mutex.lock();
+         try {
+            if (dead)
+               return;
+            counts[index(held)]--;
+            if (waiters > 0)
+               unlocked.signalAll();
+            else if (isFree()) {
+               dead = true;
+               tbl.fileStripe(key).remove(key, this);
+            }
+         }
+         finally {
+            mutex.unlock();
+         }
+      }
+
+      private boolean isFree() {
+         for (int n : counts)
+            if (n > 0)
+               return false;
+         return true;
+      }
+
+      private static int index(String mode) {
+         for (int i=0; i<MODES.length; i++)
+            if (MODES[i].equals(mode))
+               return i;
+         throw new IllegalArgumentException(mode);
+      }
    }
 }
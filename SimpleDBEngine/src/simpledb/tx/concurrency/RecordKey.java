@@ -0,0 +1,42 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * The lock table key for a single record.
+ * A record is identified by its block and its slot
+ * within that block, so that records of different
+ * files never share a key.
+ */
+class RecordKey {
+   private BlockId blk;
+   private int slot;
+
+   RecordKey(BlockId blk, int slot) {
+      this.blk = blk;
+      this.slot = slot;
+   }
+
+   /**
+    * Return the name of the file containing the record.
+    * @return the filename
+    */
+   String fileName() {
+      return blk.fileName();
+   }
+
+   public boolean equals(Object obj) {
+      if (!(obj instanceof RecordKey))
+         return false;
+      RecordKey k = (RecordKey) obj;
+      return slot == k.slot && blk.equals(k.blk);
+   }
+
+   public int hashCode() {
+      return 31 * blk.hashCode() + slot;
+   }
+
+   public String toString() {
+      return "[record " + blk + ", slot " + slot + "]";
+   }
+}
@@ -0,0 +1,136 @@
+package simpledb.tx.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The wait-for graph of the lock manager.
+ * The graph has an edge from transaction T1 to transaction T2
+ * if T1 is waiting for an item that T2 holds a lock on,
+ * in a mode that conflicts with the mode T1 wants.
+ * The edges are not stored explicitly: the graph knows which item
+ * each transaction waits for, and the locks held by each transaction,
+ * and derives the edges from them when it looks for a cycle.
+ * A cycle means deadlock; the youngest transaction
+ * in the cycle (the one with the highest id) is chosen as the victim.
+ */
+class WaitForGraph {
+   private Map<Integer,Map<Object,String>> held = new ConcurrentHashMap<>();
+   private Map<Integer,Object> waitsFor = new ConcurrentHashMap<>();
+   private Map<Integer,String> wantedModes = new ConcurrentHashMap<>();
+   private Set<Integer> victims = ConcurrentHashMap.newKeySet();
+
+   /**
+    * Make the locks of the specified transaction visible to the graph.
+    * @param txnum the id of the transaction
+    * @param locks the transaction's lock map, which must be thread-safe
+    */
+   void register(int txnum, Map<Object,String> locks) {
+      held.put(txnum, locks);
+   }
+
+   /**
+    * Remove the specified transaction from the graph.
+    * @param txnum the id of the transaction
+    */
+   void unregister(int txnum) {
+      held.remove(txnum);
+      waitsFor.remove(txnum);
+      wantedModes.remove(txnum);
+      victims.remove(txnum);
+   }
+
+   /**
+    * Record that the transaction is waiting for the specified item,
+    * and look for a cycle through it.
+    * If there is a cycle, its youngest transaction is marked as the victim.
+    * @param txnum the id of the waiting transaction
+    * @param item the file, block or record being waited for
+    * @param mode the lock mode the transaction wants
+    * @return the id of the victim, or -1 if there is no deadlock
+    */
+   synchronized int startWaiting(int txnum, Object item, String mode) {
+      wantedModes.put(txnum, mode);
+      waitsFor.put(txnum, item);
+      List<Integer> cycle = findCycle(txnum);
+      if (cycle == null)
+         return -1;
+      int victim = txnum;
+      for (int t : cycle)
+         victim = Math.max(victim, t);
+      if (victim != txnum)
+         victims.add(victim);
+      return victim;
+   }
+
+   /**
+    * Record that the transaction is no longer waiting.
+    * @param txnum the id of the transaction
+    */
+   void stopWaiting(int txnum) {
+      waitsFor.remove(txnum);
+      wantedModes.remove(txnum);
+      victims.remove(txnum);
+   }
+
+   /**
+    * Return true if the transaction has been chosen as
+    * a deadlock victim and should abort.
+    * @param txnum the id of the transaction
+    */
+   boolean isVictim(int txnum) {
+      return victims.contains(txnum);
+   }
+
+   /**
+    * Return the item that the transaction is waiting for, if any.
+    * @param txnum the id of the transaction
+    */
+   Object waitedItem(int txnum) {
+      return waitsFor.get(txnum);
+   }
+
+   /**
+    * Depth-first search for a path of wait-for edges
+    * leading from the start transaction back to itself.
+    * @return the transactions on the cycle, or null
+    */
+   private List<Integer> findCycle(int start) {
+      List<Integer> path = new ArrayList<>();
+      path.add(start);
+      return search(start, start, path, new HashSet<>()) ? path : null;
+   }
+
+   private boolean search(int start, int current, List<Integer> path, Set<Integer> visited) {
+      Object item = waitsFor.get(current);
+      String mode = wantedModes.get(current);
+      if (item == null || mode == null)
+         return false;
+      for (int holder : holdersOf(item, current, mode)) {
+         if (holder == start)
+            return true;
+         if (visited.add(holder)) {
+            path.add(holder);
+            if (search(start, holder, path, visited))
+               return true;
+            path.remove(path.size()-1);
+         }
+      }
+      return false;
+   }
+
+   private List<Integer> holdersOf(Object item, int except, String mode) {
+      List<Integer> result = new ArrayList<>();
+      for (Map.Entry<Integer,Map<Object,String>> e : held.entrySet()) {
+         String heldMode = e.getValue().get(item);
+         if (e.getKey() != except && heldMode != null
+               && !LockTable.compatible(heldMode, mode))
+            result.add(e.getKey());
+      }
+      return result;
+   }
+}
@@ -0,0 +1,36 @@
+package simpledb.tx.mvcc;
+
+/**
+ * A consistent view of the database, as of the moment
+ * the snapshot was taken.
+ * A snapshot sees the changes of every transaction that committed
+ * before it was taken, and none of the changes of the others.
+ * Snapshots are created and released by the {@link VersionStore}.
+ */
+public class Snapshot {
+   private long epoch;
+
+   Snapshot(long epoch) {
+      this.epoch = epoch;
+   }
+
+   /**
+    * Return the commit epoch at which the snapshot was taken.
+    * A transaction that committed at or before this epoch
+    * is visible to the snapshot.
+    * @return the epoch of the snapshot
+    */
+   long epoch() {
+      return epoch;
+   }
+
+   /**
+    * Return true if the changes of a transaction that committed
+    * at the specified epoch are visible to this snapshot.
+    * @param commitEpoch the commit epoch of the transaction, or null if it has not committed
+    * @return true if the changes are visible
+    */
+   boolean sees(Long commitEpoch) {
+      return commitEpoch != null && commitEpoch <= epoch;
+   }
+}
@@ -0,0 +1,156 @@
+package simpledb.tx.mvcc;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import simpledb.buffer.BufferAbortException;
+import simpledb.file.SlotBitmap;
+import simpledb.record.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.LockAbortException;
+
+/**
+ * A mixed workload: writer threads run short transfer transactions
+ * while a reporting thread repeatedly sums all account balances.
+ * The workload is run twice, first with the report as an ordinary
+ * locking transaction and then as a read-only (snapshot) transaction,
+ * and the writer throughput of the two runs is compared.
+ * Transfers preserve the total, so every report should see the same sum.
+ */
+public class SnapshotBenchmark {
+   private static final int NUM_ACCOUNTS = 200;
+   private static final int NUM_WRITERS = 2;
+   private static final long RUN_TIME = 5000;
+   private static SimpleDB db;
+   private static Layout layout;
+   private static int total;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("snapshotbenchmark", 400, 64);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addIntField("balance");
+      layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "account", layout);
+      for (int i=0; i<NUM_ACCOUNTS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setInt("balance", 100);
+      }
+      ts.beforeFirst();
+      while (ts.next())
+         total += ts.getInt("balance");
+      ts.close();
+      tx.commit();
+
+      String locking  = run(false);
+      String snapshot = run(true);
+      System.out.println("locking reports:  " + locking);
+      System.out.println("snapshot reports: " + snapshot);
+   }
+
+   private static String run(boolean useSnapshot) throws Exception {
+      AtomicInteger commits = new AtomicInteger(0);
+      AtomicInteger aborts = new AtomicInteger(0);
+      AtomicInteger reports = new AtomicInteger(0);
+      AtomicInteger wrongSums = new AtomicInteger(0);
+      long end = System.currentTimeMillis() + RUN_TIME;
+
+      Thread[] writers = new Thread[NUM_WRITERS];
+      for (int i=0; i<NUM_WRITERS; i++) {
+         writers[i] = new Thread(new Writer(end, i, commits, aborts));
+         writers[i].start();
+      }
+      Thread reporter = new Thread(new Reporter(end, useSnapshot, reports, wrongSums));
+      reporter.start();
+      for (Thread t : writers)
+         t.join();
+      reporter.join();
+
+      double tps = commits.get() * 1000.0 / RUN_TIME;
+      return String.format("%.1f writer commits/sec, %d writer aborts, %d reports, %d inconsistent",
+                           tps, aborts.get(), reports.get(), wrongSums.get());
+   }
+
+   static class Writer implements Runnable {
+      private long end;
+      private Random rand;
+      private AtomicInteger commits, aborts;
+
+      Writer(long end, int seed, AtomicInteger commits, AtomicInteger aborts) {
+         this.end = end;
+         this.rand = new Random(seed);
+         this.commits = commits;
+         this.aborts = aborts;
+      }
+
+      public void run() {
+         while (System.currentTimeMillis() < end) {
+            Transaction tx = db.newTx();
+            try {
+               int perblock = new SlotBitmap(tx.blockSize(), layout.slotSize()).numSlots();
+               TableScan ts = new TableScan(tx, "account", layout);
+               int from = rand.nextInt(NUM_ACCOUNTS);
+               int to = rand.nextInt(NUM_ACCOUNTS);
+               ts.moveToRid(new RID(from / perblock, from % perblock));
+               ts.setInt("balance", ts.getInt("balance") - 1);
+               ts.moveToRid(new RID(to / perblock, to % perblock));
+               ts.setInt("balance", ts.getInt("balance") + 1);
+               ts.close();
+               tx.commit();
+               commits.incrementAndGet();
+            }
+            catch(LockAbortException | BufferAbortException e) {
+               tx.rollback();
+               aborts.incrementAndGet();
+            }
+         }
+      }
+   }
+
+   static class Reporter implements Runnable {
+      private long end;
+      private boolean useSnapshot;
+      private AtomicInteger reports, wrongSums;
+
+      Reporter(long end, boolean useSnapshot, AtomicInteger reports, AtomicInteger wrongSums) {
+         this.end = end;
+         this.useSnapshot = useSnapshot;
+         this.reports = reports;
+         this.wrongSums = wrongSums;
+      }
+
+      public void run() {
+         while (System.currentTimeMillis() < end) {
+            Transaction tx = useSnapshot ? db.newReadOnlyTx() : db.newTx();
+            try {
+               TableScan ts = new TableScan(tx, "account", layout);
+               int sum = 0;
+               while (ts.next()) {
+                  sum += ts.getInt("balance");
+                  sleepBriefly();
+               }
+               ts.close();
+               tx.commit();
+               reports.incrementAndGet();
+               if (sum != total)
+                  wrongSums.incrementAndGet();
+            }
+            catch(LockAbortException | BufferAbortException e) {
+               tx.rollback();
+            }
+         }
+      }
+
+      // a report does some work for each record it reads
+      private void sleepBriefly() {
+         try {
+            Thread.sleep(1);
+         }
+         catch(InterruptedException e) {}
+      }
+   }
+}
@@ -0,0 +1,303 @@
+package simpledb.tx.mvcc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import simpledb.buffer.Buffer;
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotBitmap;
+import simpledb.file.SlotDirectory;
+
+/**
+ * The store of old versions, which lets snapshot transactions
+ * read the database without obtaining locks.
+ * <p>
+ * Whenever a transaction logs an update, it also saves the
+ * value it overwrote here; this is the same before-image that
+ * goes into its SetInt or SetString log record.
+ * The saved values of a block form its version chain.
+ * A snapshot reads a block by copying the current page and
+ * undoing, newest first, the updates of every transaction
+ * that had not committed when the snapshot was taken.
+ * <p>
+ * The tuples of a slotted page move when the page is compacted,
+ * and its header changes with every transaction that uses the page,
+ * so its values are saved relative to their slot, as in its log
+ * records: a tuple's bytes are restored wherever the tuple is now,
+ * and an entry of the directory has only its flag restored.
+ * Compaction keeps the region of a slot that has saved values,
+ * so that the old tuple still fits in it.
+ * <p>
+ * Each commit of an updating transaction advances the commit epoch.
+ * A saved value is discarded when the transaction that wrote it
+ * rolls back, or once it has committed and every active snapshot
+ * is able to see its changes.
+ */
+public class VersionStore {
+   private Map<BlockId,List<Version>> chains = new ConcurrentHashMap<>();
+   private Map<Integer,Set<BlockId>> blocksByTx = new ConcurrentHashMap<>();
+   private Map<Integer,Long> commitEpochs = new ConcurrentHashMap<>();
+   private Map<Snapshot,Boolean> snapshots = new ConcurrentHashMap<>();
+   private long epoch = 0;
+
+   /**
+    * Save the integer that the specified transaction is about to overwrite.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @param offset the offset of the value in the block
+    * @param oldval the value being overwritten
+    * @param txnum the id of the updating transaction
+    */
+   public void saveInt(BlockId blk, int offset, int oldval, int txnum) {
+      save(blk, new Version(txnum, -1, offset, oldval, null, null));
+   }
+
+   /**
+    * Save the string that the specified transaction is about to overwrite.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @param offset the offset of the value in the block
+    * @param oldval the value being overwritten
+    * @param txnum the id of the updating transaction
+    */
+   public void saveString(BlockId blk, int offset, String oldval, int txnum) {
+      save(blk, new Version(txnum, -1, offset, 0, oldval, null));
+   }
+
+   /**
+    * Save the bytes of a region of a page that the specified
+    * transaction is about to overwrite, as part of an
+    * operation that modifies the region as a whole.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @param offset the offset of the region in the block
+    * @param oldval the bytes being overwritten
+    * @param txnum the id of the updating transaction
+    */
+   public void saveBytes(BlockId blk, int offset, byte[] oldval, int txnum) {
+      save(blk, new Version(txnum, -1, offset, 0, null, oldval));
+   }
+
+   /**
+    * Save the bytes of a tuple of a slotted page that the specified
+    * transaction is about to overwrite.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the tuple
+    * @param pos the position of the bytes within the tuple
+    * @param oldval the bytes being overwritten
+    * @param txnum the id of the updating transaction
+    */
+   public void saveTupleBytes(BlockId blk, int slot, int pos, byte[] oldval, int txnum) {
+      save(blk, new Version(txnum, slot, pos, 0, null, oldval));
+   }
+
+   /**
+    * Save the flag of a slot of a slotted page that the
+    * specified transaction is about to change.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @param slot the slot
+    * @param oldflag the flag being overwritten
+    * @param txnum the id of the updating transaction
+    */
+   public void saveTupleFlag(BlockId blk, int slot, int oldflag, int txnum) {
+      save(blk, new Version(txnum, slot, 0, oldflag, null, null));
+   }
+
+   /**
+    * Save the bit of a slot in the occupancy bitmap of a
+    * fixed record page that the specified transaction is about to change.
+    * Only the slot's bit is restored, because the other bits
+    * of its word belong to the records of other transactions.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @param slot the slot
+    * @param oldval the bit being overwritten
+    * @param txnum the id of the updating transaction
+    */
+   public void saveSlotUsed(BlockId blk, int slot, boolean oldval, int txnum) {
+      Version v = new Version(txnum, slot, 0, oldval ? 1 : 0, null, null);
+      v.bit = true;
+      save(blk, v);
+   }
+
+   /**
+    * Return the slots of a slotted page that have saved values.
+    * A snapshot may still need the old tuple in such a slot.
+    * The caller must hold the exclusive latch of the block's buffer.
+    * @param blk a reference to the disk block
+    * @return the slots with saved values
+    */
+   public Set<Integer> savedSlots(BlockId blk) {
+      Set<Integer> slots = new HashSet<>();
+      chains.computeIfPresent(blk, (k, chain) -> {
+         for (Version v : chain)
+            if (v.slot >= 0 && !v.bit)
+               slots.add(v.slot);
+         return chain;
+      });
+      return slots;
+   }
+
+   /**
+    * Return true if the specified block has saved values.
+    * A block without them looks the same to every snapshot.
+    * @param blk a reference to the disk block
+    * @return true if the block has a version chain
+    */
+   public boolean hasVersions(BlockId blk) {
+      return chains.containsKey(blk);
+   }
+
+   /**
+    * Take a snapshot of the committed state of the database.
+    * The snapshot must be released when its transaction completes.
+    * @return the new snapshot
+    */
+   public synchronized Snapshot beginSnapshot() {
+      Snapshot s = new Snapshot(epoch);
+      snapshots.put(s, true);
+      return s;
+   }
+
+   /**
+    * Release the specified snapshot, and discard the saved values
+    * that no remaining snapshot needs.
+    * @param s the snapshot
+    */
+   public void endSnapshot(Snapshot s) {
+      snapshots.remove(s);
+      long oldest = Long.MAX_VALUE;
+      for (Snapshot other : snapshots.keySet())
+         oldest = Math.min(oldest, other.epoch());
+      for (Map.Entry<Integer,Long> e : commitEpochs.entrySet())
+         if (e.getValue() <= oldest)
+            discard(e.getKey());
+   }
+
+   /**
+    * Record that the specified transaction has committed.
+    * Its saved values are kept only while there is a snapshot
+    * that was taken before the commit.
+    * @param txnum the id of the transaction
+    */
+   public void commit(int txnum) {
+      if (!blocksByTx.containsKey(txnum))
+         return;
+      synchronized(this) {
+         epoch++;
+         commitEpochs.put(txnum, epoch);
+      }
+      if (snapshots.isEmpty())
+         discard(txnum);
+   }
+
+   /**
+    * Record that the specified transaction has rolled back.
+    * The rollback has restored the values it overwrote,
+    * so its saved values are no longer needed.
+    * @param txnum the id of the transaction
+    */
+   public void rollback(int txnum) {
+      discard(txnum);
+   }
+
+   /**
+    * Return the contents of the buffer's block as seen by the
+    * specified snapshot. The returned page is a private copy.
+    * @param buff a buffer pinned to the block
+    * @param s the snapshot
+    * @return the page as of the snapshot
+    */
+   public Page read(Buffer buff, Snapshot s) {
+      BlockId blk = buff.block();
+      List<Version> undo = new ArrayList<>();
+      Page p;
+      buff.latchShared();
+      try {
+         p = buff.contents().copy();
+         // the chain and the commit epochs are inspected atomically
+         // with respect to discard(), which empties the chains first
+         chains.computeIfPresent(blk, (k, chain) -> {
+            for (Version v : chain)
+               if (!s.sees(commitEpochs.get(v.txnum)))
+                  undo.add(v);
+            return chain;
+         });
+      }
+      finally {
+         buff.unlatchShared();
+      }
+      for (int i=undo.size()-1; i>=0; i--)
+         undo.get(i).undo(p);
+      return p;
+   }
+
+   private void save(BlockId blk, Version v) {
+      blocksByTx.computeIfAbsent(v.txnum, k -> ConcurrentHashMap.newKeySet()).add(blk);
+      chains.compute(blk, (k, chain) -> {
+         if (chain == null)
+            chain = new ArrayList<>();
+         chain.add(v);
+         return chain;
+      });
+   }
+
+   private void discard(int txnum) {
+      Set<BlockId> blks = blocksByTx.remove(txnum);
+      if (blks != null) {
+         for (BlockId blk : blks)
+            chains.computeIfPresent(blk, (k, chain) -> {
+               chain.removeIf(v -> v.txnum == txnum);
+               return chain.isEmpty() ? null : chain;
+            });
+      }
+      commitEpochs.remove(txnum);
+   }
+
+   /**
+    * A value overwritten by a transaction. The value is at an
+    * offset of the page, or, if it has a slot, at a position
+    * within the tuple of that slot; a slot's saved int is its flag,
+    * or its bit in the occupancy bitmap of a fixed record page.
+    */
+   private static class Version {
+      int txnum;
+      int slot;
+      int offset;
+      int intval;
+      String strval;
+      byte[] bytes;
+      boolean bit;
+
+      Version(int txnum, int slot, int offset, int intval, String strval, byte[] bytes) {
+         this.txnum = txnum;
+         this.slot = slot;
+         this.offset = offset;
+         this.intval = intval;
+         this.strval = strval;
+         this.bytes = bytes;
+      }
+
+      void undo(Page p) {
+         if (bit)
+            SlotBitmap.setUsed(p, slot, intval != 0);
+         else if (slot >= 0 && bytes != null)
+            SlotDirectory.write(p, slot, offset, bytes);
+         else if (slot >= 0)
+            SlotDirectory.setFlag(p, slot, intval);
+         else if (bytes != null)
+            p.writeBytes(offset, bytes);
+         else if (strval == null)
+            p.setInt(offset, intval);
+         else
+            p.setString(offset, strval);
+      }
+   }
+}
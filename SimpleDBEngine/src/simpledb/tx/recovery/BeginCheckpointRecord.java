@@ -0,0 +1,63 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The BEGIN_CHECKPOINT log record, which starts a fuzzy checkpoint.
+ * Transactions keep running while the checkpoint is taken;
+ * the tables that describe their state are written afterwards
+ * in one or more END_CHECKPOINT records.
+ * @see EndCheckpointRecord
+ */
+public class BeginCheckpointRecord implements LogRecord {
+   public BeginCheckpointRecord() {
+   }
+
+   public int op() {
+      return BEGIN_CHECKPOINT;
+   }
+
+   /**
+    * Checkpoint records have no associated transaction,
+    * and so the method returns a "dummy", negative txid.
+    */
+   public int txNumber() {
+      return -1; // dummy value
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no undo information.
+    */
+   public void undo(Transaction tx) {}
+
+   public BlockId block() {
+      return null;
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * modifies no page.
+    */
+   public void redo(Page p) {}
+
+   public String toString() {
+      return "<BEGIN_CHECKPOINT>";
+   }
+
+   /** 
+    * A static method to write a begin-checkpoint record to the log.
+    * This log record contains the BEGIN_CHECKPOINT operator,
+    * and nothing else.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm) {
+      byte[] rec = new byte[Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, BEGIN_CHECKPOINT);
+      return lm.append(rec);
+   }
+}
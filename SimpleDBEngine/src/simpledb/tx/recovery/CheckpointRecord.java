@@ -1,5 +1,6 @@
 package simpledb.tx.recovery;
 
+import simpledb.file.BlockId;
 import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
@@ -30,6 +31,16 @@ public class CheckpointRecord implements LogRecord {
     */
    public void undo(Transaction tx) {}
 
+   public BlockId block() {
+      return null;
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * modifies no page.
+    */
+   public void redo(Page p) {}
+
    public String toString() {
       return "<CHECKPOINT>";
    }
@@ -0,0 +1,54 @@
+package simpledb.tx.recovery;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.log.LogMgr;
+
+/**
+ * The checkpointer, which periodically takes a fuzzy checkpoint
+ * so that recovery after a crash need not read the log
+ * back to the last restart.
+ * <p>
+ * Before each checkpoint, the checkpointer writes the pages that
+ * have been dirty since before the previous checkpoint began.
+ * Redo then never has to start earlier than the previous checkpoint,
+ * even for pages that stay in the buffer pool indefinitely.
+ */
+public class Checkpointer {
+   private LogMgr lm;
+   private BufferMgr bm;
+   private int lastBeginLSN = -1;
+
+   public Checkpointer(LogMgr lm, BufferMgr bm) {
+      this.lm = lm;
+      this.bm = bm;
+   }
+
+   /**
+    * Flush the pages that are dirty since before the previous
+    * checkpoint, and then take a new checkpoint.
+    */
+   public synchronized void checkpoint() {
+      if (lastBeginLSN >= 0)
+         bm.flushOlderThan(lastBeginLSN);
+      lastBeginLSN = RecoveryMgr.checkpoint(lm, bm);
+   }
+
+   /**
+    * Start a daemon thread that takes a checkpoint
+    * at the specified interval.
+    * @param interval the number of milliseconds between checkpoints
+    */
+   public void start(long interval) {
+      Thread t = new Thread(() -> {
+         try {
+            while (true) {
+               Thread.sleep(interval);
+               checkpoint();
+            }
+         }
+         catch (InterruptedException e) {}
+      }, "simpledb-checkpointer");
+      t.setDaemon(true);
+      t.start();
+   }
+}
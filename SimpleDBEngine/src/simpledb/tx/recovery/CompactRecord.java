@@ -0,0 +1,111 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotDirectory;
+import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
+import simpledb.tx.Transaction;
+
+/**
+ * The COMPACT log record, which describes the compaction of a
+ * slotted page. Which tuples may move depends on the locks held
+ * at the time, which recovery does not know, so the record
+ * holds the new region size of every slot.
+ * @see SlotDirectory#compaction
+ */
+public class CompactRecord implements LogRecord {
+   private int txnum;
+   private BlockId blk;
+   private int[] allocs;
+
+   /**
+    * Create a new compact log record.
+    * @param p the page containing the log values
+    */
+   public CompactRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int npos = bpos + Integer.BYTES;
+      allocs = new int[p.getInt(npos)];
+      for (int i=0; i<allocs.length; i++)
+         allocs[i] = p.getInt(npos + (i+1) * Integer.BYTES);
+   }
+
+   public int op() {
+      return COMPACT;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<COMPACT " + txnum + " " + blk + ">";
+   }
+
+   /**
+    * Does nothing. Compaction moves tuples without changing them,
+    * and the other log records of a slotted page are undone
+    * relative to the tuple's slot, wherever the tuple now is.
+    */
+   public void undo(Transaction tx) {}
+
+   /**
+    * Compact the page again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      SlotDirectory.compact(p, allocs);
+   }
+
+   /**
+    * A static method to write a compact record to the log.
+    * The record contains the COMPACT operator, the id of the
+    * transaction, the block, and the new region sizes of its slots.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int[] allocs) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int npos = bpos + Integer.BYTES;
+      byte[] rec = new byte[npos + (allocs.length + 1) * Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, COMPACT);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(npos, allocs.length);
+      for (int i=0; i<allocs.length; i++)
+         p.setInt(npos + (i+1) * Integer.BYTES, allocs[i]);
+      return lm.append(rec);
+   }
+
+   /**
+    * Return the update that compacts a slotted page,
+    * as described by this kind of record.
+    * @param allocs the new region size of each slot
+    * @return the update
+    */
+   public static PageUpdate update(int[] allocs) {
+      return new PageUpdate() {
+         public int log(LogMgr lm, int txnum, BlockId blk, Page p) {
+            return writeToLog(lm, txnum, blk, allocs);
+         }
+
+         public void apply(Page p) {
+            SlotDirectory.compact(p, allocs);
+         }
+      };
+   }
+}
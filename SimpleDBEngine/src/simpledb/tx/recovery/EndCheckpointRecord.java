@@ -0,0 +1,202 @@
+package simpledb.tx.recovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The END_CHECKPOINT log record, which completes a fuzzy checkpoint.
+ * It holds the LSN of the checkpoint's BEGIN_CHECKPOINT record,
+ * the transactions that were active when the checkpoint began
+ * (the active transaction table),
+ * and the modified buffers together with the LSN of the
+ * earliest update that each holds (the dirty page table).
+ * <p>
+ * The tables may not fit in a single log block, and so they are
+ * written as a sequence of END_CHECKPOINT records. Only the last
+ * record of the sequence is marked as such; a checkpoint whose
+ * last record is missing is incomplete, and is ignored by recovery.
+ */
+public class EndCheckpointRecord implements LogRecord {
+   private static final int HEADER_SIZE = 5 * Integer.BYTES;
+   private int beginLSN;
+   private boolean last;
+   private List<Integer> txs = new ArrayList<>();
+   private Map<BlockId,Integer> dirtyPages = new HashMap<>();
+
+   /**
+    * Create an end-checkpoint record by reading its tables from the log.
+    * @param p the page containing the log values
+    */
+   public EndCheckpointRecord(Page p) {
+      int pos = Integer.BYTES;
+      beginLSN = p.getInt(pos);
+      pos += Integer.BYTES;
+      last = p.getInt(pos) == 1;
+      pos += Integer.BYTES;
+      int ntxs = p.getInt(pos);
+      pos += Integer.BYTES;
+      for (int i=0; i<ntxs; i++) {
+         txs.add(p.getInt(pos));
+         pos += Integer.BYTES;
+      }
+      int npages = p.getInt(pos);
+      pos += Integer.BYTES;
+      for (int i=0; i<npages; i++) {
+         String filename = p.getString(pos);
+         pos += Page.maxLength(filename.length());
+         BlockId blk = new BlockId(filename, p.getInt(pos));
+         pos += Integer.BYTES;
+         dirtyPages.put(blk, p.getInt(pos));
+         pos += Integer.BYTES;
+      }
+   }
+
+   public int op() {
+      return END_CHECKPOINT;
+   }
+
+   /**
+    * Checkpoint records have no associated transaction,
+    * and so the method returns a "dummy", negative txid.
+    */
+   public int txNumber() {
+      return -1; // dummy value
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no undo information.
+    */
+   public void undo(Transaction tx) {}
+
+   public BlockId block() {
+      return null;
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * modifies no page.
+    */
+   public void redo(Page p) {}
+
+   /**
+    * Return the LSN of the BEGIN_CHECKPOINT record
+    * of this record's checkpoint.
+    * @return the LSN at which the checkpoint began
+    */
+   public int beginLSN() {
+      return beginLSN;
+   }
+
+   /**
+    * Return true if this is the final record of its checkpoint.
+    * @return true if the checkpoint is complete
+    */
+   public boolean isLast() {
+      return last;
+   }
+
+   /**
+    * Return the ids of the active transactions held in this record.
+    * @return a list of transaction ids
+    */
+   public List<Integer> activeTxs() {
+      return txs;
+   }
+
+   /**
+    * Return the dirty pages held in this record,
+    * each mapped to the LSN of its earliest unflushed update.
+    * @return the dirty page table entries
+    */
+   public Map<BlockId,Integer> dirtyPages() {
+      return dirtyPages;
+   }
+
+   public String toString() {
+      return "<END_CHECKPOINT " + beginLSN + " " + txs + " " + dirtyPages + (last ? "" : " ...") + ">";
+   }
+
+   /** 
+    * A static method to write the tables of a checkpoint to the log.
+    * The tables are split over as many END_CHECKPOINT records
+    * as needed for each record to fit in a log block.
+    * @param beginLSN the LSN of the checkpoint's BEGIN_CHECKPOINT record
+    * @param txs the ids of the active transactions
+    * @param dirtyPages the dirty pages and their earliest update LSNs
+    * @return the LSN of the last log record
+    */
+   public static int writeToLog(LogMgr lm, int beginLSN, Collection<Integer> txs,
+                                Map<BlockId,Integer> dirtyPages) {
+      int max = lm.maxRecordSize();
+      List<Integer> parttxs = new ArrayList<>();
+      Map<BlockId,Integer> partpages = new HashMap<>();
+      int size = HEADER_SIZE;
+      for (int txnum : txs) {
+         if (size + Integer.BYTES > max) {
+            writePart(lm, beginLSN, false, parttxs, partpages);
+            parttxs.clear();
+            size = HEADER_SIZE;
+         }
+         parttxs.add(txnum);
+         size += Integer.BYTES;
+      }
+      for (Map.Entry<BlockId,Integer> e : dirtyPages.entrySet()) {
+         int entrysize = entrySize(e.getKey());
+         if (size + entrysize > max) {
+            writePart(lm, beginLSN, false, parttxs, partpages);
+            parttxs.clear();
+            partpages.clear();
+            size = HEADER_SIZE;
+         }
+         partpages.put(e.getKey(), e.getValue());
+         size += entrysize;
+      }
+      return writePart(lm, beginLSN, true, parttxs, partpages);
+   }
+
+   private static int writePart(LogMgr lm, int beginLSN, boolean last,
+                                List<Integer> txs, Map<BlockId,Integer> dirtyPages) {
+      int reclen = HEADER_SIZE + txs.size() * Integer.BYTES;
+      for (BlockId blk : dirtyPages.keySet())
+         reclen += entrySize(blk);
+      byte[] rec = new byte[reclen];
+      Page p = new Page(rec);
+      p.setInt(0, END_CHECKPOINT);
+      int pos = Integer.BYTES;
+      p.setInt(pos, beginLSN);
+      pos += Integer.BYTES;
+      p.setInt(pos, last ? 1 : 0);
+      pos += Integer.BYTES;
+      p.setInt(pos, txs.size());
+      pos += Integer.BYTES;
+      for (int txnum : txs) {
+         p.setInt(pos, txnum);
+         pos += Integer.BYTES;
+      }
+      p.setInt(pos, dirtyPages.size());
+      pos += Integer.BYTES;
+      for (Map.Entry<BlockId,Integer> e : dirtyPages.entrySet()) {
+         BlockId blk = e.getKey();
+         p.setString(pos, blk.fileName());
+         pos += Page.maxLength(blk.fileName().length());
+         p.setInt(pos, blk.number());
+         pos += Integer.BYTES;
+         p.setInt(pos, e.getValue());
+         pos += Integer.BYTES;
+      }
+      return lm.append(rec);
+   }
+
+   private static int entrySize(BlockId blk) {
+      return Page.maxLength(blk.fileName().length()) + 2 * Integer.BYTES;
+   }
+}
@@ -0,0 +1,114 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The FORMAT log record, which describes the formatting of
+ * a newly appended block: the page is cleared, and a
+ * few header integers are stored at its start.
+ * Record pages and B-tree pages both use zeros for their
+ * empty slots, so this is all that formatting requires.
+ */
+public class FormatRecord implements LogRecord {
+   private int txnum, length;
+   private BlockId blk;
+   private int[] header;
+
+   /**
+    * Create a new format log record.
+    * @param p the page containing the log values
+    */
+   public FormatRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int lpos = bpos + Integer.BYTES;
+      length = p.getInt(lpos);
+      int npos = lpos + Integer.BYTES;
+      header = new int[p.getInt(npos)];
+      for (int i=0; i<header.length; i++)
+         header[i] = p.getInt(npos + (i+1) * Integer.BYTES);
+   }
+
+   public int op() {
+      return FORMAT;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<FORMAT " + txnum + " " + blk + ">";
+   }
+
+   /**
+    * Does nothing. Only a newly appended block is formatted,
+    * and so the previous contents of the page are meaningless;
+    * the block remains in the file as an empty page.
+    */
+   public void undo(Transaction tx) {}
+
+   /**
+    * Format the page again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      format(p, length, header);
+   }
+
+   /**
+    * Clear the specified number of bytes of the page, and
+    * store the header integers at its start.
+    * @param p the page
+    * @param length the number of bytes to clear
+    * @param header the integers to store
+    */
+   public static void format(Page p, int length, int[] header) {
+      p.writeBytes(0, new byte[length]);
+      for (int i=0; i<header.length; i++)
+         p.setInt(i * Integer.BYTES, header[i]);
+   }
+
+   /**
+    * A static method to write a format record to the log.
+    * The record contains the FORMAT operator, the id of the
+    * transaction, the block, the number of bytes to clear,
+    * and the header integers.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int length, int[] header) {
+      return writeFormatRecord(lm, FORMAT, txnum, blk, length, header);
+   }
+
+   static int writeFormatRecord(LogMgr lm, int op, int txnum, BlockId blk, int length, int[] header) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int lpos = bpos + Integer.BYTES;
+      int npos = lpos + Integer.BYTES;
+      int reclen = npos + (header.length + 1) * Integer.BYTES;
+      byte[] rec = new byte[reclen];
+      Page p = new Page(rec);
+      p.setInt(0, op);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(lpos, length);
+      p.setInt(npos, header.length);
+      for (int i=0; i<header.length; i++)
+         p.setInt(npos + (i+1) * Integer.BYTES, header[i]);
+      return lm.append(rec);
+   }
+}
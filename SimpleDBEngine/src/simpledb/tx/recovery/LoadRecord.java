@@ -0,0 +1,88 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The LOAD log record, which describes the formatting of a block
+ * that a bulk load appended, as a FORMAT record does.
+ * The records that the load then stores in the block are not logged;
+ * instead, the block is written to disk before the transaction commits.
+ * So the record is the only one to undo for the block:
+ * undoing it formats the block again, which removes
+ * everything that was loaded into it.
+ * @see Transaction#beginLoad(String)
+ */
+public class LoadRecord implements LogRecord {
+   private int txnum, length;
+   private BlockId blk;
+   private int[] header;
+
+   /**
+    * Create a new load log record.
+    * @param p the page containing the log values
+    */
+   public LoadRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int lpos = bpos + Integer.BYTES;
+      length = p.getInt(lpos);
+      int npos = lpos + Integer.BYTES;
+      header = new int[p.getInt(npos)];
+      for (int i=0; i<header.length; i++)
+         header[i] = p.getInt(npos + (i+1) * Integer.BYTES);
+   }
+
+   public int op() {
+      return LOAD;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<LOAD " + txnum + " " + blk + ">";
+   }
+
+   /**
+    * Format the block again, leaving it as an empty page.
+    * The formatting is logged, as a compensating update.
+    * No lock is needed, because the transaction
+    * still holds its XLock on the file.
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.formatPage(blk, header);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Format the page again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      FormatRecord.format(p, length, header);
+   }
+
+   /**
+    * A static method to write a load record to the log.
+    * Its contents are those of a format record.
+    * @see FormatRecord#writeToLog(LogMgr, int, BlockId, int, int[])
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int length, int[] header) {
+      return FormatRecord.writeFormatRecord(lm, LOAD, txnum, blk, length, header);
+   }
+}
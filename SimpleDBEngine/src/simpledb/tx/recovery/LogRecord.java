@@ -1,5 +1,6 @@
 package simpledb.tx.recovery;
 
+import simpledb.file.BlockId;
 import simpledb.file.Page;
 import simpledb.tx.Transaction;
 
@@ -10,7 +11,12 @@ import simpledb.tx.Transaction;
 public interface LogRecord {
    static final int CHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK  = 3,
-         SETINT = 4, SETSTRING = 5;
+         SETINT = 4, SETSTRING = 5,
+         BEGIN_CHECKPOINT = 6, END_CHECKPOINT = 7,
+         SLOT_INSERT = 8, SLOT_DELETE = 9, FORMAT = 10,
+         TUPLE_ALLOC = 11, TUPLE_ENTRY = 12, TUPLE_WRITE = 13,
+         TUPLE_MOVE = 14, COMPACT = 15, SLOT_BIT = 16,
+         LOAD = 17, TRUNCATE = 18;
 
    /**
     * Returns the log record's type. 
@@ -28,11 +34,27 @@ public interface LogRecord {
    /**
     * Undoes the operation encoded by this log record.
     * The only log record types for which this method
-    * does anything interesting are SETINT and SETSTRING.
+    * does anything interesting are the ones that modify a page.
     * @param txnum the id of the transaction that is performing the undo.
     */
    void undo(Transaction tx);
 
+   /**
+    * Returns the block modified by the operation encoded
+    * by this log record, or null if it modifies no block.
+    * @return the modified block, or null
+    */
+   BlockId block();
+
+   /**
+    * Reapplies the operation encoded by this log record
+    * to the page of the modified block.
+    * Like undo, this method does something only for
+    * the records that modify a page.
+    * @param p the contents of the modified block
+    */
+   void redo(Page p);
+
    /**
     * Interpret the bytes returned by the log iterator.
     * @param bytes
@@ -53,6 +75,32 @@ public interface LogRecord {
          return new SetIntRecord(p);
       case SETSTRING: 
          return new SetStringRecord(p);
+      case BEGIN_CHECKPOINT: 
+         return new BeginCheckpointRecord();
+      case END_CHECKPOINT: 
+         return new EndCheckpointRecord(p);
+      case SLOT_INSERT: 
+         return new SlotInsertRecord(p);
+      case SLOT_DELETE: 
+         return new SlotDeleteRecord(p);
+      case FORMAT: 
+         return new FormatRecord(p);
+      case TUPLE_ALLOC: 
+         return new TupleAllocRecord(p);
+      case TUPLE_ENTRY: 
+         return new TupleEntryRecord(p);
+      case TUPLE_WRITE: 
+         return new TupleWriteRecord(p);
+      case TUPLE_MOVE: 
+         return new TupleMoveRecord(p);
+      case COMPACT: 
+         return new CompactRecord(p);
+      case SLOT_BIT: 
+         return new SlotBitRecord(p);
+      case LOAD: 
+         return new LoadRecord(p);
+      case TRUNCATE: 
+         return new TruncateRecord(p);
       default:
          return null;
       }
@@ -0,0 +1,152 @@
+package simpledb.tx.recovery;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import simpledb.file.SlotBitmap;
+import simpledb.record.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures recovery time as a function of log size.
+ * For each workload size, a database of accounts is updated by
+ * that many transfer transactions, a few of which are left
+ * uncommitted. The workload runs in a separate process, which
+ * exits without flushing its buffers, as if the system had crashed.
+ * A copy of the crashed database is then recovered with each
+ * number of recovery threads, and the recovered balances
+ * are checked for consistency.
+ */
+public class RecoveryBenchmark {
+   private static final int NUM_ACCOUNTS = 40000;
+   private static final int[] NUM_TXS = {1000, 4000, 16000, 32000};
+   private static final int NUM_LOSERS = 3;
+   private static final int UPDATES_PER_TX = 5;
+   private static final int BLOCK_SIZE = 400;
+   private static final int NUM_BUFFS = 16;
+   private static final int[] THREADS = {1, 2, 4, 8};
+   private static Layout layout;
+
+   public static void main(String[] args) throws Exception {
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addIntField("balance");
+      layout = new Layout(sch);
+      if (args.length == 2) {
+         runWorkload(args[0], Integer.parseInt(args[1]));
+         return;
+      }
+      // a first, unreported round warms up the JIT compiler
+      crash("recoverybenchmark-warmup", NUM_TXS[0]);
+      for (int nthreads : THREADS)
+         recover("recoverybenchmark-warmup", "recoverybenchmark-warmup-copy", nthreads);
+      System.out.print("log KB");
+      for (int nthreads : THREADS)
+         System.out.printf("   %4d thread%s ms", nthreads, nthreads == 1 ? " " : "s");
+      System.out.println();
+      for (int n : NUM_TXS) {
+         String dirname = "recoverybenchmark" + n;
+         long logsize = crash(dirname, n);
+         // recovery prints as it goes, so the row is printed at the end
+         StringBuilder row = new StringBuilder(String.format("%6d", logsize / 1024));
+         for (int nthreads : THREADS)
+            row.append(String.format("   %15d", recover(dirname, dirname + "-copy", nthreads)));
+         System.out.println(row);
+      }
+   }
+
+   /**
+    * Run the workload in a new process, which crashes
+    * by exiting while some of its transactions are active.
+    * @return the size of the log in bytes
+    */
+   private static long crash(String dirname, int numtxs) throws Exception {
+      deleteDir(new File(dirname));
+      String java = System.getProperty("java.home") + "/bin/java";
+      String cp = System.getProperty("java.class.path");
+      Process p = new ProcessBuilder(java, "-cp", cp, RecoveryBenchmark.class.getName(),
+                                     dirname, Integer.toString(numtxs))
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+      p.waitFor();
+      return new File(dirname, SimpleDB.LOG_FILE).length();
+   }
+
+   private static void runWorkload(String dirname, int numtxs) {
+      SimpleDB db = new SimpleDB(dirname, BLOCK_SIZE, NUM_BUFFS);
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "account", layout);
+      for (int i=0; i<NUM_ACCOUNTS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setInt("balance", 100);
+      }
+      ts.close();
+      tx.commit();
+
+      Random rand = new Random(numtxs);
+      int perblock = new SlotBitmap(tx.blockSize(), layout.slotSize()).numSlots();
+      for (int i=0; i<numtxs+NUM_LOSERS; i++) {
+         tx = db.newTx();
+         ts = new TableScan(tx, "account", layout);
+         for (int j=0; j<UPDATES_PER_TX; j++) {
+            int from = rand.nextInt(NUM_ACCOUNTS);
+            int to = rand.nextInt(NUM_ACCOUNTS);
+            if (from == to)
+               continue;
+            ts.moveToRid(new RID(from / perblock, from % perblock));
+            ts.setInt("balance", ts.getInt("balance") - 1);
+            ts.moveToRid(new RID(to / perblock, to % perblock));
+            ts.setInt("balance", ts.getInt("balance") + 1);
+         }
+         ts.close();
+         if (i < numtxs)
+            tx.commit();
+         // the last few transactions are still running at the crash
+      }
+   }
+
+   /**
+    * Recover a copy of the crashed database with the
+    * specified number of threads, and check its balances.
+    * @return the recovery time in milliseconds
+    */
+   private static long recover(String dirname, String copyname, int nthreads) throws IOException {
+      File copy = new File(copyname);
+      deleteDir(copy);
+      copy.mkdirs();
+      for (File f : new File(dirname).listFiles())
+         Files.copy(f.toPath(), new File(copy, f.getName()).toPath());
+
+      SimpleDB.RECOVERY_THREADS = nthreads;
+      SimpleDB db = new SimpleDB(copyname, BLOCK_SIZE, NUM_BUFFS);
+      Transaction tx = db.newTx();
+      long start = System.nanoTime();
+      tx.recover();
+      long elapsed = (System.nanoTime() - start) / 1000000;
+      tx.commit();
+
+      tx = db.newTx();
+      TableScan ts = new TableScan(tx, "account", layout);
+      int total = 0;
+      while (ts.next())
+         total += ts.getInt("balance");
+      ts.close();
+      tx.commit();
+      if (total != NUM_ACCOUNTS * 100)
+         System.out.println("inconsistent recovery of " + copyname + ": total " + total);
+      return elapsed;
+   }
+
+   private static void deleteDir(File dir) {
+      if (dir.exists()) {
+         for (File f : dir.listFiles())
+            f.delete();
+         dir.delete();
+      }
+   }
+}
@@ -1,64 +1,147 @@
 package simpledb.tx.recovery;
 
+import static simpledb.tx.recovery.LogRecord.BEGIN_CHECKPOINT;
 import static simpledb.tx.recovery.LogRecord.CHECKPOINT;
 import static simpledb.tx.recovery.LogRecord.COMMIT;
+import static simpledb.tx.recovery.LogRecord.END_CHECKPOINT;
 import static simpledb.tx.recovery.LogRecord.ROLLBACK;
 import static simpledb.tx.recovery.LogRecord.START;
+import static simpledb.tx.recovery.LogRecord.TRUNCATE;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 
 import simpledb.buffer.Buffer;
 import simpledb.buffer.BufferMgr;
 import simpledb.file.BlockId;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.file.SlotArray;
+import simpledb.log.LogIterator;
 import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
 import simpledb.tx.Transaction;
 
 /**
  * The recovery manager.  Each transaction has its own recovery manager.
+ * <p>
+ * Update log records contain both the old and the new value,
+ * and each page records the LSN of the latest update applied to it.
+ * Buffers follow a no-force policy: a commit only forces the log,
+ * and modified pages are written whenever the buffer manager
+ * replaces them. After a crash, recovery repeats history
+ * from the last checkpoint and then undoes the transactions
+ * that did not complete.
+ * <p>
+ * Checkpoints are fuzzy: they record the active transactions
+ * and the dirty pages without stopping the running transactions,
+ * so they can be taken periodically while the server is busy.
+ * <p>
+ * Recovery reads the log once, backwards, and partitions the
+ * updates to redo and to undo by page. The pages to redo are
+ * read ahead, in file and block order, and brought up to date
+ * by a pool of worker threads, so that many page reads and
+ * writes are in progress at the same time.
  * @author Edward Sciore
  */
 public class RecoveryMgr {
+   // the number of page reads in progress or done ahead of
+   // their redo, for each worker thread
+   private static final int READ_AHEAD = 8;
+   private static int recoveryThreads = 4;
+   // the transactions that have started but not yet committed
+   // or rolled back; its latch orders their START, COMMIT and
+   // ROLLBACK records with respect to BEGIN_CHECKPOINT records
+   private static Set<Integer> activeTxs = new HashSet<>();
+   private static ReentrantLock attLatch = new ReentrantLock();
+   private FileMgr fm;
    private LogMgr lm;
    private BufferMgr bm;
    private Transaction tx;
    private int txnum;
 
+   /**
+    * Set the number of worker threads that recovery uses
+    * to redo the updates of different pages.
+    * @param n the number of worker threads
+    */
+   public static void setRecoveryThreads(int n) {
+      recoveryThreads = Math.max(1, n);
+   }
+
    /**
     * Create a recovery manager for the specified transaction.
     * @param txnum the ID of the specified transaction
     */
-   public RecoveryMgr(Transaction tx, int txnum, LogMgr lm, BufferMgr bm) {
+   public RecoveryMgr(Transaction tx, int txnum, FileMgr fm, LogMgr lm, BufferMgr bm) {
       this.tx = tx;
       this.txnum = txnum;
+      this.fm = fm;
       this.lm = lm;
       this.bm = bm;
-      StartRecord.writeToLog(lm, txnum);
+      attLatch.lock();
+      try {
+         activeTxs.add(txnum);
+         StartRecord.writeToLog(lm, txnum);
+      }
+      finally {
+         attLatch.unlock();
+      }
    }
 
    /**
     * Write a commit record to the log, and flushes it to disk.
+    * The transaction's modified pages need not be written,
+    * because the log contains the new values.
     */
    public void commit() {
-      bm.flushAll(txnum);
-      int lsn = CommitRecord.writeToLog(lm, txnum);
+      int lsn;
+      attLatch.lock();
+      try {
+         lsn = CommitRecord.writeToLog(lm, txnum);
+         activeTxs.remove(txnum);
+      }
+      finally {
+         attLatch.unlock();
+      }
       lm.flush(lsn);
    }
 
    /**
-    * Write a rollback record to the log and flush it to disk.
+    * Undo the transaction's updates, then write a rollback
+    * record to the log and flush it to disk.
     */
    public void rollback() {
       doRollback();
-      bm.flushAll(txnum);
-      int lsn = RollbackRecord.writeToLog(lm, txnum);
+      int lsn;
+      attLatch.lock();
+      try {
+         lsn = RollbackRecord.writeToLog(lm, txnum);
+         activeTxs.remove(txnum);
+      }
+      finally {
+         attLatch.unlock();
+      }
       lm.flush(lsn);
    }
 
    /**
     * Recover uncompleted transactions from the log
     * and then write a quiescent checkpoint record to the log and flush it.
+    * Recovery must run at startup, before any other transaction
+    * has read a block into the buffer pool.
     */
    public void recover() {
       doRecover();
@@ -67,6 +150,33 @@ public class RecoveryMgr {
       lm.flush(lsn);
    }
 
+   /**
+    * Take a fuzzy checkpoint.
+    * A BEGIN_CHECKPOINT record is written together with a copy
+    * of the active transaction table, after which the dirty page
+    * table is collected and both are written in END_CHECKPOINT records.
+    * Transactions continue to run throughout.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @return the LSN of the BEGIN_CHECKPOINT record
+    */
+   public static int checkpoint(LogMgr lm, BufferMgr bm) {
+      int beginLSN;
+      List<Integer> txs;
+      attLatch.lock();
+      try {
+         beginLSN = BeginCheckpointRecord.writeToLog(lm);
+         txs = new ArrayList<>(activeTxs);
+      }
+      finally {
+         attLatch.unlock();
+      }
+      Map<BlockId,Integer> dirtyPages = bm.dirtyPages();
+      int lsn = EndCheckpointRecord.writeToLog(lm, beginLSN, txs, dirtyPages);
+      lm.flush(lsn);
+      return beginLSN;
+   }
+
    /**
     * Write a setint record to the log and return its lsn.
     * @param buff the buffer containing the page
@@ -76,7 +186,7 @@ public class RecoveryMgr {
    public int setInt(Buffer buff, int offset, int newval) {
       int oldval = buff.contents().getInt(offset);
       BlockId blk = buff.block();
-      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval, newval);
    }
 
    /**
@@ -88,7 +198,82 @@ public class RecoveryMgr {
    public int setString(Buffer buff, int offset, String newval) {
       String oldval = buff.contents().getString(offset);
       BlockId blk = buff.block();
-      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval, newval);
+   }
+
+   /**
+    * Write a slot insert record to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param sa the slot array of the page
+    * @param slot the position of the first inserted slot
+    * @param slots the contents of the inserted slots
+    */
+   public int insertSlots(Buffer buff, SlotArray sa, int slot, byte[] slots) {
+      return SlotInsertRecord.writeToLog(lm, txnum, buff.block(), sa, slot, slots);
+   }
+
+   /**
+    * Write a slot delete record to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param sa the slot array of the page
+    * @param slot the position of the first deleted slot
+    * @param count the number of deleted slots
+    */
+   public int deleteSlots(Buffer buff, SlotArray sa, int slot, int count) {
+      byte[] slots = buff.contents().readBytes(sa.slotPos(slot), count * sa.slotSize());
+      return SlotDeleteRecord.writeToLog(lm, txnum, buff.block(), sa, slot, slots);
+   }
+
+   /**
+    * Write a format record to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param length the number of bytes of the page to clear
+    * @param header the integers stored at the start of the page
+    */
+   public int format(Buffer buff, int length, int[] header) {
+      return FormatRecord.writeToLog(lm, txnum, buff.block(), length, header);
+   }
+
+   /**
+    * Write a load record to the log and return its lsn.
+    * @param buff the buffer containing the page
+    * @param length the number of bytes of the page to clear
+    * @param header the integers stored at the start of the page
+    */
+   public int load(Buffer buff, int length, int[] header) {
+      return LoadRecord.writeToLog(lm, txnum, buff.block(), length, header);
+   }
+
+   /**
+    * Write a truncate record to the log and flush it,
+    * so that it is on disk before the file is truncated.
+    * @param filename the name of the file
+    * @param size the number of blocks that the file keeps
+    */
+   public void truncate(String filename, int size) {
+      int lsn = TruncateRecord.writeToLog(lm, txnum, filename, size);
+      lm.flush(lsn);
+   }
+
+   /**
+    * Write the log record of a physiological update
+    * to the page in the buffer, and return its lsn.
+    * @param buff the buffer containing the page
+    * @param u the update, which has not yet been applied
+    */
+   public int log(Buffer buff, PageUpdate u) {
+      return u.log(lm, txnum, buff.block(), buff.contents());
+   }
+
+   /**
+    * Return the largest number of slots of the specified size
+    * whose insertion or deletion fits in a single log record.
+    * @param blk the modified block
+    * @param slotsize the size of a slot
+    * @return the maximum number of slots per log record
+    */
+   public int maxSlotsPerRecord(BlockId blk, int slotsize) {
+      return Math.max(1, (lm.maxRecordSize() - SlotInsertRecord.overhead(blk)) / slotsize);
    }
 
    /**
@@ -96,7 +281,8 @@ public class RecoveryMgr {
     * through the log records until it finds 
     * the transaction's START record,
     * calling undo() for each of the transaction's
-    * log records.
+    * log records. Each undo writes a compensating
+    * update record, which a later recovery will redo.
     */
    private void doRollback() {
       Iterator<byte[]> iter = lm.iterator();
@@ -113,24 +299,211 @@ public class RecoveryMgr {
 
    /**
     * Do a complete database recovery.
-    * The method iterates through the log records.
-    * Whenever it finds a log record for an unfinished
-    * transaction, it calls undo() on that record.
-    * The method stops when it encounters a CHECKPOINT record
-    * or the end of the log.
+    * A single backward pass over the log finds the transactions
+    * that did not commit or roll back (the losers), and collects
+    * by page the updates that may need to be redone and the
+    * updates of the losers, which must be undone.
+    * <p>
+    * The pass first reads back to the start of the last complete
+    * checkpoint, building the dirty page table: the pages that
+    * may hold updates missing from disk, together with the LSN of
+    * the earliest such update. A loser that was active at the
+    * checkpoint appears in the checkpoint's active transaction table.
+    * The pass then continues until it has reached the earliest
+    * LSN in the dirty page table and the START record of every loser.
+    * <p>
+    * A truncation removes blocks from a file, so the updates
+    * to those blocks that were logged before it are skipped.
+    * The latest truncation of each file is repeated, unless
+    * the file was extended again after it.
+    * <p>
+    * The pages are then redone in parallel, each reapplying in
+    * log order the updates that are newer than the page, and
+    * finally the losers' updates are undone, each page in reverse
+    * log order. The undo goes through the buffer pool and is logged
+    * on behalf of this transaction, so it runs on this thread;
+    * after redo, its pages are the only ones still to be read.
+    * Updates to temporary files are neither redone nor undone,
+    * because temporary files do not survive a restart.
     */
    private void doRecover() {
-      Collection<Integer> finishedTxs = new ArrayList<>();
-      Iterator<byte[]> iter = lm.iterator();
+      Set<Integer> finishedTxs = new HashSet<>();
+      Set<Integer> losers = new HashSet<>();
+      Set<Integer> unstarted = new HashSet<>();  // losers whose START is not yet read
+      Map<BlockId,Integer> dirtyPages = new HashMap<>();
+      Map<BlockId,List<LoggedUpdate>> redoWork = new HashMap<>();
+      Map<BlockId,List<LogRecord>> undoWork = new HashMap<>();
+      List<Integer> checkpointTxs = new ArrayList<>();
+      Map<String,Integer> keptBlocks = new HashMap<>();   // blocks kept by the truncations read so far
+      Map<String,Integer> lastBlocks = new HashMap<>();   // the last block updated after them
+      Map<String,Integer> truncations = new HashMap<>();  // truncations to repeat
+      int beginLSN = -1;
+      int redoLSN = -1;  // set once the checkpoint has been read
+      LogIterator iter = lm.iterator();
       while (iter.hasNext()) {
-         byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes);
+         LogRecord rec = LogRecord.createLogRecord(iter.next());
+         int lsn = iter.lsn();
          if (rec.op() == CHECKPOINT)
-            return;
+            break;  // a quiescent checkpoint: nothing earlier is needed
+         if (redoLSN >= 0 && lsn < redoLSN && unstarted.isEmpty())
+            break;
+         if (rec.op() == END_CHECKPOINT) {
+            EndCheckpointRecord end = (EndCheckpointRecord) rec;
+            if (beginLSN < 0 && end.isLast())
+               beginLSN = end.beginLSN();
+            if (end.beginLSN() == beginLSN) {
+               checkpointTxs.addAll(end.activeTxs());
+               for (Map.Entry<BlockId,Integer> e : end.dirtyPages().entrySet())
+                  dirtyPages.merge(e.getKey(), e.getValue(), Math::min);
+            }
+            continue;
+         }
+         if (rec.op() == BEGIN_CHECKPOINT) {
+            if (lsn == beginLSN) {
+               for (int t : checkpointTxs)
+                  if (!finishedTxs.contains(t) && losers.add(t))
+                     unstarted.add(t);
+               redoLSN = dirtyPages.values().stream().min(Integer::compare).orElse(lsn);
+            }
+            continue;
+         }
+         int t = rec.txNumber();
          if (rec.op() == COMMIT || rec.op() == ROLLBACK)
-            finishedTxs.add(rec.txNumber());
-         else if (!finishedTxs.contains(rec.txNumber()))
+            finishedTxs.add(t);
+         else if (rec.op() == START)
+            unstarted.remove(t);
+         else if (!finishedTxs.contains(t) && losers.add(t))
+            unstarted.add(t);
+
+         if (rec.op() == TRUNCATE) {
+            TruncateRecord trunc = (TruncateRecord) rec;
+            String filename = trunc.fileName();
+            int size = trunc.size();
+            // the latest truncation of a file may not have happened yet,
+            // but if a later update went beyond it, then it did
+            if (!keptBlocks.containsKey(filename)
+                  && lastBlocks.getOrDefault(filename, -1) < size)
+               truncations.put(filename, size);
+            keptBlocks.merge(filename, size, Math::min);
+            continue;
+         }
+         BlockId blk = rec.block();
+         if (blk == null || isTemp(blk))
+            continue;
+         lastBlocks.merge(blk.fileName(), blk.number(), Math::max);
+         Integer kept = keptBlocks.get(blk.fileName());
+         if (kept != null && blk.number() >= kept)
+            continue;  // the block was truncated away later
+         if (redoLSN < 0)  // after the checkpoint, every page update is a candidate
+            dirtyPages.merge(blk, lsn, Math::min);
+         Integer recLSN = dirtyPages.get(blk);
+         if (recLSN != null && lsn >= recLSN)
+            redoWork.computeIfAbsent(blk, k -> new ArrayList<>()).add(new LoggedUpdate(lsn, rec));
+         if (losers.contains(t))
+            undoWork.computeIfAbsent(blk, k -> new ArrayList<>()).add(rec);
+      }
+      for (Map.Entry<String,Integer> e : truncations.entrySet())
+         fm.truncate(e.getKey(), e.getValue());
+      int lsnpos = fm.blockSize() - Buffer.LSN_SIZE;
+      redoAll(redoWork, lsnpos);
+      for (BlockId blk : inOrder(undoWork.keySet()))
+         for (LogRecord rec : undoWork.get(blk))
             rec.undo(tx);
+   }
+
+   /**
+    * Redo the updates of each page on a pool of worker threads.
+    * The pages are read asynchronously, in file and block order,
+    * by a pool of reader threads, which stay a bounded number of
+    * pages ahead of the workers; a worker redoes a page as soon
+    * as it has been read.
+    * The first failure is thrown once all the pages are done.
+    */
+   private void redoAll(Map<BlockId,List<LoggedUpdate>> work, int lsnpos) {
+      if (work.isEmpty())
+         return;
+      int nthreads = Math.min(recoveryThreads, work.size());
+      ExecutorService readers = Executors.newFixedThreadPool(nthreads);
+      ExecutorService workers = Executors.newFixedThreadPool(nthreads);
+      Semaphore ahead = new Semaphore(READ_AHEAD * nthreads);
+      List<CompletableFuture<Void>> results = new ArrayList<>();
+      try {
+         for (BlockId blk : inOrder(work.keySet())) {
+            ahead.acquireUninterruptibly();
+            results.add(CompletableFuture.supplyAsync(() -> read(blk), readers)
+                  .thenAcceptAsync(p -> redo(blk, p, work.get(blk), lsnpos), workers)
+                  .whenComplete((r, e) -> ahead.release()));
+         }
+         CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+      }
+      catch (CompletionException e) {
+         if (e.getCause() instanceof RuntimeException)
+            throw (RuntimeException) e.getCause();
+         throw new RuntimeException(e.getCause());
       }
+      finally {
+         readers.shutdown();
+         workers.shutdown();
+      }
+   }
+
+   /**
+    * Read a page directly rather than through the buffer pool,
+    * so that redo does not evict the pages it has already written;
+    * this is safe because no other transaction is running, and
+    * the log records being redone are already on disk.
+    */
+   private Page read(BlockId blk) {
+      Page p = new Page(new byte[fm.blockSize()]);
+      fm.read(blk, p);
+      return p;
+   }
+
+   /**
+    * Redo the updates of a page, which are listed newest first,
+    * and write the page if any of them was newer than it.
+    */
+   private void redo(BlockId blk, Page p, List<LoggedUpdate> updates, int lsnpos) {
+      int pagelsn = p.getInt(lsnpos);
+      boolean changed = false;
+      for (int i=updates.size()-1; i>=0; i--) {
+         LoggedUpdate u = updates.get(i);
+         if (pagelsn < u.lsn) {
+            u.rec.redo(p);
+            pagelsn = u.lsn;
+            changed = true;
+         }
+      }
+      if (changed) {
+         p.setInt(lsnpos, pagelsn);
+         fm.write(blk, p);
+      }
+   }
+
+   /**
+    * Return the pages in file and block order, so that
+    * the reads of each file proceed roughly sequentially.
+    */
+   private static List<BlockId> inOrder(Set<BlockId> blks) {
+      List<BlockId> result = new ArrayList<>(blks);
+      result.sort(Comparator.comparing(BlockId::fileName).thenComparingInt(BlockId::number));
+      return result;
+   }
+
+   /**
+    * A log record to be redone, together with its LSN.
+    */
+   private static class LoggedUpdate {
+      int lsn;
+      LogRecord rec;
+
+      LoggedUpdate(int lsn, LogRecord rec) {
+         this.lsn = lsn;
+         this.rec = rec;
+      }
+   }
+
+   private static boolean isTemp(BlockId blk) {
+      return blk.fileName().startsWith("temp");
    }
 }
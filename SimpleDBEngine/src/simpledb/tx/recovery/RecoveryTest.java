@@ -34,14 +34,15 @@ public class RecoveryTest {
       tx2.pin(blk1);
       int pos = 0;
       for (int i=0; i<6; i++) {
-         tx1.setInt(blk0, pos, pos, false);
-         tx2.setInt(blk1, pos, pos, false);
+         tx1.setInt(blk0, pos, pos, true);
+         tx2.setInt(blk1, pos, pos, true);
          pos += Integer.BYTES;
       }
-      tx1.setString(blk0, 30, "abc", false);
-      tx2.setString(blk1, 30, "def", false);
+      tx1.setString(blk0, 30, "abc", true);
+      tx2.setString(blk1, 30, "def", true);
       tx1.commit();
       tx2.commit();
+      // commit does not force the pages, so the values are only in the log
       printValues("After Initialization:");
    }
 
@@ -63,6 +64,7 @@ public class RecoveryTest {
       printValues("After modification:");
 
       tx3.rollback();
+      // the restored values of tx3 are logged, but not yet on disk
       printValues("After rollback:");
       // tx4 stops here without committing or rolling back,
       // so all its changes should be undone during recovery.
@@ -6,7 +6,7 @@ import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 public class SetIntRecord implements LogRecord {
-   private int txnum, offset, val;
+   private int txnum, offset, val, newval;
    private BlockId blk;
 
    /**
@@ -25,6 +25,8 @@ public class SetIntRecord implements LogRecord {
       offset = p.getInt(opos);
       int vpos = opos + Integer.BYTES;      
       val = p.getInt(vpos);
+      int npos = vpos + Integer.BYTES;
+      newval = p.getInt(npos);
    }
 
    public int op() {
@@ -35,38 +37,55 @@ public class SetIntRecord implements LogRecord {
       return txnum;
    }
 
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
-      return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + " " + newval + ">";
    }
 
    /**
     * Replace the specified data value with the value saved in the log record.
     * The method pins a buffer to the specified block,
-    * calls setInt to restore the saved value,
+    * calls writeInt to restore the saved value,
     * and unpins the buffer.
+    * The restoring write is itself logged, as a compensating update,
+    * so that a later recovery repeats it.
+    * No lock is needed, because the transaction whose update
+    * is being undone still holds its locks.
     * @see LogRecord#undo(int)
     */
    public void undo(Transaction tx) {
       tx.pin(blk);
-      tx.setInt(blk, offset, val, false); // don't log the undo!
+      tx.writeInt(blk, offset, val, true);
       tx.unpin(blk);
    }
 
+   /**
+    * Store the new value saved in the log record into the page.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      p.setInt(offset, newval);
+   }
+
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and new integer values at that offset.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val, int newval) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
       int bpos = fpos + Page.maxLength(blk.fileName().length());
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
-      byte[] rec = new byte[vpos + Integer.BYTES];
+      int npos = vpos + Integer.BYTES;
+      byte[] rec = new byte[npos + Integer.BYTES];
       Page p = new Page(rec);
       p.setInt(0, SETINT);
       p.setInt(tpos, txnum);
@@ -74,6 +93,7 @@ public class SetIntRecord implements LogRecord {
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
       p.setInt(vpos, val);
+      p.setInt(npos, newval);
       return lm.append(rec);
    }
 }
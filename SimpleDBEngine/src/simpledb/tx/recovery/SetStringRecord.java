@@ -7,7 +7,7 @@ import simpledb.tx.Transaction;
 
 public class SetStringRecord implements LogRecord {
    private int txnum, offset;
-   private String val;
+   private String val, newval;
    private BlockId blk;
 
    /**
@@ -26,6 +26,8 @@ public class SetStringRecord implements LogRecord {
       offset = p.getInt(opos);
       int vpos = opos + Integer.BYTES;      
       val = p.getString(vpos);
+      int npos = vpos + Page.maxLength(val.length());
+      newval = p.getString(npos);
    }
 
    public int op() {
@@ -36,38 +38,52 @@ public class SetStringRecord implements LogRecord {
       return txnum;
    }
 
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
-      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + " " + newval + ">";
    }
 
    /**
     * Replace the specified data value with the value saved in the log record.
     * The method pins a buffer to the specified block,
-    * calls setInt to restore the saved value,
+    * calls writeString to restore the saved value,
     * and unpins the buffer.
-    * @see LogRecord#undo(int)
+    * The restoring write is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
     */
    public void undo(Transaction tx) {
       tx.pin(blk);
-      tx.setString(blk, offset, val, false); // don't log the undo!
+      tx.writeString(blk, offset, val, true);
       tx.unpin(blk);
    }
 
    /**
-    * A static method to write a setInt record to the log.
-    * This log record contains the SETINT operator,
+    * Store the new value saved in the log record into the page.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      p.setString(offset, newval);
+   }
+
+   /**
+    * A static method to write a setString record to the log.
+    * This log record contains the SETSTRING operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and new string values at that offset.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val, String newval) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
       int bpos = fpos + Page.maxLength(blk.fileName().length());
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
-      int reclen = vpos + Page.maxLength(val.length());
+      int npos = vpos + Page.maxLength(val.length());
+      int reclen = npos + Page.maxLength(newval.length());
       byte[] rec = new byte[reclen];
       Page p = new Page(rec);
       p.setInt(0, SETSTRING);
@@ -76,6 +92,7 @@ public class SetStringRecord implements LogRecord {
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
       p.setString(vpos, val);
+      p.setString(npos, newval);
       return lm.append(rec);
    }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotBitmap;
+import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
+import simpledb.tx.Transaction;
+import simpledb.tx.mvcc.VersionStore;
+
+/**
+ * The SLOT_BIT log record, which describes the change of a
+ * slot's bit in the occupancy bitmap of a fixed record page,
+ * as when a record is inserted or deleted.
+ * A word of the bitmap is shared by the slots of other records,
+ * which other transactions may change, so the record holds
+ * only the slot's bit, and undo and redo change only that bit.
+ * @see SlotBitmap
+ */
+public class SlotBitRecord implements LogRecord {
+   private int txnum, slot;
+   private BlockId blk;
+   private boolean oldval, newval;
+
+   /**
+    * Create a new slot bit log record.
+    * @param p the page containing the log values
+    */
+   public SlotBitRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int spos = bpos + Integer.BYTES;
+      slot = p.getInt(spos);
+      int vpos = spos + Integer.BYTES;
+      oldval = p.getInt(vpos) != 0;
+      newval = p.getInt(vpos + Integer.BYTES) != 0;
+   }
+
+   public int op() {
+      return SLOT_BIT;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<SLOT_BIT " + txnum + " " + blk + " " + slot + " " + oldval + " " + newval + ">";
+   }
+
+   /**
+    * Restore the old bit of the slot.
+    * The restoring write is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.update(blk, update(slot, oldval), true);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Set the slot's bit to its new value again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      SlotBitmap.setUsed(p, slot, newval);
+   }
+
+   /**
+    * A static method to write a slot bit record to the log.
+    * The record contains the SLOT_BIT operator, the id of the
+    * transaction, the block, the slot, and the old and new
+    * values of its bit, each stored as an integer.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, boolean oldval, boolean newval) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int spos = bpos + Integer.BYTES;
+      int vpos = spos + Integer.BYTES;
+      byte[] rec = new byte[vpos + 2 * Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, SLOT_BIT);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(spos, slot);
+      p.setInt(vpos, oldval ? 1 : 0);
+      p.setInt(vpos + Integer.BYTES, newval ? 1 : 0);
+      return lm.append(rec);
+   }
+
+   /**
+    * Return the update that marks a slot of a fixed record page
+    * as used or empty, as described by this kind of record.
+    * The old bit of the slot is saved for snapshots.
+    * @param slot the slot
+    * @param used the new state of the slot
+    * @return the update
+    */
+   public static PageUpdate update(int slot, boolean used) {
+      return new PageUpdate() {
+         public int log(LogMgr lm, int txnum, BlockId blk, Page p) {
+            return writeToLog(lm, txnum, blk, slot, SlotBitmap.isUsed(p, slot), used);
+         }
+
+         public void save(VersionStore versions, int txnum, BlockId blk, Page p) {
+            versions.saveSlotUsed(blk, slot, SlotBitmap.isUsed(p, slot), txnum);
+         }
+
+         public void apply(Page p) {
+            SlotBitmap.setUsed(p, slot, used);
+         }
+      };
+   }
+}
@@ -0,0 +1,89 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotArray;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The SLOT_DELETE log record, which describes the deletion of
+ * one or more consecutive slots from a slot array.
+ * The record holds the contents of the deleted slots,
+ * which are needed to undo the deletion.
+ * @see SlotInsertRecord
+ */
+public class SlotDeleteRecord implements LogRecord {
+   private int txnum, slot;
+   private BlockId blk;
+   private SlotArray sa;
+   private byte[] slots;
+
+   /**
+    * Create a new slot delete log record.
+    * @param p the page containing the log values
+    */
+   public SlotDeleteRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int apos = bpos + Integer.BYTES;
+      sa = SlotInsertRecord.readSlotArray(p, apos);
+      int spos = apos + 3 * Integer.BYTES;
+      slot = p.getInt(spos);
+      int vpos = spos + Integer.BYTES;
+      slots = p.getBytes(vpos);
+   }
+
+   public int op() {
+      return SLOT_DELETE;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      int count = slots.length / sa.slotSize();
+      return "<SLOT_DELETE " + txnum + " " + blk + " " + slot + " " + count + ">";
+   }
+
+   /**
+    * Reinsert the deleted slots.
+    * The insertion is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.writeInsertSlots(blk, sa, slot, slots, true);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Repeat the deletion of the slots from the page.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      sa.delete(p, slot, slots.length / sa.slotSize());
+   }
+
+   /**
+    * A static method to write a slot delete record to the log.
+    * The record contains the SLOT_DELETE operator,
+    * the id of the transaction, the block, the geometry of
+    * its slot array, the position of the deletion,
+    * and the contents of the deleted slots.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, SlotArray sa, int slot, byte[] slots) {
+      return SlotInsertRecord.writeSlotRecord(lm, SLOT_DELETE, txnum, blk, sa, slot, slots);
+   }
+}
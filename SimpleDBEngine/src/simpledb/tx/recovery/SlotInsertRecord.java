@@ -0,0 +1,126 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotArray;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The SLOT_INSERT log record, which describes the insertion of
+ * one or more slots into a slot array, such as a B-tree page.
+ * The record is physiological: it identifies the page physically,
+ * but describes the change by the operation performed on it
+ * rather than by the bytes that changed, and so it does
+ * not contain the slots that were shifted to make room.
+ */
+public class SlotInsertRecord implements LogRecord {
+   private int txnum, slot;
+   private BlockId blk;
+   private SlotArray sa;
+   private byte[] slots;
+
+   /**
+    * Create a new slot insert log record.
+    * @param p the page containing the log values
+    */
+   public SlotInsertRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int apos = bpos + Integer.BYTES;
+      sa = readSlotArray(p, apos);
+      int spos = apos + 3 * Integer.BYTES;
+      slot = p.getInt(spos);
+      int vpos = spos + Integer.BYTES;
+      slots = p.getBytes(vpos);
+   }
+
+   public int op() {
+      return SLOT_INSERT;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      int count = slots.length / sa.slotSize();
+      return "<SLOT_INSERT " + txnum + " " + blk + " " + slot + " " + count + ">";
+   }
+
+   /**
+    * Delete the inserted slots again.
+    * The deletion is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.writeDeleteSlots(blk, sa, slot, slots.length / sa.slotSize(), true);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Repeat the insertion of the slots into the page.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      sa.insert(p, slot, slots);
+   }
+
+   /**
+    * Return the number of bytes that a slot insert record
+    * for the specified block needs, in addition to the slots.
+    * @param blk the modified block
+    * @return the size of the record without its slots
+    */
+   public static int overhead(BlockId blk) {
+      return 8 * Integer.BYTES + Page.maxLength(blk.fileName().length());
+   }
+
+   /**
+    * A static method to write a slot insert record to the log.
+    * The record contains the SLOT_INSERT operator,
+    * the id of the transaction, the block, the geometry of
+    * its slot array, the position of the insertion,
+    * and the contents of the inserted slots.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, SlotArray sa, int slot, byte[] slots) {
+      return writeSlotRecord(lm, SLOT_INSERT, txnum, blk, sa, slot, slots);
+   }
+
+   static int writeSlotRecord(LogMgr lm, int op, int txnum, BlockId blk, SlotArray sa, int slot, byte[] slots) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int apos = bpos + Integer.BYTES;
+      int spos = apos + 3 * Integer.BYTES;
+      int vpos = spos + Integer.BYTES;
+      int reclen = vpos + Integer.BYTES + slots.length;
+      byte[] rec = new byte[reclen];
+      Page p = new Page(rec);
+      p.setInt(0, op);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(apos, sa.countPos());
+      p.setInt(apos + Integer.BYTES, sa.firstPos());
+      p.setInt(apos + 2 * Integer.BYTES, sa.slotSize());
+      p.setInt(spos, slot);
+      p.setBytes(vpos, slots);
+      return lm.append(rec);
+   }
+
+   static SlotArray readSlotArray(Page p, int pos) {
+      return new SlotArray(p.getInt(pos), p.getInt(pos + Integer.BYTES), p.getInt(pos + 2 * Integer.BYTES));
+   }
+}
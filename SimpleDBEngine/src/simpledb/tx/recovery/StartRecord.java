@@ -1,5 +1,6 @@
 package simpledb.tx.recovery;
 
+import simpledb.file.BlockId;
 import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
@@ -29,6 +30,16 @@ public class StartRecord implements LogRecord {
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
+
+   public BlockId block() {
+      return null;
+   }
+
+   /**
+    * Does nothing, because a start record
+    * modifies no page.
+    */
+   public void redo(Page p) {}
    
    public String toString() {
       return "<START " + txnum + ">";
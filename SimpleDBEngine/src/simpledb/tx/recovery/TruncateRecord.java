@@ -0,0 +1,97 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The TRUNCATE log record, which records that a file was
+ * shortened to the specified number of blocks.
+ * The record modifies no page, and recovery handles it itself:
+ * the updates logged before it to the removed blocks are not redone,
+ * and the file is truncated again if it was not truncated
+ * before the crash.
+ * The removed blocks were empty, so there is nothing to undo.
+ * @see Transaction#truncate(String, int)
+ */
+public class TruncateRecord implements LogRecord {
+   private int txnum, size;
+   private String filename;
+
+   /**
+    * Create a new truncate log record.
+    * @param p the page containing the log values
+    */
+   public TruncateRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      filename = p.getString(fpos);
+      int spos = fpos + Page.maxLength(filename.length());
+      size = p.getInt(spos);
+   }
+
+   public int op() {
+      return TRUNCATE;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   /**
+    * Return the name of the truncated file.
+    * @return the file name
+    */
+   public String fileName() {
+      return filename;
+   }
+
+   /**
+    * Return the number of blocks that the file was left with.
+    * @return the new size of the file
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Does nothing, because the removed blocks were empty.
+    */
+   public void undo(Transaction tx) {}
+
+   public BlockId block() {
+      return null;
+   }
+
+   /**
+    * Does nothing, because a truncate record
+    * modifies no page.
+    */
+   public void redo(Page p) {}
+
+   public String toString() {
+      return "<TRUNCATE " + txnum + " " + filename + " " + size + ">";
+   }
+
+   /**
+    * A static method to write a truncate record to the log.
+    * This log record contains the TRUNCATE operator,
+    * followed by the transaction id, the filename,
+    * and the new number of blocks of the file.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, String filename, int size) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int spos = fpos + Page.maxLength(filename.length());
+      byte[] rec = new byte[spos + Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, TRUNCATE);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, filename);
+      p.setInt(spos, size);
+      return lm.append(rec);
+   }
+}
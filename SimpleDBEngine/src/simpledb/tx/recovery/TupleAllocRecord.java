@@ -0,0 +1,119 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotDirectory;
+import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
+import simpledb.tx.Transaction;
+import simpledb.tx.mvcc.VersionStore;
+
+/**
+ * The TUPLE_ALLOC log record, which describes the allocation
+ * of a new, cleared region to a slot of a slotted page,
+ * as done when a tuple is inserted.
+ * Only the flag and the size of the new region are needed to
+ * redo the allocation, because the region is taken from the
+ * start of the tuple area. The old flag of the slot is kept,
+ * so that the allocation can be undone.
+ * @see SlotDirectory
+ */
+public class TupleAllocRecord implements LogRecord {
+   private int txnum, slot;
+   private BlockId blk;
+   private int[] oldentry, newentry;
+
+   /**
+    * Create a new tuple allocation log record.
+    * @param p the page containing the log values
+    */
+   public TupleAllocRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int spos = bpos + Integer.BYTES;
+      slot = p.getInt(spos);
+      int epos = spos + Integer.BYTES;
+      oldentry = TupleEntryRecord.readEntry(p, epos);
+      newentry = TupleEntryRecord.readEntry(p, epos + 3 * Integer.BYTES);
+   }
+
+   public int op() {
+      return TUPLE_ALLOC;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<TUPLE_ALLOC " + txnum + " " + blk + " " + slot + " " + newentry[2] + ">";
+   }
+
+   /**
+    * Restore the old flag of the slot. The slot keeps its new
+    * region, which is reclaimed when the page is next compacted.
+    * The slot's earlier region, if it had one, held a tuple that
+    * was deleted and committed, and compaction may have given
+    * its space to other tuples since.
+    * The restoring write is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.update(blk, TupleEntryRecord.update(slot, oldentry[0], -1, -1), true);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Allocate the region again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      SlotDirectory.allocate(p, slot, newentry[0], newentry[2]);
+   }
+
+   /**
+    * A static method to write a tuple allocation record to the log.
+    * The record contains the TUPLE_ALLOC operator, the id of the
+    * transaction, the block, the slot, and its old and new entries.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, int[] oldentry, int[] newentry) {
+      return TupleEntryRecord.writeEntryRecord(lm, TUPLE_ALLOC, txnum, blk, slot, oldentry, newentry);
+   }
+
+   /**
+    * Return the update that allocates a cleared region of the
+    * specified size to a slot, as described by this kind of record.
+    * The old flag of the slot is saved for snapshots.
+    * @param slot the slot that receives the region
+    * @param flag the new flag of the slot
+    * @param alloc the size of the region
+    * @return the update
+    */
+   public static PageUpdate update(int slot, int flag, int alloc) {
+      return new PageUpdate() {
+         public int log(LogMgr lm, int txnum, BlockId blk, Page p) {
+            int[] newentry = {flag, SlotDirectory.tupleStart(p) - alloc, alloc};
+            return writeToLog(lm, txnum, blk, slot, SlotDirectory.entry(p, slot), newentry);
+         }
+
+         public void save(VersionStore versions, int txnum, BlockId blk, Page p) {
+            versions.saveTupleFlag(blk, slot, SlotDirectory.entry(p, slot)[0], txnum);
+         }
+
+         public void apply(Page p) {
+            SlotDirectory.allocate(p, slot, flag, alloc);
+         }
+      };
+   }
+}
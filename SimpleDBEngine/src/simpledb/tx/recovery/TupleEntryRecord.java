@@ -0,0 +1,146 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotDirectory;
+import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
+import simpledb.tx.Transaction;
+import simpledb.tx.mvcc.VersionStore;
+
+/**
+ * The TUPLE_ENTRY log record, which describes a change to the
+ * directory entry of a slot in a slotted page, such as the
+ * change of flag that deletes a tuple.
+ * The record holds the old and new entries in full.
+ * While the slot's record is XLocked by the transaction,
+ * nobody else moves its tuple, so the old entry is still
+ * valid when the change is undone.
+ * @see SlotDirectory
+ */
+public class TupleEntryRecord implements LogRecord {
+   private int txnum, slot;
+   private BlockId blk;
+   private int[] oldentry, newentry;
+
+   /**
+    * Create a new tuple entry log record.
+    * @param p the page containing the log values
+    */
+   public TupleEntryRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int spos = bpos + Integer.BYTES;
+      slot = p.getInt(spos);
+      int epos = spos + Integer.BYTES;
+      oldentry = readEntry(p, epos);
+      newentry = readEntry(p, epos + 3 * Integer.BYTES);
+   }
+
+   public int op() {
+      return TUPLE_ENTRY;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<TUPLE_ENTRY " + txnum + " " + blk + " " + slot + " " + oldentry[0] + " " + newentry[0] + ">";
+   }
+
+   /**
+    * Restore the old entry of the slot.
+    * The restoring write is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.update(blk, update(slot, oldentry[0], oldentry[1], oldentry[2]), true);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Store the new entry of the slot again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      SlotDirectory.setEntry(p, slot, newentry[0], newentry[1], newentry[2]);
+   }
+
+   /**
+    * A static method to write a tuple entry record to the log.
+    * The record contains the TUPLE_ENTRY operator, the id of the
+    * transaction, the block, the slot, and the old and new entries,
+    * each consisting of a flag, an offset and a region size.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, int[] oldentry, int[] newentry) {
+      return writeEntryRecord(lm, TUPLE_ENTRY, txnum, blk, slot, oldentry, newentry);
+   }
+
+   static int writeEntryRecord(LogMgr lm, int op, int txnum, BlockId blk, int slot, int[] oldentry, int[] newentry) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int spos = bpos + Integer.BYTES;
+      int epos = spos + Integer.BYTES;
+      byte[] rec = new byte[epos + 6 * Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, op);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(spos, slot);
+      for (int i=0; i<3; i++) {
+         p.setInt(epos + i * Integer.BYTES, oldentry[i]);
+         p.setInt(epos + (i+3) * Integer.BYTES, newentry[i]);
+      }
+      return lm.append(rec);
+   }
+
+   static int[] readEntry(Page p, int pos) {
+      return new int[] {p.getInt(pos), p.getInt(pos + Integer.BYTES), p.getInt(pos + 2 * Integer.BYTES)};
+   }
+
+   /**
+    * Return the update that stores the directory entry of a slot,
+    * as described by this kind of record.
+    * The old flag of the slot is saved for snapshots.
+    * @param slot the slot
+    * @param flag the new flag
+    * @param offset the offset of the region, or -1 to keep it
+    * @param alloc the size of the region, or -1 to keep it
+    * @return the update
+    */
+   public static PageUpdate update(int slot, int flag, int offset, int alloc) {
+      return new PageUpdate() {
+         public int log(LogMgr lm, int txnum, BlockId blk, Page p) {
+            return writeToLog(lm, txnum, blk, slot, SlotDirectory.entry(p, slot), newEntry(p));
+         }
+
+         public void save(VersionStore versions, int txnum, BlockId blk, Page p) {
+            versions.saveTupleFlag(blk, slot, SlotDirectory.entry(p, slot)[0], txnum);
+         }
+
+         public void apply(Page p) {
+            int[] newentry = newEntry(p);
+            SlotDirectory.setEntry(p, slot, newentry[0], newentry[1], newentry[2]);
+         }
+
+         private int[] newEntry(Page p) {
+            int[] oldentry = SlotDirectory.entry(p, slot);
+            return new int[] {flag, offset < 0 ? oldentry[1] : offset, alloc < 0 ? oldentry[2] : alloc};
+         }
+      };
+   }
+}
@@ -0,0 +1,111 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotDirectory;
+import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
+import simpledb.tx.Transaction;
+
+/**
+ * The TUPLE_MOVE log record, which describes the move of a tuple
+ * to a larger region of its slotted page, as done when an update
+ * makes the tuple outgrow its region.
+ * @see SlotDirectory
+ */
+public class TupleMoveRecord implements LogRecord {
+   private int txnum, slot, alloc;
+   private BlockId blk;
+
+   /**
+    * Create a new tuple move log record.
+    * @param p the page containing the log values
+    */
+   public TupleMoveRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int spos = bpos + Integer.BYTES;
+      slot = p.getInt(spos);
+      int apos = spos + Integer.BYTES;
+      alloc = p.getInt(apos);
+   }
+
+   public int op() {
+      return TUPLE_MOVE;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<TUPLE_MOVE " + txnum + " " + blk + " " + slot + " " + alloc + ">";
+   }
+
+   /**
+    * Does nothing. The move does not change the contents of the
+    * tuple, and the records of the later changes to the tuple
+    * locate it through its slot, wherever it is.
+    */
+   public void undo(Transaction tx) {}
+
+   /**
+    * Move the tuple again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      SlotDirectory.move(p, slot, alloc);
+   }
+
+   /**
+    * A static method to write a tuple move record to the log.
+    * The record contains the TUPLE_MOVE operator, the id of the
+    * transaction, the block, the slot, and the size of the new region.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, int alloc) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int spos = bpos + Integer.BYTES;
+      int apos = spos + Integer.BYTES;
+      byte[] rec = new byte[apos + Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, TUPLE_MOVE);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(spos, slot);
+      p.setInt(apos, alloc);
+      return lm.append(rec);
+   }
+
+   /**
+    * Return the update that moves the tuple of a slot to a new
+    * region of the specified size, as described by this kind of record.
+    * Like compaction, a move is not undone, even for snapshots.
+    * @param slot the slot of the tuple
+    * @param alloc the size of the new region
+    * @return the update
+    */
+   public static PageUpdate update(int slot, int alloc) {
+      return new PageUpdate() {
+         public int log(LogMgr lm, int txnum, BlockId blk, Page p) {
+            return writeToLog(lm, txnum, blk, slot, alloc);
+         }
+
+         public void apply(Page p) {
+            SlotDirectory.move(p, slot, alloc);
+         }
+      };
+   }
+}
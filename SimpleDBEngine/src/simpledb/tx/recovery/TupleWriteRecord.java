@@ -0,0 +1,137 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.file.SlotDirectory;
+import simpledb.log.LogMgr;
+import simpledb.tx.PageUpdate;
+import simpledb.tx.Transaction;
+import simpledb.tx.mvcc.VersionStore;
+
+/**
+ * The TUPLE_WRITE log record, which describes a change to the
+ * bytes of a tuple in a slotted page.
+ * The position of the change is given relative to the tuple,
+ * rather than to the page, so that the record remains valid
+ * if the tuple later moves within the page.
+ * @see SlotDirectory
+ */
+public class TupleWriteRecord implements LogRecord {
+   private int txnum, slot, pos;
+   private BlockId blk;
+   private byte[] oldbytes, newbytes;
+
+   /**
+    * Create a new tuple write log record.
+    * @param p the page containing the log values
+    */
+   public TupleWriteRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int spos = bpos + Integer.BYTES;
+      slot = p.getInt(spos);
+      int ppos = spos + Integer.BYTES;
+      pos = p.getInt(ppos);
+      int opos = ppos + Integer.BYTES;
+      oldbytes = p.getBytes(opos);
+      int npos = opos + Integer.BYTES + oldbytes.length;
+      newbytes = p.getBytes(npos);
+   }
+
+   public int op() {
+      return TUPLE_WRITE;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<TUPLE_WRITE " + txnum + " " + blk + " " + slot + " " + pos + " " + newbytes.length + ">";
+   }
+
+   /**
+    * Restore the overwritten bytes of the tuple.
+    * The restoring write is itself logged, as a compensating update.
+    * @see SetIntRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.update(blk, update(slot, pos, oldbytes, newbytes.length), true);
+      tx.unpin(blk);
+   }
+
+   /**
+    * Write the new bytes into the tuple again.
+    * @see LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      SlotDirectory.write(p, slot, pos, newbytes);
+   }
+
+   /**
+    * A static method to write a tuple write record to the log.
+    * The record contains the TUPLE_WRITE operator, the id of the
+    * transaction, the block, the slot of the tuple, the position
+    * of the change within the tuple, and the old and new bytes.
+    * @return the LSN of the new log record
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int slot, int pos, byte[] oldbytes, byte[] newbytes) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int spos = bpos + Integer.BYTES;
+      int ppos = spos + Integer.BYTES;
+      int opos = ppos + Integer.BYTES;
+      int npos = opos + Integer.BYTES + oldbytes.length;
+      byte[] rec = new byte[npos + Integer.BYTES + newbytes.length];
+      Page p = new Page(rec);
+      p.setInt(0, TUPLE_WRITE);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(spos, slot);
+      p.setInt(ppos, pos);
+      p.setBytes(opos, oldbytes);
+      p.setBytes(npos, newbytes);
+      return lm.append(rec);
+   }
+
+   /**
+    * Return the update that writes bytes into the tuple of a slot,
+    * as described by this kind of record. The overwritten bytes
+    * are saved for snapshots, and so are the bytes that the new
+    * ones cover beyond them, since a snapshot may read those too.
+    * @param slot the slot of the tuple
+    * @param pos the position of the bytes within the tuple
+    * @param b the bytes to write
+    * @param oldlength the number of meaningful bytes being overwritten
+    * @return the update
+    */
+   public static PageUpdate update(int slot, int pos, byte[] b, int oldlength) {
+      return new PageUpdate() {
+         public int log(LogMgr lm, int txnum, BlockId blk, Page p) {
+            int offset = SlotDirectory.offset(p, slot) + pos;
+            return writeToLog(lm, txnum, blk, slot, pos, p.readBytes(offset, oldlength), b);
+         }
+
+         public void save(VersionStore versions, int txnum, BlockId blk, Page p) {
+            int offset = SlotDirectory.offset(p, slot) + pos;
+            versions.saveTupleBytes(blk, slot, pos, p.readBytes(offset, Math.max(oldlength, b.length)), txnum);
+         }
+
+         public void apply(Page p) {
+            SlotDirectory.write(p, slot, pos, b);
+         }
+      };
+   }
+}